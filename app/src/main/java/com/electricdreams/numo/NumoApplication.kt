@@ -3,6 +3,8 @@ package com.electricdreams.numo
 import android.app.Application
 import android.util.Log
 import com.electricdreams.numo.core.dev.ErrorLogCollector
+import com.electricdreams.numo.feature.insights.InsightsRollupStore
+import com.electricdreams.numo.payment.PaymentWebhookDispatcher
 
 /**
  * Custom Application class for global initialisation.
@@ -17,6 +19,12 @@ class NumoApplication : Application() {
         // Wallet initialisation is handled by onboarding / ModernPOS flows.
         Log.d("NumoApplication", "Application initialised")
 
+        // Keep the Insights rollups in step with payment history writes
+        InsightsRollupStore.install(this)
+
+        // Pick up webhook deliveries a previous process did not finish
+        PaymentWebhookDispatcher.getInstance(this).resumePending()
+
         // Start developer error log collection in debug builds so the
         // Developer Settings > Error Logs screen can show recent errors
         // without modifying existing Log.e() sites.
@@ -92,7 +92,7 @@ class PaymentFailureActivity : AppCompatActivity() {
         }
 
         // Hide "Try Again" if there are no resumable pending payments
-        val hasPending = PaymentsHistoryActivity.getPaymentHistory(this).any { it.isPending() }
+        val hasPending = PaymentsHistoryActivity.getPendingPayments(this).isNotEmpty()
         if (!hasPending) {
             tryAgainButton.visibility = View.GONE
         }
@@ -108,10 +108,8 @@ class PaymentFailureActivity : AppCompatActivity() {
      * behavior of tapping that entry in [PaymentsHistoryActivity].
      */
     private fun handleTryAgain() {
-        val history = PaymentsHistoryActivity.getPaymentHistory(this)
         // Latest pending = newest entry with pending status
-        val latestPending: PaymentHistoryEntry? = history
-            .filter { it.isPending() }
+        val latestPending: PaymentHistoryEntry? = PaymentsHistoryActivity.getPendingPayments(this)
             .maxByOrNull { it.date.time }
 
         if (latestPending == null) {
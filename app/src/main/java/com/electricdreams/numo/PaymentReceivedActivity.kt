@@ -287,10 +287,9 @@ class PaymentReceivedActivity : AppCompatActivity() {
     
     private fun openTransactionDetails() {
         // Get the most recent payment from history (the one we just received)
-        val history = PaymentsHistoryActivity.getPaymentHistory(this)
-        val entry = history.lastOrNull()
+        val latest = PaymentsHistoryActivity.getLatestPayment(this)
         
-        if (entry == null) {
+        if (latest == null) {
             Toast.makeText(this, R.string.payment_received_error_no_details, Toast.LENGTH_SHORT).show()
             return
         }
@@ -298,8 +297,8 @@ class PaymentReceivedActivity : AppCompatActivity() {
         startActivity(
             PaymentIntentFactory.createTransactionDetailIntent(
                 context = this,
-                entry = entry,
-                position = history.size - 1,
+                entry = latest.value,
+                position = latest.index,
             ),
         )
     }
@@ -44,6 +44,8 @@ import com.electricdreams.numo.ndef.NdefHostCardEmulationService
 import com.electricdreams.numo.payment.LightningMintHandler
 import com.electricdreams.numo.payment.NostrPaymentHandler
 import com.electricdreams.numo.payment.PaymentIntentFactory
+import com.electricdreams.numo.payment.PaymentPrewarmer
+import com.electricdreams.numo.payment.PaymentSession
 import com.electricdreams.numo.payment.PaymentTabManager
 import com.electricdreams.numo.payment.PaymentWebhookDispatcher
 import com.electricdreams.numo.ui.animation.NfcPaymentAnimationView
@@ -56,12 +58,16 @@ import com.electricdreams.numo.core.payment.PaymentServiceFactory
 import com.electricdreams.numo.core.payment.PaymentState
 import com.electricdreams.numo.core.payment.impl.BTCPayPaymentService
 import com.electricdreams.numo.core.wallet.WalletError
+import com.electricdreams.numo.core.wallet.WalletResult
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.withTimeoutOrNull
 
 class PaymentRequestActivity : AppCompatActivity() {
 
@@ -107,6 +113,15 @@ class PaymentRequestActivity : AppCompatActivity() {
     private enum class HceMode { UNIFIED, CASHU, LIGHTNING }
     private enum class OverlayActionMode { SUCCESS, ERROR }
 
+    /** What the payment channel that won the session delivered. */
+    private sealed class Confirmation {
+        data class Cashu(val token: String) : Confirmation()
+        data class Lightning(
+            val paymentType: String = PaymentHistoryEntry.TYPE_LIGHTNING,
+            val btcPayInvoiceId: String? = null,
+        ) : Confirmation()
+    }
+
     private var paymentAmount: Long = 0
     private var bitcoinPriceWorker: BitcoinPriceWorker? = null
     private var hcePaymentRequest: String? = null
@@ -138,7 +153,6 @@ class PaymentRequestActivity : AppCompatActivity() {
     private var btcPayPaymentId: String? = null
     private var btcPayCashuPR: String? = null
     private var btcPayCashuPRBech32: String? = null
-    private var btcPayPollingJob: Job? = null
     private var btcPayInvoiceCreatedAt: Long = 0L
 
     // Lightning quote info for history
@@ -168,6 +182,18 @@ class PaymentRequestActivity : AppCompatActivity() {
     // Tracks whether this payment flow has already reached a terminal outcome
     private var hasTerminalOutcome: Boolean = false
 
+    // Races the payment channels; the first confirmed one completes the payment
+    private var paymentSession: PaymentSession<Confirmation>? = null
+    private var nfcChannelStarted = false
+    // Completed by the HCE callback with the result of an NFC payment
+    private val nfcResult = CompletableDeferred<Confirmation>()
+    // Completed once the HCE service serves our payment request
+    private val nfcConfigured = CompletableDeferred<Unit>()
+    // Completed when a Lightning tab is opened (delayed invoice developer setting)
+    private val lightningTabOpened = CompletableDeferred<Unit>()
+    // True from the moment the Lightning channel joins the session until it ends
+    private var lightningChannelInFlight = false
+
     // Pending NFC animation outcome data consumed when native animation reaches terminal frame.
     private var pendingNfcSuccessToken: String? = null
     private var pendingNfcSuccessAmount: Long = 0
@@ -299,13 +325,13 @@ class PaymentRequestActivity : AppCompatActivity() {
                 when (tab) {
                     PaymentTabManager.PaymentTab.UNIFIED -> {
                         if (!lightningStarted && DeveloperPrefs.isLightningInvoiceDelayed(this@PaymentRequestActivity) && isBolt11Supported) {
-                            startLightningMintFlow()
+                            onLightningTabOpened()
                         }
                         setHceToUnified()
                     }
                     PaymentTabManager.PaymentTab.LIGHTNING -> {
                         if (!lightningStarted && DeveloperPrefs.isLightningInvoiceDelayed(this@PaymentRequestActivity) && isBolt11Supported) {
-                            startLightningMintFlow()
+                            onLightningTabOpened()
                         }
                         if (lightningInvoice != null) {
                             setHceToLightning()
@@ -616,6 +642,9 @@ class PaymentRequestActivity : AppCompatActivity() {
         // Create the payment service (BTCPay or Local)
         paymentService = PaymentServiceFactory.create(this)
 
+        // Every channel below joins the same session as soon as it can start
+        paymentSession = PaymentSession(uiScope, ::onPaymentOutcome)
+
         val isBtcPay = paymentService is BTCPayPaymentService
 
         if (isBtcPay) {
@@ -669,21 +698,22 @@ class PaymentRequestActivity : AppCompatActivity() {
                     val (cashuCbor, cashuBech32) = prepareBtcPayCashuPR(payment.cashuPR!!, paymentAmount)
                     btcPayCashuPR = cashuCbor
                     btcPayCashuPRBech32 = cashuBech32
-                    try {
-                        val qrBitmap = QrCodeGenerator.generate(cashuCbor, 512)
-                        cashuQrImageView.setImageBitmap(qrBitmap)
-                        cashuQrImageView.visibility = View.VISIBLE
-                        cashuLogoCard.visibility = View.VISIBLE
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Error generating BTCPay Cashu QR: ${e.message}", e)
+                    QrCodeGenerator.load(cashuQrImageView, cashuCbor, 512) { shown ->
+                        if (shown) {
+                            cashuQrImageView.visibility = View.VISIBLE
+                            cashuLogoCard.visibility = View.VISIBLE
+                        } else {
+                            Log.e(TAG, "Error generating BTCPay Cashu QR")
+                        }
+                        cashuLoadingSpinner.visibility = View.GONE
                     }
-                    cashuLoadingSpinner.visibility = View.GONE
 
                     hcePaymentRequest = CashuPaymentHelper.stripTransports(cashuCbor) ?: cashuCbor
                     if (NdefHostCardEmulationService.isHceAvailable(this@PaymentRequestActivity)) {
                         val serviceIntent = Intent(this@PaymentRequestActivity, NdefHostCardEmulationService::class.java)
                         startService(serviceIntent)
                         setupNdefPayment()
+                        startNfcChannel()
                     }
                 } else {
                     // No cashuPR — disable Cashu tab and switch to Lightning
@@ -713,14 +743,13 @@ class PaymentRequestActivity : AppCompatActivity() {
 
     private fun showBtcPayLightningQr(bolt11: String) {
         lightningInvoice = bolt11
-        try {
-            val qrBitmap = QrCodeGenerator.generate(bolt11, 512)
-            lightningQrImageView.setImageBitmap(qrBitmap)
-            lightningQrImageView.visibility = View.VISIBLE
-            lightningLoadingSpinner.visibility = View.GONE
-            lightningLogoCard.visibility = View.VISIBLE
-        } catch (e: Exception) {
-            Log.e(TAG, "Error generating BTCPay Lightning QR: ${e.message}", e)
+        QrCodeGenerator.load(lightningQrImageView, bolt11, 512) { shown ->
+            if (shown) {
+                lightningQrImageView.visibility = View.VISIBLE
+                lightningLogoCard.visibility = View.VISIBLE
+            } else {
+                Log.e(TAG, "Error generating BTCPay Lightning QR")
+            }
             lightningLoadingSpinner.visibility = View.GONE
         }
         lightningStarted = true
@@ -758,19 +787,20 @@ class PaymentRequestActivity : AppCompatActivity() {
                     val (cashuCbor, cashuBech32) = prepareBtcPayCashuPR(payment.cashuPR!!, paymentAmount)
                     btcPayCashuPR = cashuCbor
                     btcPayCashuPRBech32 = cashuBech32
-                    try {
-                        val qrBitmap = QrCodeGenerator.generate(cashuCbor, 512)
-                        cashuQrImageView.setImageBitmap(qrBitmap)
-                        cashuQrImageView.visibility = View.VISIBLE
-                        cashuLogoCard.visibility = View.VISIBLE
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Error generating BTCPay Cashu QR on resume: ${e.message}", e)
+                    QrCodeGenerator.load(cashuQrImageView, cashuCbor, 512) { shown ->
+                        if (shown) {
+                            cashuQrImageView.visibility = View.VISIBLE
+                            cashuLogoCard.visibility = View.VISIBLE
+                        } else {
+                            Log.e(TAG, "Error generating BTCPay Cashu QR on resume")
+                        }
+                        cashuLoadingSpinner.visibility = View.GONE
                     }
-                    cashuLoadingSpinner.visibility = View.GONE
                     hcePaymentRequest = CashuPaymentHelper.stripTransports(cashuCbor) ?: cashuCbor
                     if (NdefHostCardEmulationService.isHceAvailable(this@PaymentRequestActivity)) {
                         startService(Intent(this@PaymentRequestActivity, NdefHostCardEmulationService::class.java))
                         setupNdefPayment()
+                        startNfcChannel()
                     }
                 } else {
                     cashuLoadingSpinner.visibility = View.GONE
@@ -864,6 +894,7 @@ class PaymentRequestActivity : AppCompatActivity() {
             } else {
                 Log.d(TAG, "Created HCE payment request: $hcePaymentRequest")
                 // HCE service will be started and configured in onResume()
+                startNfcChannel()
             }
         }
 
@@ -871,101 +902,164 @@ class PaymentRequestActivity : AppCompatActivity() {
         nostrHandler = NostrPaymentHandler(this, allowedMints)
         startNostrPaymentFlow()
 
-        // Check mint limits for the preferred mint to see if lightning bolt11 is supported
-        uiScope.launch {
-            val mintUrlToUse = preferredLightningMint ?: allowedMints.firstOrNull()
-            
-            if (mintUrlToUse != null) {
-                val limits = mintManager.getMintLimits(mintUrlToUse, this@PaymentRequestActivity)
-                val preferredUnit = MintManager.getInstance(this@PaymentRequestActivity).getPreferredUnit()
-                val checkResult = MintLimitChecker.checkMintLimits(paymentAmount, limits, preferredUnit)
-                isBolt11Supported = checkResult.isBolt11Supported
-            }
-            
-            if (!isBolt11Supported) {
-                Log.d(TAG, "Mint does not support bolt11. Bypassing Lightning tab and showing BIP321 Cashu request.")
-                // Bypass lightning entirely
-                runOnUiThread {
-                    // Hide Lightning tab ONLY
-                    lightningTab.visibility = View.GONE
-                    
-                    // Force selecting UNIFIED tab if LIGHTNING was the default
-                    if (tabManager.getCurrentTab() == PaymentTabManager.PaymentTab.LIGHTNING) {
-                        tabManager.selectTab(PaymentTabManager.PaymentTab.UNIFIED)
-                    }
-                    
-                    // We need to call updateUnifiedQrCode here because the creq might already be ready
-                    updateUnifiedQrCode()
+        // Lightning checks the mint's limits in its own channel so Nostr and NFC don't wait on it
+        startLightningChannel(
+            limitsMintUrl = preferredLightningMint ?: allowedMints.firstOrNull(),
+            waitForTab = DeveloperPrefs.isLightningInvoiceDelayed(this)
+        )
+    }
+
+    /**
+     * Add the Lightning channel to the session. It checks [limitsMintUrl]
+     * for bolt11 support first (hiding the Lightning tab if there is none)
+     * and, with [waitForTab], creates the invoice only once a Lightning tab
+     * is opened.
+     */
+    private fun startLightningChannel(limitsMintUrl: String?, waitForTab: Boolean) {
+        val session = paymentSession ?: return
+        // Set before starting: the channel may already end while start() runs
+        lightningChannelInFlight = true
+        val started = session.start(PaymentSession.channel(CHANNEL_LIGHTNING) { ready ->
+            try {
+                if (limitsMintUrl != null && !checkBolt11Support(limitsMintUrl)) {
+                    throw IllegalStateException("Mint does not support bolt11")
                 }
-            } else {
-                // Unless developer setting to delay it is enabled, start it immediately
-                if (!DeveloperPrefs.isLightningInvoiceDelayed(this@PaymentRequestActivity)) {
-                    startLightningMintFlow()
+                if (waitForTab) lightningTabOpened.await()
+
+                val paid = CompletableDeferred<Confirmation>()
+                startLightningMintFlow(createLightningCallback(paid, ready))
+                try {
+                    paid.await()
+                } catch (e: CancellationException) {
+                    lightningHandler?.cancel()
+                    throw e
                 }
+            } finally {
+                lightningChannelInFlight = false
+            }
+        })
+        if (!started) lightningChannelInFlight = false
+    }
+
+    /** Check the mint's limits for bolt11 support; without it the Lightning tab is hidden. */
+    private suspend fun checkBolt11Support(mintUrl: String): Boolean {
+        val mintManager = MintManager.getInstance(this)
+        // Served from memory; only a mint we have never seen goes to the network
+        val limits = mintManager.getCachedMintLimits(mintUrl)
+            ?: mintManager.getMintLimits(mintUrl, this)
+        val checkResult = MintLimitChecker.checkMintLimits(paymentAmount, limits, mintManager.getPreferredUnit())
+        isBolt11Supported = checkResult.isBolt11Supported
+
+        if (!isBolt11Supported) {
+            Log.d(TAG, "Mint does not support bolt11. Bypassing Lightning tab and showing BIP321 Cashu request.")
+            // Hide Lightning tab ONLY
+            lightningTab.visibility = View.GONE
+
+            // Force selecting UNIFIED tab if LIGHTNING was the default
+            if (tabManager.getCurrentTab() == PaymentTabManager.PaymentTab.LIGHTNING) {
+                tabManager.selectTab(PaymentTabManager.PaymentTab.UNIFIED)
+            }
+
+            // We need to call updateUnifiedQrCode here because the creq might already be ready
+            updateUnifiedQrCode()
+        }
+        return isBolt11Supported
+    }
+
+    /** Developer setting: the Lightning invoice is only created once its tab is opened. */
+    private fun onLightningTabOpened() {
+        if (lightningHandler == null) return
+        lightningTabOpened.complete(Unit)
+        if (!lightningChannelInFlight) {
+            // An earlier Lightning attempt failed; opening the tab tries again
+            startLightningChannel(limitsMintUrl = null, waitForTab = false)
+        }
+    }
+
+    /** Add the NFC channel, which ends with the first NFC payment's result. */
+    private fun startNfcChannel() {
+        if (nfcChannelStarted) return
+        nfcChannelStarted = true
+        paymentSession?.start(PaymentSession.channel(CHANNEL_NFC) { ready ->
+            nfcConfigured.await()
+            ready()
+            nfcResult.await()
+        })
+    }
+
+    /** The session decided: show the winning payment or the failure. */
+    private fun onPaymentOutcome(outcome: PaymentSession.Outcome<Confirmation>) {
+        when (outcome) {
+            is PaymentSession.Outcome.Confirmed -> when (val confirmation = outcome.result) {
+                is Confirmation.Cashu -> handlePaymentSuccess(confirmation.token)
+                is Confirmation.Lightning -> handleLightningPaymentSuccess(confirmation.paymentType, confirmation.btcPayInvoiceId)
             }
+            is PaymentSession.Outcome.Failed -> handlePaymentError(outcome.error.message ?: "Unknown error")
+            is PaymentSession.Outcome.Cancelled -> Unit
         }
     }
 
     /**
-     * Poll BTCPay invoice status every 2 seconds until terminal state.
+     * Follow BTCPay invoice status until a terminal state. Updates are pushed
+     * over BTCPay's invoice status socket, with polling as the fallback.
      */
     private fun startBtcPayPolling(paymentId: String) {
-        btcPayPollingJob = uiScope.launch {
-            var consecutiveErrors = 0
-            var pollInterval = 2000L
-
-            while (!hasTerminalOutcome) {
-                // Fix 7: local expiry guard (15 min) in case server never returns EXPIRED
-                if (btcPayInvoiceCreatedAt > 0 &&
-                    System.currentTimeMillis() - btcPayInvoiceCreatedAt > BTCPAY_INVOICE_TIMEOUT_MS) {
-                    Log.w(TAG, "BTCPay invoice timed out locally after ${BTCPAY_INVOICE_TIMEOUT_MS / 60000} min")
-                    btcPayPollingJob?.cancel()
-                    pendingPaymentId?.let { PaymentsHistoryActivity.markPaymentExpired(this@PaymentRequestActivity, it) }
-                    handlePaymentError("Invoice expired")
-                    return@launch
-                }
-
-                delay(pollInterval)
-                if (hasTerminalOutcome) break
+        paymentSession?.start(PaymentSession.channel(CHANNEL_BTCPAY) { ready ->
+            // The invoice's QR codes are already on screen
+            ready()
+            awaitBtcPayPayment(paymentId)
+        })
+    }
 
-                val statusResult = paymentService.checkPaymentStatus(paymentId)
-                statusResult.onSuccess { state ->
-                    consecutiveErrors = 0
-                    pollInterval = 2000L
-                    when (state) {
-                        PaymentState.PAID -> {
-                            btcPayPollingJob?.cancel()
-                            val type = when (currentHceMode) {
-                                HceMode.CASHU, HceMode.UNIFIED -> PaymentHistoryEntry.TYPE_CASHU
-                                HceMode.LIGHTNING -> PaymentHistoryEntry.TYPE_LIGHTNING
+    private suspend fun awaitBtcPayPayment(paymentId: String): Confirmation {
+        var consecutiveErrors = 0
+
+        // Fix 7: local expiry guard (15 min) in case server never returns EXPIRED
+        val elapsed = if (btcPayInvoiceCreatedAt > 0) System.currentTimeMillis() - btcPayInvoiceCreatedAt else 0L
+        val confirmation = withTimeoutOrNull((BTCPAY_INVOICE_TIMEOUT_MS - elapsed).coerceAtLeast(0L)) {
+            paymentService.observePaymentStatus(paymentId).mapNotNull { statusResult ->
+                when (statusResult) {
+                    is WalletResult.Success -> {
+                        consecutiveErrors = 0
+                        when (statusResult.value) {
+                            PaymentState.PAID -> {
+                                val type = when (currentHceMode) {
+                                    HceMode.CASHU, HceMode.UNIFIED -> PaymentHistoryEntry.TYPE_CASHU
+                                    HceMode.LIGHTNING -> PaymentHistoryEntry.TYPE_LIGHTNING
+                                }
+                                Confirmation.Lightning(type, btcPayInvoiceId = btcPayPaymentId)
                             }
-                            handleLightningPaymentSuccess(type, btcPayInvoiceId = btcPayPaymentId)
-                        }
-                        PaymentState.EXPIRED -> {
-                            btcPayPollingJob?.cancel()
-                            pendingPaymentId?.let { PaymentsHistoryActivity.markPaymentExpired(this@PaymentRequestActivity, it) }
-                            handlePaymentError("Invoice expired")
-                        }
-                        PaymentState.FAILED -> {
-                            btcPayPollingJob?.cancel()
-                            pendingPaymentId?.let { PaymentsHistoryActivity.markPaymentFailed(this@PaymentRequestActivity, it) }
-                            handlePaymentError("Invoice invalid")
+                            PaymentState.EXPIRED -> {
+                                pendingPaymentId?.let { PaymentsHistoryActivity.markPaymentExpired(this@PaymentRequestActivity, it) }
+                                throw PaymentSession.FatalException("Invoice expired")
+                            }
+                            PaymentState.FAILED -> {
+                                pendingPaymentId?.let { PaymentsHistoryActivity.markPaymentFailed(this@PaymentRequestActivity, it) }
+                                throw PaymentSession.FatalException("Invoice invalid")
+                            }
+                            PaymentState.PENDING -> null
                         }
-                        PaymentState.PENDING -> { /* continue */ }
                     }
-                }.onFailure { error ->
-                    // Fix 6: exponential backoff, stop after too many consecutive errors
-                    consecutiveErrors++
-                    pollInterval = minOf(pollInterval * 2, 30_000L)
-                    Log.w(TAG, "BTCPay poll error ($consecutiveErrors): ${error.message}")
-                    if (consecutiveErrors >= BTCPAY_MAX_POLL_ERRORS) {
-                        Log.e(TAG, "BTCPay polling stopped after $consecutiveErrors consecutive errors")
-                        btcPayPollingJob?.cancel()
-                        handlePaymentError("Server unreachable")
+                    is WalletResult.Failure -> {
+                        // Fix 6: the stream backs off; stop after too many consecutive errors
+                        consecutiveErrors++
+                        Log.w(TAG, "BTCPay status error ($consecutiveErrors): ${statusResult.error.message}")
+                        if (consecutiveErrors >= BTCPAY_MAX_POLL_ERRORS) {
+                            Log.e(TAG, "BTCPay status updates stopped after $consecutiveErrors consecutive errors")
+                            throw PaymentSession.FatalException("Server unreachable")
+                        }
+                        null
                     }
                 }
-            }
+            }.first()
         }
+
+        if (confirmation == null) {
+            Log.w(TAG, "BTCPay invoice timed out locally after ${BTCPAY_INVOICE_TIMEOUT_MS / 60000} min")
+            pendingPaymentId?.let { PaymentsHistoryActivity.markPaymentExpired(this@PaymentRequestActivity, it) }
+            throw PaymentSession.FatalException("Invoice expired")
+        }
+        return confirmation
     }
 
     private fun setHceToCashu() {
@@ -1036,12 +1130,13 @@ class PaymentRequestActivity : AppCompatActivity() {
         }
     }
 
-    private fun generateThemedQrCode(text: String): android.graphics.Bitmap {
+    /** Render [text] into [target] in the background; [onResult] runs on the main thread. */
+    private fun loadThemedQrCode(target: ImageView, text: String, onResult: (Boolean) -> Unit) {
         val currentNightMode = resources.configuration.uiMode and android.content.res.Configuration.UI_MODE_NIGHT_MASK
         val isDarkTheme = currentNightMode == android.content.res.Configuration.UI_MODE_NIGHT_YES
         val qrForeground = if (isDarkTheme) android.graphics.Color.WHITE else android.graphics.Color.BLACK
         val qrBackground = android.graphics.Color.TRANSPARENT
-        return QrCodeGenerator.generate(text, 512, qrForeground, qrBackground)
+        QrCodeGenerator.load(target, text, 512, qrForeground, qrBackground, onResult)
     }
 
     private fun prepareBtcPayCashuPR(rawCashuPR: String, amount: Long): Pair<String, String?> =
@@ -1076,71 +1171,76 @@ class PaymentRequestActivity : AppCompatActivity() {
         
         val unifiedUri = org.cashudevkit.createBip321Uri(creq, lnbc, null)
 
-        try {
-            val qrBitmap = generateThemedQrCode(unifiedUri)
-            unifiedQrImageView.setImageBitmap(qrBitmap)
+        loadThemedQrCode(unifiedQrImageView, unifiedUri) { shown ->
+            if (!shown) {
+                Log.e(TAG, "Error generating Unified QR bitmap")
+                return@loadThemedQrCode
+            }
             unifiedQrImageView.visibility = View.VISIBLE
             unifiedLoadingSpinner.visibility = View.GONE
-            
+
             if (tabManager.getCurrentTab() == PaymentTabManager.PaymentTab.UNIFIED) {
                 setHceToUnified()
             }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error generating Unified QR bitmap: ${e.message}", e)
         }
     }
 
     private fun startNostrPaymentFlow() {
         val handler = nostrHandler ?: return
 
-        val callback = object : NostrPaymentHandler.Callback {
-            override fun onPaymentRequestReady(paymentRequest: String) {
-                try {
-                    val qrBitmap = generateThemedQrCode(paymentRequest)
-                    cashuQrImageView.setImageBitmap(qrBitmap)
-                    cashuQrImageView.visibility = View.VISIBLE
-                    cashuLoadingSpinner.visibility = View.GONE
-                    statusText.text = getString(R.string.payment_request_status_waiting_for_payment)
+        paymentSession?.start(PaymentSession.channel(CHANNEL_NOSTR) { ready ->
+            val received = CompletableDeferred<Confirmation>()
+            val callback = object : NostrPaymentHandler.Callback {
+                override fun onPaymentRequestReady(paymentRequest: String) {
+                    loadThemedQrCode(cashuQrImageView, paymentRequest) { shown ->
+                        if (shown) {
+                            cashuQrImageView.visibility = View.VISIBLE
+                            cashuLoadingSpinner.visibility = View.GONE
+                            statusText.text = getString(R.string.payment_request_status_waiting_for_payment)
+                            ready()
+                        } else {
+                            Log.e(TAG, "Error generating Cashu QR bitmap")
+                            statusText.text = getString(R.string.payment_request_status_error_qr)
+                        }
+                    }
                     updateUnifiedQrCode()
-                } catch (e: Exception) {
-                    Log.e(TAG, "Error generating Cashu QR bitmap: ${e.message}", e)
-                    statusText.text = getString(R.string.payment_request_status_error_qr)
                 }
-            }
 
-            override fun onTokenReceived(token: String) {
-                runOnUiThread {
-                    handlePaymentSuccess(token)
+                override fun onTokenReceived(token: String) {
+                    received.complete(Confirmation.Cashu(token))
                 }
-            }
 
-            override fun onPaymentFailure(message: String) {
-                Log.e(TAG, "Nostr payment failure: $message")
-                // Atomically update Nostr identity ONLY on payment failure so retries won't hit the same event
-                nostrHandler?.rotateKeys(pendingPaymentId)
-                runOnUiThread {
-                    handlePaymentError("Nostr payment failed: $message")
+                override fun onPaymentFailure(message: String) {
+                    Log.e(TAG, "Nostr payment failure: $message")
+                    // Atomically update Nostr identity ONLY on payment failure so retries won't hit the same event
+                    nostrHandler?.rotateKeys(pendingPaymentId)
+                    received.completeExceptionally(PaymentSession.FatalException("Nostr payment failed: $message"))
                 }
-            }
 
-            override fun onError(message: String) {
-                Log.e(TAG, "Nostr payment error: $message")
-                runOnUiThread {
-                    handlePaymentError("Nostr payment error: $message")
+                override fun onError(message: String) {
+                    Log.e(TAG, "Nostr payment error: $message")
+                    received.completeExceptionally(PaymentSession.FatalException("Nostr payment error: $message"))
                 }
             }
-        }
 
-        if (isResumingPayment && resumeNostrSecretHex != null && resumeNostrNprofile != null) {
-            // Resume with stored keys
-            handler.resume(paymentAmount, resumeNostrSecretHex!!, resumeNostrNprofile!!, callback)
-        } else {
-            // Start fresh
-            handler.start(paymentAmount, pendingPaymentId, callback)
-        }
+            if (isResumingPayment && resumeNostrSecretHex != null && resumeNostrNprofile != null) {
+                // Resume with stored keys
+                handler.resume(paymentAmount, resumeNostrSecretHex!!, resumeNostrNprofile!!, callback)
+            } else {
+                // Start fresh, with keys generated while the amount was typed if any
+                handler.start(paymentAmount, pendingPaymentId, callback, PaymentPrewarmer.getInstance(this).takeKeyPair())
+            }
+
+            try {
+                received.await()
+            } catch (e: CancellationException) {
+                handler.stop()
+                throw e
+            }
+        })
     }
 
-    private fun startLightningMintFlow() {
+    private fun startLightningMintFlow(callback: LightningMintHandler.Callback) {
         lightningStarted = true
 
         // Check if we're resuming with existing Lightning quote
@@ -1151,15 +1251,21 @@ class PaymentRequestActivity : AppCompatActivity() {
                 quoteId = resumeLightningQuoteId!!,
                 mintUrlStr = resumeLightningMintUrl!!,
                 invoice = resumeLightningInvoice!!,
-                callback = createLightningCallback()
+                callback = callback
             )
         } else {
-            // Start fresh Lightning flow
-            lightningHandler?.start(paymentAmount, createLightningCallback())
+            // Start fresh Lightning flow, reusing a quote prepared while the amount was typed
+            val prewarmer = PaymentPrewarmer.getInstance(this)
+            lightningHandler?.start(paymentAmount, callback) { mintUrl, unit ->
+                prewarmer.claimQuote(mintUrl, unit, paymentAmount)
+            }
         }
     }
 
-    private fun createLightningCallback(): LightningMintHandler.Callback {
+    private fun createLightningCallback(
+        paid: CompletableDeferred<Confirmation>,
+        ready: () -> Unit
+    ): LightningMintHandler.Callback {
         return object : LightningMintHandler.Callback {
             override fun onInvoiceReady(bolt11: String, quoteId: String, mintUrl: String) {
                 // Store for history
@@ -1178,19 +1284,19 @@ class PaymentRequestActivity : AppCompatActivity() {
                     )
                 }
 
-                try {
-                    val qrBitmap = generateThemedQrCode(bolt11)
-                    lightningQrImageView.setImageBitmap(qrBitmap)
-                    lightningQrImageView.visibility = View.VISIBLE
-                    // Hide loading spinner and show the bolt icon
-                    lightningLoadingSpinner.visibility = View.GONE
-                    lightningLogoCard.visibility = View.VISIBLE
-                    updateUnifiedQrCode()
-                } catch (e: Exception) {
-                    Log.e(TAG, "Error generating Lightning QR bitmap: ${e.message}", e)
-                    // Still hide spinner on error
+                loadThemedQrCode(lightningQrImageView, bolt11) { shown ->
+                    if (shown) {
+                        lightningQrImageView.visibility = View.VISIBLE
+                        // Show the bolt icon
+                        lightningLogoCard.visibility = View.VISIBLE
+                        ready()
+                    } else {
+                        Log.e(TAG, "Error generating Lightning QR bitmap")
+                    }
+                    // Hide loading spinner either way
                     lightningLoadingSpinner.visibility = View.GONE
                 }
+                updateUnifiedQrCode()
 
                 // If Lightning tab is currently visible, switch HCE payload to Lightning
                 if (tabManager.getCurrentTab() == PaymentTabManager.PaymentTab.LIGHTNING) {
@@ -1200,7 +1306,7 @@ class PaymentRequestActivity : AppCompatActivity() {
             }
 
             override fun onPaymentSuccess() {
-                handleLightningPaymentSuccess()
+                paid.complete(Confirmation.Lightning())
             }
 
             override fun onError(message: String) {
@@ -1214,6 +1320,7 @@ class PaymentRequestActivity : AppCompatActivity() {
                 // or that the Lightning tab is unavailable.
                 val errorMsg = getString(R.string.payment_request_lightning_error_failed, message)
                 Toast.makeText(this@PaymentRequestActivity, errorMsg, Toast.LENGTH_LONG).show()
+                paid.completeExceptionally(IllegalStateException(message))
             }
         }
     }
@@ -1281,8 +1388,8 @@ class PaymentRequestActivity : AppCompatActivity() {
                                         result.onSuccess {
                                             // BTCPay now returns 200 when the token is accepted for
                                             // processing, not when the invoice is settled. Settlement
-                                            // is confirmed by the polling loop (startBtcPayPolling)
-                                            // which calls handleLightningPaymentSuccess on PAID.
+                                            // is confirmed by the BTCPay channel (startBtcPayPolling)
+                                            // which wins the payment session on PAID.
                                             Log.d(TAG, "BTCPay token submitted — waiting for invoice settlement via polling")
                                         }.onFailure { e ->
                                             // Redemption failed — check BTCPay invoice status to see
@@ -1291,12 +1398,12 @@ class PaymentRequestActivity : AppCompatActivity() {
                                             val statusResult = paymentService.checkPaymentStatus(invoiceId)
                                             statusResult.onSuccess { state ->
                                                 when (state) {
-                                                    PaymentState.PAID -> withContext(Dispatchers.Main) {
-                                                        handleLightningPaymentSuccess(PaymentHistoryEntry.TYPE_CASHU)
-                                                    }
-                                                    PaymentState.PENDING -> withContext(Dispatchers.Main) {
-                                                        handlePaymentError(e.message ?: "NFC payment failed")
-                                                    }
+                                                    PaymentState.PAID -> nfcResult.complete(
+                                                        Confirmation.Lightning(PaymentHistoryEntry.TYPE_CASHU)
+                                                    )
+                                                    PaymentState.PENDING -> nfcResult.completeExceptionally(
+                                                        PaymentSession.FatalException(e.message ?: "NFC payment failed")
+                                                    )
                                                     else -> throw Exception("BTCPay redemption failed: ${e.message}")
                                                 }
                                             }.onFailure {
@@ -1330,33 +1437,27 @@ class PaymentRequestActivity : AppCompatActivity() {
                                 // If redeemedToken is non-empty, it's a Cashu
                                 // payment; if empty, it was fulfilled via
                                 // Lightning swap.
-                                withContext(Dispatchers.Main) {
+                                nfcResult.complete(
                                     if (redeemedToken.isNotEmpty()) {
-                                        handlePaymentSuccess(redeemedToken)
+                                        Confirmation.Cashu(redeemedToken)
                                     } else {
-                                        handleLightningPaymentSuccess()
+                                        Confirmation.Lightning()
                                     }
-                                }
+                                )
                             } catch (e: CashuPaymentHelper.RedemptionException) {
                                 val msg = e.message ?: "Unknown redemption error"
                                 Log.e(TAG, "Error in NDEF payment redemption: $msg", e)
-                                withContext(Dispatchers.Main) {
-                                    handlePaymentError("NDEF Payment failed: $msg")
-                                }
+                                nfcResult.completeExceptionally(PaymentSession.FatalException("NDEF Payment failed: $msg", e))
                             } catch (e: Exception) {
                                 Log.e(TAG, "Unexpected error in NDEF payment callback: ${e.message}", e)
-                                withContext(Dispatchers.Main) {
-                                    handlePaymentError("NDEF Payment failed: ${e.message}")
-                                }
+                                nfcResult.completeExceptionally(PaymentSession.FatalException("NDEF Payment failed: ${e.message}", e))
                             }
                         }
                     }
 
                     override fun onCashuPaymentError(errorMessage: String) {
-                        runOnUiThread {
-                            Log.e(TAG, "NDEF Payment error callback: $errorMessage")
-                            handlePaymentError("NDEF Payment failed: $errorMessage")
-                        }
+                        Log.e(TAG, "NDEF Payment error callback: $errorMessage")
+                        nfcResult.completeExceptionally(PaymentSession.FatalException("NDEF Payment failed: $errorMessage"))
                     }
 
                     override fun onNfcReadingStarted() {
@@ -1384,7 +1485,9 @@ class PaymentRequestActivity : AppCompatActivity() {
 
                             if (failedInMiddleOfTransaction) {
                                 Log.e(TAG, "NFC connection lost while writing data - failing payment")
-                                handlePaymentError(getString(R.string.payment_failure_button_try_again))
+                                nfcResult.completeExceptionally(
+                                    PaymentSession.FatalException(getString(R.string.payment_failure_button_try_again))
+                                )
                             } else {
                                 Log.d(TAG, "NFC connection stopped without writing data. Returning to payment request screen.")
                                 hideNfcAnimationOverlay()
@@ -1393,6 +1496,7 @@ class PaymentRequestActivity : AppCompatActivity() {
                     }
                 }
                 hceService.setPaymentCallback(hcePaymentCallback)
+                nfcConfigured.complete(Unit)
 
                 Log.d(TAG, "NDEF payment service ready")
             }
@@ -1533,6 +1637,9 @@ class PaymentRequestActivity : AppCompatActivity() {
         }
         hasTerminalOutcome = true
 
+        // Stop the channels that are still waiting for a payment
+        paymentSession?.cancel(reason)
+
         // Immediately stop/clear NFC/HCE service to prevent paying wallets from attempting again
         clearHceService()
 
@@ -1599,9 +1706,8 @@ class PaymentRequestActivity : AppCompatActivity() {
 
         cancelNfcSafetyTimeout()
 
-        // Stop BTCPay polling
-        btcPayPollingJob?.cancel()
-        btcPayPollingJob = null
+        // Stop the payment channels, including BTCPay status updates
+        paymentSession?.cancel("finished")
 
         // Stop Nostr handler
         nostrHandler?.stop()
@@ -1626,12 +1732,14 @@ class PaymentRequestActivity : AppCompatActivity() {
     override fun onDestroy() {
         nfcSetupRunnable?.let { nfcSetupHandler.removeCallbacks(it) }
         cancelNfcSafetyTimeout()
-        btcPayPollingJob?.cancel()
-        btcPayPollingJob = null
+        paymentSession?.cancel("destroyed")
         nostrHandler?.stop()
         nostrHandler = null
         lightningHandler?.cancel()
         lightningHandler = null
+        QrCodeGenerator.cancel(cashuQrImageView)
+        QrCodeGenerator.cancel(lightningQrImageView)
+        QrCodeGenerator.cancel(unifiedQrImageView)
 
         // Clean up HCE service
         clearHceService()
@@ -2149,9 +2257,7 @@ class PaymentRequestActivity : AppCompatActivity() {
     }
 
     private fun retryLatestPendingPayment() {
-        val history = PaymentsHistoryActivity.getPaymentHistory(this)
-        val latestPending: PaymentHistoryEntry? = history
-            .filter { it.isPending() }
+        val latestPending: PaymentHistoryEntry? = PaymentsHistoryActivity.getPendingPayments(this)
             .maxByOrNull { it.date.time }
 
         if (latestPending == null) {
@@ -2164,10 +2270,9 @@ class PaymentRequestActivity : AppCompatActivity() {
     }
 
     private fun openLatestTransactionDetails() {
-        val history = PaymentsHistoryActivity.getPaymentHistory(this)
-        val entry = history.lastOrNull()
+        val latest = PaymentsHistoryActivity.getLatestPayment(this)
 
-        if (entry == null) {
+        if (latest == null) {
             Toast.makeText(this, R.string.payment_received_error_no_details, Toast.LENGTH_SHORT).show()
             return
         }
@@ -2175,8 +2280,8 @@ class PaymentRequestActivity : AppCompatActivity() {
         startActivity(
             PaymentIntentFactory.createTransactionDetailIntent(
                 context = this,
-                entry = entry,
-                position = history.size - 1,
+                entry = latest.value,
+                position = latest.index,
             ),
         )
     }
@@ -2191,6 +2296,12 @@ class PaymentRequestActivity : AppCompatActivity() {
         private const val BTCPAY_INVOICE_TIMEOUT_MS = 15 * 60 * 1000L // 15 min
         private const val BTCPAY_MAX_POLL_ERRORS = 5
 
+        // Payment session channel names
+        private const val CHANNEL_NOSTR = "nostr"
+        private const val CHANNEL_LIGHTNING = "lightning"
+        private const val CHANNEL_NFC = "nfc"
+        private const val CHANNEL_BTCPAY = "btcpay"
+
 
 
         const val EXTRA_PAYMENT_AMOUNT = "payment_amount"
@@ -0,0 +1,183 @@
+package com.electricdreams.numo.core.backup
+
+import android.content.Context
+import android.util.Log
+import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.util.MintManager
+import com.electricdreams.numo.nostr.NostrMintBackup
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+
+/**
+ * Runs the mint-list backups (on-device recovery file and Nostr event) in
+ * the background after the mint list changes.
+ *
+ * Requests are coalesced: a burst of edits (adding several mints, a restore)
+ * results in one run once no new request has arrived for [debounceMs]. A
+ * request that arrives while a run is in progress schedules exactly one
+ * more run. Backends decide for themselves whether anything changed and
+ * report [Outcome.UNCHANGED] instead of writing the same backup again.
+ */
+class BackupScheduler internal constructor(
+    scope: CoroutineScope,
+    private val backends: List<Backend>,
+    private val debounceMs: Long = DEBOUNCE_MS
+) {
+
+    enum class Outcome { WRITTEN, UNCHANGED, SKIPPED, FAILED }
+
+    /** One backup destination. */
+    interface Backend {
+        val name: String
+        suspend fun run(): Outcome
+    }
+
+    data class BackendTiming(
+        val backend: String,
+        val outcome: Outcome,
+        val durationMs: Long
+    )
+
+    /** Summary of one coalesced backup run. */
+    data class RunReport(
+        val requests: Int,
+        val reasons: Set<String>,
+        val finishedAtMs: Long,
+        val timings: List<BackendTiming>
+    )
+
+    private val requests = Channel<String>(Channel.UNLIMITED)
+
+    private val _lastRun = MutableStateFlow<RunReport?>(null)
+
+    /** The most recent completed run, or null before the first one. */
+    val lastRun: StateFlow<RunReport?> = _lastRun.asStateFlow()
+
+    init {
+        scope.launch { processRequests() }
+    }
+
+    /** Ask for a backup run soon. Cheap; safe to call from any thread. */
+    fun request(reason: String) {
+        requests.trySend(reason)
+    }
+
+    private suspend fun processRequests() {
+        while (true) {
+            val reasons = linkedSetOf(requests.receive())
+            var count = 1
+            while (true) {
+                val next = withTimeoutOrNull(debounceMs) { requests.receive() } ?: break
+                reasons += next
+                count++
+            }
+            runBackends(count, reasons)
+        }
+    }
+
+    private suspend fun runBackends(count: Int, reasons: Set<String>) {
+        val timings = timeBackends()
+        val report = RunReport(count, reasons, System.currentTimeMillis(), timings)
+        _lastRun.value = report
+        Log.d(TAG, "Backup run for $count request(s) ${reasons.joinToString(",")}: " +
+            timings.joinToString(", ") { "${it.backend}=${it.outcome} in ${it.durationMs}ms" })
+    }
+
+    /** Run every backend concurrently; a failing backend does not stop the others. */
+    private suspend fun timeBackends(): List<BackendTiming> = coroutineScope {
+        backends.map { backend ->
+            async {
+                val startedAt = System.nanoTime()
+                val outcome = try {
+                    backend.run()
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    Log.e(TAG, "Backup to ${backend.name} failed", e)
+                    Outcome.FAILED
+                }
+                BackendTiming(backend.name, outcome, (System.nanoTime() - startedAt) / 1_000_000)
+            }
+        }.awaitAll()
+    }
+
+    /** Updates the encrypted recovery file when device backup is enabled. */
+    private class DeviceRecoveryBackend(private val context: Context) : Backend {
+        override val name = "device"
+
+        override suspend fun run(): Outcome =
+            when (DeviceRecoveryBackup.updateIfEnabled(context)) {
+                DeviceRecoveryBackup.UpdateResult.DISABLED -> Outcome.SKIPPED
+                DeviceRecoveryBackup.UpdateResult.UNCHANGED -> Outcome.UNCHANGED
+                DeviceRecoveryBackup.UpdateResult.WRITTEN -> Outcome.WRITTEN
+                DeviceRecoveryBackup.UpdateResult.FAILED -> Outcome.FAILED
+            }
+    }
+
+    /** Publishes the mint list to the Nostr backup relays. */
+    private class NostrMintBackend(private val context: Context) : Backend {
+        override val name = "nostr"
+
+        /** Mnemonic and mint set of the last publish that reached a relay. */
+        private var lastPublished: Pair<String, Set<String>>? = null
+
+        override suspend fun run(): Outcome {
+            val mnemonic = CashuWalletManager.getMnemonic()
+            if (mnemonic.isNullOrBlank()) {
+                Log.w(TAG, "Cannot backup mints to Nostr: wallet mnemonic not available")
+                return Outcome.SKIPPED
+            }
+
+            val mints = MintManager.getInstance(context).getAllowedMints()
+            val snapshot = Pair(mnemonic, mints.toSet())
+            if (snapshot == lastPublished) return Outcome.UNCHANGED
+
+            val result = NostrMintBackup.publishMintBackupNow(mnemonic, mints)
+            val latencies = result.relayLatenciesMs.entries.joinToString(", ") { "${it.key}=${it.value}ms" }
+            if (!result.success) {
+                Log.e(TAG, "❌ Nostr mint backup failed: ${result.error} ($latencies)")
+                return Outcome.FAILED
+            }
+
+            Log.i(TAG, "✅ Nostr mint backup ${result.eventId} published to ${result.successfulRelays.size} relays ($latencies)")
+            if (result.failedRelays.isNotEmpty()) {
+                Log.w(TAG, "   Failed relays: ${result.failedRelays.joinToString(", ")}")
+            }
+            lastPublished = snapshot
+            return Outcome.WRITTEN
+        }
+    }
+
+    companion object {
+        private const val TAG = "BackupScheduler"
+
+        /** Quiet period after the last request before a run starts. */
+        const val DEBOUNCE_MS = 2_000L
+
+        @Volatile
+        private var instance: BackupScheduler? = null
+
+        fun getInstance(context: Context): BackupScheduler {
+            return instance ?: synchronized(this) {
+                instance ?: run {
+                    val appContext = context.applicationContext
+                    BackupScheduler(
+                        CoroutineScope(SupervisorJob() + Dispatchers.IO),
+                        listOf(DeviceRecoveryBackend(appContext), NostrMintBackend(appContext))
+                    ).also { instance = it }
+                }
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.electricdreams.numo.core.util.MintManager
 import com.google.gson.Gson
 import java.io.File
 import java.security.KeyStore
+import java.security.MessageDigest
 import java.security.SecureRandom
 import javax.crypto.Cipher
 import javax.crypto.SecretKeyFactory
@@ -24,6 +25,10 @@ import javax.crypto.spec.SecretKeySpec
  * The recovery password is used to encrypt the file. A device-only Android
  * Keystore wrapping key lets this device refresh the file when its mint list
  * changes; that wrapping key is never part of the cloud backup.
+ *
+ * The PBKDF2 key is derived once per process and reused for later refreshes,
+ * which keep the envelope's salt and only draw a fresh IV. A refresh whose
+ * payload matches what the file already holds leaves the file untouched.
  */
 object DeviceRecoveryBackup {
     private const val TAG = "DeviceRecoveryBackup"
@@ -59,46 +64,76 @@ object DeviceRecoveryBackup {
         val ciphertext: String,
     )
 
+    enum class UpdateResult { DISABLED, UNCHANGED, WRITTEN, FAILED }
+
+    /** Key derived from the recovery password for one envelope salt. */
+    private class DerivedKey(val salt: ByteArray, val iterations: Int, val key: SecretKeySpec)
+
     private val gson = Gson()
     private val secureRandom = SecureRandom()
 
+    // Per-process caches; both are dropped whenever the envelope's salt changes
+    private var cachedKey: DerivedKey? = null
+    private var lastPayloadDigest: ByteArray? = null
+
     fun isEnabled(context: Context): Boolean =
         PreferenceStore.app(context).getBoolean(PREF_ENABLED)
 
     fun hasRestoredBackup(context: Context): Boolean = backupFile(context).isFile
 
     /** Enables automatic encrypted backup and creates the first envelope. */
+    @Synchronized
     fun enable(context: Context, recoveryPassword: CharArray) {
         require(recoveryPassword.size >= 12) { "Recovery password must be at least 12 characters" }
         try {
-            writeEnvelope(context, recoveryPassword)
+            val salt = ByteArray(16).also(secureRandom::nextBytes)
+            val key = DerivedKey(salt, KDF_ITERATIONS, deriveKey(recoveryPassword, salt, KDF_ITERATIONS))
+            val payloadJson = buildPayloadJson(context)
+            writeEnvelope(context, key, payloadJson)
             storePasswordForUpdates(context, recoveryPassword)
             PreferenceStore.app(context).putBoolean(PREF_ENABLED, true)
+            cachedKey = key
+            lastPayloadDigest = sha256(payloadJson)
         } finally {
             recoveryPassword.fill('\u0000')
         }
     }
 
+    @Synchronized
     fun disable(context: Context) {
         backupFile(context).delete()
         PreferenceStore.app(context).remove(PREF_ENABLED)
         PreferenceStore.app(context).remove(PREF_WRAPPED_PASSWORD)
         PreferenceStore.app(context).remove(PREF_WRAPPED_PASSWORD_IV)
+        cachedKey = null
+        lastPayloadDigest = null
     }
 
-    /** Called after local wallet state changes. Failures retain the prior valid backup. */
-    fun updateIfEnabled(context: Context) {
-        if (!isEnabled(context)) return
-        val password = loadPasswordForUpdates(context) ?: run {
-            Log.w(TAG, "Unable to refresh device recovery backup: password unavailable")
-            return
-        }
-        try {
-            writeEnvelope(context, password)
+    /**
+     * Called after local wallet state changes. Blocks for a full key
+     * derivation the first time in a process, so call it off the main thread.
+     * Failures retain the prior valid backup.
+     */
+    @Synchronized
+    fun updateIfEnabled(context: Context): UpdateResult {
+        if (!isEnabled(context)) return UpdateResult.DISABLED
+        return try {
+            val payloadJson = buildPayloadJson(context)
+            val digest = sha256(payloadJson)
+            val envelope = readEnvelope(context)
+            val key = keyForUpdate(context, envelope) ?: run {
+                Log.w(TAG, "Unable to refresh device recovery backup: password unavailable")
+                return UpdateResult.FAILED
+            }
+            if (envelope != null && storedDigest(envelope, key).contentEquals(digest)) {
+                return UpdateResult.UNCHANGED
+            }
+            writeEnvelope(context, key, payloadJson, envelope?.createdAt)
+            lastPayloadDigest = digest
+            UpdateResult.WRITTEN
         } catch (exception: Exception) {
             Log.e(TAG, "Unable to refresh device recovery backup", exception)
-        } finally {
-            password.fill('\u0000')
+            UpdateResult.FAILED
         }
     }
 
@@ -125,33 +160,78 @@ object DeviceRecoveryBackup {
         }
     }
 
-    private fun writeEnvelope(context: Context, password: CharArray) {
+    private fun buildPayloadJson(context: Context): String {
         val mnemonic = CashuWalletManager.getMnemonic()
             ?: throw IllegalStateException("Wallet seed phrase is unavailable")
         val mintManager = MintManager.getInstance(context)
         val payload = RecoveryPayload(
             mnemonic = mnemonic,
-            mints = mintManager.getAllowedMints(),
+            mints = mintManager.getAllowedMints().sorted(),
             preferredLightningMint = mintManager.getPreferredLightningMint(),
             preferredUnit = mintManager.getPreferredUnit(),
         )
-        val salt = ByteArray(16).also(secureRandom::nextBytes)
+        return gson.toJson(payload)
+    }
+
+    /**
+     * The cached key when it matches [envelope]'s salt, otherwise a key
+     * derived from the stored password. The envelope's salt is kept so the
+     * new key stays valid for later refreshes.
+     */
+    private fun keyForUpdate(context: Context, envelope: BackupEnvelope?): DerivedKey? {
+        val cached = cachedKey
+        if (cached != null && (envelope == null ||
+                (cached.iterations == envelope.kdfIterations && cached.salt.contentEquals(decode(envelope.salt))))
+        ) {
+            return cached
+        }
+
+        val password = loadPasswordForUpdates(context) ?: return null
+        try {
+            val salt = envelope?.takeIf { it.kdfIterations == KDF_ITERATIONS }?.let { decode(it.salt) }
+                ?: ByteArray(16).also(secureRandom::nextBytes)
+            val key = DerivedKey(salt, KDF_ITERATIONS, deriveKey(password, salt, KDF_ITERATIONS))
+            cachedKey = key
+            lastPayloadDigest = null
+            return key
+        } finally {
+            password.fill('\u0000')
+        }
+    }
+
+    /** Digest of the payload [envelope] holds, decrypting it only when it is not known yet. */
+    private fun storedDigest(envelope: BackupEnvelope, key: DerivedKey): ByteArray? {
+        lastPayloadDigest?.let { return it }
+        if (!key.salt.contentEquals(decode(envelope.salt))) return null
+        return try {
+            val cipher = Cipher.getInstance("AES/GCM/NoPadding")
+            cipher.init(Cipher.DECRYPT_MODE, key.key, GCMParameterSpec(128, decode(envelope.iv)))
+            MessageDigest.getInstance("SHA-256").digest(cipher.doFinal(decode(envelope.ciphertext)))
+                .also { lastPayloadDigest = it }
+        } catch (exception: Exception) {
+            Log.w(TAG, "Existing recovery backup is unreadable, rewriting it", exception)
+            null
+        }
+    }
+
+    private fun readEnvelope(context: Context): BackupEnvelope? =
+        backupFile(context).takeIf(File::isFile)?.let {
+            runCatching { gson.fromJson(it.readText(), BackupEnvelope::class.java) }.getOrNull()
+        }
+
+    private fun writeEnvelope(context: Context, key: DerivedKey, payloadJson: String, createdAt: Long? = null) {
         val iv = ByteArray(12).also(secureRandom::nextBytes)
-        val key = deriveKey(password, salt, KDF_ITERATIONS)
         val cipher = Cipher.getInstance("AES/GCM/NoPadding")
-        cipher.init(Cipher.ENCRYPT_MODE, key, GCMParameterSpec(128, iv))
+        cipher.init(Cipher.ENCRYPT_MODE, key.key, GCMParameterSpec(128, iv))
         val now = System.currentTimeMillis()
-        val existingCreatedAt = backupFile(context).takeIf(File::isFile)?.let {
-            runCatching { gson.fromJson(it.readText(), BackupEnvelope::class.java).createdAt }.getOrNull()
-        }
         val envelope = BackupEnvelope(
             version = VERSION,
-            createdAt = existingCreatedAt ?: now,
+            createdAt = createdAt ?: now,
             updatedAt = now,
-            kdfIterations = KDF_ITERATIONS,
-            salt = encode(salt),
+            kdfIterations = key.iterations,
+            salt = encode(key.salt),
             iv = encode(iv),
-            ciphertext = encode(cipher.doFinal(gson.toJson(payload).toByteArray(Charsets.UTF_8))),
+            ciphertext = encode(cipher.doFinal(payloadJson.toByteArray(Charsets.UTF_8))),
         )
         val temporaryFile = File(context.filesDir, "$FILE_NAME.tmp")
         temporaryFile.writeText(gson.toJson(envelope))
@@ -161,6 +241,9 @@ object DeviceRecoveryBackup {
         }
     }
 
+    private fun sha256(text: String): ByteArray =
+        MessageDigest.getInstance("SHA-256").digest(text.toByteArray(Charsets.UTF_8))
+
     private fun deriveKey(password: CharArray, salt: ByteArray, iterations: Int): SecretKeySpec {
         val spec = PBEKeySpec(password, salt, iterations, 256)
         return try {
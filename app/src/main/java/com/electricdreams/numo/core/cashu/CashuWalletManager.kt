@@ -1,6 +1,7 @@
 package com.electricdreams.numo.core.cashu
 
 import android.content.Context
+import android.os.SystemClock
 import android.util.Log
 import com.electricdreams.numo.core.util.BalanceRefreshBroadcast
 import com.electricdreams.numo.core.backup.DeviceRecoveryBackup
@@ -9,11 +10,19 @@ import com.electricdreams.numo.core.prefs.PreferenceStore
 import com.electricdreams.numo.core.dev.WalletLogger
 import com.electricdreams.numo.core.wallet.TemporaryMintWalletFactory
 import com.electricdreams.numo.core.wallet.WalletProvider
+import com.electricdreams.numo.core.wallet.BalanceCache
 import com.electricdreams.numo.core.wallet.impl.CdkWalletProvider
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import org.cashudevkit.CurrencyUnit
 import org.cashudevkit.MintUrl
 import org.cashudevkit.Wallet
@@ -22,6 +31,7 @@ import org.cashudevkit.WalletRepository
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
 import org.cashudevkit.WalletSqliteDatabase
 import org.cashudevkit.WalletStore
 import org.cashudevkit.generateMnemonic
@@ -30,7 +40,9 @@ import org.cashudevkit.generateMnemonic
  * Global owner of the CDK WalletRepository and its backing SQLite database.
  *
  * - Initialized from ModernPOSActivity.onCreate().
- * - Re-initialized whenever the allowed mint list changes.
+ * - Mints added to or removed from the allowed list are registered or
+ *   unregistered on the live repository; it is only rebuilt when the
+ *   preferred unit changes.
  *
  * The wallet's mnemonic (seed phrase) and SQLite database are both
  * persisted so that balances survive app restarts.
@@ -44,6 +56,13 @@ object CashuWalletManager : MintManager.MintChangeListener {
     private const val TAG = "CashuWalletManager"
     private const val KEY_MNEMONIC = "wallet_mnemonic"
     private const val DB_FILE_NAME = "cashu_wallet.db"
+    private const val TARGET_PROOF_COUNT: UInt = 10u
+
+    /** Mints registered with the repository at the same time. */
+    private const val MINT_REGISTRATION_PARALLELISM = 4
+
+    /** Mints recovering incomplete sagas at the same time. */
+    private const val SAGA_RECOVERY_PARALLELISM = 2
 
     fun getCurrencyUnit(unit: String): CurrencyUnit {
         return when (unit.lowercase()) {
@@ -78,9 +97,50 @@ object CashuWalletManager : MintManager.MintChangeListener {
     private val _walletState = MutableStateFlow(WalletState.UNINITIALIZED)
     val walletState: StateFlow<WalletState> = _walletState.asStateFlow()
 
+    /**
+     * Phase timings of the last full wallet build, in milliseconds. Saga
+     * recovery runs after READY, so its per-mint durations are filled in as
+     * they complete.
+     */
+    data class StartupTimings(
+        val openDatabaseMs: Long,
+        val openRepositoryMs: Long,
+        val registerMintsMs: Long,
+        /** From the build request (app start for the first build) to READY. */
+        val toReadyMs: Long,
+        val mintCount: Int,
+        val sagaRecoveryMs: Map<String, Long> = emptyMap()
+    )
+
+    private val _startupTimings = MutableStateFlow<StartupTimings?>(null)
+    val startupTimings: StateFlow<StartupTimings?> = _startupTimings.asStateFlow()
+
+    /** Serialises wallet builds, restores, wipes and mint registration changes. */
+    private val walletLock = Mutex()
+
+    /** Opens a repository over a wallet database; replaced in tests. */
+    internal var repositoryFactory: (mnemonic: String, store: WalletStore) -> WalletRepository =
+        { mnemonic, store -> WalletRepository(mnemonic, store) }
+
+    /** Mints registered with [wallet] (normalised URLs), and the unit they use. */
+    private val registeredMints = LinkedHashSet<String>()
+    private var registeredUnit: String? = null
+
+    private val sagaRecoverySlots = Semaphore(SAGA_RECOVERY_PARALLELISM)
+    private var sagaRecoveryJob = SupervisorJob()
+
+    private val balanceCache = BalanceCache(scope, ::loadBalances)
+
+    /**
+     * Per-mint balances in sats, kept current by the operations that move
+     * proofs and by periodic reconciliation with the wallet database.
+     */
+    val balances: StateFlow<Map<String, Long>> = balanceCache.balances
+
     /** Initialize from ModernPOSActivity. Safe to call multiple times. */
     fun init(context: Context) {
         if (this::appContext.isInitialized) return
+        val requestedAt = SystemClock.elapsedRealtime()
 
         appContext = context.applicationContext
         val mintManager = MintManager.getInstance(appContext)
@@ -88,10 +148,16 @@ object CashuWalletManager : MintManager.MintChangeListener {
         // Listen for changes
         mintManager.setMintChangeListener(this)
 
+        // Anything that broadcasts a balance change also moved proofs
+        BalanceRefreshBroadcast.register(appContext, BalanceRefreshBroadcast.createReceiver { reason ->
+            balanceCache.invalidate(reason)
+        })
+        balanceCache.start()
+
         // Build initial wallet
         val initialMints = mintManager.getAllowedMints()
         scope.launch {
-            rebuildWallet(initialMints)
+            walletLock.withLock { rebuildWallet(initialMints, requestedAt) }
         }
     }
 
@@ -99,8 +165,16 @@ object CashuWalletManager : MintManager.MintChangeListener {
      * Wipes the wallet database completely.
      * Caution: This deletes all existing eCash proofs.
      */
-    fun wipeDatabase(context: Context) {
+    suspend fun wipeDatabase(context: Context) {
+        walletLock.withLock { wipeDatabaseLocked(context) }
+    }
+
+    /** [wipeDatabase] with [walletLock] already held. */
+    private fun wipeDatabaseLocked(context: Context) {
         closeResources()
+        registeredMints.clear()
+        registeredUnit = null
+        balanceCache.clear()
         val appCtx = context.applicationContext
         val deleted = appCtx.deleteDatabase(DB_FILE_NAME)
         if (deleted) {
@@ -158,66 +232,81 @@ object CashuWalletManager : MintManager.MintChangeListener {
             balancesBefore[mintUrl] = getBalanceForMint(mintUrl)
         }
 
-        // Delete existing database to start fresh
-        wipeDatabase(appContext)
+        // Swap the wallet under the lock so mint changes and rebuilds cannot
+        // interleave with the restore and see a half-replaced repository
+        val registered = walletLock.withLock {
+            sagaRecoveryJob.cancel()
+            sagaRecoveryJob = SupervisorJob()
 
-        // Save new mnemonic
-        val prefs = PreferenceStore.wallet(appContext)
-        prefs.putString(KEY_MNEMONIC, newMnemonic)
-        Log.i(TAG, "Saved new mnemonic for restore")
-        DeviceRecoveryBackup.updateIfEnabled(appContext)
-
-        // Recreate database
-        val dbFile = appContext.getDatabasePath(DB_FILE_NAME)
-        dbFile.apply {
-            parentFile?.let { parent ->
-                if (!parent.exists()) {
-                    parent.mkdirs()
+            // Delete existing database to start fresh
+            wipeDatabaseLocked(appContext)
+
+            // Save new mnemonic
+            val prefs = PreferenceStore.wallet(appContext)
+            prefs.putString(KEY_MNEMONIC, newMnemonic)
+            Log.i(TAG, "Saved new mnemonic for restore")
+            DeviceRecoveryBackup.updateIfEnabled(appContext)
+
+            // Recreate database
+            val dbFile = appContext.getDatabasePath(DB_FILE_NAME)
+            dbFile.apply {
+                parentFile?.let { parent ->
+                    if (!parent.exists()) {
+                        parent.mkdirs()
+                    }
                 }
             }
-        }
-        val db = WalletStore.Sqlite(dbFile.absolutePath)
+            val db = WalletStore.Sqlite(dbFile.absolutePath)
 
-        // Create new wallet with restored mnemonic
-        val newWallet = WalletRepository(newMnemonic, db)
+            // Create new wallet with restored mnemonic
+            val newWallet = repositoryFactory(newMnemonic, db)
+            val unitStr = mintManager.getPreferredUnit()
+            val unit = getCurrencyUnit(unitStr)
+            val registered = mutableListOf<String>()
 
-        // Add mints and restore each one
-        for (mintUrl in mints) {
-            try {
-                onMintProgress(mintUrl, "Connecting...", balancesBefore[mintUrl] ?: 0L, 0L)
-                
-                val unitStr = mintManager.getPreferredUnit()
-                val unit = getCurrencyUnit(unitStr)
-                newWallet.createWallet(MintUrl(mintUrl), unit, 10u)
-                
-                onMintProgress(mintUrl, "Restoring proofs...", balancesBefore[mintUrl] ?: 0L, 0L)
-                
-                val mintWallet = newWallet.getWallet(MintUrl(mintUrl), unit)
-                val recoveredAmount = mintWallet?.restore()?.unspent?.value?.toLong() ?: 0L
-                if (recoveredAmount > 0) {
-                    WalletLogger.log("IN", recoveredAmount, mintUrl, "Mint restored")
+            // Add mints and restore each one
+            for (mintUrl in mints) {
+                try {
+                    onMintProgress(mintUrl, "Connecting...", balancesBefore[mintUrl] ?: 0L, 0L)
+
+                    newWallet.createWallet(MintUrl(mintUrl), unit, TARGET_PROOF_COUNT)
+                    registered.add(mintUrl)
+
+                    onMintProgress(mintUrl, "Restoring proofs...", balancesBefore[mintUrl] ?: 0L, 0L)
+
+                    val mintWallet = newWallet.getWallet(MintUrl(mintUrl), unit)
+                    val recoveredAmount = mintWallet?.restore()?.unspent?.value?.toLong() ?: 0L
+                    if (recoveredAmount > 0) {
+                        WalletLogger.log("IN", recoveredAmount, mintUrl, "Mint restored")
+                    }
+                    val oldBalance = balancesBefore[mintUrl] ?: 0L
+                    val newBalance = recoveredAmount
+
+                    balanceChanges[mintUrl] = Pair(oldBalance, newBalance)
+
+                    onMintProgress(mintUrl, "Complete", oldBalance, newBalance)
+
+                    Log.d(TAG, "Restored mint $mintUrl: before=$oldBalance, after=$newBalance")
+                } catch (t: Throwable) {
+                    Log.e(TAG, "Failed to restore mint $mintUrl", t)
+                    val oldBalance = balancesBefore[mintUrl] ?: 0L
+                    balanceChanges[mintUrl] = Pair(oldBalance, 0L)
+                    onMintProgress(mintUrl, "Failed: ${t.message}", oldBalance, 0L)
                 }
-                val oldBalance = balancesBefore[mintUrl] ?: 0L
-                val newBalance = recoveredAmount
-                
-                balanceChanges[mintUrl] = Pair(oldBalance, newBalance)
-                
-                onMintProgress(mintUrl, "Complete", oldBalance, newBalance)
-                
-                Log.d(TAG, "Restored mint $mintUrl: before=$oldBalance, after=$newBalance")
-            } catch (t: Throwable) {
-                Log.e(TAG, "Failed to restore mint $mintUrl", t)
-                val oldBalance = balancesBefore[mintUrl] ?: 0L
-                balanceChanges[mintUrl] = Pair(oldBalance, 0L)
-                onMintProgress(mintUrl, "Failed: ${t.message}", oldBalance, 0L)
             }
-        }
 
-        //database = db
-        wallet = newWallet
+            //database = db
+            wallet = newWallet
+            // Mints that failed to register are left out so the next mint
+            // change registers them again
+            registered.mapTo(registeredMints) { normalizeMintUrl(it) }
+            registeredUnit = unitStr
+            balanceCache.invalidate("wallet_restored")
             _walletState.value = WalletState.READY
+            registered
+        }
 
-        Log.d(TAG, "Wallet restore complete. Restored ${mints.size} mints.")
+        Log.d(TAG, "Wallet restore complete. Restored ${registered.size}/${mints.size} mints.")
         
         // Notify UI that wallet is ready after restore
         BalanceRefreshBroadcast.send(appContext, "wallet_restored")
@@ -266,12 +355,105 @@ object CashuWalletManager : MintManager.MintChangeListener {
     }
 
     override fun onMintsChanged(newMints: List<String>) {
-        Log.d(TAG, "Mint list changed, rebuilding wallet with ${'$'}{newMints.size} mints")
+        Log.d(TAG, "Mint list changed, now ${newMints.size} mints")
         scope.launch {
-            rebuildWallet(newMints)
+            walletLock.withLock { applyMintChanges(newMints) }
         }
     }
 
+    /**
+     * Bring the live repository in line with [mints]: unregister removed
+     * mints and register added ones without leaving READY. Falls back to a
+     * full rebuild when there is no repository yet or the unit changed.
+     * Callers hold [walletLock]; internal for tests.
+     */
+    internal suspend fun applyMintChanges(mints: List<String>) {
+        val w = wallet
+        val unitStr = MintManager.getInstance(appContext).getPreferredUnit()
+        if (w == null || unitStr != registeredUnit || mints.isEmpty()) {
+            rebuildWallet(mints, SystemClock.elapsedRealtime())
+            return
+        }
+
+        val unit = getCurrencyUnit(unitStr)
+        val wanted = mints.associateBy { normalizeMintUrl(it) }
+        val removed = registeredMints.filter { it !in wanted }
+        val added = wanted.filterKeys { it !in registeredMints }.values.toList()
+        if (removed.isEmpty() && added.isEmpty()) return
+
+        for (url in removed) {
+            try {
+                w.removeWallet(MintUrl(url), unit)
+                Log.d(TAG, "Unregistered mint $url")
+            } catch (t: Throwable) {
+                Log.w(TAG, "Failed to unregister mint $url", t)
+            }
+            registeredMints.remove(url)
+        }
+
+        val registered = registerMints(w, added, unit)
+        registered.mapTo(registeredMints) { normalizeMintUrl(it) }
+        recoverSagasInBackground(w, registered, unit)
+
+        Log.d(TAG, "Applied mint changes: +${registered.size} -${removed.size}")
+        balanceCache.invalidate("mints_changed")
+        BalanceRefreshBroadcast.send(appContext, "mints_changed")
+    }
+
+    /**
+     * Register [mints] with [repository], several at a time. Returns the
+     * mints that registered successfully.
+     */
+    private suspend fun registerMints(
+        repository: WalletRepository,
+        mints: List<String>,
+        unit: CurrencyUnit
+    ): List<String> {
+        val slots = Semaphore(MINT_REGISTRATION_PARALLELISM)
+        return coroutineScope {
+            mints.map { url ->
+                async {
+                    slots.withPermit {
+                        try {
+                            repository.createWallet(MintUrl(url), unit, TARGET_PROOF_COUNT)
+                            url
+                        } catch (t: Throwable) {
+                            Log.w(TAG, "Failed to add mint to wallet: $url", t)
+                            null
+                        }
+                    }
+                }
+            }.awaitAll().filterNotNull()
+        }
+    }
+
+    /**
+     * Recover incomplete sagas (e.g. pending melts or mints) for [mints]
+     * without holding up READY. Recoveries are cancelled if the repository
+     * is rebuilt.
+     */
+    private fun recoverSagasInBackground(repository: WalletRepository, mints: List<String>, unit: CurrencyUnit) {
+        for (url in mints) {
+            scope.launch(sagaRecoveryJob) {
+                sagaRecoverySlots.withPermit {
+                    val startedAt = SystemClock.elapsedRealtime()
+                    try {
+                        Log.i(TAG, "Recovering incomplete sagas for mint: $url")
+                        repository.getWallet(MintUrl(url), unit).recoverIncompleteSagas()
+                    } catch (e: Exception) {
+                        Log.w(TAG, "Failed to recover incomplete sagas for mint: $url", e)
+                    }
+                    val elapsed = SystemClock.elapsedRealtime() - startedAt
+                    _startupTimings.update { timings ->
+                        timings?.copy(sagaRecoveryMs = timings.sagaRecoveryMs + (url to elapsed))
+                    }
+                }
+            }
+        }
+    }
+
+    private fun normalizeMintUrl(url: String): String = url.removeSuffix("/")
+
     /** Current WalletRepository instance, or null if initialization failed or not complete. */
     @JvmStatic
     fun getWallet(): WalletRepository? = wallet
@@ -281,7 +463,7 @@ object CashuWalletManager : MintManager.MintChangeListener {
 
     // Lazy-initialized WalletProvider backed by this manager's wallet
     private val walletProviderInstance: CdkWalletProvider by lazy {
-        CdkWalletProvider { wallet }
+        CdkWalletProvider({ wallet }, balanceCache)
     }
 
     /**
@@ -301,45 +483,34 @@ object CashuWalletManager : MintManager.MintChangeListener {
 
     /**
      * Get the balance for a specific mint in satoshis.
+     * Served from the balance cache; the database is only read when stale.
      */
-    suspend fun getBalanceForMint(mintUrl: String): Long {
-        val w = wallet ?: return 0L
-        val unitStr = MintManager.getInstance(appContext).getPreferredUnit()
-        val unit = getCurrencyUnit(unitStr)
-        return try {
-            val balances = w.getBalances()
-            val normalizedInput = mintUrl.removeSuffix("/")
-            for (entry in balances) {
-                val cdkUrl = entry.key.mintUrl.url.removeSuffix("/")
-                if (cdkUrl == normalizedInput && entry.key.unit == unit) {
-                    return entry.value.value.toLong()
-                }
-            }
-            0L
-        } catch (e: Exception) {
-            Log.e(TAG, "Error getting balance for mint $mintUrl: ${e.message}", e)
-            0L
-        }
-    }
+    suspend fun getBalanceForMint(mintUrl: String): Long = balanceCache.get(mintUrl)
 
     /**
      * Get balances for all configured mints.
-     * Returns a map of mint URL string to balance in satoshis.
+     * Returns a map of mint URL string to balance in satoshis, served from
+     * the balance cache; the database is only read when stale.
+     */
+    suspend fun getAllMintBalances(): Map<String, Long> = balanceCache.get()
+
+    /**
+     * Mark cached balances stale after moving proofs outside [getWalletProvider]
+     * (e.g. direct CDK receive, mint or melt calls).
      */
-    suspend fun getAllMintBalances(): Map<String, Long> {
-        val w = wallet ?: return emptyMap()
+    fun invalidateBalances(reason: String) {
+        balanceCache.invalidate(reason)
+    }
+
+    /** Read balances in the preferred unit from the wallet database. */
+    private suspend fun loadBalances(): Map<String, Long>? {
+        val w = wallet ?: return null
         val unitStr = MintManager.getInstance(appContext).getPreferredUnit()
         val unit = getCurrencyUnit(unitStr)
-        return try {
-            val balanceMap = w.getBalances()
-            balanceMap
-                .filter { it.key.unit == unit }
-                .mapKeys { it.key.mintUrl.url.removeSuffix("/") }
-                .mapValues { it.value.value.toLong() }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error getting mint balances: ${e.message}", e)
-            emptyMap()
-        }
+        return w.getBalances()
+            .filter { it.key.unit == unit }
+            .mapKeys { it.key.mintUrl.url.removeSuffix("/") }
+            .mapValues { it.value.value.toLong() }
     }
 
     /**
@@ -608,13 +779,17 @@ object CashuWalletManager : MintManager.MintChangeListener {
 
     /**
      * Rebuild wallet + database using the provided mint URLs.
-     * Runs on our IO coroutine scope.
+     * Runs on our IO coroutine scope with [walletLock] held.
      */
-    private suspend fun rebuildWallet(mints: List<String>) {
+    private suspend fun rebuildWallet(mints: List<String>, requestedAt: Long) {
         _walletState.value = WalletState.LOADING
         try {
             // Close any previous instances
+            sagaRecoveryJob.cancel()
+            sagaRecoveryJob = SupervisorJob()
             closeResources()
+            registeredMints.clear()
+            registeredUnit = null
 
             if (mints.isEmpty()) {
                 Log.w(TAG, "No allowed mints configured, skipping wallet init")
@@ -622,6 +797,7 @@ object CashuWalletManager : MintManager.MintChangeListener {
             }
 
             // 1) Open or create the on-disk SQLite database.
+            var phaseStart = SystemClock.elapsedRealtime()
             val dbFile = appContext.getDatabasePath(DB_FILE_NAME).apply {
                 parentFile?.let { parent ->
                     if (!parent.exists()) {
@@ -630,8 +806,10 @@ object CashuWalletManager : MintManager.MintChangeListener {
                 }
             }
             val db = WalletStore.Sqlite(dbFile.absolutePath)
+            val openDatabaseMs = SystemClock.elapsedRealtime() - phaseStart
 
             // 2) Load or create the mnemonic (seed phrase).
+            phaseStart = SystemClock.elapsedRealtime()
             val prefs = PreferenceStore.wallet(appContext)
             var mnemonic = prefs.getString(KEY_MNEMONIC, null)
             if (mnemonic.isNullOrBlank()) {
@@ -643,35 +821,38 @@ object CashuWalletManager : MintManager.MintChangeListener {
                 Log.i(TAG, "Loaded existing wallet mnemonic from preferences")
             }
 
-            // 3) Construct WalletRepository in sats.
-            val newWallet = WalletRepository(mnemonic, db)
+            // 3) Construct WalletRepository in the preferred unit.
+            val newWallet = repositoryFactory(mnemonic, db)
             val unitStr = MintManager.getInstance(appContext).getPreferredUnit()
-        val unit = getCurrencyUnit(unitStr)
+            val unit = getCurrencyUnit(unitStr)
+            val openRepositoryMs = SystemClock.elapsedRealtime() - phaseStart
 
             // 4) Register allowed mints.
-            for (url in mints) {
-                try {
-                    newWallet.createWallet(MintUrl(url), unit, 10u)
-                    
-                    // Recover incomplete sagas (e.g. pending melts or mints)
-                    val mintWallet = newWallet.getWallet(MintUrl(url), unit)
-                    try {
-                        Log.i(TAG, "Recovering incomplete sagas for mint: $url")
-                        mintWallet.recoverIncompleteSagas()
-                    } catch (e: Exception) {
-                        Log.w(TAG, "Failed to recover incomplete sagas for mint: $url", e)
-                    }
-                } catch (t: Throwable) {
-                    Log.w(TAG, "Failed to add mint to wallet: $url", t)
-                }
-            }
+            phaseStart = SystemClock.elapsedRealtime()
+            val registered = registerMints(newWallet, mints, unit)
+            val registerMintsMs = SystemClock.elapsedRealtime() - phaseStart
 
             database = db
             wallet = newWallet
+            registered.mapTo(registeredMints) { normalizeMintUrl(it) }
+            registeredUnit = unitStr
+            balanceCache.invalidate("wallet_initialized")
             _walletState.value = WalletState.READY
 
-            Log.d(TAG, "Initialized WalletRepository with ${mints.size} mints; DB=${dbFile.absolutePath}")
-            
+            val timings = StartupTimings(
+                openDatabaseMs = openDatabaseMs,
+                openRepositoryMs = openRepositoryMs,
+                registerMintsMs = registerMintsMs,
+                toReadyMs = SystemClock.elapsedRealtime() - requestedAt,
+                mintCount = registered.size
+            )
+            _startupTimings.value = timings
+            Log.d(TAG, "Initialized WalletRepository with ${registered.size}/${mints.size} mints; " +
+                "DB=${dbFile.absolutePath}; timings=$timings")
+
+            // 5) Recover incomplete sagas off the critical path.
+            recoverSagasInBackground(newWallet, registered, unit)
+
             // Notify UI that wallet is ready
             BalanceRefreshBroadcast.send(appContext, "wallet_initialized")
         } catch (t: Throwable) {
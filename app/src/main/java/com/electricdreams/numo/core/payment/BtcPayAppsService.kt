@@ -3,9 +3,9 @@ package com.electricdreams.numo.core.payment
 import android.util.Log
 import com.electricdreams.numo.core.model.Item
 import com.electricdreams.numo.core.model.PriceType
+import com.electricdreams.numo.core.util.HttpClients
 import com.google.gson.JsonElement
 import com.google.gson.JsonParser
-import okhttp3.OkHttpClient
 import okhttp3.Request
 import java.util.concurrent.TimeUnit
 
@@ -15,7 +15,7 @@ object BtcPayAppsService {
 
     private const val TAG = "BtcPayAppsService"
 
-    private val client = OkHttpClient.Builder()
+    private val client = HttpClients.newBuilder()
         .connectTimeout(15, TimeUnit.SECONDS)
         .readTimeout(15, TimeUnit.SECONDS)
         .build()
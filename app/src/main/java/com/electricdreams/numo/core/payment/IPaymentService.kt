@@ -1,6 +1,7 @@
 package com.electricdreams.numo.core.payment
 
 import com.electricdreams.numo.core.wallet.WalletResult
+import kotlinx.coroutines.flow.Flow
 
 /**
  * Abstraction for POS payment operations.
@@ -31,6 +32,19 @@ interface IPaymentService {
      */
     suspend fun checkPaymentStatus(paymentId: String): WalletResult<PaymentState>
 
+    /**
+     * Observe the status of a payment: the current state first, then each
+     * change, completing after a terminal state. Failed checks are emitted
+     * and retried with backoff.
+     *
+     * The default polls [checkPaymentStatus]; implementations with a push
+     * channel override this so paid detection does not wait for a poll.
+     *
+     * @param paymentId The id returned in [PaymentData.paymentId]
+     */
+    fun observePaymentStatus(paymentId: String): Flow<WalletResult<PaymentState>> =
+        PaymentStatusStream.create({ checkPaymentStatus(paymentId) })
+
     /**
      * Redeem a Cashu token received for a payment.
      *
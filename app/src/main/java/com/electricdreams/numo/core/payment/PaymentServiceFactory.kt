@@ -17,26 +17,29 @@ import com.electricdreams.numo.core.util.MintManager
 object PaymentServiceFactory {
 
     fun create(context: Context): IPaymentService {
-        val prefs = PreferenceStore.app(context)
-
-        if (prefs.getBoolean("btcpay_enabled", false)) {
-            val config = BTCPayConfig(
-                serverUrl = prefs.getString("btcpay_server_url") ?: "",
-                apiKey = prefs.getString("btcpay_api_key") ?: "",
-                storeId = prefs.getString("btcpay_store_id") ?: "",
-                posAppId = prefs.getString("btcpay_pos_app_id")?.takeIf { it.isNotBlank() },
-            )
-            if (config.serverUrl.isNotBlank()
-                && config.apiKey.isNotBlank()
-                && config.storeId.isNotBlank()
-            ) {
-                return BTCPayPaymentService(config)
-            }
-        }
+        btcPayConfig(context)?.let { return BTCPayPaymentService(it) }
 
         return LocalPaymentService(
             walletProvider = CashuWalletManager.getWalletProvider(),
             mintManager = MintManager.getInstance(context)
         )
     }
+
+    /** True when [create] would return a [BTCPayPaymentService]. */
+    fun usesBtcPay(context: Context): Boolean = btcPayConfig(context) != null
+
+    private fun btcPayConfig(context: Context): BTCPayConfig? {
+        val prefs = PreferenceStore.app(context)
+        if (!prefs.getBoolean("btcpay_enabled", false)) return null
+
+        val config = BTCPayConfig(
+            serverUrl = prefs.getString("btcpay_server_url") ?: "",
+            apiKey = prefs.getString("btcpay_api_key") ?: "",
+            storeId = prefs.getString("btcpay_store_id") ?: "",
+            posAppId = prefs.getString("btcpay_pos_app_id")?.takeIf { it.isNotBlank() },
+        )
+        return config.takeIf {
+            it.serverUrl.isNotBlank() && it.apiKey.isNotBlank() && it.storeId.isNotBlank()
+        }
+    }
 }
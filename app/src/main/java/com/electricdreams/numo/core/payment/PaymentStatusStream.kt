@@ -0,0 +1,92 @@
+package com.electricdreams.numo.core.payment
+
+import com.electricdreams.numo.core.wallet.WalletResult
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.withTimeoutOrNull
+
+/**
+ * Builds the status flows returned by [IPaymentService.observePaymentStatus].
+ *
+ * The authoritative state always comes from a status check; a push channel
+ * only says *when* to check. Without a push channel (or once it reports
+ * itself unavailable) the flow polls every [POLL_INTERVAL_MS]. With a live
+ * push channel, status is checked on each signal plus a
+ * [PUSH_SAFETY_INTERVAL_MS] safety net. Failed checks are retried with
+ * backoff up to [MAX_POLL_INTERVAL_MS] either way.
+ */
+object PaymentStatusStream {
+
+    const val POLL_INTERVAL_MS = 2_000L
+    const val MAX_POLL_INTERVAL_MS = 30_000L
+    const val PUSH_SAFETY_INTERVAL_MS = 30_000L
+
+    /** Source of "status may have changed" signals for one payment. */
+    interface PushChannel {
+        /** Begin listening; called before the first status check so no change is missed. */
+        fun open() {}
+
+        /**
+         * Suspend until the payment may have changed. Returns false if the
+         * channel is unavailable, after which the flow falls back to polling.
+         */
+        suspend fun awaitChange(): Boolean
+
+        /** Stop listening; called when the flow completes or is cancelled. */
+        fun close() {}
+    }
+
+    /**
+     * Emit the first status and then every change of state, completing after
+     * a terminal one. Failures are emitted as they happen so callers can
+     * decide when to give up, and the first success after a failure is
+     * always emitted so callers can tell the errors have stopped.
+     */
+    fun create(
+        check: suspend () -> WalletResult<PaymentState>,
+        push: PushChannel? = null
+    ): Flow<WalletResult<PaymentState>> = flow {
+        push?.open()
+        try {
+            var lastState: PaymentState? = null
+            var interval = POLL_INTERVAL_MS
+            var pushAvailable = push != null
+            while (true) {
+                when (val result = check()) {
+                    is WalletResult.Success -> {
+                        interval = POLL_INTERVAL_MS
+                        if (result.value != lastState) {
+                            lastState = result.value
+                            emit(result)
+                        }
+                        if (result.value.isTerminal) return@flow
+                    }
+                    is WalletResult.Failure -> {
+                        lastState = null
+                        emit(result)
+                        // Retry on the backoff schedule rather than waiting for a push
+                        delay(interval)
+                        interval = (interval * 2).coerceAtMost(MAX_POLL_INTERVAL_MS)
+                        continue
+                    }
+                }
+
+                if (pushAvailable) {
+                    val signalled = withTimeoutOrNull(PUSH_SAFETY_INTERVAL_MS) { push!!.awaitChange() }
+                    if (signalled == false) {
+                        pushAvailable = false
+                        delay(interval)
+                    }
+                } else {
+                    delay(interval)
+                }
+            }
+        } finally {
+            push?.close()
+        }
+    }
+
+    private val PaymentState.isTerminal: Boolean
+        get() = this != PaymentState.PENDING
+}
@@ -5,7 +5,9 @@ import com.electricdreams.numo.core.payment.BTCPayConfig
 import com.electricdreams.numo.core.payment.PaymentData
 import com.electricdreams.numo.core.payment.IPaymentService
 import com.electricdreams.numo.core.payment.PaymentState
+import com.electricdreams.numo.core.payment.PaymentStatusStream
 import com.electricdreams.numo.core.payment.RedeemResult
+import com.electricdreams.numo.core.util.HttpClients
 import com.electricdreams.numo.core.wallet.Satoshis
 import com.electricdreams.numo.core.wallet.WalletError
 import com.electricdreams.numo.core.wallet.WalletResult
@@ -15,12 +17,12 @@ import com.google.gson.JsonObject
 import com.google.gson.JsonParser
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.withContext
 import com.google.gson.JsonArray
 import okhttp3.FormBody
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.HttpUrl.Companion.toHttpUrl
-import okhttp3.OkHttpClient
 import okhttp3.Request
 import okhttp3.RequestBody.Companion.toRequestBody
 import java.util.concurrent.TimeUnit
@@ -31,14 +33,15 @@ import java.util.concurrent.TimeUnit
  * Flow:
  * 1. `createPayment()` creates an invoice via BTCPay, then fetches payment methods
  *    to obtain the BOLT11 invoice and Cashu payment request (`creq…`).
- * 2. `checkPaymentStatus()` polls the invoice status.
+ * 2. `checkPaymentStatus()` polls the invoice status; `observePaymentStatus()`
+ *    re-checks it whenever BTCPay's invoice status WebSocket reports an event.
  * 3. `redeemToken()` posts the Cashu token to BTCNutServer to settle the invoice.
  */
 class BTCPayPaymentService(
     private val config: BTCPayConfig
 ) : IPaymentService {
 
-    private val client = OkHttpClient.Builder()
+    private val client = HttpClients.newBuilder()
         .connectTimeout(15, TimeUnit.SECONDS)
         .readTimeout(15, TimeUnit.SECONDS)
         .writeTimeout(15, TimeUnit.SECONDS)
@@ -109,6 +112,12 @@ class BTCPayPaymentService(
             }
         }
 
+    override fun observePaymentStatus(paymentId: String): Flow<WalletResult<PaymentState>> =
+        PaymentStatusStream.create(
+            { checkPaymentStatus(paymentId) },
+            BtcPayInvoiceStatusChannel(HttpClients.webSocket, "${baseUrl()}/i/$paymentId/status/ws")
+        )
+
     override suspend fun redeemToken(
         token: String,
         paymentId: String?
@@ -0,0 +1,86 @@
+package com.electricdreams.numo.core.payment.impl
+
+import android.util.Log
+import com.electricdreams.numo.core.payment.PaymentStatusStream
+import kotlinx.coroutines.channels.Channel
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okio.ByteString
+
+/**
+ * Push channel over BTCPay's invoice status WebSocket (`/i/{invoiceId}/status/ws`),
+ * the socket BTCPay's own checkout page listens on.
+ *
+ * BTCPay sends a frame whenever the invoice receives a payment or changes
+ * state; the frame carries no status itself, so each one just triggers a
+ * Greenfield status check. The socket needs no API key.
+ */
+internal class BtcPayInvoiceStatusChannel(
+    private val client: OkHttpClient,
+    private val url: String
+) : PaymentStatusStream.PushChannel {
+
+    // true = invoice event, false = socket gone
+    private val signals = Channel<Boolean>(Channel.CONFLATED)
+
+    @Volatile
+    private var available = true
+    private var webSocket: WebSocket? = null
+
+    override fun open() {
+        webSocket = try {
+            client.newWebSocket(Request.Builder().url(url).build(), object : WebSocketListener() {
+                override fun onOpen(webSocket: WebSocket, response: Response) {
+                    Log.d(TAG, "Invoice status socket open: $url")
+                }
+
+                override fun onMessage(webSocket: WebSocket, text: String) {
+                    signals.trySend(true)
+                }
+
+                override fun onMessage(webSocket: WebSocket, bytes: ByteString) {
+                    signals.trySend(true)
+                }
+
+                override fun onClosing(webSocket: WebSocket, code: Int, reason: String) {
+                    webSocket.close(code, reason)
+                }
+
+                override fun onClosed(webSocket: WebSocket, code: Int, reason: String) {
+                    lost("closed: $code $reason")
+                }
+
+                override fun onFailure(webSocket: WebSocket, t: Throwable, response: Response?) {
+                    lost("failure: ${response?.code ?: t.message}")
+                }
+            })
+        } catch (e: IllegalArgumentException) {
+            lost("invalid url: ${e.message}")
+            null
+        }
+    }
+
+    override suspend fun awaitChange(): Boolean {
+        if (!available) return false
+        return signals.receive()
+    }
+
+    override fun close() {
+        webSocket?.close(1000, "done")
+        webSocket = null
+        signals.close()
+    }
+
+    private fun lost(reason: String) {
+        Log.d(TAG, "Invoice status socket unavailable ($reason), falling back to polling")
+        available = false
+        signals.trySend(false)
+    }
+
+    companion object {
+        private const val TAG = "BtcPayInvoiceStatus"
+    }
+}
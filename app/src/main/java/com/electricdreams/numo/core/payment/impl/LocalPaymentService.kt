@@ -3,12 +3,15 @@ package com.electricdreams.numo.core.payment.impl
 import com.electricdreams.numo.core.payment.PaymentData
 import com.electricdreams.numo.core.payment.IPaymentService
 import com.electricdreams.numo.core.payment.PaymentState
+import com.electricdreams.numo.core.payment.PaymentStatusStream
 import com.electricdreams.numo.core.payment.RedeemResult
 import com.electricdreams.numo.core.util.MintManager
 import com.electricdreams.numo.core.wallet.QuoteStatus
 import com.electricdreams.numo.core.wallet.Satoshis
 import com.electricdreams.numo.core.wallet.WalletProvider
 import com.electricdreams.numo.core.wallet.WalletResult
+import com.electricdreams.numo.payment.MintSubscriptionHub
+import kotlinx.coroutines.flow.Flow
 
 /**
  * [IPaymentService] backed by the local CDK wallet.
@@ -69,6 +72,28 @@ class LocalPaymentService(
         }
     }
 
+    /**
+     * Status checks are driven by the mint's NUT-17 push for the quote,
+     * shared with other subscriptions through [MintSubscriptionHub].
+     */
+    override fun observePaymentStatus(paymentId: String): Flow<WalletResult<PaymentState>> {
+        val mintUrl = mintManager.getPreferredLightningMint()
+            ?: return PaymentStatusStream.create({ checkPaymentStatus(paymentId) })
+
+        val push = object : PaymentStatusStream.PushChannel {
+            override suspend fun awaitChange(): Boolean = try {
+                // Only ISSUED changes the mapped state (PAID still maps to PENDING)
+                MintSubscriptionHub.getInstance().awaitState(
+                    mintUrl, MintSubscriptionHub.Kind.MINT_QUOTE, paymentId, setOf("ISSUED")
+                )
+                true
+            } catch (e: MintSubscriptionHub.PushUnavailableException) {
+                false
+            }
+        }
+        return PaymentStatusStream.create({ checkPaymentStatus(paymentId) }, push)
+    }
+
     override suspend fun redeemToken(
         token: String,
         paymentId: String?
@@ -0,0 +1,176 @@
+package com.electricdreams.numo.core.util
+
+import android.util.Log
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.io.RandomAccessFile
+
+/**
+ * A file of newline-terminated records that only ever grows until it is
+ * compacted. Stores keep their state in memory, append one record per
+ * change and replay the file when they are opened; this class owns the
+ * parts that have to be durable and are the same for every store:
+ *
+ * - records are framed by a trailing `\n`, so a record torn by a crash
+ *   mid-append has no newline and is truncated away on [replay];
+ * - [rewrite] replaces the file through a synced temporary file and a
+ *   rename, so a failed compaction leaves the old journal in place;
+ * - [needsCompaction] decides when superseded records are worth dropping.
+ *
+ * The record format is up to the store. Not thread-safe; stores serialise
+ * access themselves.
+ *
+ * @param name Used in log messages, e.g. "payment history".
+ * @param minGarbage Compaction never runs while fewer than this many records
+ *                   are garbage.
+ */
+internal class AppendOnlyJournal(
+    val file: File,
+    private val name: String,
+    private val minGarbage: Int,
+) {
+
+    /** Records in the file, live or superseded. */
+    var records = 0
+        private set
+
+    /** Bytes in the file, which is also where the next append lands. */
+    var length = 0L
+        private set
+
+    fun exists(): Boolean = file.exists() && file.length() > 0
+
+    /**
+     * Pass every complete record, without its newline, to [onRecord] along
+     * with the file offset of its first byte. A torn trailing record is
+     * truncated away. If the file cannot be read the journal is left as it
+     * is and later appends go after it.
+     */
+    fun replay(onRecord: (record: ByteArray, offset: Long) -> Unit) {
+        records = 0
+        length = 0L
+        if (!file.exists()) return
+
+        val line = ByteArrayOutputStream(256)
+        var position = 0L
+        var lineStart = 0L
+        try {
+            BufferedInputStream(FileInputStream(file), BUFFER_SIZE).use { input ->
+                val buffer = ByteArray(BUFFER_SIZE)
+                while (true) {
+                    val read = input.read(buffer)
+                    if (read == -1) break
+                    var start = 0
+                    for (i in 0 until read) {
+                        if (buffer[i] != NEWLINE) continue
+                        line.write(buffer, start, i - start)
+                        records++
+                        onRecord(line.toByteArray(), lineStart)
+                        line.reset()
+                        start = i + 1
+                        lineStart = position + start
+                    }
+                    line.write(buffer, start, read - start)
+                    position += read
+                }
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to replay $name journal", e)
+            length = file.length()
+            return
+        }
+
+        length = lineStart
+        if (file.length() > lineStart) {
+            Log.w(TAG, "Truncating torn $name record at $lineStart")
+            RandomAccessFile(file, "rw").use { it.setLength(lineStart) }
+        }
+    }
+
+    /**
+     * Append [count] records, each already ending in a newline. Returns the
+     * offset the first one was written at.
+     */
+    @Throws(IOException::class)
+    fun append(bytes: ByteArray, count: Int): Long {
+        val offset = length
+        FileOutputStream(file, true).use { it.write(bytes) }
+        length += bytes.size
+        records += count
+        return offset
+    }
+
+    @Throws(IOException::class)
+    fun append(text: String, count: Int): Long = append(text.toByteArray(Charsets.UTF_8), count)
+
+    /** Append [source], a file of [count] complete records, in one copy. */
+    @Throws(IOException::class)
+    fun appendFile(source: File, count: Int) {
+        FileInputStream(source).use { input ->
+            FileOutputStream(file, true).use { input.copyTo(it) }
+        }
+        length += source.length()
+        records += count
+    }
+
+    /** Replace the whole journal with [source], a file of [count] complete records. */
+    @Throws(IOException::class)
+    fun replaceWith(source: File, count: Int) {
+        if (!source.renameTo(file)) throw IOException("rename failed")
+        records = count
+        length = file.length()
+    }
+
+    /** Empty the journal. */
+    @Throws(IOException::class)
+    fun truncate() {
+        FileOutputStream(file, false).close()
+        records = 0
+        length = 0L
+    }
+
+    /** Whether enough of the journal is superseded that [rewrite] is worth it. */
+    fun needsCompaction(liveRecords: Int): Boolean {
+        val garbage = records - liveRecords
+        return garbage >= minGarbage && garbage > liveRecords
+    }
+
+    /**
+     * Replace the journal with the [liveRecords] records that [write] emits.
+     * Returns false, keeping the existing journal, if anything fails.
+     */
+    fun rewrite(liveRecords: Int, write: (OutputStream) -> Unit): Boolean {
+        val tmpFile = File(file.parentFile, "${file.name}.tmp")
+        try {
+            FileOutputStream(tmpFile, false).use { out ->
+                val buffered = BufferedOutputStream(out, BUFFER_SIZE)
+                write(buffered)
+                buffered.flush()
+                out.fd.sync()
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw IOException("rename failed")
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Compacting $name journal failed, keeping the existing one", e)
+            tmpFile.delete()
+            return false
+        }
+        records = liveRecords
+        length = file.length()
+        Log.d(TAG, "Compacted $name journal to $liveRecords records")
+        return true
+    }
+
+    private companion object {
+        const val TAG = "AppendOnlyJournal"
+        const val NEWLINE = '\n'.code.toByte()
+        const val BUFFER_SIZE = 64 * 1024
+    }
+}
@@ -9,6 +9,9 @@ import com.electricdreams.numo.core.model.Item
 class BasketManager private constructor() {
 
     companion object {
+        private const val MINOR_PER_MAJOR = 100L
+        private const val SATS_PER_BTC = 100_000_000L
+
         @Volatile
         private var instance: BasketManager? = null
 
@@ -22,40 +25,109 @@ class BasketManager private constructor() {
         }
     }
 
-    private val basketItems: MutableList<BasketItem> = mutableListOf()
+    private var basketItems: MutableList<BasketItem> = mutableListOf()
+
+    /** Basket lines by item ID, so taps don't scan the basket. */
+    private val linesById: MutableMap<String?, BasketItem> = HashMap()
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    // Running totals, kept up to date by every basket change
+    // ─────────────────────────────────────────────────────────────────────────────
+    private data class Totals(
+        val itemCount: Int = 0,
+        /** Fiat lines in minor units, so the sum doesn't depend on the order of taps. */
+        val fiatMinor: Long = 0L,
+        val satsDirect: Long = 0L,
+        val satsGross: Long = 0L,
+        val fiatLines: Int = 0,
+        val satsLines: Int = 0,
+    )
+
+    private var totals = Totals()
+
+    /** Add [quantityDelta] units and [lineDelta] lines of [line] to the running totals. */
+    private fun account(line: BasketItem, quantityDelta: Int, lineDelta: Int = 0) {
+        val t = totals
+        totals = if (line.isSatsPrice()) {
+            t.copy(
+                itemCount = t.itemCount + quantityDelta,
+                satsDirect = t.satsDirect + line.item.priceSats * quantityDelta,
+                satsGross = t.satsGross + line.item.getGrossSats() * quantityDelta,
+                satsLines = t.satsLines + lineDelta,
+            )
+        } else {
+            t.copy(
+                itemCount = t.itemCount + quantityDelta,
+                fiatMinor = t.fiatMinor + Math.round(line.item.getGrossPrice() * MINOR_PER_MAJOR) * quantityDelta,
+                fiatLines = t.fiatLines + lineDelta,
+            )
+        }
+    }
 
     // ─────────────────────────────────────────────────────────────────────────────
     // Basket history (undo / redo)
     // ─────────────────────────────────────────────────────────────────────────────
-    private val undoStack: ArrayDeque<List<BasketItem>> = ArrayDeque()
-    private val redoStack: ArrayDeque<List<BasketItem>> = ArrayDeque()
+
+    /**
+     * A single basket change. History keeps these deltas rather than copies
+     * of the basket, so undoing or redoing a tap only touches the line it
+     * changed.
+     */
+    private sealed class BasketOp {
+        class Insert(val index: Int, val line: BasketItem) : BasketOp()
+        class Remove(val index: Int, val line: BasketItem) : BasketOp()
+        class SetQuantity(val line: BasketItem, val from: Int, val to: Int) : BasketOp()
+        class Clear(val lines: MutableList<BasketItem>, val totals: Totals) : BasketOp()
+    }
+
+    private val undoStack: ArrayDeque<BasketOp> = ArrayDeque()
+    private val redoStack: ArrayDeque<BasketOp> = ArrayDeque()
     private val maxHistorySize: Int = 100
 
-    private fun snapshot(): List<BasketItem> = basketItems.map { original ->
-        BasketItem(
-            item = original.item.copy(),
-            quantity = original.quantity,
-        )
+    private fun applyOp(op: BasketOp) {
+        when (op) {
+            is BasketOp.Insert -> {
+                basketItems.add(op.index, op.line)
+                linesById[op.line.item.id] = op.line
+                account(op.line, op.line.quantity, lineDelta = 1)
+            }
+            is BasketOp.Remove -> {
+                basketItems.removeAt(op.index)
+                linesById.remove(op.line.item.id)
+                account(op.line, -op.line.quantity, lineDelta = -1)
+            }
+            is BasketOp.SetQuantity -> {
+                op.line.quantity = op.to
+                account(op.line, op.to - op.from)
+            }
+            is BasketOp.Clear -> {
+                basketItems = mutableListOf()
+                linesById.clear()
+                totals = Totals()
+            }
+        }
     }
 
-    private fun restoreFromSnapshot(state: List<BasketItem>) {
-        basketItems.clear()
-        // Deep copy again so history snapshots remain immutable
-        basketItems.addAll(state.map { original ->
-            BasketItem(
-                item = original.item.copy(),
-                quantity = original.quantity,
-            )
-        })
+    private fun revertOp(op: BasketOp) {
+        when (op) {
+            is BasketOp.Insert -> applyOp(BasketOp.Remove(op.index, op.line))
+            is BasketOp.Remove -> applyOp(BasketOp.Insert(op.index, op.line))
+            is BasketOp.SetQuantity -> applyOp(BasketOp.SetQuantity(op.line, op.to, op.from))
+            is BasketOp.Clear -> {
+                basketItems = op.lines
+                op.lines.forEach { linesById[it.item.id] = it }
+                totals = op.totals
+            }
+        }
     }
 
     /**
-     * Capture the current basket state into the undo history.
+     * Apply a user action and record it in the undo history.
      * Clears redo history because a new user action invalidates the redo chain.
      */
-    private fun captureStateForUndo() {
-        // Push current state if there is already at least one state (we don't store initial empty twice)
-        undoStack.addLast(snapshot())
+    private fun perform(op: BasketOp) {
+        applyOp(op)
+        undoStack.addLast(op)
         if (undoStack.size > maxHistorySize) {
             undoStack.removeFirst()
         }
@@ -67,22 +139,16 @@ class BasketManager private constructor() {
     fun canRedo(): Boolean = redoStack.isNotEmpty()
 
     fun undo(): Boolean {
-        if (undoStack.isEmpty()) return false
-        val current = snapshot()
-        val previous = undoStack.removeLast()
-        // Current state becomes top of redo stack
-        redoStack.addLast(current)
-        restoreFromSnapshot(previous)
+        val op = undoStack.removeLastOrNull() ?: return false
+        revertOp(op)
+        redoStack.addLast(op)
         return true
     }
 
     fun redo(): Boolean {
-        if (redoStack.isEmpty()) return false
-        val current = snapshot()
-        val next = redoStack.removeLast()
-        // Current state goes back to undo stack
-        undoStack.addLast(current)
-        restoreFromSnapshot(next)
+        val op = redoStack.removeLastOrNull() ?: return false
+        applyOp(op)
+        undoStack.addLast(op)
         return true
     }
 
@@ -103,19 +169,16 @@ class BasketManager private constructor() {
      * @param quantity Quantity to add.
      */
     fun addItem(item: Item, quantity: Int) {
-        captureStateForUndo()
-
-        // Check if item is already in basket
-        for (basketItem in basketItems) {
-            if (basketItem.item.id == item.id) {
-                // Increase quantity
-                basketItem.quantity += quantity
-                return
-            }
+        val existing = linesById[item.id]
+        if (existing != null) {
+            // Increase quantity
+            perform(BasketOp.SetQuantity(existing, existing.quantity, existing.quantity + quantity))
+            return
         }
 
-        // If not in basket, add new entry
-        basketItems.add(BasketItem(item, quantity))
+        // If not in basket, add new entry. The item is copied so later catalog
+        // edits can't change a line the running totals already account for.
+        perform(BasketOp.Insert(basketItems.size, BasketItem(item.copy(), quantity)))
     }
 
     /**
@@ -125,21 +188,16 @@ class BasketManager private constructor() {
      * @return true if updated successfully, false if not found or quantity is 0.
      */
     fun updateItemQuantity(itemId: String, quantity: Int): Boolean {
-        captureStateForUndo()
-
         if (quantity <= 0) {
-            return removeItemInternal(itemId)
+            return removeItem(itemId)
         }
 
-        for (basketItem in basketItems) {
-            if (basketItem.item.id == itemId) {
-                basketItem.quantity = quantity
-                return true
-            }
+        // If the item is not in basket yet, there is nothing to update
+        val line = linesById[itemId] ?: return false
+        if (line.quantity != quantity) {
+            perform(BasketOp.SetQuantity(line, line.quantity, quantity))
         }
-
-        // If we get here, item is not in basket yet
-        return false
+        return true
     }
 
     /**
@@ -148,20 +206,9 @@ class BasketManager private constructor() {
      * @return true if removed successfully, false if not found.
      */
     fun removeItem(itemId: String): Boolean {
-        captureStateForUndo()
-        return removeItemInternal(itemId)
-    }
-
-    private fun removeItemInternal(itemId: String): Boolean {
-        val iterator = basketItems.iterator()
-        while (iterator.hasNext()) {
-            val basketItem = iterator.next()
-            if (basketItem.item.id == itemId) {
-                iterator.remove()
-                return true
-            }
-        }
-        return false
+        val line = linesById[itemId] ?: return false
+        perform(BasketOp.Remove(basketItems.indexOf(line), line))
+        return true
     }
 
     /**
@@ -169,49 +216,32 @@ class BasketManager private constructor() {
      */
     fun clearBasket() {
         if (basketItems.isNotEmpty()) {
-            captureStateForUndo()
+            perform(BasketOp.Clear(basketItems, totals))
         }
-        basketItems.clear()
     }
 
     /**
      * Get the total number of items in the basket.
      */
-    fun getTotalItemCount(): Int {
-        var count = 0
-        for (item in basketItems) {
-            count += item.quantity
-        }
-        return count
-    }
+    fun getTotalItemCount(): Int = totals.itemCount
 
     /**
      * Calculate the total fiat price of all items in the basket.
      * Only includes items priced in fiat.
      */
-    fun getTotalPrice(): Double {
-        var total = 0.0
-        for (item in basketItems) {
-            if (!item.isSatsPrice()) {
-                total += item.getTotalPrice()
-            }
-        }
-        return total
-    }
+    fun getTotalPrice(): Double = totals.fiatMinor / MINOR_PER_MAJOR.toDouble()
     
     /**
      * Calculate the total sats price of all items in the basket.
      * Only includes items priced in sats.
      */
-    fun getTotalSatsDirectPrice(): Long {
-        var total = 0L
-        for (item in basketItems) {
-            if (item.isSatsPrice()) {
-                total += item.getTotalSats()
-            }
-        }
-        return total
-    }
+    fun getTotalSatsDirectPrice(): Long = totals.satsDirect
+
+    /**
+     * Total in a custom preferred unit (anything but sats), where sats-priced
+     * and fiat-priced items are both read as amounts in that unit.
+     */
+    fun getCustomUnitTotal(): Double = totals.satsGross.toDouble() + getTotalPrice()
 
     /**
      * Calculate the total price in satoshis (combining fiat and sats priced items).
@@ -229,14 +259,7 @@ class BasketManager private constructor() {
             val currency = com.electricdreams.numo.core.model.Amount.Currency.fromCode(lowerUnit)
             
             // All items (both originally Sats and Fiat) are now treated as priced in the custom unit
-            var total = 0.0
-            for (basketItem in basketItems) {
-                if (basketItem.isSatsPrice()) {
-                    total += basketItem.item.getGrossSats().toDouble() * basketItem.quantity
-                } else {
-                    total += basketItem.getTotalPrice()
-                }
-            }
+            val total = getCustomUnitTotal()
             
             return if (currency.isZeroDecimal()) {
                 total.toLong()
@@ -248,11 +271,11 @@ class BasketManager private constructor() {
         // Start with items already priced in sats
         var totalSats = getTotalSatsDirectPrice()
         
-        // Convert fiat items to sats if we have a valid BTC price
-        val fiatTotal = getTotalPrice()
-        if (fiatTotal > 0 && btcPrice > 0) {
-            val btcAmount = fiatTotal / btcPrice
-            totalSats += (btcAmount * 100_000_000L).toLong()
+        // Convert fiat items to sats if we have a valid BTC price, from minor
+        // units so an exact total converts exactly
+        val fiatMinor = totals.fiatMinor
+        if (fiatMinor > 0 && btcPrice > 0) {
+            totalSats += (fiatMinor * (SATS_PER_BTC / MINOR_PER_MAJOR) / btcPrice).toLong()
         }
         
         return totalSats
@@ -261,20 +284,5 @@ class BasketManager private constructor() {
     /**
      * Check if the basket contains items with mixed price types (both fiat and sats).
      */
-    fun hasMixedPriceTypes(): Boolean {
-        var hasFiat = false
-        var hasSats = false
-        
-        for (item in basketItems) {
-            if (item.isSatsPrice()) {
-                hasSats = true
-            } else {
-                hasFiat = true
-            }
-            
-            if (hasFiat && hasSats) return true
-        }
-        
-        return false
-    }
+    fun hasMixedPriceTypes(): Boolean = totals.fiatLines > 0 && totals.satsLines > 0
 }
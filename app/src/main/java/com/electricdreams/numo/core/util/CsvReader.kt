@@ -0,0 +1,114 @@
+package com.electricdreams.numo.core.util
+
+import java.io.Reader
+
+/**
+ * Streaming RFC 4180 record reader.
+ *
+ * Fields may be quoted; inside quotes, commas and line breaks are literal and
+ * `""` stands for one quote. Records end at an unquoted LF or CRLF. A leading
+ * UTF-8 byte order mark is skipped. Only one record is held in memory at a
+ * time, so files of any length can be read.
+ */
+internal class CsvReader(private val reader: Reader) {
+
+    companion object {
+        private const val BUFFER_SIZE = 64 * 1024
+    }
+
+    private val buffer = CharArray(BUFFER_SIZE)
+    private var position = 0
+    private var limit = 0
+    private var atStart = true
+    private val field = StringBuilder()
+
+    /** Records returned so far. */
+    var recordCount: Long = 0
+        private set
+
+    /** Next record's fields, or null at end of input. */
+    fun readRecord(): List<String>? {
+        var c = read()
+        if (atStart) {
+            atStart = false
+            if (c == '\uFEFF'.code) c = read()
+        }
+        if (c == -1) return null
+
+        val fields = ArrayList<String>()
+        field.setLength(0)
+        var inQuotes = false
+        var quotedField = false
+
+        while (true) {
+            if (inQuotes) {
+                when (c) {
+                    -1 -> {
+                        // Unterminated quote; keep what was read
+                        fields.add(field.toString())
+                        break
+                    }
+                    '"'.code -> {
+                        val next = read()
+                        if (next == '"'.code) {
+                            field.append('"')
+                        } else {
+                            inQuotes = false
+                            c = next
+                            continue
+                        }
+                    }
+                    else -> field.append(c.toChar())
+                }
+            } else {
+                when (c) {
+                    -1, '\n'.code -> {
+                        fields.add(field.toString())
+                        break
+                    }
+                    '\r'.code -> {
+                        val next = read()
+                        if (next == '\n'.code || next == -1) {
+                            fields.add(field.toString())
+                            break
+                        }
+                        field.append('\r')
+                        c = next
+                        continue
+                    }
+                    ','.code -> {
+                        fields.add(field.toString())
+                        field.setLength(0)
+                        quotedField = false
+                    }
+                    '"'.code -> {
+                        if (field.isEmpty() && !quotedField) {
+                            inQuotes = true
+                            quotedField = true
+                        } else {
+                            // Stray quote in an unquoted field; keep it literally
+                            field.append('"')
+                        }
+                    }
+                    else -> field.append(c.toChar())
+                }
+            }
+            c = read()
+        }
+
+        recordCount++
+        return fields
+    }
+
+    private fun read(): Int {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.size)
+            position = 0
+            if (limit <= 0) {
+                limit = 0
+                return -1
+            }
+        }
+        return buffer[position++].code
+    }
+}
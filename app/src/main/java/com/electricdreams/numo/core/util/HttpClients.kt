@@ -0,0 +1,127 @@
+package com.electricdreams.numo.core.util
+
+import okhttp3.Call
+import okhttp3.Connection
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.EventListener
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Process-wide OkHttp clients.
+ *
+ * Every client here is derived from one base client with `newBuilder()`, so
+ * they all share a single connection pool. A payment that talks to the same
+ * mint several times (quote, swap, melt) reuses the warm TLS connection
+ * instead of paying for a fresh handshake per component.
+ *
+ * The REST dispatcher caps concurrent calls per host so a burst of background
+ * work (icon downloads, profile refreshes) cannot starve payment calls to
+ * the same mint. An open WebSocket occupies a dispatcher slot for as long as
+ * it is connected, so [webSocket] has a dispatcher of its own and pooled
+ * relay and mint sockets never hold up REST calls.
+ *
+ * Components that need different timeouts should call [newBuilder] rather
+ * than `OkHttpClient.Builder()`.
+ */
+object HttpClients {
+
+    private const val MAX_IDLE_CONNECTIONS = 8
+    private const val KEEP_ALIVE_MINUTES = 5L
+    private const val MAX_REQUESTS = 32
+    private const val MAX_REQUESTS_PER_HOST = 4
+    private const val MAX_WEBSOCKETS = 64
+
+    /** Snapshot of connection reuse since process start. */
+    data class Stats(
+        /** Calls that obtained a connection from the pool or by connecting. */
+        val connectionsAcquired: Long,
+        /** Fresh TCP (and TLS, for https) connections that were established. */
+        val connectionsOpened: Long,
+        /** Acquisitions served by an already-open connection. */
+        val connectionsReused: Long,
+        val pooledConnections: Int,
+        val idleConnections: Int,
+    ) {
+        val reuseRatio: Double
+            get() = if (connectionsAcquired == 0L) 0.0 else connectionsReused.toDouble() / connectionsAcquired
+    }
+
+    private val acquired = AtomicLong()
+    private val opened = AtomicLong()
+
+    private val metricsListener = object : EventListener() {
+        override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+            opened.incrementAndGet()
+        }
+
+        override fun connectionAcquired(call: Call, connection: Connection) {
+            acquired.incrementAndGet()
+        }
+    }
+
+    private val connectionPool = ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES)
+
+    private val dispatcher = Dispatcher().apply {
+        maxRequests = MAX_REQUESTS
+        maxRequestsPerHost = MAX_REQUESTS_PER_HOST
+    }
+
+    /** Every open socket holds one of these slots; a mint or relay host can have several. */
+    private val webSocketDispatcher = Dispatcher().apply {
+        maxRequests = MAX_WEBSOCKETS
+        maxRequestsPerHost = MAX_WEBSOCKETS
+    }
+
+    /**
+     * Root of every client, and the one to use for short request/response
+     * calls to mints, BTCPay, LNURL and price APIs; 10s connect / read / write.
+     */
+    @JvmStatic
+    val base: OkHttpClient by lazy {
+        OkHttpClient.Builder()
+            .connectionPool(connectionPool)
+            .dispatcher(dispatcher)
+            .eventListener(metricsListener)
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(10, TimeUnit.SECONDS)
+            .writeTimeout(10, TimeUnit.SECONDS)
+            .build()
+    }
+
+    /**
+     * Long-lived WebSockets (Nostr relays, NUT-17 subscriptions): shared pool,
+     * own dispatcher, no read timeout, keep-alive pings.
+     */
+    @JvmStatic
+    val webSocket: OkHttpClient by lazy {
+        base.newBuilder()
+            .dispatcher(webSocketDispatcher)
+            .readTimeout(0, TimeUnit.MILLISECONDS)
+            .pingInterval(20, TimeUnit.SECONDS)
+            .build()
+    }
+
+    /** Builder that shares the pool and REST dispatcher, for callers needing their own timeouts or DNS. */
+    @JvmStatic
+    fun newBuilder(): OkHttpClient.Builder = base.newBuilder()
+
+    /** Connection reuse so far, shown in developer settings. */
+    @JvmStatic
+    fun stats(): Stats {
+        val acquiredCount = acquired.get()
+        val openedCount = opened.get()
+        return Stats(
+            connectionsAcquired = acquiredCount,
+            connectionsOpened = openedCount,
+            connectionsReused = (acquiredCount - openedCount).coerceAtLeast(0L),
+            pooledConnections = connectionPool.connectionCount(),
+            idleConnections = connectionPool.idleConnectionCount(),
+        )
+    }
+}
@@ -0,0 +1,224 @@
+package com.electricdreams.numo.core.util
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Base64
+import android.util.Log
+import android.util.LruCache
+import android.widget.ImageView
+import com.electricdreams.numo.R
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.FileOutputStream
+import java.util.concurrent.Executors
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Loads item and mint images into [ImageView]s off the main thread.
+ *
+ * Sources are file paths or base64 `data:` URIs. Bitmaps are decoded with an
+ * `inSampleSize` targeted at the view's size and kept in a byte-sized LRU
+ * memory cache. For files that have a thumbnail written by [writeThumbnail],
+ * small views decode the thumbnail instead of the full image. Binding a new
+ * source to a view, or calling [cancel] when it is recycled, cancels the
+ * view's previous decode.
+ */
+object ImageLoader {
+    private const val TAG = "ImageLoader"
+
+    /** Longest edge of the thumbnails written next to item images. */
+    const val THUMBNAIL_SIZE = 320
+    private const val THUMBNAIL_DIR = "thumbs"
+    private const val THUMBNAIL_QUALITY = 80
+
+    /** Target edge used when a view has no size yet. */
+    private const val DEFAULT_TARGET_SIZE = 512
+
+    private val memoryCache = object : LruCache<String, Bitmap>(
+        (Runtime.getRuntime().maxMemory() / 8).coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+    ) {
+        override fun sizeOf(key: String, value: Bitmap): Int = value.allocationByteCount
+    }
+
+    private val decodeDispatcher = Executors.newFixedThreadPool(2) { runnable ->
+        Thread(runnable, "ImageDecoder").apply { isDaemon = true }
+    }.asCoroutineDispatcher()
+
+    private val scope = CoroutineScope(SupervisorJob() + decodeDispatcher)
+
+    /**
+     * Show [source] in [view]. Cached bitmaps are set immediately; otherwise
+     * the view shows [placeholderRes] (or nothing) while the decode runs in
+     * the background. [onResult] is called on the main thread with whether a
+     * bitmap was set, unless the request is superseded or cancelled first.
+     */
+    fun load(
+        view: ImageView,
+        source: String?,
+        placeholderRes: Int = 0,
+        onResult: ((Boolean) -> Unit)? = null
+    ) {
+        cancel(view)
+        if (source.isNullOrEmpty()) {
+            view.setImageBitmap(null)
+            onResult?.invoke(false)
+            return
+        }
+
+        val target = targetSize(view)
+        val key = cacheKey(source, target)
+        if (key == null) {
+            view.setImageBitmap(null)
+            onResult?.invoke(false)
+            return
+        }
+        memoryCache.get(key)?.let {
+            view.setImageBitmap(it)
+            onResult?.invoke(true)
+            return
+        }
+
+        if (placeholderRes != 0) view.setImageResource(placeholderRes) else view.setImageBitmap(null)
+        val job = scope.launch {
+            val bitmap = decode(source, target)
+            if (bitmap != null) memoryCache.put(key, bitmap)
+            withContext(Dispatchers.Main) {
+                ensureActive()
+                view.setTag(R.id.image_loader_request, null)
+                if (bitmap != null) view.setImageBitmap(bitmap)
+                else if (placeholderRes == 0) view.setImageBitmap(null)
+                onResult?.invoke(bitmap != null)
+            }
+        }
+        view.setTag(R.id.image_loader_request, job)
+    }
+
+    /** Cancel any decode pending for [view]. */
+    fun cancel(view: ImageView) {
+        (view.getTag(R.id.image_loader_request) as? Job)?.cancel()
+        view.setTag(R.id.image_loader_request, null)
+    }
+
+    /**
+     * Write a thumbnail for [imageFile] from its full-size [bitmap], so lists
+     * do not have to open the full image.
+     */
+    fun writeThumbnail(imageFile: File, bitmap: Bitmap) {
+        val thumbFile = thumbnailFile(imageFile)
+        try {
+            val dir = thumbFile.parentFile
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                Log.w(TAG, "Failed to create thumbnail directory")
+                return
+            }
+            val scale = THUMBNAIL_SIZE.toFloat() / maxOf(bitmap.width, bitmap.height)
+            val thumb = if (scale < 1f) {
+                Bitmap.createScaledBitmap(
+                    bitmap,
+                    (bitmap.width * scale).toInt().coerceAtLeast(1),
+                    (bitmap.height * scale).toInt().coerceAtLeast(1),
+                    true
+                )
+            } else {
+                bitmap
+            }
+            FileOutputStream(thumbFile).use { out ->
+                thumb.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out)
+            }
+            if (thumb !== bitmap) thumb.recycle()
+        } catch (e: Exception) {
+            Log.w(TAG, "Failed to write thumbnail for ${imageFile.name}: ${e.message}")
+            thumbFile.delete()
+        }
+    }
+
+    /** Remove the thumbnail for [imageFile], if any. */
+    fun deleteThumbnail(imageFile: File) {
+        thumbnailFile(imageFile).delete()
+    }
+
+    fun thumbnailFile(imageFile: File): File =
+        File(File(imageFile.parentFile, THUMBNAIL_DIR), imageFile.name)
+
+    /**
+     * Cache key for [source] at [target] pixels. File keys include the size
+     * and modification time so a replaced image is not served from cache.
+     */
+    private fun cacheKey(source: String, target: Int): String? {
+        if (source.startsWith("data:")) {
+            return "data:${source.length}:${source.hashCode()}@$target"
+        }
+        if (source.startsWith("http://") || source.startsWith("https://")) {
+            return null
+        }
+        val file = File(source)
+        return "${file.absolutePath}:${file.length()}:${file.lastModified()}@$target"
+    }
+
+    private fun targetSize(view: ImageView): Int {
+        val params = view.layoutParams
+        val width = if (view.width > 0) view.width else params?.width ?: 0
+        val height = if (view.height > 0) view.height else params?.height ?: 0
+        val size = maxOf(width, height)
+        return if (size > 0) size else DEFAULT_TARGET_SIZE
+    }
+
+    private suspend fun decode(source: String, target: Int): Bitmap? {
+        return try {
+            if (source.startsWith("data:")) {
+                val bytes = Base64.decode(source.substringAfter(","), Base64.DEFAULT)
+                coroutineContext.ensureActive()
+                decodeSampled(target) { BitmapFactory.decodeByteArray(bytes, 0, bytes.size, it) }
+            } else {
+                val file = File(source)
+                if (!file.exists()) return null
+                val thumb = thumbnailFile(file)
+                val path = if (target <= THUMBNAIL_SIZE && thumb.lastModified() >= file.lastModified()) {
+                    thumb.absolutePath
+                } else {
+                    file.absolutePath
+                }
+                decodeSampled(target) { BitmapFactory.decodeFile(path, it) }
+            }
+        } catch (e: OutOfMemoryError) {
+            Log.w(TAG, "Out of memory decoding image, trimming cache")
+            memoryCache.evictAll()
+            null
+        } catch (e: Exception) {
+            Log.w(TAG, "Failed to decode image: ${e.message}")
+            null
+        }
+    }
+
+    private suspend inline fun decodeSampled(
+        target: Int,
+        decode: (BitmapFactory.Options) -> Bitmap?
+    ): Bitmap? {
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        decode(bounds)
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null
+        coroutineContext.ensureActive()
+
+        val options = BitmapFactory.Options().apply {
+            inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, target)
+        }
+        return decode(options)
+    }
+
+    /** Largest power of two that keeps the shorter edge at or above [target]. */
+    internal fun sampleSize(width: Int, height: Int, target: Int): Int {
+        var sample = 1
+        val shorter = minOf(width, height)
+        while (shorter / (sample * 2) >= target) {
+            sample *= 2
+        }
+        return sample
+    }
+}
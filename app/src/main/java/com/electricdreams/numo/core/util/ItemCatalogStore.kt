@@ -0,0 +1,509 @@
+package com.electricdreams.numo.core.util
+
+import android.util.Log
+import com.electricdreams.numo.core.model.Item
+import com.electricdreams.numo.core.model.PriceType
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.BufferedWriter
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.io.Writer
+import java.util.Locale
+import java.util.UUID
+
+/**
+ * Catalog storage behind [ItemManager]: the items in display order plus hash
+ * indices on id, uuid, GTIN and SKU, and category membership sets.
+ *
+ * Items are persisted as one record each in an append-only journal, so adding,
+ * editing, reordering or restocking an item writes a single line instead of
+ * the whole catalog. Journal format, one record per line:
+ * ```
+ * P<TAB>uuid<TAB>{item json}    insert or replace
+ * D<TAB>uuid                    delete
+ * M<TAB>uuid<TAB>position       move
+ * ```
+ * [compact] rewrites the journal as one put per live item.
+ *
+ * Lookups by id, uuid, GTIN and SKU are hash lookups, which keeps checkout
+ * scanning constant-time however large the catalog is. Index keys are
+ * remembered per item so entries stay correct when callers mutate an [Item]
+ * in place before calling [put].
+ *
+ * Not thread-safe on its own; [ItemManager] serialises access.
+ */
+internal class ItemCatalogStore(dir: File) {
+
+    companion object {
+        private const val TAG = "ItemCatalogStore"
+        private const val JOURNAL_NAME = "catalog.log"
+
+        private const val OP_PUT = 'P'
+        private const val OP_DELETE = 'D'
+        private const val OP_MOVE = 'M'
+        private const val SEPARATOR = '\t'
+
+        private const val COMPACTION_MIN_GARBAGE = 256
+
+        private const val STAGING_BUFFER_SIZE = 64 * 1024
+
+        /** GTIN and SKU matching is case-insensitive. */
+        fun normalizeCode(code: String?): String? =
+            code?.trim()?.takeIf { it.isNotEmpty() }?.lowercase(Locale.ROOT)
+
+        fun normalizeCategory(category: String?): String? =
+            category?.trim()?.takeIf { it.isNotEmpty() }
+
+        fun itemToJson(item: Item): JSONObject = JSONObject().apply {
+            put("id", item.id)
+            put("uuid", item.uuid)
+            put("name", item.name)
+            put("price", item.price)
+
+            item.variationName?.let { put("variationName", it) }
+            item.sku?.let { put("sku", it) }
+            item.description?.let { put("description", it) }
+            item.category?.let { put("category", it) }
+            item.gtin?.let { put("gtin", it) }
+
+            put("quantity", item.quantity)
+            put("alertEnabled", item.alertEnabled)
+            put("alertThreshold", item.alertThreshold)
+            item.imagePath?.let { put("imagePath", it) }
+
+            // Sats/fiat pricing
+            put("priceSats", item.priceSats)
+            put("priceType", item.priceType.name)
+            put("trackInventory", item.trackInventory)
+
+            // VAT fields
+            put("vatEnabled", item.vatEnabled)
+            put("vatRate", item.vatRate)
+        }
+
+        @Throws(JSONException::class)
+        fun itemFromJson(obj: JSONObject): Item = Item().apply {
+            id = obj.getString("id")
+            name = obj.getString("name")
+            price = obj.getDouble("price")
+
+            // UUID - generate if missing (migration for old items)
+            uuid = if (!obj.isNull("uuid")) obj.getString("uuid") else UUID.randomUUID().toString()
+
+            if (!obj.isNull("variationName")) variationName = obj.getString("variationName")
+            if (!obj.isNull("sku")) sku = obj.getString("sku")
+            if (!obj.isNull("description")) description = obj.getString("description")
+            if (!obj.isNull("category")) category = obj.getString("category")
+            if (!obj.isNull("gtin")) gtin = obj.getString("gtin")
+            if (!obj.isNull("quantity")) quantity = obj.getInt("quantity")
+            if (!obj.isNull("alertEnabled")) alertEnabled = obj.getBoolean("alertEnabled")
+            if (!obj.isNull("alertThreshold")) alertThreshold = obj.getInt("alertThreshold")
+            if (!obj.isNull("imagePath")) imagePath = obj.getString("imagePath")
+            if (!obj.isNull("priceSats")) priceSats = obj.getLong("priceSats")
+            if (!obj.isNull("priceType")) {
+                priceType = try {
+                    PriceType.valueOf(obj.getString("priceType"))
+                } catch (e: IllegalArgumentException) {
+                    PriceType.FIAT
+                }
+            }
+            if (!obj.isNull("trackInventory")) trackInventory = obj.getBoolean("trackInventory")
+            if (!obj.isNull("vatEnabled")) vatEnabled = obj.getBoolean("vatEnabled")
+            if (!obj.isNull("vatRate")) vatRate = obj.getInt("vatRate")
+        }
+    }
+
+    /** Index keys an item was filed under, so they can be removed after in-place edits. */
+    private data class IndexKeys(val id: String?, val gtin: String?, val sku: String?, val category: String?)
+
+    private val journal = AppendOnlyJournal(File(dir.apply { mkdirs() }, JOURNAL_NAME), "item catalog", COMPACTION_MIN_GARBAGE)
+    private val journalFile = journal.file
+
+    /** Display order. */
+    private val items = ArrayList<Item>()
+
+    private val byUuid = HashMap<String, Item>()
+    private val byId = HashMap<String, Item>()
+    private val byGtin = HashMap<String, LinkedHashSet<String>>()
+    private val bySku = HashMap<String, LinkedHashSet<String>>()
+    private val byCategory = HashMap<String, LinkedHashSet<String>>()
+    private val indexed = HashMap<String, IndexKeys>()
+    private val searchIndex = ItemSearchIndex()
+
+    init {
+        replayJournal()
+    }
+
+    val size: Int get() = items.size
+
+    fun isEmpty(): Boolean = items.isEmpty()
+
+    fun hasJournal(): Boolean = journal.exists()
+
+    /** Items in display order. */
+    fun all(): List<Item> = ArrayList(items)
+
+    fun byUuid(uuid: String): Item? = byUuid[uuid]
+
+    fun byId(id: String): Item? = byId[id]
+
+    /** First item filed under [gtin], ignoring case. */
+    fun byGtin(gtin: String): Item? = firstIn(byGtin, normalizeCode(gtin))
+
+    fun bySku(sku: String): Item? = firstIn(bySku, normalizeCode(sku))
+
+    /** Whether an item other than [excludeItemId] carries [gtin]. */
+    fun hasGtin(gtin: String, excludeItemId: String?): Boolean = anyOther(byGtin, normalizeCode(gtin), excludeItemId)
+
+    fun hasSku(sku: String, excludeItemId: String?): Boolean = anyOther(bySku, normalizeCode(sku), excludeItemId)
+
+    /** Sorted distinct category names (trimmed, non-blank). */
+    fun categories(): List<String> = searchIndex.categories()
+
+    /** See [ItemSearchIndex.search]. */
+    fun search(query: String, category: String?): List<Item> = searchIndex.search(query, category)
+
+    /** Items in [category], in display order. */
+    fun inCategory(category: String): List<Item> {
+        val members = byCategory[normalizeCategory(category) ?: return emptyList()] ?: return emptyList()
+        return items.filter { it.uuid in members }
+    }
+
+    /**
+     * Insert [item] at the end, or replace the item with the same uuid in
+     * place. Writes one journal record.
+     */
+    fun put(item: Item) {
+        place(item)
+        append("$OP_PUT$SEPARATOR${item.uuid}$SEPARATOR${itemToJson(item)}")
+        compactIfNeeded()
+    }
+
+    /** Add many items with a single journal write. */
+    fun putAll(newItems: List<Item>) {
+        if (newItems.isEmpty()) return
+        val lines = StringBuilder()
+        for (item in newItems) {
+            place(item)
+            lines.append(OP_PUT).append(SEPARATOR).append(item.uuid).append(SEPARATOR)
+                .append(itemToJson(item)).append('\n')
+        }
+        appendRaw(lines.toString(), newItems.size)
+        compactIfNeeded()
+    }
+
+    /**
+     * Start a staged bulk upsert; see [BulkLoad]. With [replaceAll] the
+     * committed load replaces the whole catalog.
+     */
+    fun beginBulkLoad(replaceAll: Boolean): BulkLoad = BulkLoad(replaceAll)
+
+    /**
+     * A bulk upsert staged in a side file. Batches passed to [add] are
+     * streamed to disk and only become part of the catalog, in memory and in
+     * the journal, on [commit]. Closing without committing discards them and
+     * leaves the catalog untouched.
+     *
+     * On commit each staged item takes over the uuid and id of the item it
+     * matches, so loading the same rows twice updates them in place. Items
+     * match on id first, then on name, variation and category (trimmed,
+     * ignoring case). Earlier rows of the same load count as existing items.
+     */
+    inner class BulkLoad internal constructor(private val replaceAll: Boolean) : Closeable {
+        private val stagingFile = File(journalFile.parentFile, "$JOURNAL_NAME.import")
+        private val commitFile = File(journalFile.parentFile, "$JOURNAL_NAME.commit")
+        private val output = FileOutputStream(stagingFile, false)
+        private val writer = BufferedWriter(OutputStreamWriter(output, Charsets.UTF_8), STAGING_BUFFER_SIZE)
+        private var finished = false
+
+        /** Rows staged so far. */
+        var count: Int = 0
+            private set
+
+        fun add(batch: List<Item>) {
+            check(!finished) { "Bulk load already finished" }
+            for (item in batch) writeRecord(writer, item)
+            count += batch.size
+        }
+
+        fun commit() {
+            check(!finished) { "Bulk load already finished" }
+            finished = true
+            try {
+                writer.flush()
+                output.fd.sync()
+                writer.close()
+                resolveStaged()
+                if (replaceAll) journal.replaceWith(commitFile, count) else journal.appendFile(commitFile, count)
+            } catch (e: IOException) {
+                stagingFile.delete()
+                commitFile.delete()
+                throw e
+            }
+            stagingFile.delete()
+
+            // The journal is durable now; mirror the committed records in memory
+            if (replaceAll) {
+                clearMemory()
+                forEachStaged(journalFile) { place(it) }
+            } else {
+                forEachStaged(commitFile) { place(it) }
+                commitFile.delete()
+            }
+            Log.d(TAG, "Committed bulk load of $count items")
+            compactIfNeeded()
+        }
+
+        override fun close() {
+            if (finished) return
+            finished = true
+            try {
+                writer.close()
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to close bulk load staging file", e)
+            }
+            stagingFile.delete()
+        }
+
+        /**
+         * Rewrite the staged rows into [commitFile] with the uuid and id of
+         * the item each one updates. Only identities are kept in memory.
+         */
+        private fun resolveStaged() {
+            val existingByKey = HashMap<String, Identity>(items.size)
+            for (item in items) existingByKey.putIfAbsent(naturalKey(item), Identity.of(item))
+            val stagedById = HashMap<String, Identity>()
+            val stagedByKey = HashMap<String, Identity>()
+
+            FileOutputStream(commitFile, false).use { out ->
+                val commitWriter = BufferedWriter(OutputStreamWriter(out, Charsets.UTF_8), STAGING_BUFFER_SIZE)
+                forEachStaged(stagingFile) { item ->
+                    val key = naturalKey(item)
+                    val match = item.id?.let { id -> stagedById[id] ?: byId[id]?.let(Identity::of) }
+                        ?: stagedByKey[key]
+                        ?: existingByKey[key]
+                    if (match != null) {
+                        item.uuid = match.uuid
+                        item.id = match.id
+                        if (item.imagePath == null) item.imagePath = match.imagePath
+                    }
+                    val identity = Identity.of(item)
+                    item.id?.let { stagedById[it] = identity }
+                    stagedByKey[key] = identity
+                    writeRecord(commitWriter, item)
+                }
+                commitWriter.flush()
+                out.fd.sync()
+            }
+        }
+    }
+
+    /** What an upserted item inherits from the item it replaces. */
+    private data class Identity(val uuid: String, val id: String?, val imagePath: String?) {
+        companion object {
+            fun of(item: Item) = Identity(item.uuid, item.id, item.imagePath)
+        }
+    }
+
+    private fun naturalKey(item: Item): String =
+        listOf(item.name, item.variationName, item.category)
+            .joinToString("\u0000") { it?.trim()?.lowercase(Locale.ROOT).orEmpty() }
+
+    private fun writeRecord(writer: Writer, item: Item) {
+        writer.append(OP_PUT).append(SEPARATOR).append(item.uuid).append(SEPARATOR)
+            .append(itemToJson(item).toString()).append('\n')
+    }
+
+    /** Read back the put records of a staging or journal file written by [writeRecord]. */
+    private fun forEachStaged(file: File, action: (Item) -> Unit) {
+        file.bufferedReader(Charsets.UTF_8).useLines { lines ->
+            for (line in lines) {
+                val parts = line.split(SEPARATOR, limit = 3)
+                if (parts.size != 3 || parts[0] != OP_PUT.toString()) continue
+                try {
+                    action(itemFromJson(JSONObject(parts[2])).apply { uuid = parts[1] })
+                } catch (e: JSONException) {
+                    Log.w(TAG, "Skipping unreadable staged item", e)
+                }
+            }
+        }
+    }
+
+    /** Put [item] in the place of [old], which had a different uuid. */
+    fun replace(old: Item, item: Item) {
+        unindex(old.uuid)
+        val records = StringBuilder()
+        if (byUuid[item.uuid] != null) {
+            // The new uuid was already in use; that entry is superseded
+            val duplicateAt = positionOf(item.uuid)
+            if (duplicateAt >= 0) items.removeAt(duplicateAt)
+            unindex(item.uuid)
+            records.append("$OP_DELETE$SEPARATOR${item.uuid}\n")
+        }
+        // Look this up after the duplicate is gone, since it may have come first
+        val position = positionOf(old.uuid)
+        if (position >= 0) items[position] = item else items.add(item)
+        index(item)
+        searchIndex.replace(old.uuid, item)
+        records.append("$OP_DELETE$SEPARATOR${old.uuid}\n")
+            .append("$OP_PUT$SEPARATOR${item.uuid}$SEPARATOR${itemToJson(item)}\n")
+        // Replay appends the put at the end; move it back into the old slot
+        if (position >= 0) records.append("$OP_MOVE$SEPARATOR${item.uuid}$SEPARATOR$position\n")
+        appendRaw(records.toString(), records.count { it == '\n' })
+        compactIfNeeded()
+    }
+
+    fun remove(uuid: String): Boolean {
+        if (byUuid[uuid] == null) return false
+        val position = positionOf(uuid)
+        if (position >= 0) items.removeAt(position)
+        unindex(uuid)
+        searchIndex.remove(uuid)
+        append("$OP_DELETE$SEPARATOR$uuid")
+        compactIfNeeded()
+        return true
+    }
+
+    fun move(fromPosition: Int, toPosition: Int) {
+        if (fromPosition !in items.indices || toPosition !in items.indices) return
+        val item = items.removeAt(fromPosition)
+        items.add(toPosition, item)
+        searchIndex.move(fromPosition, toPosition)
+        append("$OP_MOVE$SEPARATOR${item.uuid}$SEPARATOR$toPosition")
+        compactIfNeeded()
+    }
+
+    fun clear() {
+        clearMemory()
+        try {
+            journal.truncate()
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to truncate item catalog journal", e)
+        }
+    }
+
+    /** Rewrite the journal as one put per live item, in display order. */
+    fun compact() {
+        journal.rewrite(items.size) { out ->
+            val writer = out.bufferedWriter(Charsets.UTF_8)
+            for (item in items) writeRecord(writer, item)
+            writer.flush()
+        }
+    }
+
+    private fun compactIfNeeded() {
+        if (journal.needsCompaction(items.size)) compact()
+    }
+
+    /** Insert [item] at the end, or swap it in for the item with the same uuid, in memory only. */
+    private fun place(item: Item) {
+        val existing = byUuid[item.uuid]
+        if (existing == null) {
+            items.add(item)
+        } else if (existing !== item) {
+            val position = positionOf(item.uuid)
+            if (position >= 0) items[position] = item else items.add(item)
+        }
+        index(item)
+        searchIndex.put(item)
+    }
+
+    private fun positionOf(uuid: String): Int = items.indexOfFirst { it.uuid == uuid }
+
+    private fun firstIn(map: HashMap<String, LinkedHashSet<String>>, key: String?): Item? {
+        val uuids = map[key ?: return null] ?: return null
+        return uuids.firstOrNull()?.let { byUuid[it] }
+    }
+
+    private fun anyOther(map: HashMap<String, LinkedHashSet<String>>, key: String?, excludeItemId: String?): Boolean {
+        val uuids = map[key ?: return false] ?: return false
+        return uuids.any { byUuid[it]?.id != excludeItemId }
+    }
+
+    private fun index(item: Item) {
+        unindex(item.uuid)
+        val keys = IndexKeys(item.id, normalizeCode(item.gtin), normalizeCode(item.sku), normalizeCategory(item.category))
+        byUuid[item.uuid] = item
+        keys.id?.let { byId[it] = item }
+        keys.gtin?.let { byGtin.getOrPut(it) { LinkedHashSet() }.add(item.uuid) }
+        keys.sku?.let { bySku.getOrPut(it) { LinkedHashSet() }.add(item.uuid) }
+        keys.category?.let { byCategory.getOrPut(it) { LinkedHashSet() }.add(item.uuid) }
+        indexed[item.uuid] = keys
+    }
+
+    private fun unindex(uuid: String) {
+        val keys = indexed.remove(uuid) ?: return
+        val item = byUuid.remove(uuid)
+        keys.id?.let { id -> if (byId[id] === item) byId.remove(id) }
+        keys.gtin?.let { removeMember(byGtin, it, uuid) }
+        keys.sku?.let { removeMember(bySku, it, uuid) }
+        keys.category?.let { removeMember(byCategory, it, uuid) }
+    }
+
+    private fun removeMember(map: HashMap<String, LinkedHashSet<String>>, key: String, uuid: String) {
+        val members = map[key] ?: return
+        members.remove(uuid)
+        if (members.isEmpty()) map.remove(key)
+    }
+
+    private fun clearMemory() {
+        items.clear()
+        byUuid.clear()
+        byId.clear()
+        byGtin.clear()
+        bySku.clear()
+        byCategory.clear()
+        indexed.clear()
+        searchIndex.clear()
+    }
+
+    private fun append(record: String) = appendRaw(record + "\n", 1)
+
+    private fun appendRaw(lines: String, records: Int) {
+        try {
+            journal.append(lines, records)
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to write item catalog journal", e)
+        }
+    }
+
+    /** Rebuild the catalog from the journal. */
+    private fun replayJournal() {
+        clearMemory()
+        journal.replay { record, _ -> applyReplayedRecord(String(record, Charsets.UTF_8)) }
+        searchIndex.rebuild(items)
+        Log.d(TAG, "Loaded ${items.size} catalog items from ${journal.records} records")
+    }
+
+    private fun applyReplayedRecord(record: String) {
+        val parts = record.split(SEPARATOR, limit = 3)
+        try {
+            when {
+                parts.size == 3 && parts[0] == OP_PUT.toString() -> {
+                    val item = itemFromJson(JSONObject(parts[2]))
+                    item.uuid = parts[1]
+                    val position = if (byUuid.containsKey(item.uuid)) positionOf(item.uuid) else -1
+                    if (position >= 0) items[position] = item else items.add(item)
+                    index(item)
+                }
+                parts.size == 2 && parts[0] == OP_DELETE.toString() -> {
+                    val position = positionOf(parts[1])
+                    if (position >= 0) items.removeAt(position)
+                    unindex(parts[1])
+                }
+                parts.size == 3 && parts[0] == OP_MOVE.toString() -> {
+                    val from = positionOf(parts[1])
+                    val to = parts[2].toIntOrNull() ?: return
+                    if (from >= 0 && to in items.indices) items.add(to, items.removeAt(from))
+                }
+                else -> Log.w(TAG, "Skipping malformed item catalog record")
+            }
+        } catch (e: JSONException) {
+            Log.w(TAG, "Skipping unreadable item catalog record", e)
+        }
+    }
+}
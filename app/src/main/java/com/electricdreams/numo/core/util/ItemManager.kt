@@ -4,19 +4,19 @@ import android.content.Context
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.net.Uri
-import android.text.TextUtils
+import android.os.SystemClock
 import android.util.Log
 import com.electricdreams.numo.core.model.Item
 import org.json.JSONArray
 import org.json.JSONException
-import org.json.JSONObject
-import java.io.BufferedReader
 import java.io.BufferedWriter
 import java.io.File
+import java.io.FileInputStream
 import java.io.FileOutputStream
-import java.io.FileReader
+import java.io.FilterInputStream
 import java.io.IOException
 import java.io.InputStream
+import java.io.InputStreamReader
 import java.io.OutputStream
 import java.io.OutputStreamWriter
 import java.util.UUID
@@ -24,6 +24,9 @@ import java.util.UUID
 /**
  * Manager class for handling the merchant's catalog items.
  *
+ * Storage and lookups are delegated to [ItemCatalogStore], which persists one
+ * record per item and keeps hash indices on id, uuid, GTIN and SKU.
+ *
  * Kotlin version of the original Java ItemManager.
  */
 class ItemManager private constructor(context: Context) {
@@ -32,6 +35,11 @@ class ItemManager private constructor(context: Context) {
         private const val TAG = "ItemManager"
         private const val PREFS_NAME = "ItemManagerPrefs"
         private const val KEY_ITEM_LIST = "items_list"
+        private const val CATALOG_DIR = "item_catalog"
+
+        private const val CSV_HEADER_ROWS = 5
+        private const val CSV_IMPORT_BATCH_SIZE = 500
+        private const val CSV_BUFFER_SIZE = 64 * 1024
 
         @Volatile
         private var instance: ItemManager? = null
@@ -48,153 +56,80 @@ class ItemManager private constructor(context: Context) {
 
     private val context: Context = context.applicationContext
     private val prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-    private val items: MutableList<Item> = mutableListOf()
+    private val store = ItemCatalogStore(File(this.context.filesDir, CATALOG_DIR))
+
+    /** Serialises CSV imports; held while parsing, unlike the manager's own lock. */
+    private val importLock = Any()
 
     init {
-        loadItems()
+        migrateLegacyList()
     }
 
     /**
-     * Load items from SharedPreferences.
+     * Fold the legacy single-array catalog from SharedPreferences into the
+     * catalog store, then drop it. Items are upserted by uuid so a list
+     * restored from an old backup merges rather than duplicates. The list is
+     * only imported, and only removed, once every entry has parsed; a
+     * malformed list is left in place and retried on the next launch.
      */
-    private fun loadItems() {
-        items.clear()
-        val itemsJson = prefs.getString(KEY_ITEM_LIST, "")
-
-        if (!itemsJson.isNullOrEmpty()) {
+    private fun migrateLegacyList() {
+        val itemsJson = prefs.getString(KEY_ITEM_LIST, null) ?: return
+        val legacy = mutableListOf<Item>()
+        if (itemsJson.isNotEmpty()) {
             try {
                 val array = JSONArray(itemsJson)
                 for (i in 0 until array.length()) {
-                    val obj = array.getJSONObject(i)
-                    val item = Item().apply {
-                        id = obj.getString("id")
-                        name = obj.getString("name")
-                        price = obj.getDouble("price")
-
-                        // UUID - generate if missing (migration for old items)
-                        uuid = if (!obj.isNull("uuid")) {
-                            obj.getString("uuid")
-                        } else {
-                            UUID.randomUUID().toString()
-                        }
-
-                        if (!obj.isNull("variationName")) {
-                            variationName = obj.getString("variationName")
-                        }
-                        if (!obj.isNull("sku")) {
-                            sku = obj.getString("sku")
-                        }
-                        if (!obj.isNull("description")) {
-                            description = obj.getString("description")
-                        }
-                        if (!obj.isNull("category")) {
-                            category = obj.getString("category")
-                        }
-                        if (!obj.isNull("gtin")) {
-                            gtin = obj.getString("gtin")
-                        }
-                        if (!obj.isNull("quantity")) {
-                            quantity = obj.getInt("quantity")
-                        }
-                        if (!obj.isNull("alertEnabled")) {
-                            alertEnabled = obj.getBoolean("alertEnabled")
-                        }
-                        if (!obj.isNull("alertThreshold")) {
-                            alertThreshold = obj.getInt("alertThreshold")
-                        }
-                        if (!obj.isNull("imagePath")) {
-                            imagePath = obj.getString("imagePath")
-                        }
-                        // New fields for sats/fiat pricing
-                        if (!obj.isNull("priceSats")) {
-                            priceSats = obj.getLong("priceSats")
-                        }
-                        if (!obj.isNull("priceType")) {
-                            priceType = try {
-                                com.electricdreams.numo.core.model.PriceType.valueOf(obj.getString("priceType"))
-                            } catch (e: IllegalArgumentException) {
-                                com.electricdreams.numo.core.model.PriceType.FIAT
-                            }
-                        }
-                        if (!obj.isNull("trackInventory")) {
-                            trackInventory = obj.getBoolean("trackInventory")
-                        }
-                        // VAT fields
-                        if (!obj.isNull("vatEnabled")) {
-                            vatEnabled = obj.getBoolean("vatEnabled")
-                        }
-                        if (!obj.isNull("vatRate")) {
-                            vatRate = obj.getInt("vatRate")
-                        }
-                    }
-
-                    items.add(item)
+                    legacy.add(ItemCatalogStore.itemFromJson(array.getJSONObject(i)))
                 }
-
-                Log.d(TAG, "Loaded ${items.size} items from storage")
             } catch (e: JSONException) {
-                Log.e(TAG, "Error loading items: ${e.message}", e)
+                Log.e(TAG, "Legacy items are unreadable, keeping them and skipping migration: ${e.message}", e)
+                return
             }
         }
+        store.putAll(legacy)
+        prefs.edit().remove(KEY_ITEM_LIST).commit()
+        Log.d(TAG, "Migrated ${legacy.size} legacy items to the catalog store")
     }
 
     /**
-     * Save items to SharedPreferences.
+     * Get all items in the catalog.
+     * @return List of items.
      */
-    private fun saveItems() {
-        try {
-            val array = JSONArray()
-            for (item in items) {
-                val obj = JSONObject().apply {
-                    put("id", item.id)
-                    put("uuid", item.uuid)
-                    put("name", item.name)
-                    put("price", item.price)
-
-                    item.variationName?.let { put("variationName", it) }
-                    item.sku?.let { put("sku", it) }
-                    item.description?.let { put("description", it) }
-                    item.category?.let { put("category", it) }
-                    item.gtin?.let { put("gtin", it) }
-
-                    put("quantity", item.quantity)
-                    put("alertEnabled", item.alertEnabled)
-                    put("alertThreshold", item.alertThreshold)
-                    item.imagePath?.let { put("imagePath", it) }
-                    
-                    // New fields for sats/fiat pricing
-                    put("priceSats", item.priceSats)
-                    put("priceType", item.priceType.name)
-                    put("trackInventory", item.trackInventory)
-                    
-                    // VAT fields
-                    put("vatEnabled", item.vatEnabled)
-                    put("vatRate", item.vatRate)
-                }
-                array.put(obj)
-            }
+    @Synchronized
+    fun getAllItems(): List<Item> = store.all()
 
-            prefs.edit().putString(KEY_ITEM_LIST, array.toString()).apply()
-            Log.d(TAG, "Saved ${items.size} items to storage")
-        } catch (e: JSONException) {
-            Log.e(TAG, "Error saving items: ${e.message}", e)
-        }
-    }
+    /**
+     * Number of items in the catalog.
+     */
+    @Synchronized
+    fun getItemCount(): Int = store.size
 
     /**
-     * Get all items in the catalog.
-     * @return List of items.
+     * Find an item by its ID.
+     */
+    @Synchronized
+    fun findItemById(id: String): Item? = store.byId(id)
+
+    /**
+     * Find an item by its internal UUID.
      */
-    fun getAllItems(): List<Item> = ArrayList(items)
+    @Synchronized
+    fun findItemByUuid(uuid: String): Item? = store.byUuid(uuid)
 
     /**
-     * Find an item by its Gtin (barcode).
+     * Find an item by its Gtin (barcode). Constant time; used on every
+     * checkout scan.
      * @param gtin Gtin to search for.
      * @return Item if found, null otherwise.
      */
-    fun findItemByGtin(gtin: String): Item? {
-        return items.find { it.gtin?.equals(gtin, ignoreCase = true) == true }
-    }
+    @Synchronized
+    fun findItemByGtin(gtin: String): Item? = store.byGtin(gtin)
+
+    /**
+     * Find an item by its SKU.
+     */
+    @Synchronized
+    fun findItemBySku(sku: String): Item? = store.bySku(sku)
 
     /**
      * Check if a Gtin already exists in the catalog.
@@ -202,11 +137,10 @@ class ItemManager private constructor(context: Context) {
      * @param excludeItemId Optional item ID to exclude from the check (for editing existing items).
      * @return true if Gtin exists (and belongs to a different item), false otherwise.
      */
+    @Synchronized
     fun isGtinDuplicate(gtin: String, excludeItemId: String? = null): Boolean {
         if (gtin.isBlank()) return false
-        return items.any { item ->
-            item.gtin?.equals(gtin, ignoreCase = true) == true && item.id != excludeItemId
-        }
+        return store.hasGtin(gtin, excludeItemId)
     }
 
     /**
@@ -215,60 +149,51 @@ class ItemManager private constructor(context: Context) {
      * @param excludeItemId Optional item ID to exclude from the check (for editing existing items).
      * @return true if SKU exists (and belongs to a different item), false otherwise.
      */
+    @Synchronized
     fun isSkuDuplicate(sku: String, excludeItemId: String? = null): Boolean {
         if (sku.isBlank()) return false
-        return items.any { item ->
-            item.sku?.equals(sku, ignoreCase = true) == true && item.id != excludeItemId
-        }
+        return store.hasSku(sku, excludeItemId)
     }
 
     /**
      * Get all unique categories from existing items.
      * @return Sorted list of unique category names (non-null, non-empty).
      */
-    fun getAllCategories(): List<String> {
-        return items
-            .mapNotNull { it.category }
-            .filter { it.isNotBlank() }
-            .map { it.trim() }
-            .distinct()
-            .sorted()
-    }
+    @Synchronized
+    fun getAllCategories(): List<String> = store.categories()
+
+    /**
+     * Items in a category, in catalog order.
+     */
+    @Synchronized
+    fun getItemsInCategory(category: String): List<Item> = store.inCategory(category)
 
     /**
-     * Search items by name, SKU, or variation.
+     * Search items by name, SKU, variation or category, ignoring case and accents.
      * @param query Search query.
-     * @return List of matching items.
+     * @param category Optional category the results must belong to (ignoring case).
+     * @return List of matching items, in catalog order.
      */
-    fun searchItems(query: String): List<Item> {
-        if (query.isBlank()) return ArrayList(items)
-        
-        val lowerQuery = query.lowercase().trim()
-        return items.filter { item ->
-            item.name?.lowercase()?.contains(lowerQuery) == true ||
-            item.sku?.lowercase()?.contains(lowerQuery) == true ||
-            item.variationName?.lowercase()?.contains(lowerQuery) == true ||
-            item.category?.lowercase()?.contains(lowerQuery) == true
-        }
-    }
+    @Synchronized
+    fun searchItems(query: String, category: String? = null): List<Item> = store.search(query, category)
 
     /**
      * Add an item to the catalog.
      * @param item Item to add.
      * @return true if added successfully, false if already exists.
      */
+    @Synchronized
     fun addItem(item: Item): Boolean {
         if (item.id.isNullOrEmpty()) {
             item.id = UUID.randomUUID().toString()
         }
 
         // Check if item with the same ID already exists
-        if (items.any { it.id == item.id }) {
+        if (store.byId(item.id!!) != null) {
             return false
         }
 
-        items.add(item)
-        saveItems()
+        store.put(item)
         return true
     }
 
@@ -277,15 +202,15 @@ class ItemManager private constructor(context: Context) {
      * @param item Item to update.
      * @return true if updated successfully, false if not found.
      */
+    @Synchronized
     fun updateItem(item: Item): Boolean {
-        for (i in items.indices) {
-            if (items[i].id == item.id) {
-                items[i] = item
-                saveItems()
-                return true
-            }
+        val existing = item.id?.let { store.byId(it) } ?: return false
+        if (existing.uuid == item.uuid) {
+            store.put(item)
+        } else {
+            store.replace(existing, item)
         }
-        return false
+        return true
     }
 
     /**
@@ -293,23 +218,18 @@ class ItemManager private constructor(context: Context) {
      * @param itemId ID of the item to remove.
      * @return true if removed successfully, false if not found.
      */
+    @Synchronized
     fun removeItem(itemId: String): Boolean {
-        val index = items.indexOfFirst { it.id == itemId }
-        return if (index >= 0) {
-            items.removeAt(index)
-            saveItems()
-            true
-        } else {
-            false
-        }
+        val existing = store.byId(itemId) ?: return false
+        return store.remove(existing.uuid)
     }
 
     /**
      * Clear all items.
      */
+    @Synchronized
     fun clearItems() {
-        items.clear()
-        saveItems()
+        store.clear()
     }
 
     /**
@@ -317,14 +237,24 @@ class ItemManager private constructor(context: Context) {
      * @param fromPosition The current position of the item.
      * @param toPosition The target position to move the item to.
      */
+    @Synchronized
     fun reorderItems(fromPosition: Int, toPosition: Int) {
-        if (fromPosition < 0 || fromPosition >= items.size ||
-            toPosition < 0 || toPosition >= items.size) {
-            return
-        }
-        val item = items.removeAt(fromPosition)
-        items.add(toPosition, item)
-        saveItems()
+        store.move(fromPosition, toPosition)
+    }
+
+    /**
+     * Progress of a CSV import, reported after each staged batch and once the
+     * import has committed.
+     */
+    data class CsvImportProgress(
+        val rows: Int,
+        val bytesRead: Long,
+        /** Size of the input, or -1 if unknown. */
+        val totalBytes: Long,
+        val elapsedMillis: Long
+    ) {
+        val rowsPerSecond: Long
+            get() = if (elapsedMillis > 0) rows * 1000L / elapsedMillis else rows.toLong()
     }
 
     /**
@@ -334,164 +264,195 @@ class ItemManager private constructor(context: Context) {
      * @return Number of items imported.
      */
     fun importItemsFromCsv(csvFilePath: String, clearExisting: Boolean): Int {
-        if (clearExisting) {
-            items.clear()
+        val file = File(csvFilePath)
+        if (!file.exists()) {
+            Log.e(TAG, "CSV file not found: $csvFilePath")
+            return 0
         }
+        return try {
+            FileInputStream(file).use { importItemsFromCsv(it, file.length(), clearExisting) }
+        } catch (e: IOException) {
+            Log.e(TAG, "Error importing items from CSV: ${e.message}", e)
+            0
+        }
+    }
 
-        var importedCount = 0
-        var reader: BufferedReader? = null
-
-        try {
-            val file = File(csvFilePath)
-            if (!file.exists()) {
-                Log.e(TAG, "CSV file not found: $csvFilePath")
-                return 0
-            }
-
-            reader = BufferedReader(FileReader(file))
-
-            // Skip header lines (first 5 lines based on Square template)
-            repeat(5) {
-                reader.readLine()
-            }
-
-            var line: String?
-            while (reader.readLine().also { line = it } != null) {
-                val currentLine = line ?: continue
-                // Parse CSV line
-                val values = parseCsvLine(currentLine)
-                if (values.size < 14) { // Need at least 14 columns for basic item data
-                    continue
-                }
-
-                // Item data starts at column 1 (index 0 is token)
-                val name = values[1]
-                val variationName = values[2]
-                val sku = values[3]
-                val description = values[4]
-                val category = values[5]
-                val gtin = values[7]
-
-                // Parse price (index 12)
-                var price = 0.0
-                try {
-                    price = values[12].toDouble()
-                } catch (e: NumberFormatException) {
-                    Log.w(TAG, "Invalid price format for item: $name")
+    /**
+     * Import items from a Square-style CSV stream, parsing it record by record.
+     *
+     * Rows are staged in batches of [CSV_IMPORT_BATCH_SIZE] and committed to the
+     * catalog in one step once the whole stream has been read, so a failure
+     * part-way leaves the catalog unchanged. Lookups are not blocked while the
+     * stream is being parsed.
+     *
+     * Rows are upserted: a row updates the item whose id equals its token, or
+     * else the item with the same name, variation and category, keeping that
+     * item's place and image. Importing the same CSV twice does not duplicate.
+     *
+     * @param input CSV data; not closed by this method.
+     * @param totalBytes Size of [input] for progress reporting, or -1 if unknown.
+     * @param clearExisting Whether the imported items replace the whole catalog.
+     * @param onProgress Called on the importing thread after each batch and on commit.
+     * @return Number of items imported.
+     * @throws IOException if the stream cannot be read or the catalog cannot be written.
+     */
+    @Throws(IOException::class)
+    fun importItemsFromCsv(
+        input: InputStream,
+        totalBytes: Long,
+        clearExisting: Boolean,
+        onProgress: ((CsvImportProgress) -> Unit)? = null
+    ): Int = synchronized(importLock) {
+        val startedAt = SystemClock.elapsedRealtime()
+        val counting = CountingInputStream(input)
+        val reader = CsvReader(InputStreamReader(counting, Charsets.UTF_8))
+        val bulk = synchronized(this) { store.beginBulkLoad(replaceAll = clearExisting) }
+
+        bulk.use {
+            // Skip header records (first 5 based on Square template)
+            repeat(CSV_HEADER_ROWS) { reader.readRecord() ?: return@use }
+
+            val batch = ArrayList<Item>(CSV_IMPORT_BATCH_SIZE)
+            while (true) {
+                val values = reader.readRecord() ?: break
+                itemFromCsvRecord(values)?.let { batch.add(it) }
+                if (batch.size == CSV_IMPORT_BATCH_SIZE) {
+                    bulk.add(batch)
+                    batch.clear()
+                    onProgress?.invoke(CsvImportProgress(
+                        bulk.count, counting.count, totalBytes, SystemClock.elapsedRealtime() - startedAt
+                    ))
                 }
+            }
+            bulk.add(batch)
 
-                // Parse quantity (index 20)
-                var quantity = 0
-                if (values.size > 20) {
-                    try {
-                        quantity = values[20].toInt()
-                    } catch (e: NumberFormatException) {
-                        Log.w(TAG, "Invalid quantity format for item: $name")
-                    }
-                }
+            synchronized(this) { bulk.commit() }
+        }
 
-                // Parse stock enabled (index 21)
-                var trackInventory = false
-                if (values.size > 21 && values[21].isNotBlank()) {
-                    trackInventory = values[21].equals("Y", ignoreCase = true)
-                } else if (quantity > 0) {
-                    // Fallback for older exports that didn't include Stock Enabled
-                    trackInventory = true
-                }
+        val progress = CsvImportProgress(
+            bulk.count, counting.count, totalBytes, SystemClock.elapsedRealtime() - startedAt
+        )
+        onProgress?.invoke(progress)
+        Log.d(TAG, "Imported ${progress.rows} items from CSV in ${progress.elapsedMillis} ms " +
+            "(${progress.rowsPerSecond} rows/s)")
+        progress.rows
+    }
 
-                // Parse stock alert (index 22-23)
-                var alertEnabled = false
-                var alertThreshold = 0
+    /**
+     * Build an item from one CSV data record, or null if the record is too short.
+     */
+    private fun itemFromCsvRecord(values: List<String>): Item? {
+        if (values.size < 14) { // Need at least 14 columns for basic item data
+            return null
+        }
 
-                if (values.size > 22) {
-                    alertEnabled = values[22].equals("Y", ignoreCase = true)
-                }
+        // Item data starts at column 1; index 0 is the token, which is kept as
+        // the item id so importing the same sheet again updates these items
+        val token = values[0].trim()
+        val name = values[1]
+        val variationName = values[2]
+        val sku = values[3]
+        val description = values[4]
+        val category = values[5]
+        val gtin = values[7]
+
+        // Parse price (index 12)
+        var price = 0.0
+        try {
+            price = values[12].toDouble()
+        } catch (e: NumberFormatException) {
+            Log.w(TAG, "Invalid price format for item: $name")
+        }
 
-                if (values.size > 23) {
-                    try {
-                        alertThreshold = values[23].toInt()
-                    } catch (e: NumberFormatException) {
-                        Log.w(TAG, "Invalid alert threshold format for item: $name")
-                    }
-                }
+        // Parse quantity (index 20)
+        var quantity = 0
+        if (values.size > 20) {
+            try {
+                quantity = values[20].toInt()
+            } catch (e: NumberFormatException) {
+                Log.w(TAG, "Invalid quantity format for item: $name")
+            }
+        }
 
-                // Parse Numo custom fields (index 24-27)
-                var priceType = com.electricdreams.numo.core.model.PriceType.FIAT
-                var priceSats = 0L
-                var vatEnabled = false
-                var vatRate = 0
-                
-                if (values.size > 24 && values[24].isNotBlank()) {
-                    try {
-                        priceType = com.electricdreams.numo.core.model.PriceType.valueOf(values[24])
-                    } catch (e: Exception) {}
-                }
-                
-                if (values.size > 25 && values[25].isNotBlank()) {
-                    try {
-                        priceSats = values[25].toLong()
-                    } catch (e: NumberFormatException) {}
-                } else if (priceType == com.electricdreams.numo.core.model.PriceType.SATS) {
-                    // Fallback if priceSats is missing but priceType is SATS
-                    priceSats = price.toLong()
-                }
-                
-                if (priceType == com.electricdreams.numo.core.model.PriceType.SATS) {
-                    // If it's SATS, zero out the fiat price to match export behaviour
-                    price = 0.0
-                }
+        // Parse stock enabled (index 21)
+        var trackInventory = false
+        if (values.size > 21 && values[21].isNotBlank()) {
+            trackInventory = values[21].equals("Y", ignoreCase = true)
+        } else if (quantity > 0) {
+            // Fallback for older exports that didn't include Stock Enabled
+            trackInventory = true
+        }
 
-                if (values.size > 26) {
-                    vatEnabled = values[26].equals("Y", ignoreCase = true)
-                }
-                
-                if (values.size > 27 && values[27].isNotBlank()) {
-                    try {
-                        vatRate = values[27].toInt()
-                    } catch (e: NumberFormatException) {}
-                }
+        // Parse stock alert (index 22-23)
+        var alertEnabled = false
+        var alertThreshold = 0
 
-                // Create new item
-                val item = Item().apply {
-                    id = UUID.randomUUID().toString()
-                    this.name = name
-                    this.variationName = variationName
-                    this.sku = sku
-                    this.description = description
-                    this.category = category
-                    this.gtin = gtin
-                    this.price = price
-                    this.priceSats = priceSats
-                    this.priceType = priceType
-                    this.trackInventory = trackInventory
-                    this.quantity = quantity
-                    this.vatEnabled = vatEnabled
-                    this.vatRate = vatRate
-                    this.alertEnabled = alertEnabled
-                    this.alertThreshold = alertThreshold
-                }
+        if (values.size > 22) {
+            alertEnabled = values[22].equals("Y", ignoreCase = true)
+        }
 
-                items.add(item)
-                importedCount++
+        if (values.size > 23) {
+            try {
+                alertThreshold = values[23].toInt()
+            } catch (e: NumberFormatException) {
+                Log.w(TAG, "Invalid alert threshold format for item: $name")
             }
+        }
 
-            // Save imported items
-            if (importedCount > 0) {
-                saveItems()
-            }
+        // Parse Numo custom fields (index 24-27)
+        var priceType = com.electricdreams.numo.core.model.PriceType.FIAT
+        var priceSats = 0L
+        var vatEnabled = false
+        var vatRate = 0
+        
+        if (values.size > 24 && values[24].isNotBlank()) {
+            try {
+                priceType = com.electricdreams.numo.core.model.PriceType.valueOf(values[24])
+            } catch (e: Exception) {}
+        }
+        
+        if (values.size > 25 && values[25].isNotBlank()) {
+            try {
+                priceSats = values[25].toLong()
+            } catch (e: NumberFormatException) {}
+        } else if (priceType == com.electricdreams.numo.core.model.PriceType.SATS) {
+            // Fallback if priceSats is missing but priceType is SATS
+            priceSats = price.toLong()
+        }
+        
+        if (priceType == com.electricdreams.numo.core.model.PriceType.SATS) {
+            // If it's SATS, zero out the fiat price to match export behaviour
+            price = 0.0
+        }
 
-            Log.d(TAG, "Imported $importedCount items from CSV")
-        } catch (e: IOException) {
-            Log.e(TAG, "Error importing items from CSV: ${e.message}", e)
-        } finally {
+        if (values.size > 26) {
+            vatEnabled = values[26].equals("Y", ignoreCase = true)
+        }
+        
+        if (values.size > 27 && values[27].isNotBlank()) {
             try {
-                reader?.close()
-            } catch (e: IOException) {
-                Log.e(TAG, "Error closing CSV reader: ${e.message}", e)
-            }
+                vatRate = values[27].toInt()
+            } catch (e: NumberFormatException) {}
         }
 
-        return importedCount
+        return Item().apply {
+            id = token.ifEmpty { UUID.randomUUID().toString() }
+            this.name = name
+            this.variationName = variationName
+            this.sku = sku
+            this.description = description
+            this.category = category
+            this.gtin = gtin
+            this.price = price
+            this.priceSats = priceSats
+            this.priceType = priceType
+            this.trackInventory = trackInventory
+            this.quantity = quantity
+            this.vatEnabled = vatEnabled
+            this.vatRate = vatRate
+            this.alertEnabled = alertEnabled
+            this.alertThreshold = alertThreshold
+        }
     }
 
     /**
@@ -502,7 +463,8 @@ class ItemManager private constructor(context: Context) {
      */
     fun exportItemsToCsv(outputStream: OutputStream): Boolean {
         try {
-            val writer = BufferedWriter(OutputStreamWriter(outputStream))
+            val snapshot = getAllItems()
+            val writer = BufferedWriter(OutputStreamWriter(outputStream, Charsets.UTF_8), CSV_BUFFER_SIZE)
 
             // Write 5 header lines to match the Square template import expectations
             val header = arrayOfNulls<String>(28)
@@ -530,9 +492,9 @@ class ItemManager private constructor(context: Context) {
             writer.write(",,,,,,,,,,,,,,,,,,,,,,,,,,,\n")
             writer.write(",,,,,,,,,,,,,,,,,,,,,,,,,,,\n")
 
-            for (item in items) {
+            for (item in snapshot) {
                 val csvLine = arrayOfNulls<String>(28)
-                csvLine[0] = "" // Token
+                csvLine[0] = item.id ?: "" // Token
                 csvLine[1] = item.name ?: ""
                 csvLine[2] = item.variationName ?: ""
                 csvLine[3] = item.sku ?: ""
@@ -580,43 +542,12 @@ class ItemManager private constructor(context: Context) {
         if (result.contains("\"")) {
             result = result.replace("\"", "\"\"")
         }
-        if (result.contains(",") || result.contains("\"") || result.contains("\n")) {
+        if (result.contains(",") || result.contains("\"") || result.contains("\n") || result.contains("\r")) {
             result = "\"$result\""
         }
         return result
     }
 
-    /**
-     * Parse a CSV line, handling quoted fields that may contain commas.
-     */
-    private fun parseCsvLine(line: String): Array<String> {
-        val result = mutableListOf<String>()
-        val field = StringBuilder()
-        var inQuotes = false
-
-        for (c in line) {
-            when {
-                c == '"' -> {
-                    if (inQuotes && field.isNotEmpty() && field.last() == '"') {
-                        // Escaped quote within quotes
-                        field.append('"')
-                    }
-                    inQuotes = !inQuotes
-                }
-                c == ',' && !inQuotes -> {
-                    result.add(field.toString())
-                    field.setLength(0)
-                }
-                else -> field.append(c)
-            }
-        }
-
-        // Add the last field
-        result.add(field.toString())
-
-        return result.toTypedArray()
-    }
-
     /**
      * Save an image for an item.
      * @param item Item to save image for.
@@ -661,6 +592,7 @@ class ItemManager private constructor(context: Context) {
                         bitmap.compress(Bitmap.CompressFormat.JPEG, 85, outputStream)
                         outputStream.flush()
                     }
+                    ImageLoader.writeThumbnail(imageFile, bitmap)
 
                     // Update the item's image path
                     item.imagePath = imageFile.absolutePath
@@ -713,6 +645,7 @@ class ItemManager private constructor(context: Context) {
                 finalBitmap.compress(Bitmap.CompressFormat.JPEG, 85, outputStream)
                 outputStream.flush()
             }
+            ImageLoader.writeThumbnail(imageFile, finalBitmap)
 
             item.imagePath = imageFile.absolutePath
             updateItem(item)
@@ -732,6 +665,7 @@ class ItemManager private constructor(context: Context) {
         val path = item.imagePath ?: return true
 
         val imageFile = File(path)
+        ImageLoader.deleteThumbnail(imageFile)
         return if (imageFile.exists()) {
             if (imageFile.delete()) {
                 item.imagePath = null
@@ -771,3 +705,27 @@ class ItemManager private constructor(context: Context) {
         }
     }
 }
+
+/** Counts bytes read through it, for import progress. */
+private class CountingInputStream(input: InputStream) : FilterInputStream(input) {
+    var count = 0L
+        private set
+
+    override fun read(): Int {
+        val b = super.read()
+        if (b >= 0) count++
+        return b
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        val n = super.read(b, off, len)
+        if (n > 0) count += n
+        return n
+    }
+
+    override fun skip(n: Long): Long {
+        val skipped = super.skip(n)
+        count += skipped
+        return skipped
+    }
+}
@@ -0,0 +1,214 @@
+package com.electricdreams.numo.core.util
+
+import com.electricdreams.numo.core.model.Item
+import java.text.Normalizer
+import java.util.BitSet
+import java.util.Locale
+
+/**
+ * Incremental text and category index over a list of items, kept in display
+ * order.
+ *
+ * Each item's name, SKU, variation and category are folded once (lowercase,
+ * accents stripped) when it is indexed. Every trigram of the folded text has
+ * a posting bitset over item slots, and every category has a membership
+ * bitset, so a query only intersects a handful of bitsets and then confirms
+ * the surviving candidates with a substring check. Queries shorter than a
+ * trigram fall back to scanning the pre-folded text.
+ *
+ * Not thread-safe; callers serialise access.
+ */
+internal class ItemSearchIndex {
+
+    companion object {
+        private const val GRAM = 3
+
+        /** Separates fields in the folded text so matches cannot straddle two fields. */
+        private const val FIELD_SEPARATOR = '\n'
+
+        private val COMBINING_MARKS = Regex("\\p{Mn}+")
+
+        fun fold(text: String): String {
+            val decomposed = Normalizer.normalize(text, Normalizer.Form.NFD)
+            return COMBINING_MARKS.replace(decomposed, "").lowercase(Locale.ROOT)
+        }
+
+        private fun categoryKey(category: String?): String? =
+            ItemCatalogStore.normalizeCategory(category)?.let { fold(it) }
+    }
+
+    /** Item per slot; null for a free slot. */
+    private val slots = ArrayList<Item?>()
+    private val foldedText = ArrayList<String?>()
+    private val slotCategory = ArrayList<String?>()
+    private val freeSlots = ArrayDeque<Int>()
+    private val slotOf = HashMap<String, Int>()
+
+    /** Slots in display order. */
+    private val order = ArrayList<Int>()
+
+    private val postings = HashMap<String, BitSet>()
+    private val byCategory = HashMap<String, BitSet>()
+
+    /** Display name -> number of items using it, for [categories]. */
+    private val categoryNames = HashMap<String, Int>()
+    private var sortedCategories: List<String>? = null
+
+    val size: Int get() = order.size
+
+    /** Replace the whole index with [items], in that order. */
+    fun rebuild(items: List<Item>) {
+        clear()
+        for (item in items) put(item)
+    }
+
+    /** Index [item] at the end, or re-index it in place if its uuid is already present. */
+    fun put(item: Item) {
+        val existing = slotOf[item.uuid]
+        if (existing != null) {
+            unindexSlot(existing)
+            fill(existing, item)
+            return
+        }
+        val slot = allocate()
+        slotOf[item.uuid] = slot
+        fill(slot, item)
+        order.add(slot)
+    }
+
+    /** Put [item] at the position held by [oldUuid]. */
+    fun replace(oldUuid: String, item: Item) {
+        if (oldUuid != item.uuid) remove(item.uuid)
+        val slot = slotOf.remove(oldUuid) ?: return put(item)
+        unindexSlot(slot)
+        slotOf[item.uuid] = slot
+        fill(slot, item)
+    }
+
+    fun remove(uuid: String): Boolean {
+        val slot = slotOf.remove(uuid) ?: return false
+        unindexSlot(slot)
+        slots[slot] = null
+        order.remove(slot)
+        freeSlots.addLast(slot)
+        return true
+    }
+
+    fun move(fromPosition: Int, toPosition: Int) {
+        if (fromPosition !in order.indices || toPosition !in order.indices) return
+        order.add(toPosition, order.removeAt(fromPosition))
+    }
+
+    fun clear() {
+        slots.clear()
+        foldedText.clear()
+        slotCategory.clear()
+        freeSlots.clear()
+        slotOf.clear()
+        order.clear()
+        postings.clear()
+        byCategory.clear()
+        categoryNames.clear()
+        sortedCategories = null
+    }
+
+    /** Sorted distinct category names (trimmed, non-blank). */
+    fun categories(): List<String> =
+        sortedCategories ?: categoryNames.keys.sorted().also { sortedCategories = it }
+
+    /**
+     * Items whose name, SKU, variation or category contains [query] (ignoring
+     * case and accents) and, if [category] is given, whose category equals it
+     * ignoring case. Results are in display order.
+     */
+    fun search(query: String, category: String? = null): List<Item> {
+        val needle = fold(query.trim())
+        var candidates: BitSet? = null
+
+        if (category != null) {
+            val members = byCategory[categoryKey(category) ?: return emptyList()] ?: return emptyList()
+            candidates = members.clone() as BitSet
+        }
+        if (needle.length >= GRAM) {
+            for (i in 0..needle.length - GRAM) {
+                val posting = postings[needle.substring(i, i + GRAM)] ?: return emptyList()
+                if (candidates == null) {
+                    candidates = posting.clone() as BitSet
+                } else {
+                    candidates.and(posting)
+                }
+                if (candidates.isEmpty) return emptyList()
+            }
+        }
+
+        val result = ArrayList<Item>()
+        for (slot in order) {
+            if (candidates != null && !candidates.get(slot)) continue
+            if (needle.isNotEmpty() && foldedText[slot]?.contains(needle) != true) continue
+            slots[slot]?.let { result.add(it) }
+        }
+        return result
+    }
+
+    private fun allocate(): Int {
+        freeSlots.removeFirstOrNull()?.let { return it }
+        slots.add(null)
+        foldedText.add(null)
+        slotCategory.add(null)
+        return slots.size - 1
+    }
+
+    private fun fill(slot: Int, item: Item) {
+        slots[slot] = item
+
+        val text = buildString {
+            for (field in arrayOf(item.name, item.sku, item.variationName, item.category)) {
+                if (field.isNullOrEmpty()) continue
+                if (isNotEmpty()) append(FIELD_SEPARATOR)
+                append(fold(field))
+            }
+        }
+        foldedText[slot] = text
+        forEachGram(text) { postings.getOrPut(it) { BitSet() }.set(slot) }
+
+        val name = ItemCatalogStore.normalizeCategory(item.category)
+        slotCategory[slot] = name
+        if (name != null) {
+            byCategory.getOrPut(fold(name)) { BitSet() }.set(slot)
+            if (categoryNames.merge(name, 1, Int::plus) == 1) sortedCategories = null
+        }
+    }
+
+    private fun unindexSlot(slot: Int) {
+        foldedText[slot]?.let { text ->
+            forEachGram(text) { gram ->
+                val posting = postings[gram] ?: return@forEachGram
+                posting.clear(slot)
+                if (posting.isEmpty) postings.remove(gram)
+            }
+        }
+        foldedText[slot] = null
+
+        slotCategory[slot]?.let { name ->
+            val key = fold(name)
+            byCategory[key]?.let { members ->
+                members.clear(slot)
+                if (members.isEmpty) byCategory.remove(key)
+            }
+            val remaining = (categoryNames[name] ?: 1) - 1
+            if (remaining <= 0) {
+                categoryNames.remove(name)
+                sortedCategories = null
+            } else {
+                categoryNames[name] = remaining
+            }
+        }
+        slotCategory[slot] = null
+    }
+
+    private inline fun forEachGram(text: String, action: (String) -> Unit) {
+        for (i in 0..text.length - GRAM) {
+            action(text.substring(i, i + GRAM))
+        }
+    }
+}
@@ -6,7 +6,8 @@ import okhttp3.Request
 import java.io.IOException
 
 object LnUrlClient {
-    private val client = OkHttpClient()
+    private val client: OkHttpClient
+        get() = HttpClients.base
     private val gson = Gson()
 
     data class LnUrlPayResponse(
@@ -6,7 +6,6 @@ import android.graphics.BitmapFactory
 import android.util.Log
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
-import okhttp3.OkHttpClient
 import okhttp3.Request
 import java.io.File
 import java.io.FileOutputStream
@@ -64,11 +63,8 @@ object MintIconCache {
         try {
             Log.d(TAG, "Downloading icon for $mintUrl from $iconUrl")
             
-            val client = OkHttpClient.Builder()
-                .connectTimeout(10, java.util.concurrent.TimeUnit.SECONDS)
-                .readTimeout(10, java.util.concurrent.TimeUnit.SECONDS)
-                .build()
-            
+            val client = HttpClients.base
+
             val request = Request.Builder()
                 .url(iconUrl)
                 .get()
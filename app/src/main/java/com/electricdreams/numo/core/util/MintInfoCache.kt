@@ -0,0 +1,104 @@
+package com.electricdreams.numo.core.util
+
+import android.util.Log
+import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.cashu.CashuWalletManager.CachedMintInfo
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.asSharedFlow
+import kotlinx.coroutines.launch
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * In-memory cache of parsed mint info, keyed by normalized mint URL.
+ *
+ * The stored JSON is parsed at most once per change: the first [get] for a
+ * mint parses what [loadJson] returns, and [put] replaces the entry with the
+ * freshly stored info. Mints without stored info are remembered too, so
+ * repeated lookups don't go back to preferences.
+ *
+ * Reads never block on the network. [refreshIfStale] starts a background
+ * [refresher] run for a mint whose last refresh is older than [ttlMs], and
+ * callers keep getting the current entry until it lands. Every change to a
+ * mint's parsed info is announced on [changes].
+ *
+ * @param scope        Scope the background refreshes run in.
+ * @param loadJson     Reads the stored info JSON for a mint, or null.
+ * @param refreshedAtMs Last successful refresh of a mint, 0 if never.
+ * @param refresher    Fetches a mint's info and stores it (ending in [put]).
+ * @param ttlMs        How long a mint's info is served before it is refreshed.
+ */
+class MintInfoCache(
+    private val scope: CoroutineScope,
+    private val loadJson: (String) -> String?,
+    private val refreshedAtMs: (String) -> Long,
+    private val refresher: suspend (String) -> Unit,
+    private val ttlMs: Long = DEFAULT_TTL_MS,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+    companion object {
+        private const val TAG = "MintInfoCache"
+        const val DEFAULT_TTL_MS = 60_000L
+    }
+
+    /** Parsed info, or null when nothing (or nothing parseable) is stored. */
+    private class Entry(val info: CachedMintInfo?)
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+    private val refreshing = ConcurrentHashMap.newKeySet<String>()
+
+    private val _changes = MutableSharedFlow<String>(
+        extraBufferCapacity = 16,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
+
+    /** Mint URLs whose parsed info changed. */
+    val changes: SharedFlow<String> = _changes.asSharedFlow()
+
+    /** Parsed info for [mintUrl], parsing the stored JSON only on first use. */
+    fun get(mintUrl: String): CachedMintInfo? {
+        entries[mintUrl]?.let { return it.info }
+        val entry = Entry(loadJson(mintUrl)?.let(::parse))
+        return (entries.putIfAbsent(mintUrl, entry) ?: entry).info
+    }
+
+    /** Replace the entry for [mintUrl] with freshly stored [infoJson]. */
+    fun put(mintUrl: String, infoJson: String) {
+        val info = parse(infoJson)
+        val previous = entries.put(mintUrl, Entry(info))
+        if (previous == null || previous.info != info) {
+            _changes.tryEmit(mintUrl)
+        }
+    }
+
+    /** Forget [mintUrl] so the next [get] reads the stored JSON again. */
+    fun invalidate(mintUrl: String) {
+        entries.remove(mintUrl)
+    }
+
+    fun isStale(mintUrl: String): Boolean = clock() - refreshedAtMs(mintUrl) > ttlMs
+
+    /**
+     * Start a background refresh of [mintUrl] if its info is stale and no
+     * refresh is already running for it. Returns true if one was started.
+     */
+    fun refreshIfStale(mintUrl: String): Boolean {
+        if (!isStale(mintUrl) || !refreshing.add(mintUrl)) return false
+        scope.launch {
+            try {
+                refresher(mintUrl)
+            } catch (e: Exception) {
+                Log.w(TAG, "Background refresh failed for $mintUrl", e)
+            } finally {
+                refreshing.remove(mintUrl)
+            }
+        }
+        return true
+    }
+
+    private fun parse(infoJson: String): CachedMintInfo? =
+        CashuWalletManager.mintInfoFromJson(infoJson)
+}
@@ -3,10 +3,12 @@ package com.electricdreams.numo.core.util
 import android.content.Context
 import android.content.SharedPreferences
 import android.util.Log
+import com.electricdreams.numo.core.backup.BackupScheduler
 import com.electricdreams.numo.core.cashu.CashuWalletManager
-import com.electricdreams.numo.core.backup.DeviceRecoveryBackup
-import com.electricdreams.numo.nostr.NostrMintBackup
-import org.json.JSONObject
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.SharedFlow
 import java.net.URI
 import java.util.Locale
 
@@ -82,6 +84,19 @@ class MintManager private constructor(context: Context) {
 
     private var listener: MintChangeListener? = null
 
+    // Parsed mint info; stale entries are refreshed in the background
+    private val infoCache = MintInfoCache(
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.IO),
+        loadJson = { preferences.getString(KEY_MINT_INFO_PREFIX + it, null) },
+        refreshedAtMs = { getMintRefreshTimestamp(it) },
+        refresher = { fetchMintLimitsSimple(it, this.context, forceRefresh = true) },
+        ttlMs = REFRESH_INTERVAL_MS
+    )
+
+    /** Normalized URLs of mints whose stored info changed. */
+    val mintInfoChanges: SharedFlow<String>
+        get() = infoCache.changes
+
     init {
         Log.d(TAG, "Initialized with ${allowedMints.size} allowed mints")
         // Ensure preferred Lightning mint is valid (exists in allowed mints)
@@ -112,20 +127,13 @@ class MintManager private constructor(context: Context) {
      * Defaults to true if no cached info is available or on parsing errors.
      */
     fun mintSupportsUnit(mintUrl: String, unit: String): Boolean {
-        val infoJson = getMintInfo(mintUrl) ?: return true
-        return try {
-            val cachedInfo = CashuWalletManager.mintInfoFromJson(infoJson) ?: return true
-            val limits = cachedInfo.mintLimits ?: return true
-            
-            val unitLower = unit.lowercase()
-            val hasMintUnit = limits.mintMethods.any { it.unit.lowercase() == unitLower && !it.disabled }
-            val hasMeltUnit = limits.meltMethods.any { it.unit.lowercase() == unitLower && !it.disabled }
-            
-            hasMintUnit || hasMeltUnit
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to parse mint info for unit check of $mintUrl", e)
-            true
-        }
+        val limits = getCachedMintInfo(mintUrl)?.mintLimits ?: return true
+
+        val unitLower = unit.lowercase()
+        val hasMintUnit = limits.mintMethods.any { it.unit.lowercase() == unitLower && !it.disabled }
+        val hasMeltUnit = limits.meltMethods.any { it.unit.lowercase() == unitLower && !it.disabled }
+
+        return hasMintUnit || hasMeltUnit
     }
 
     /**
@@ -325,9 +333,31 @@ class MintManager private constructor(context: Context) {
     fun setMintInfo(mintUrl: String, infoJson: String) {
         val normalized = normalizeMintUrl(mintUrl)
         preferences.edit().putString(KEY_MINT_INFO_PREFIX + normalized, infoJson).apply()
+        infoCache.put(normalized, infoJson)
         Log.d(TAG, "Stored mint info for $normalized")
     }
 
+    /**
+     * Get parsed mint info for a mint URL from memory.
+     * The stored JSON is only parsed the first time and after it changes.
+     */
+    fun getCachedMintInfo(mintUrl: String): CashuWalletManager.CachedMintInfo? =
+        infoCache.get(normalizeMintUrl(mintUrl))
+
+    /**
+     * Get the mint limits from memory without touching the network.
+     * Returns null when no usable limits are stored yet. If [refreshIfStale]
+     * is set and the info is older than the refresh interval, a background
+     * refresh is started; [mintInfoChanges] announces its result.
+     */
+    fun getCachedMintLimits(mintUrl: String, refreshIfStale: Boolean = true): CashuWalletManager.MintLimits? {
+        val normalized = normalizeMintUrl(mintUrl)
+        if (refreshIfStale) {
+            infoCache.refreshIfStale(normalized)
+        }
+        return infoCache.get(normalized)?.mintLimits?.takeIf { it.mintMethods.isNotEmpty() }
+    }
+
     /**
      * Get stored mint info JSON for a mint URL.
      * @return The JSON string or null if not stored.
@@ -345,17 +375,9 @@ class MintManager private constructor(context: Context) {
      * Returns the mint's name from info if available, otherwise extracts host from URL.
      */
     fun getMintDisplayName(mintUrl: String): String {
-        val infoJson = getMintInfo(mintUrl)
-        if (infoJson != null) {
-            try {
-                val json = JSONObject(infoJson)
-                val name = json.optString("name", "")
-                if (name.isNotEmpty()) {
-                    return name
-                }
-            } catch (e: Exception) {
-                Log.w(TAG, "Failed to parse mint info JSON for $mintUrl", e)
-            }
+        val name = getCachedMintInfo(mintUrl)?.name
+        if (!name.isNullOrEmpty()) {
+            return name
         }
         // Fallback to extracting host from URL
         return extractHostFromUrl(mintUrl)
@@ -365,21 +387,8 @@ class MintManager private constructor(context: Context) {
      * Get the icon URL for a mint.
      * Returns the iconUrl from mint info if available, otherwise null.
      */
-    fun getMintIconUrl(mintUrl: String): String? {
-        val infoJson = getMintInfo(mintUrl)
-        if (infoJson != null) {
-            try {
-                val json = JSONObject(infoJson)
-                val iconUrl = json.optString("iconUrl", "")
-                if (iconUrl.isNotEmpty()) {
-                    return iconUrl
-                }
-            } catch (e: Exception) {
-                Log.w(TAG, "Failed to parse mint info JSON for icon URL: $mintUrl", e)
-            }
-        }
-        return null
-    }
+    fun getMintIconUrl(mintUrl: String): String? =
+        getCachedMintInfo(mintUrl)?.iconUrl?.takeIf { it.isNotEmpty() }
 
     /**
      * Get the mint limits for a mint URL.
@@ -395,19 +404,10 @@ class MintManager private constructor(context: Context) {
         
         // First try cache (works offline) - only if NOT force refresh
         if (!forceRefresh) {
-            val infoJson = getMintInfo(mintUrl)
-            if (infoJson != null) {
-                try {
-                    val cachedInfo = CashuWalletManager.mintInfoFromJson(infoJson)
-                    val cachedLimits = cachedInfo?.mintLimits
-                    
-                    if (cachedLimits != null && cachedLimits.mintMethods.isNotEmpty()) {
-                        Log.d(TAG, "Returning cached limits: $cachedLimits")
-                        return cachedLimits
-                    }
-                } catch (e: Exception) {
-                    Log.w(TAG, "Failed to parse cached mint info", e)
-                }
+            val cachedLimits = getCachedMintLimits(normalizedUrl, refreshIfStale = false)
+            if (cachedLimits != null) {
+                Log.d(TAG, "Returning cached limits: $cachedLimits")
+                return cachedLimits
             }
         } else {
             Log.d(TAG, "forceRefresh=true, skipping cache and fetching from network")
@@ -430,11 +430,7 @@ class MintManager private constructor(context: Context) {
             
             // Get cache info BEFORE fetching (for fallback)
             val cachedInfoBefore = getMintInfo(normalizedUrl)
-            val cachedLimitsBefore = cachedInfoBefore?.let {
-                try {
-                    CashuWalletManager.mintInfoFromJson(it)?.mintLimits
-                } catch (e: Exception) { null }
-            }
+            val cachedLimitsBefore = cachedInfoBefore?.let { getCachedMintInfo(normalizedUrl)?.mintLimits }
             val hasCachedLimitsBefore = cachedLimitsBefore != null && cachedLimitsBefore.mintMethods.isNotEmpty()
             Log.d(TAG, "Cached limits before fetch: $cachedLimitsBefore, hasValid: $hasCachedLimitsBefore")
             
@@ -449,9 +445,7 @@ class MintManager private constructor(context: Context) {
                 
                 if (result.success) {
                     // If the fetch succeeded, get the limits from the response
-                    val infoJson = getMintInfo(normalizedUrl)
-                    val cachedInfo = infoJson?.let { CashuWalletManager.mintInfoFromJson(it) }
-                    val newLimits = cachedInfo?.mintLimits
+                    val newLimits = getCachedMintInfo(normalizedUrl)?.mintLimits
                     
                     // If new limits are valid (not null and has methods), use them
                     // Otherwise, fallback to cached limits (for mints like Minibits that sometimes return empty nuts)
@@ -461,9 +455,7 @@ class MintManager private constructor(context: Context) {
                     } else if (cachedLimitsBefore != null && cachedLimitsBefore.mintMethods.isNotEmpty()) {
                         Log.d(TAG, "Fetch returned empty limits, using cached fallback: $cachedLimitsBefore")
                         // Restore the cache to previous valid state
-                        cachedInfoBefore?.let {
-                            preferences.edit().putString(KEY_MINT_INFO_PREFIX + normalizedUrl, it).apply()
-                        }
+                        cachedInfoBefore?.let { setMintInfo(normalizedUrl, it) }
                         return cachedLimitsBefore
                     }
                     // No limits at all - return null
@@ -476,25 +468,19 @@ class MintManager private constructor(context: Context) {
             }
             
             // Get info from cache (either newly stored or existing)
-            val infoJson = getMintInfo(normalizedUrl)
-            if (infoJson != null) {
-                val cachedInfo = CashuWalletManager.mintInfoFromJson(infoJson)
-                val limits = cachedInfo?.mintLimits
-                Log.d(TAG, "Cache returned: $limits")
-                
-                // If we have valid limits, use them
-                if (limits != null && limits.mintMethods.isNotEmpty()) {
-                    Log.d(TAG, "Using cached limits (has valid mint methods)")
-                    return limits
-                }
+            val limits = getCachedMintInfo(normalizedUrl)?.mintLimits
+            Log.d(TAG, "Cache returned: $limits")
+            
+            // If we have valid limits, use them
+            if (limits != null && limits.mintMethods.isNotEmpty()) {
+                Log.d(TAG, "Using cached limits (has valid mint methods)")
+                return limits
             }
             
             // Fetch failed or no valid limits, use cached if available
             if (hasCachedLimitsBefore) {
                 Log.d(TAG, "Using cached limits as fallback")
-                cachedInfoBefore?.let {
-                    preferences.edit().putString(KEY_MINT_INFO_PREFIX + normalizedUrl, it).apply()
-                }
+                cachedInfoBefore?.let { setMintInfo(normalizedUrl, it) }
                 return cachedLimitsBefore
             }
             
@@ -571,43 +557,12 @@ class MintManager private constructor(context: Context) {
         }
     }
 
-    /** Save current mints to preferences and trigger Nostr backup. */
+    /** Save current mints to preferences and schedule the mint-list backups. */
     private fun saveChanges() {
         preferences.edit().putStringSet(KEY_MINTS, allowedMints).apply()
         
-        // Trigger Nostr mint backup
-        triggerNostrMintBackup()
-    }
-
-    /**
-     * Trigger a Nostr mint backup using keys derived from the wallet mnemonic.
-     * This is called automatically when the mint list changes.
-     */
-    private fun triggerNostrMintBackup() {
-        val mnemonic = CashuWalletManager.getMnemonic()
-        if (mnemonic.isNullOrBlank()) {
-            Log.w(TAG, "Cannot backup mints to Nostr: wallet mnemonic not available")
-            return
-        }
-
-        val mints = getAllowedMints()
-        Log.d(TAG, "Triggering Nostr mint backup for ${mints.size} mints")
-
-        DeviceRecoveryBackup.updateIfEnabled(context)
-
-        NostrMintBackup.publishMintBackup(mnemonic, mints) { result ->
-            if (result.success) {
-                Log.i(TAG, "✅ Nostr mint backup successful!")
-                Log.i(TAG, "   Event ID: ${result.eventId}")
-                Log.i(TAG, "   Published to ${result.successfulRelays.size} relays: ${result.successfulRelays.joinToString(", ")}")
-                if (result.failedRelays.isNotEmpty()) {
-                    Log.w(TAG, "   Failed relays: ${result.failedRelays.joinToString(", ")}")
-                }
-            } else {
-                Log.e(TAG, "❌ Nostr mint backup failed: ${result.error}")
-                Log.e(TAG, "   Failed relays: ${result.failedRelays.joinToString(", ")}")
-            }
-        }
+        // Coalesced with other changes and run in the background
+        BackupScheduler.getInstance(context).request("mints")
     }
 
     /**
@@ -11,7 +11,6 @@ import org.json.JSONArray
 import org.json.JSONObject
 import java.net.URI
 import java.util.Locale
-import java.util.concurrent.TimeUnit
 
 /**
  * Shared service for validating, fetching, and caching mint profile metadata.
@@ -57,10 +56,8 @@ class MintProfileService private constructor(context: Context) {
     private val appContext = context.applicationContext
     private val mintManager = MintManager.getInstance(appContext)
 
-    private val client = OkHttpClient.Builder()
-        .connectTimeout(10, TimeUnit.SECONDS)
-        .readTimeout(10, TimeUnit.SECONDS)
-        .build()
+    private val client: OkHttpClient
+        get() = HttpClients.base
 
     init {
         MintIconCache.initialize(appContext)
@@ -0,0 +1,127 @@
+package com.electricdreams.numo.core.wallet
+
+import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-memory cache of per-mint balances (mint URL -> sats).
+ *
+ * Balances are read from the wallet database only when the cache is dirty:
+ * on first use, after [invalidate] (called by every operation that moves
+ * proofs), and on a periodic reconciliation tick. Clean reads are served
+ * from memory. Invalidations are coalesced, so a burst of writes costs a
+ * single reload.
+ *
+ * @param scope   Scope the background reloads and reconciliation run in.
+ * @param loader  Reads balances from the database, or returns null when the
+ *                wallet is not ready (the cache then stays dirty).
+ * @param reconcileIntervalMs How often the cache is re-read from the database
+ *                even without an invalidation, to catch writes that bypass it.
+ */
+class BalanceCache(
+    private val scope: CoroutineScope,
+    private val loader: suspend () -> Map<String, Long>?,
+    private val reconcileIntervalMs: Long = DEFAULT_RECONCILE_INTERVAL_MS
+) {
+
+    companion object {
+        private const val TAG = "BalanceCache"
+        const val DEFAULT_RECONCILE_INTERVAL_MS = 60_000L
+    }
+
+    private val _balances = MutableStateFlow<Map<String, Long>>(emptyMap())
+
+    /** Latest known balances. Updates after every reload that changes them. */
+    val balances: StateFlow<Map<String, Long>> = _balances.asStateFlow()
+
+    // Incremented on every invalidation; the cache is clean while the last
+    // successful load observed the current value.
+    private val requestedGeneration = AtomicLong(1)
+    @Volatile private var loadedGeneration = 0L
+
+    private val loadLock = Mutex()
+    private val reloadRequests = Channel<Unit>(Channel.CONFLATED)
+    private var workers: List<Job> = emptyList()
+
+    val isDirty: Boolean
+        get() = loadedGeneration != requestedGeneration.get()
+
+    /** Start the background reload and reconciliation loops. Idempotent. */
+    @Synchronized
+    fun start() {
+        if (workers.isNotEmpty()) return
+        workers = listOf(
+            scope.launch {
+                for (request in reloadRequests) {
+                    get()
+                }
+            },
+            scope.launch {
+                while (isActive) {
+                    delay(reconcileIntervalMs)
+                    invalidate("reconcile")
+                }
+            }
+        )
+    }
+
+    /** Stop the background loops. The cache still serves and reloads on reads. */
+    @Synchronized
+    fun stop() {
+        workers.forEach { it.cancel() }
+        workers = emptyList()
+    }
+
+    /**
+     * Mark the cached balances stale and schedule a background reload so
+     * [balances] collectors see the change without having to read.
+     */
+    fun invalidate(reason: String = "") {
+        requestedGeneration.incrementAndGet()
+        if (reason.isNotEmpty()) Log.d(TAG, "Invalidated ($reason)")
+        reloadRequests.trySend(Unit)
+    }
+
+    /** Current balances, reloading from the database only if stale. */
+    suspend fun get(): Map<String, Long> {
+        if (!isDirty) return _balances.value
+        return loadLock.withLock {
+            // Another caller may have reloaded while we waited
+            if (!isDirty) return@withLock _balances.value
+            val generation = requestedGeneration.get()
+            val loaded = try {
+                loader()
+            } catch (e: Exception) {
+                Log.e(TAG, "Error loading balances: ${e.message}", e)
+                null
+            }
+            if (loaded == null) {
+                _balances.value
+            } else {
+                _balances.value = loaded
+                loadedGeneration = generation
+                loaded
+            }
+        }
+    }
+
+    /** Balance for one mint, reloading only if stale. */
+    suspend fun get(mintUrl: String): Long = get()[mintUrl.removeSuffix("/")] ?: 0L
+
+    /** Drop everything, e.g. when the wallet is wiped. */
+    fun clear() {
+        _balances.value = emptyMap()
+        invalidate()
+    }
+}
@@ -24,9 +24,12 @@ import org.cashudevkit.generateMnemonic
  * operations through the WalletProvider interface.
  *
  * @param walletProvider Function that returns the current CDK WalletRepository instance
+ * @param balanceCache   Optional cache that balance reads are served from and that
+ *                       mint, melt and receive operations invalidate
  */
 class CdkWalletProvider(
-    private val walletProvider: () -> WalletRepository?
+    private val walletProvider: () -> WalletRepository?,
+    private val balanceCache: BalanceCache? = null
 ) : WalletProvider, TemporaryMintWalletFactory {
 
     companion object {
@@ -41,6 +44,7 @@ class CdkWalletProvider(
     // ========================================================================
 
     override suspend fun getBalance(mintUrl: String): Satoshis {
+        if (balanceCache != null) return Satoshis(balanceCache.get(mintUrl))
         val w = wallet ?: return Satoshis.ZERO
         return try {
             val balances = w.getBalances()
@@ -59,6 +63,7 @@ class CdkWalletProvider(
     }
 
     override suspend fun getAllBalances(): Map<String, Satoshis> {
+        if (balanceCache != null) return balanceCache.get().mapValues { Satoshis(it.value) }
         val w = wallet ?: return emptyMap()
         return try {
             val balanceMap = w.getBalances()
@@ -148,6 +153,7 @@ class CdkWalletProvider(
 
             Log.d(TAG, "Minting proofs for quote $quoteId")
             val proofs = mintWallet.mint(quoteId, SplitTarget.None, null)
+            balanceCache?.invalidate("mint")
 
             val result = MintResult(
                 proofsCount = proofs.size,
@@ -209,7 +215,12 @@ class CdkWalletProvider(
 
             Log.d(TAG, "Executing melt for quote $quoteId")
             val prepared = mintWallet.prepareMelt(quoteId)
-            val finalized = prepared.confirm()
+            val finalized = try {
+                prepared.confirm()
+            } finally {
+                // Proofs are reserved or spent even when confirmation fails
+                balanceCache?.invalidate("melt")
+            }
 
             val result = MeltResult(
                 success = finalized.state == CdkQuoteState.PAID,
@@ -265,6 +276,7 @@ class CdkWalletProvider(
             val totalAmount = cdkToken.value().value.toLong()
             Log.d(TAG, "Receiving token from mint ${mintUrl.url}, amount=$totalAmount $tokenUnit")
             mintWallet.receive(cdkToken, receiveOptions)
+            balanceCache?.invalidate("receive")
 
             val result = ReceiveResult(
                 amount = Satoshis(totalAmount),
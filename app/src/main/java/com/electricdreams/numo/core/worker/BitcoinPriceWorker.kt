@@ -7,14 +7,15 @@ import android.os.Looper
 import android.util.Log
 import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.util.CurrencyManager
+import com.electricdreams.numo.core.util.HttpClients
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
 import org.json.JSONException
-import java.io.BufferedReader
 import java.io.IOException
-import java.io.InputStreamReader
-import java.net.HttpURLConnection
-import java.net.URI
-import java.net.URISyntaxException
-import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
@@ -54,7 +55,12 @@ class BitcoinPriceWorker private constructor(context: Context) {
     private val context: Context = context.applicationContext
     private val mainHandler = Handler(Looper.getMainLooper())
     private val currencyManager: CurrencyManager = CurrencyManager.getInstance(context)
-    private val priceByCurrency: MutableMap<String, Double> = mutableMapOf()
+    private val priceByCurrency: MutableMap<String, Double> = ConcurrentHashMap()
+
+    private val priceClient: OkHttpClient = HttpClients.newBuilder()
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .readTimeout(5, TimeUnit.SECONDS)
+        .build()
 
     private var scheduler: ScheduledExecutorService? = null
     private var listener: PriceUpdateListener? = null
@@ -197,59 +203,42 @@ class BitcoinPriceWorker private constructor(context: Context) {
         if (isTesting) {
             return
         }
-        Thread {
-            var connection: HttpURLConnection? = null
-            var reader: BufferedReader? = null
-
-            try {
-                val currency = currencyManager.getCurrentCurrency()
-                val apiUrl = currencyManager.getPriceApiUrl()
-                Log.d(TAG, "Fetching Bitcoin price in $currency from: $apiUrl")
-
-                val uri = URI(apiUrl)
-                val url: URL = uri.toURL()
-
-                connection = (url.openConnection() as HttpURLConnection).apply {
-                    requestMethod = "GET"
-                    connectTimeout = 5000
-                    readTimeout = 5000
-                }
+        val currency = currencyManager.getCurrentCurrency()
+        val apiUrl = currencyManager.getPriceApiUrl()
+        val request = try {
+            Request.Builder().url(apiUrl).get().build()
+        } catch (e: IllegalArgumentException) {
+            Log.e(TAG, "Invalid Bitcoin price URL: ${e.message}", e)
+            return
+        }
+        Log.d(TAG, "Fetching Bitcoin price in $currency from: $apiUrl")
 
-                val responseCode = connection.responseCode
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    reader = BufferedReader(InputStreamReader(connection.inputStream))
-                    val response = buildString {
-                        var line: String?
-                        while (reader!!.readLine().also { line = it } != null) {
-                            append(line)
-                        }
-                    }
+        // Runs on the shared OkHttp dispatcher; the connection to the price API stays pooled between ticks
+        priceClient.newCall(request).enqueue(object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                Log.e(TAG, "Error fetching Bitcoin price: ${e.message}", e)
+            }
 
-                    val price = currencyManager.parsePriceResponse(response)
+            override fun onResponse(call: Call, response: Response) {
+                response.use {
+                    if (!it.isSuccessful) {
+                        Log.e(TAG, "Failed to fetch Bitcoin price, response code: ${it.code}")
+                        return
+                    }
+                    try {
+                        val price = currencyManager.parsePriceResponse(it.body?.string().orEmpty())
 
-                    priceByCurrency[currency] = price
-                    cachePrice(currency, price)
+                        priceByCurrency[currency] = price
+                        cachePrice(currency, price)
 
-                    Log.d(TAG, "Bitcoin price updated: $price $currency")
-                    notifyListener()
-                } else {
-                    Log.e(TAG, "Failed to fetch Bitcoin price, response code: $responseCode")
-                }
-            } catch (e: IOException) {
-                Log.e(TAG, "Error fetching Bitcoin price: ${e.message}", e)
-            } catch (e: JSONException) {
-                Log.e(TAG, "Error parsing Bitcoin price JSON: ${e.message}", e)
-            } catch (e: URISyntaxException) {
-                Log.e(TAG, "Invalid Bitcoin price URI: ${e.message}", e)
-            } finally {
-                try {
-                    reader?.close()
-                } catch (e: IOException) {
-                    Log.e(TAG, "Error closing reader: ${e.message}", e)
+                        Log.d(TAG, "Bitcoin price updated: $price $currency")
+                        notifyListener()
+                    } catch (e: JSONException) {
+                        Log.e(TAG, "Error parsing Bitcoin price JSON: ${e.message}", e)
+                    }
                 }
-                connection?.disconnect()
             }
-        }.start()
+        })
     }
 
     /** Cache the Bitcoin price for a specific currency in SharedPreferences. */
@@ -358,6 +358,8 @@ class AutoWithdrawManager private constructor(private val context: Context) {
                 } catch (e: Exception) {
                     Log.e(TAG, "   Melt failed: ${e.message}", e)
                     throw e
+                } finally {
+                    CashuWalletManager.invalidateBalances("auto_withdrawal")
                 }
             }
 
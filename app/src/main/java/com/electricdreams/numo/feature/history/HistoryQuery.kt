@@ -0,0 +1,55 @@
+package com.electricdreams.numo.feature.history
+
+import com.electricdreams.numo.core.data.model.HistoryEntry
+import com.electricdreams.numo.core.data.model.PaymentHistoryEntry
+
+/** Sources that can be merged into the activity list. */
+enum class HistoryEntryType {
+    PAYMENT,
+    WITHDRAWAL,
+}
+
+/** Status filter offered on the history screen. */
+enum class HistoryStatusFilter {
+    ALL,
+    PAID,
+    PENDING;
+
+    fun matches(entry: HistoryEntry): Boolean = when (this) {
+        ALL -> true
+        PAID -> !entry.isPending()
+        PENDING -> entry.isPending()
+    }
+
+    /** Same test against a raw status string, for index-only filtering. */
+    fun matchesStatus(status: String): Boolean = when (this) {
+        ALL -> true
+        PAID -> status != PaymentHistoryEntry.STATUS_PENDING
+        PENDING -> status == PaymentHistoryEntry.STATUS_PENDING
+    }
+}
+
+/**
+ * Position of the last entry of a page. Entries are ordered newest-first by
+ * (date, id), so the next page starts strictly after this key.
+ */
+data class HistoryCursor(
+    val dateMillis: Long,
+    val id: String,
+) {
+    /** True if [entry] sorts after this cursor in newest-first order. */
+    fun precedes(entry: HistoryEntry): Boolean {
+        val date = entry.date.time
+        return date < dateMillis || (date == dateMillis && entry.id < id)
+    }
+
+    companion object {
+        fun of(entry: HistoryEntry) = HistoryCursor(entry.date.time, entry.id)
+    }
+}
+
+/** One page of merged history; [nextCursor] is null once the range is exhausted. */
+data class HistoryPage(
+    val entries: List<HistoryEntry>,
+    val nextCursor: HistoryCursor?,
+)
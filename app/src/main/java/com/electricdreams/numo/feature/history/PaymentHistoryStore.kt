@@ -0,0 +1,466 @@
+package com.electricdreams.numo.feature.history
+
+import android.content.Context
+import android.util.Log
+import com.electricdreams.numo.core.data.model.PaymentHistoryEntry
+import com.electricdreams.numo.core.util.AppendOnlyJournal
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.TreeSet
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Append-only, indexed storage for [PaymentHistoryEntry] records.
+ *
+ * Every mutation appends a single line to a journal file instead of rewriting
+ * the whole history, and an in-memory index maps each entry id to the byte
+ * offset of its latest record. Reads by id are a seek plus one JSON parse,
+ * and writes are a single append regardless of how many sales are stored.
+ *
+ * Journal format, one record per line:
+ * ```
+ * P<TAB>id<TAB>dateMillis<TAB>status<TAB>{entry json}
+ * D<TAB>id
+ * ```
+ * The header fields let the index be rebuilt at startup without parsing any
+ * entry JSON. [compact] keeps only each entry's latest record.
+ *
+ * A second, time-sorted index backs [query] so the history screen can page
+ * through a date range newest-first without reading records outside the page.
+ *
+ * The legacy `PaymentHistory/history` JSON blob is folded into the journal the
+ * first time it is seen and then removed from SharedPreferences.
+ */
+class PaymentHistoryStore private constructor(context: Context) {
+
+    companion object {
+        private const val TAG = "PaymentHistoryStore"
+        private const val DIR_NAME = "payment_history"
+        private const val JOURNAL_NAME = "journal.log"
+        private const val LEGACY_PREFS_NAME = "PaymentHistory"
+        private const val LEGACY_KEY_HISTORY = "history"
+
+        private const val OP_PUT = 'P'
+        private const val OP_DELETE = 'D'
+        private const val SEPARATOR = '\t'
+        private const val NEWLINE = '\n'.code
+
+        private const val COMPACTION_MIN_GARBAGE = 256
+
+        @Volatile
+        private var instance: PaymentHistoryStore? = null
+
+        private val completedListeners = CopyOnWriteArrayList<CompletedPaymentListener>()
+
+        /**
+         * Register for changes to the set of completed payments. Listeners are
+         * process-wide so they can be installed before the store is first opened.
+         */
+        @JvmStatic
+        fun addCompletedPaymentListener(listener: CompletedPaymentListener) {
+            if (!completedListeners.contains(listener)) completedListeners.add(listener)
+        }
+
+        @JvmStatic
+        fun removeCompletedPaymentListener(listener: CompletedPaymentListener) {
+            completedListeners.remove(listener)
+        }
+
+        @JvmStatic
+        @Synchronized
+        fun getInstance(context: Context): PaymentHistoryStore {
+            if (instance == null) {
+                instance = PaymentHistoryStore(context.applicationContext)
+            }
+            return instance as PaymentHistoryStore
+        }
+    }
+
+    /**
+     * Notified, while the store's lock is held and after its index has been
+     * updated, whenever a completed payment stops counting ([removed]: deleted,
+     * or replaced by a new version) or starts counting ([added]).
+     */
+    interface CompletedPaymentListener {
+        fun onCompletedPaymentChanged(removed: PaymentHistoryEntry?, added: PaymentHistoryEntry?)
+
+        /** The history was cleared or bulk-imported; anything derived from it must be recomputed. */
+        fun onHistoryReset()
+    }
+
+    /** Location of an entry's latest record in the journal plus the fields needed for filtering. */
+    private data class Slot(
+        val offset: Long,
+        val length: Int,
+        val dateMillis: Long,
+        val status: String,
+    )
+
+    /** Ascending (date, id) key used by the time index. */
+    private data class TimeKey(val dateMillis: Long, val id: String) : Comparable<TimeKey> {
+        override fun compareTo(other: TimeKey): Int {
+            val byDate = dateMillis.compareTo(other.dateMillis)
+            return if (byDate != 0) byDate else id.compareTo(other.id)
+        }
+    }
+
+    private val legacyPrefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE)
+    private val journal = AppendOnlyJournal(
+        File(File(context.filesDir, DIR_NAME).apply { mkdirs() }, JOURNAL_NAME),
+        "payment history",
+        COMPACTION_MIN_GARBAGE,
+    )
+    private val journalFile = journal.file
+    private val gson = Gson()
+
+    /** id -> latest record; iteration order is the order entries were first added. */
+    private val index = LinkedHashMap<String, Slot>()
+
+    /** Every live entry ordered by date, kept in step with [index]. */
+    private val byTime = TreeSet<TimeKey>()
+
+    /** Set while the legacy blob is imported; per-entry notifications are replaced by one reset. */
+    private var migrating = false
+
+    /** Set when the legacy blob failed to parse; it is kept and retried on the next launch. */
+    private var legacyUnreadable = false
+
+    init {
+        replayJournal()
+    }
+
+    /** Number of live entries. */
+    @Synchronized
+    fun size(): Int {
+        migrateLegacyBlob()
+        return index.size
+    }
+
+    /** All entries in the order they were first added (oldest first). */
+    @Synchronized
+    fun getAll(): List<PaymentHistoryEntry> {
+        migrateLegacyBlob()
+        if (index.isEmpty()) return emptyList()
+        return RandomAccessFile(journalFile, "r").use { file ->
+            index.values.mapNotNull { readEntry(file, it) }
+        }
+    }
+
+    /** Pending entries only, without reading any settled records. */
+    @Synchronized
+    fun getPending(): List<PaymentHistoryEntry> {
+        migrateLegacyBlob()
+        val pending = index.values.filter { it.status == PaymentHistoryEntry.STATUS_PENDING }
+        if (pending.isEmpty()) return emptyList()
+        return RandomAccessFile(journalFile, "r").use { file ->
+            pending.mapNotNull { readEntry(file, it) }
+        }
+    }
+
+    /**
+     * Newest-first page of entries dated within [fromMillis]..[toMillis]
+     * (inclusive) whose [PaymentHistoryEntry.status] satisfies [statusMatches].
+     * Pass the previous page's last key as [after] to continue. Only the
+     * returned records are read from disk.
+     */
+    @Synchronized
+    fun query(
+        fromMillis: Long,
+        toMillis: Long,
+        statusMatches: (String) -> Boolean,
+        limit: Int,
+        after: HistoryCursor? = null,
+    ): List<PaymentHistoryEntry> {
+        migrateLegacyBlob()
+        if (limit <= 0 || byTime.isEmpty()) return emptyList()
+
+        val low = TimeKey(fromMillis, "")
+        val rangeHigh = TimeKey(toMillis, Char.MAX_VALUE.toString())
+        val cursorHigh = after?.let { TimeKey(it.dateMillis, it.id) }
+        val (high, highInclusive) = if (cursorHigh != null && cursorHigh < rangeHigh) {
+            cursorHigh to false
+        } else {
+            rangeHigh to true
+        }
+        if (high < low) return emptyList()
+
+        val slots = ArrayList<Slot>(minOf(limit, byTime.size))
+        val iterator = byTime.subSet(low, true, high, highInclusive).descendingIterator()
+        while (iterator.hasNext() && slots.size < limit) {
+            val slot = index[iterator.next().id] ?: continue
+            if (statusMatches(slot.status)) {
+                slots.add(slot)
+            }
+        }
+        if (slots.isEmpty()) return emptyList()
+
+        return RandomAccessFile(journalFile, "r").use { file ->
+            slots.mapNotNull { readEntry(file, it) }
+        }
+    }
+
+    /**
+     * Visit every entry dated within [fromMillis]..[toMillis] (inclusive)
+     * whose status satisfies [statusMatches], newest first, reading one
+     * record at a time. Unlike [query] there is no page limit and nothing is
+     * buffered. [action] runs under the store's lock and must not modify it.
+     */
+    @Synchronized
+    fun forEachInRange(
+        fromMillis: Long,
+        toMillis: Long,
+        statusMatches: (String) -> Boolean,
+        action: (PaymentHistoryEntry) -> Unit,
+    ) {
+        migrateLegacyBlob()
+        if (byTime.isEmpty() || toMillis < fromMillis) return
+
+        val range = byTime.subSet(TimeKey(fromMillis, ""), true, TimeKey(toMillis, Char.MAX_VALUE.toString()), true)
+        if (range.isEmpty()) return
+        RandomAccessFile(journalFile, "r").use { file ->
+            for (key in range.descendingSet()) {
+                val slot = index[key.id] ?: continue
+                if (statusMatches(slot.status)) {
+                    readEntry(file, slot)?.let(action)
+                }
+            }
+        }
+    }
+
+    /** Date of the oldest entry, or null when the history is empty. */
+    @Synchronized
+    fun oldestDateMillis(): Long? {
+        migrateLegacyBlob()
+        return if (byTime.isEmpty()) null else byTime.first().dateMillis
+    }
+
+    @Synchronized
+    fun get(id: String): PaymentHistoryEntry? {
+        migrateLegacyBlob()
+        val slot = index[id] ?: return null
+        return RandomAccessFile(journalFile, "r").use { readEntry(it, slot) }
+    }
+
+    /** Number of entries with [status], answered from the index alone. */
+    @Synchronized
+    fun countWithStatus(status: String): Int {
+        migrateLegacyBlob()
+        return index.values.count { it.status == status }
+    }
+
+    @Synchronized
+    fun contains(id: String): Boolean {
+        migrateLegacyBlob()
+        return index.containsKey(id)
+    }
+
+    /** Insert or replace an entry. An existing entry keeps its position in [getAll]. */
+    @Synchronized
+    fun put(entry: PaymentHistoryEntry) {
+        migrateLegacyBlob()
+        appendPut(entry)
+    }
+
+    /**
+     * Read-modify-write a single entry. [transform] may return null to leave
+     * the entry untouched. Returns the stored result, or null if nothing changed.
+     */
+    @Synchronized
+    fun update(
+        id: String,
+        transform: (PaymentHistoryEntry) -> PaymentHistoryEntry?,
+    ): PaymentHistoryEntry? {
+        migrateLegacyBlob()
+        val existing = get(id) ?: return null
+        val updated = transform(existing) ?: return null
+        appendPut(updated)
+        return updated
+    }
+
+    /** Remove an entry. Returns true if it existed. */
+    @Synchronized
+    fun remove(id: String): Boolean {
+        migrateLegacyBlob()
+        val slot = index[id] ?: return false
+        val removed = readIfCompleted(slot)
+        journal.append("$OP_DELETE$SEPARATOR$id\n", 1)
+        index.remove(id)
+        byTime.remove(TimeKey(slot.dateMillis, id))
+        if (removed != null) notifyCompletedChanged(removed, null)
+        compactIfNeeded()
+        return true
+    }
+
+    /** Remove an entry only if [predicate] matches its current value. */
+    @Synchronized
+    fun removeIf(id: String, predicate: (PaymentHistoryEntry) -> Boolean): Boolean {
+        val existing = get(id) ?: return false
+        return predicate(existing) && remove(id)
+    }
+
+    /** Drop every entry and truncate the journal. */
+    @Synchronized
+    fun clear() {
+        legacyPrefs.edit().remove(LEGACY_KEY_HISTORY).apply()
+        index.clear()
+        byTime.clear()
+        try {
+            journal.truncate()
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to truncate payment history journal", e)
+        }
+        completedListeners.forEach { it.onHistoryReset() }
+    }
+
+    /**
+     * Rewrite the journal so it only contains live records. Runs automatically
+     * once superseded records outnumber live ones.
+     */
+    @Synchronized
+    fun compact() {
+        val compacted = LinkedHashMap<String, Slot>(index.size)
+        val rewritten = journal.rewrite(index.size) { out ->
+            RandomAccessFile(journalFile, "r").use { source ->
+                var offset = 0L
+                for ((id, slot) in index) {
+                    val json = ByteArray(slot.length)
+                    source.seek(slot.offset)
+                    source.readFully(json)
+                    val header = putHeader(id, slot.dateMillis, slot.status)
+                    out.write(header)
+                    out.write(json)
+                    out.write(NEWLINE)
+                    compacted[id] = slot.copy(offset = offset + header.size)
+                    offset += header.size + json.size + 1
+                }
+            }
+        }
+        if (!rewritten) return
+
+        index.clear()
+        index.putAll(compacted)
+    }
+
+    private fun compactIfNeeded() {
+        if (journal.needsCompaction(index.size)) compact()
+    }
+
+    private fun appendPut(entry: PaymentHistoryEntry) {
+        val removed = index[entry.id]?.let { readIfCompleted(it) }
+        val header = putHeader(entry.id, entry.date.time, entry.status)
+        val json = gson.toJson(entry).toByteArray(Charsets.UTF_8)
+
+        val record = ByteArray(header.size + json.size + 1)
+        System.arraycopy(header, 0, record, 0, header.size)
+        System.arraycopy(json, 0, record, header.size, json.size)
+        record[record.size - 1] = NEWLINE.toByte()
+        val jsonOffset = journal.append(record, 1) + header.size
+
+        index.put(entry.id, Slot(jsonOffset, json.size, entry.date.time, entry.status))?.let {
+            byTime.remove(TimeKey(it.dateMillis, entry.id))
+        }
+        byTime.add(TimeKey(entry.date.time, entry.id))
+        val added = if (!migrating && entry.isCompleted()) entry else null
+        if (removed != null || added != null) notifyCompletedChanged(removed, added)
+        compactIfNeeded()
+    }
+
+    /** Previous version of a completed entry, read only when someone is listening. */
+    private fun readIfCompleted(slot: Slot): PaymentHistoryEntry? {
+        if (migrating || completedListeners.isEmpty() || slot.status != PaymentHistoryEntry.STATUS_COMPLETED) return null
+        return RandomAccessFile(journalFile, "r").use { readEntry(it, slot) }
+    }
+
+    private fun notifyCompletedChanged(removed: PaymentHistoryEntry?, added: PaymentHistoryEntry?) {
+        completedListeners.forEach { listener ->
+            try {
+                listener.onCompletedPaymentChanged(removed, added)
+            } catch (e: Exception) {
+                Log.e(TAG, "Completed payment listener failed", e)
+            }
+        }
+    }
+
+    private fun putHeader(id: String, dateMillis: Long, status: String): ByteArray =
+        "$OP_PUT$SEPARATOR$id$SEPARATOR$dateMillis$SEPARATOR$status$SEPARATOR".toByteArray(Charsets.UTF_8)
+
+    private fun readEntry(file: RandomAccessFile, slot: Slot): PaymentHistoryEntry? {
+        return try {
+            val bytes = ByteArray(slot.length)
+            file.seek(slot.offset)
+            file.readFully(bytes)
+            gson.fromJson(String(bytes, Charsets.UTF_8), PaymentHistoryEntry::class.java)
+        } catch (e: Exception) {
+            Log.e(TAG, "Unreadable payment history record at ${slot.offset}", e)
+            null
+        }
+    }
+
+    /** Rebuild [index] from the journal headers. */
+    private fun replayJournal() {
+        index.clear()
+        byTime.clear()
+        journal.replay(::applyReplayedRecord)
+        index.forEach { (id, slot) -> byTime.add(TimeKey(slot.dateMillis, id)) }
+        Log.d(TAG, "Loaded ${index.size} payment history entries from ${journal.records} records")
+    }
+
+    /** Index one record; only the header before the entry JSON is decoded. */
+    private fun applyReplayedRecord(record: ByteArray, offset: Long) {
+        var jsonStart = -1
+        var separators = 0
+        if (record.isNotEmpty() && record[0] == OP_PUT.code.toByte()) {
+            for (i in record.indices) {
+                if (record[i] == SEPARATOR.code.toByte() && ++separators == 4) {
+                    jsonStart = i + 1
+                    break
+                }
+            }
+        }
+        val header = String(record, 0, if (jsonStart >= 0) jsonStart else record.size, Charsets.UTF_8)
+        val parts = header.split(SEPARATOR)
+        when {
+            parts.size >= 5 && parts[0] == OP_PUT.toString() && jsonStart >= 0 -> {
+                val dateMillis = parts[2].toLongOrNull() ?: return
+                index[parts[1]] = Slot(offset + jsonStart, record.size - jsonStart, dateMillis, parts[3])
+            }
+            parts.size >= 2 && parts[0] == OP_DELETE.toString() -> index.remove(parts[1])
+            else -> Log.w(TAG, "Skipping malformed payment history record")
+        }
+    }
+
+    /**
+     * Fold the legacy single-blob history into the journal. Entries are
+     * upserted by id so a blob written by an older build (or restored from an
+     * old backup) is merged rather than duplicated. The blob is only removed
+     * once every entry has been imported; an unreadable blob is left in place
+     * and retried the next time the store is opened.
+     */
+    private fun migrateLegacyBlob() {
+        if (migrating || legacyUnreadable || !legacyPrefs.contains(LEGACY_KEY_HISTORY)) return
+
+        val legacy: List<PaymentHistoryEntry> = try {
+            val json = legacyPrefs.getString(LEGACY_KEY_HISTORY, null)
+            val type = object : TypeToken<ArrayList<PaymentHistoryEntry>>() {}.type
+            gson.fromJson<List<PaymentHistoryEntry>>(json, type) ?: emptyList()
+        } catch (e: Exception) {
+            Log.e(TAG, "Legacy payment history is unreadable, keeping it and skipping migration", e)
+            legacyUnreadable = true
+            return
+        }
+
+        migrating = true
+        try {
+            @Suppress("SENSELESS_COMPARISON") // Gson bypasses Kotlin null-safety
+            legacy.filter { it.id != null && it.date != null }.forEach { appendPut(it) }
+            legacyPrefs.edit().remove(LEGACY_KEY_HISTORY).commit()
+        } finally {
+            migrating = false
+        }
+        completedListeners.forEach { it.onHistoryReset() }
+        Log.d(TAG, "Migrated ${legacy.size} legacy payment history entries")
+    }
+}
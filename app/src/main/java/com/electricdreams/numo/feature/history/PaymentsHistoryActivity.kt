@@ -18,6 +18,7 @@ import androidx.appcompat.app.AppCompatActivity
 import com.electricdreams.numo.ui.util.DialogHelper
 import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
 import com.electricdreams.numo.feature.enableEdgeToEdgeWithPill
 import com.electricdreams.numo.R
 import androidx.appcompat.widget.PopupMenu
@@ -34,8 +35,6 @@ import com.electricdreams.numo.feature.autowithdraw.AutoWithdrawManager
 import com.electricdreams.numo.feature.autowithdraw.WithdrawHistoryEntry
 import com.electricdreams.numo.payment.PaymentIntentFactory
 import com.electricdreams.numo.ui.adapter.PaymentsHistoryAdapter
-import com.google.gson.Gson
-import com.google.gson.reflect.TypeToken
 import com.google.android.material.datepicker.CalendarConstraints
 import com.google.android.material.datepicker.DateValidatorPointBackward
 import com.google.android.material.datepicker.MaterialDatePicker
@@ -43,7 +42,6 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import java.lang.reflect.Type
 import java.text.SimpleDateFormat
 import java.util.Collections
 import java.util.Date
@@ -58,6 +56,9 @@ class PaymentsHistoryActivity : AppCompatActivity() {
 
     private var currentHistoryList = listOf<HistoryEntry>()
 
+    /** Where the next page starts, or null once the filtered range is exhausted. */
+    private var nextCursor: HistoryCursor? = null
+
     private var loadHistoryJob: kotlinx.coroutines.Job? = null
 
     private val csvExportLauncher: ActivityResultLauncher<String> =
@@ -100,11 +101,18 @@ class PaymentsHistoryActivity : AppCompatActivity() {
 
         binding.historyRecyclerView.adapter = adapter
         binding.historyRecyclerView.layoutManager = LinearLayoutManager(this)
+        binding.historyRecyclerView.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                val layoutManager = recyclerView.layoutManager as LinearLayoutManager
+                if (layoutManager.findLastVisibleItemPosition() >= adapter.itemCount - PAGE_PREFETCH_DISTANCE) {
+                    loadNextPage()
+                }
+            }
+        })
 
         setupFilterBar()
 
-        // Load and display history
-        loadHistory()
+        // History is loaded by onResume, which always follows onCreate
 
         // Load wallet balance
         loadBalance()
@@ -118,8 +126,9 @@ class PaymentsHistoryActivity : AppCompatActivity() {
         }
         BalanceRefreshBroadcast.register(this, balanceReceiver!!)
         
-        // Reload history when returning (e.g., after resuming a pending payment)
-        loadHistory()
+        // Refresh history when returning (e.g., after resuming a pending payment),
+        // keeping the pages already loaded so the scroll position survives
+        loadHistory(keepLoadedRange = true)
         loadBalance()
     }
 
@@ -145,8 +154,8 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 }
             }
             REQUEST_RESUME_PAYMENT -> {
-                // Payment resumed - reload history to reflect any changes
-                loadHistory()
+                // Payment resumed - refresh history to reflect any changes
+                loadHistory(keepLoadedRange = true)
             }
         }
     }
@@ -271,8 +280,8 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                     }
                     startActivity(intent)
                     
-                    // Reload list
-                    loadHistory()
+                    // Refresh list in place
+                    loadHistory(keepLoadedRange = true)
                 } else {
                     // Fall back to resume if not finalized
                     resumePendingPayment(entry)
@@ -435,13 +444,12 @@ class PaymentsHistoryActivity : AppCompatActivity() {
         val currentEnd = prefs.getLong(KEY_FILTER_DATE_END, 0L)
 
         // Find the oldest transaction to constrain the picker's start date
-        val paymentHistory: List<HistoryEntry> = getPaymentHistory()
-        val withdrawHistory: List<HistoryEntry> = AutoWithdrawManager.getInstance(this)
+        val oldestPayment = PaymentHistoryStore.getInstance(this).oldestDateMillis()
+        val oldestWithdrawal = AutoWithdrawManager.getInstance(this)
             .getHistory()
             .filter { it.status != WithdrawHistoryEntry.STATUS_FAILED }
-        
-        val allHistory = paymentHistory + withdrawHistory
-        val oldestDate = allHistory.minByOrNull { it.date.time }?.date?.time
+            .minOfOrNull { it.timestamp }
+        val oldestDate = listOfNotNull(oldestPayment, oldestWithdrawal).minOrNull()
         
         val today = MaterialDatePicker.todayInUtcMilliseconds()
         
@@ -549,82 +557,105 @@ class PaymentsHistoryActivity : AppCompatActivity() {
         popup.show()
     }
 
-    private fun loadHistory() {
+    /**
+     * Query the history with the current filters and show it. A filter change
+     * starts over at the first page; with [keepLoadedRange] every row already
+     * loaded is re-read instead, so the list is refreshed in place.
+     */
+    private fun loadHistory(keepLoadedRange: Boolean = false) {
+        val limit = if (keepLoadedRange) maxOf(PAGE_SIZE, currentHistoryList.size) else PAGE_SIZE
         loadHistoryJob?.cancel()
         loadHistoryJob = lifecycleScope.launch {
-            val (filteredList, isEmpty) = withContext(ioDispatcher) {
+            val page = withContext(ioDispatcher) {
                 // Stale BTCPay pending entries (no resume data) will never be resolved by polling
                 // if the app was killed mid-flow — expire them now so they don't sit as "Pending" forever.
                 expireStaleBtcPayEntries()
 
-                val appContext = this@PaymentsHistoryActivity.applicationContext
-                val prefs = appContext.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                val filterState = prefs.getInt(KEY_FILTER_STATE, FILTER_ALL) // Show all by default
-                val filterStart = prefs.getLong(KEY_FILTER_DATE_START, 0L)
-                val filterEnd = prefs.getLong(KEY_FILTER_DATE_END, 0L)
-
-                val paymentHistory: List<HistoryEntry> = getPaymentHistory(appContext)
-                val withdrawHistory: List<HistoryEntry> = AutoWithdrawManager.getInstance(appContext)
-                    .getHistory()
-                    .filter { it.status != WithdrawHistoryEntry.STATUS_FAILED }
-
-                // Merge and sort by date descending (newest first)
-                var list = (paymentHistory + withdrawHistory)
-                    .sortedByDescending { it.date.time }
-
-                // Apply Status Filter
-                if (filterState == FILTER_PAID) {
-                    list = list.filterNot { it.isPending() }
-                } else if (filterState == FILTER_PENDING) {
-                    list = list.filter { it.isPending() }
-                }
+                queryFilteredHistory(cursor = null, limit = limit)
+            }
 
-                // Apply Date Filter
-                if (filterStart > 0 && filterEnd > 0) {
-                    // MaterialDatePicker returns UTC midnights. To include the full end day:
-                    val endOfDay = filterEnd + 86400000L - 1L
-                    list = list.filter { it.date.time in filterStart..endOfDay }
-                }
+            nextCursor = page.nextCursor
+            showEntries(page.entries)
+        }
+    }
 
-                list to list.isEmpty()
-            }
+    private fun showEntries(entries: List<HistoryEntry>) {
+        currentHistoryList = entries
+        adapter.setEntries(currentHistoryList)
+
+        val isEmptyList = currentHistoryList.isEmpty()
+        binding.emptyView.root.visibility = if (isEmptyList) View.VISIBLE else View.GONE
+        if (isEmptyList) {
+            EmptyStateHelper.bind(
+                binding.emptyView.root,
+                R.drawable.ic_receipt,
+                "No Payments Yet",
+                "Payment history will appear here once you start accepting payments"
+            )
+        }
+    }
 
-            currentHistoryList = filteredList
-            adapter.setEntries(currentHistoryList)
-
-            val isEmptyList = isEmpty
-            binding.emptyView.root.visibility = if (isEmptyList) View.VISIBLE else View.GONE
-            if (isEmptyList) {
-                EmptyStateHelper.bind(
-                    binding.emptyView.root,
-                    R.drawable.ic_receipt,
-                    "No Payments Yet",
-                    "Payment history will appear here once you start accepting payments"
-                )
-            }
+    /**
+     * Append the next page when the list is scrolled near its end. Does nothing
+     * while a load is in flight or once the filtered range is exhausted.
+     */
+    private fun loadNextPage() {
+        val cursor = nextCursor ?: return
+        if (loadHistoryJob?.isActive == true) return
+
+        loadHistoryJob = lifecycleScope.launch {
+            val page = withContext(ioDispatcher) { queryFilteredHistory(cursor, PAGE_SIZE) }
+            currentHistoryList = currentHistoryList + page.entries
+            nextCursor = page.nextCursor
+            adapter.appendEntries(page.entries)
         }
     }
 
+    /** Run [queryHistory] with the status and date filters currently selected in the filter bar. */
+    private fun queryFilteredHistory(cursor: HistoryCursor?, limit: Int): HistoryPage {
+        val prefs = applicationContext.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+        val statusFilter = when (prefs.getInt(KEY_FILTER_STATE, FILTER_ALL)) { // Show all by default
+            FILTER_PAID -> HistoryStatusFilter.PAID
+            FILTER_PENDING -> HistoryStatusFilter.PENDING
+            else -> HistoryStatusFilter.ALL
+        }
+        val filterStart = prefs.getLong(KEY_FILTER_DATE_START, 0L)
+        val filterEnd = prefs.getLong(KEY_FILTER_DATE_END, 0L)
+
+        var fromMillis = Long.MIN_VALUE
+        var toMillis = Long.MAX_VALUE
+        if (filterStart > 0 && filterEnd > 0) {
+            // MaterialDatePicker returns UTC midnights. To include the full end day:
+            fromMillis = filterStart
+            toMillis = filterEnd + 86400000L - 1L
+        }
+
+        return queryHistory(
+            context = applicationContext,
+            fromMillis = fromMillis,
+            toMillis = toMillis,
+            types = setOf(HistoryEntryType.PAYMENT, HistoryEntryType.WITHDRAWAL),
+            limit = limit,
+            cursor = cursor,
+            statusFilter = statusFilter,
+        )
+    }
+
     private fun clearAllHistory() {
-        val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-        prefs.edit().putString(KEY_HISTORY, "[]").apply()
+        PaymentHistoryStore.getInstance(this).clear()
         loadHistory()
     }
 
+    /** Delete [entry] and drop its row, leaving the other loaded pages and the scroll position alone. */
     private fun deletePaymentFromHistory(entry: HistoryEntry) {
         if (entry is PaymentHistoryEntry) {
-            val history = getPaymentHistory().toMutableList()
-            val index = history.indexOfFirst { it.id == entry.id }
-            if (index >= 0) {
-                history.removeAt(index)
-                val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
-                loadHistory()
-            }
+            if (!PaymentHistoryStore.getInstance(this).remove(entry.id)) return
         } else if (entry is WithdrawHistoryEntry) {
             AutoWithdrawManager.getInstance(this).deleteHistoryEntry(entry.id)
-            loadHistory()
+        } else {
+            return
         }
+        showEntries(currentHistoryList.filterNot { it.id == entry.id && it.javaClass == entry.javaClass })
     }
 
     /**
@@ -637,12 +668,12 @@ class PaymentsHistoryActivity : AppCompatActivity() {
      */
     private fun expireStaleBtcPayEntries() {
         val appContext = applicationContext
-        val history = getPaymentHistory(appContext).toMutableList()
+        val store = PaymentHistoryStore.getInstance(appContext)
         val cutoff = System.currentTimeMillis() - STALE_PENDING_THRESHOLD_MS
         val btcPayEnabled = PreferenceStore.app(appContext).getBoolean("btcpay_enabled", false)
 
-        var modified = false
-        history.forEachIndexed { index, entry ->
+        // Only pending entries are read; settled history is never touched here.
+        store.getPending().forEach { entry ->
             if (entry.isPending() && (
                 // Old enough that no invoice type would still be valid
                 entry.date.time < cutoff ||
@@ -677,25 +708,16 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                     tipPercentage = entry.tipPercentage,
                     swapToLightningMintJson = entry.swapToLightningMintJson,
                 )
-                history[index] = updated
-                modified = true
+                store.put(updated)
             }
         }
-
-        if (modified) {
-            val prefs = appContext.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
-        }
     }
 
-    private fun getPaymentHistory(): List<PaymentHistoryEntry> = getPaymentHistory(this)
-
     companion object {
         @Volatile
         var ioDispatcher: kotlinx.coroutines.CoroutineDispatcher = Dispatchers.IO
 
         private const val PREFS_NAME = "PaymentHistory"
-        private const val KEY_HISTORY = "history"
         private const val KEY_FILTER_STATE = "filter_state"
         private const val KEY_FILTER_DATE_START = "filter_date_start"
         private const val KEY_FILTER_DATE_END = "filter_date_end"
@@ -704,21 +726,95 @@ class PaymentsHistoryActivity : AppCompatActivity() {
         private const val FILTER_PENDING = 2
         private const val REQUEST_TRANSACTION_DETAIL = 1001
         private const val REQUEST_RESUME_PAYMENT = 1002
+        private const val PAGE_SIZE = 50
+        // Start fetching the next page when this many rows remain below the viewport.
+        private const val PAGE_PREFETCH_DISTANCE = 15
         // Pending payments older than this are considered stale regardless of resume data.
         // BTCPay invoices default to 15min; local Lightning quotes also expire. 2h is generous.
         private const val STALE_PENDING_THRESHOLD_MS = 2 * 60 * 60 * 1000L
 
         @JvmStatic
         fun getPaymentHistory(context: Context): List<PaymentHistoryEntry> {
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            val json = prefs.getString(KEY_HISTORY, "[]")
-            val type: Type = object : TypeToken<ArrayList<PaymentHistoryEntry>>() {}.type
-            return Gson().fromJson(json, type)
+            return PaymentHistoryStore.getInstance(context).getAll()
+        }
+
+        /**
+         * The newest payment, read through the time index without loading the
+         * rest of the history, paired with the last position in
+         * [getPaymentHistory], which is where a just-recorded payment sits.
+         */
+        @JvmStatic
+        fun getLatestPayment(context: Context): IndexedValue<PaymentHistoryEntry>? {
+            val store = PaymentHistoryStore.getInstance(context)
+            val latest = store.query(Long.MIN_VALUE, Long.MAX_VALUE, { true }, limit = 1).firstOrNull()
+                ?: return null
+            return IndexedValue(store.size() - 1, latest)
+        }
+
+        private val NEWEST_FIRST: Comparator<HistoryEntry> =
+            compareByDescending<HistoryEntry> { it.date.time }.thenByDescending { it.id }
+
+        /**
+         * Newest-first page of payments and/or withdrawals dated within
+         * [fromMillis]..[toMillis] (inclusive). Payments come from the store's
+         * time index, so the cost depends on [limit] rather than on how much
+         * history exists. Pass the previous page's [HistoryPage.nextCursor] to
+         * continue.
+         */
+        @JvmStatic
+        fun queryHistory(
+            context: Context,
+            fromMillis: Long,
+            toMillis: Long,
+            types: Set<HistoryEntryType>,
+            limit: Int,
+            cursor: HistoryCursor? = null,
+            statusFilter: HistoryStatusFilter = HistoryStatusFilter.ALL,
+        ): HistoryPage {
+            val payments: List<HistoryEntry> = if (HistoryEntryType.PAYMENT in types) {
+                PaymentHistoryStore.getInstance(context).query(
+                    fromMillis = fromMillis,
+                    toMillis = toMillis,
+                    statusMatches = statusFilter::matchesStatus,
+                    limit = limit,
+                    after = cursor,
+                )
+            } else {
+                emptyList()
+            }
+
+            // Withdrawal history is capped by AutoWithdrawManager, so it is filtered in memory.
+            val withdrawals: List<HistoryEntry> = if (HistoryEntryType.WITHDRAWAL in types) {
+                AutoWithdrawManager.getInstance(context).getHistory()
+                    .filter {
+                        it.status != WithdrawHistoryEntry.STATUS_FAILED &&
+                            statusFilter.matches(it) &&
+                            it.timestamp in fromMillis..toMillis &&
+                            (cursor == null || cursor.precedes(it))
+                    }
+                    .sortedWith(NEWEST_FIRST)
+                    .take(limit)
+            } else {
+                emptyList()
+            }
+
+            val merged = (payments + withdrawals).sortedWith(NEWEST_FIRST).take(limit)
+            val nextCursor = if (merged.size == limit) HistoryCursor.of(merged.last()) else null
+            return HistoryPage(merged, nextCursor)
+        }
+
+        /**
+         * Pending entries only. Cheaper than filtering [getPaymentHistory] since
+         * settled records are never read from disk.
+         */
+        @JvmStatic
+        fun getPendingPayments(context: Context): List<PaymentHistoryEntry> {
+            return PaymentHistoryStore.getInstance(context).getPending()
         }
 
         @JvmStatic
         fun getPaymentEntryById(context: Context, paymentId: String): PaymentHistoryEntry? {
-            return getPaymentHistory(context).firstOrNull { it.id == paymentId }
+            return PaymentHistoryStore.getInstance(context).get(paymentId)
         }
 
         /**
@@ -754,11 +850,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 ecashUnit = ecashUnit,
             )
 
-            val history = getPaymentHistory(context).toMutableList()
-            history.add(entry)
-
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+            PaymentHistoryStore.getInstance(context).put(entry)
 
             return entry.id
         }
@@ -778,13 +870,10 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             lightningMintUrl: String? = null,
             btcPayInvoiceId: String? = null,
         ) {
-            val history = getPaymentHistory(context).toMutableList()
-            // Only complete entries that are still pending — never overwrite expired/cancelled status
-            val index = history.indexOfFirst { it.id == paymentId && it.isPending() }
-
-            if (index >= 0) {
-                val existing = history[index]
-                val updated = PaymentHistoryEntry(
+            PaymentHistoryStore.getInstance(context).update(paymentId) { existing ->
+                // Only complete entries that are still pending — never overwrite expired/cancelled status
+                if (!existing.isPending()) return@update null
+                PaymentHistoryEntry(
                     id = existing.id,
                     token = token,
                     amount = existing.amount,
@@ -810,10 +899,6 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                     label = existing.label,
                     btcPayInvoiceId = btcPayInvoiceId ?: existing.btcPayInvoiceId,
                 )
-                history[index] = updated
-
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
 
@@ -829,12 +914,8 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             lightningMintUrl: String? = null,
             swapToLightningMintJson: String? = null,
         ) {
-            val history = getPaymentHistory(context).toMutableList()
-            val index = history.indexOfFirst { it.id == paymentId }
-
-            if (index >= 0) {
-                val existing = history[index]
-                val updated = PaymentHistoryEntry(
+            PaymentHistoryStore.getInstance(context).update(paymentId) { existing ->
+                PaymentHistoryEntry(
                     id = existing.id,
                     token = existing.token,
                     amount = existing.amount,
@@ -859,10 +940,6 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                     tipPercentage = existing.tipPercentage, // Preserve tip info
                     swapToLightningMintJson = swapToLightningMintJson ?: existing.swapToLightningMintJson,
                 )
-                history[index] = updated
-
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
 
@@ -876,12 +953,8 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             nostrSecretHex: String,
             nostrNprofile: String,
         ) {
-            val history = getPaymentHistory(context).toMutableList()
-            val index = history.indexOfFirst { it.id == paymentId }
-
-            if (index >= 0) {
-                val existing = history[index]
-                val updated = PaymentHistoryEntry(
+            PaymentHistoryStore.getInstance(context).update(paymentId) { existing ->
+                PaymentHistoryEntry(
                     id = existing.id,
                     token = existing.token,
                     amount = existing.amount,
@@ -906,10 +979,6 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                     tipPercentage = existing.tipPercentage, // Preserve tip info
                     label = existing.label, // Preserve label
                 )
-                history[index] = updated
-
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).commit()
             }
         }
 
@@ -924,12 +993,8 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             tipPercentage: Int,
             newTotalAmount: Long,
         ) {
-            val history = getPaymentHistory(context).toMutableList()
-            val index = history.indexOfFirst { it.id == paymentId }
-
-            if (index >= 0) {
-                val existing = history[index]
-                val updated = PaymentHistoryEntry(
+            PaymentHistoryStore.getInstance(context).update(paymentId) { existing ->
+                PaymentHistoryEntry(
                     id = existing.id,
                     token = existing.token,
                     amount = newTotalAmount,
@@ -953,10 +1018,6 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                     tipAmountSats = tipAmountSats,
                     tipPercentage = tipPercentage,
                 )
-                history[index] = updated
-
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
 
@@ -966,77 +1027,65 @@ class PaymentsHistoryActivity : AppCompatActivity() {
          */
         @JvmStatic
         fun markPaymentExpired(context: Context, paymentId: String) {
-            val history = getPaymentHistory(context).toMutableList()
-            val index = history.indexOfFirst { it.id == paymentId && it.isPending() }
-            if (index == -1) return
-
-            val existing = history[index]
-            val updated = PaymentHistoryEntry(
-                id = existing.id,
-                token = existing.token,
-                amount = existing.amount,
-                date = existing.date,
-                rawUnit = existing.getUnit(),
-                rawEntryUnit = existing.getEntryUnit(),
-                enteredAmount = existing.enteredAmount,
-                bitcoinPrice = existing.bitcoinPrice,
-                mintUrl = existing.mintUrl,
-                paymentRequest = existing.paymentRequest,
-                rawStatus = PaymentHistoryEntry.STATUS_EXPIRED,
-                paymentType = existing.paymentType,
-                lightningInvoice = existing.lightningInvoice,
-                lightningQuoteId = existing.lightningQuoteId,
-                lightningMintUrl = existing.lightningMintUrl,
-                formattedAmount = existing.formattedAmount,
-                nostrNprofile = existing.nostrNprofile,
-                nostrSecretHex = existing.nostrSecretHex,
-                checkoutBasketJson = existing.checkoutBasketJson,
-                basketId = existing.basketId,
-                tipAmountSats = existing.tipAmountSats,
-                tipPercentage = existing.tipPercentage,
-                swapToLightningMintJson = existing.swapToLightningMintJson,
-            )
-            history[index] = updated
-
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+            PaymentHistoryStore.getInstance(context).update(paymentId) { existing ->
+                if (!existing.isPending()) return@update null
+                PaymentHistoryEntry(
+                    id = existing.id,
+                    token = existing.token,
+                    amount = existing.amount,
+                    date = existing.date,
+                    rawUnit = existing.getUnit(),
+                    rawEntryUnit = existing.getEntryUnit(),
+                    enteredAmount = existing.enteredAmount,
+                    bitcoinPrice = existing.bitcoinPrice,
+                    mintUrl = existing.mintUrl,
+                    paymentRequest = existing.paymentRequest,
+                    rawStatus = PaymentHistoryEntry.STATUS_EXPIRED,
+                    paymentType = existing.paymentType,
+                    lightningInvoice = existing.lightningInvoice,
+                    lightningQuoteId = existing.lightningQuoteId,
+                    lightningMintUrl = existing.lightningMintUrl,
+                    formattedAmount = existing.formattedAmount,
+                    nostrNprofile = existing.nostrNprofile,
+                    nostrSecretHex = existing.nostrSecretHex,
+                    checkoutBasketJson = existing.checkoutBasketJson,
+                    basketId = existing.basketId,
+                    tipAmountSats = existing.tipAmountSats,
+                    tipPercentage = existing.tipPercentage,
+                    swapToLightningMintJson = existing.swapToLightningMintJson,
+                )
+            }
         }
 
         fun markPaymentFailed(context: Context, paymentId: String) {
-            val history = getPaymentHistory(context).toMutableList()
-            val index = history.indexOfFirst { it.id == paymentId && it.isPending() }
-            if (index == -1) return
-
-            val existing = history[index]
-            val updated = PaymentHistoryEntry(
-                id = existing.id,
-                token = existing.token,
-                amount = existing.amount,
-                date = existing.date,
-                rawUnit = existing.getUnit(),
-                rawEntryUnit = existing.getEntryUnit(),
-                enteredAmount = existing.enteredAmount,
-                bitcoinPrice = existing.bitcoinPrice,
-                mintUrl = existing.mintUrl,
-                paymentRequest = existing.paymentRequest,
-                rawStatus = PaymentHistoryEntry.STATUS_FAILED,
-                paymentType = existing.paymentType,
-                lightningInvoice = existing.lightningInvoice,
-                lightningQuoteId = existing.lightningQuoteId,
-                lightningMintUrl = existing.lightningMintUrl,
-                formattedAmount = existing.formattedAmount,
-                nostrNprofile = existing.nostrNprofile,
-                nostrSecretHex = existing.nostrSecretHex,
-                checkoutBasketJson = existing.checkoutBasketJson,
-                basketId = existing.basketId,
-                tipAmountSats = existing.tipAmountSats,
-                tipPercentage = existing.tipPercentage,
-                swapToLightningMintJson = existing.swapToLightningMintJson,
-            )
-            history[index] = updated
-
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+            PaymentHistoryStore.getInstance(context).update(paymentId) { existing ->
+                if (!existing.isPending()) return@update null
+                PaymentHistoryEntry(
+                    id = existing.id,
+                    token = existing.token,
+                    amount = existing.amount,
+                    date = existing.date,
+                    rawUnit = existing.getUnit(),
+                    rawEntryUnit = existing.getEntryUnit(),
+                    enteredAmount = existing.enteredAmount,
+                    bitcoinPrice = existing.bitcoinPrice,
+                    mintUrl = existing.mintUrl,
+                    paymentRequest = existing.paymentRequest,
+                    rawStatus = PaymentHistoryEntry.STATUS_FAILED,
+                    paymentType = existing.paymentType,
+                    lightningInvoice = existing.lightningInvoice,
+                    lightningQuoteId = existing.lightningQuoteId,
+                    lightningMintUrl = existing.lightningMintUrl,
+                    formattedAmount = existing.formattedAmount,
+                    nostrNprofile = existing.nostrNprofile,
+                    nostrSecretHex = existing.nostrSecretHex,
+                    checkoutBasketJson = existing.checkoutBasketJson,
+                    basketId = existing.basketId,
+                    tipAmountSats = existing.tipAmountSats,
+                    tipPercentage = existing.tipPercentage,
+                    swapToLightningMintJson = existing.swapToLightningMintJson,
+                )
+            }
         }
 
         /**
@@ -1044,12 +1093,8 @@ class PaymentsHistoryActivity : AppCompatActivity() {
          */
         @JvmStatic
         fun cancelPendingPayment(context: Context, paymentId: String) {
-            val history = getPaymentHistory(context).toMutableList()
             // Remove cancelled pending payments (they're not useful)
-            history.removeAll { it.id == paymentId && it.isPending() }
-
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+            PaymentHistoryStore.getInstance(context).removeIf(paymentId) { it.isPending() }
         }
 
         /**
@@ -1057,12 +1102,8 @@ class PaymentsHistoryActivity : AppCompatActivity() {
          */
         @JvmStatic
         fun updateLabel(context: Context, paymentId: String, label: String?) {
-            val history = getPaymentHistory(context).toMutableList()
-            val index = history.indexOfFirst { it.id == paymentId }
-
-            if (index >= 0) {
-                val existing = history[index]
-                val updated = PaymentHistoryEntry(
+            PaymentHistoryStore.getInstance(context).update(paymentId) { existing ->
+                PaymentHistoryEntry(
                     id = existing.id,
                     token = existing.token,
                     amount = existing.amount,
@@ -1088,10 +1129,6 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                     swapToLightningMintJson = existing.swapToLightningMintJson,
                     label = label?.ifBlank { null },
                 )
-                history[index] = updated
-
-                val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-                prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
             }
         }
 
@@ -1110,7 +1147,6 @@ class PaymentsHistoryActivity : AppCompatActivity() {
             mintUrl: String?,
             paymentRequest: String?,
         ): String {
-            val history = getPaymentHistory(context).toMutableList()
             val entry = PaymentHistoryEntry(
                 token = token,
                 amount = amount,
@@ -1124,10 +1160,7 @@ class PaymentsHistoryActivity : AppCompatActivity() {
                 rawStatus = PaymentHistoryEntry.STATUS_COMPLETED,
                 paymentType = PaymentHistoryEntry.TYPE_CASHU,
             )
-            history.add(entry)
-
-            val prefs = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
-            prefs.edit().putString(KEY_HISTORY, Gson().toJson(history)).apply()
+            PaymentHistoryStore.getInstance(context).put(entry)
 
             return entry.id
         }
@@ -6,7 +6,7 @@ import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.util.CurrencyManager
 import com.electricdreams.numo.core.util.ItemManager
 import com.electricdreams.numo.core.util.SavedBasketManager
-import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
+import com.electricdreams.numo.feature.history.PaymentHistoryStore
 import java.text.SimpleDateFormat
 import java.util.Calendar
 import java.util.Date
@@ -24,70 +24,61 @@ object InsightsRepository {
         val periodStart = buckets.first().startMillis
         val periodEnd = buckets.last().endExclusiveMillis
 
-        val payments = PaymentsHistoryActivity.getPaymentHistory(context)
-            .filter { it.isCompleted() }
-            .filter { it.date.time in periodStart until periodEnd }
-            .filter {
-                val entryUnit = it.getEntryUnit().lowercase()
-                val activeUnitLower = currentCurrencyCode.lowercase()
-                entryUnit == activeUnitLower ||
-                // Backward compatibility fallback for legacy satoshi entries recorded as "btc" or "sats"
-                (activeUnitLower == "sat" && (entryUnit == "btc" || entryUnit == "sats"))
-            }
-            .sortedByDescending { it.date.time }
+        val activeUnit = InsightsRollupStore.normalizeUnit(currentCurrencyCode)
+        val satMode = activeUnit == "sat"
 
-        val basketManager = SavedBasketManager.getInstance(context)
-        val imagesByItemId = ItemManager.getInstance(context).getAllItems()
-            .mapNotNull { item ->
-                val id = item.id?.takeIf { it.isNotBlank() } ?: return@mapNotNull null
-                val path = item.imagePath?.takeIf { it.isNotBlank() } ?: return@mapNotNull null
-                id to path
+        // Chart buckets and period totals come from the pre-aggregated rollups
+        val rollups = InsightsRollupStore.getInstance(context)
+        val filledBuckets = buckets.map { scaffold ->
+            val totals = rollups.lookup(range, activeUnit, scaffold.startMillis)
+            val (sats, fiatMinor) = if (satMode) {
+                // Sats mode: standard sats-to-fiat calculation
+                Pair(totals.sats, satsToFiatMinor(totals.sats, currentBtcPrice))
+            } else {
+                // Custom unit mode: use entered custom unit minor units directly
+                Pair(totals.enteredMinor, totals.enteredMinor)
             }
-            .toMap()
+            scaffold.copy(
+                totalSats = sats,
+                totalFiatMinor = fiatMinor,
+                transactionCount = totals.count,
+            )
+        }
 
-        val perBucketSats = LongArray(7)
-        val perBucketFiat = LongArray(7)
-        val perBucketTxCount = IntArray(7)
+        // Only the visible period is read back from history for the transaction list
+        val payments = ArrayList<PaymentHistoryEntry>()
+        PaymentHistoryStore.getInstance(context).forEachInRange(
+            fromMillis = periodStart,
+            toMillis = periodEnd - 1,
+            statusMatches = { it == PaymentHistoryEntry.STATUS_COMPLETED },
+        ) { entry ->
+            if (InsightsRollupStore.normalizeUnit(entry.getEntryUnit()) == activeUnit) payments.add(entry)
+        }
 
-        var periodTotalSats = 0L
-        var periodTotalFiatMinor = 0L
+        val basketManager = SavedBasketManager.getInstance(context)
+        val imagesByItemId by lazy {
+            ItemManager.getInstance(context).getAllItems()
+                .mapNotNull { item ->
+                    val id = item.id?.takeIf { it.isNotBlank() } ?: return@mapNotNull null
+                    val path = item.imagePath?.takeIf { it.isNotBlank() } ?: return@mapNotNull null
+                    id to path
+                }
+                .toMap()
+        }
 
         val txRows = payments.map { entry ->
-            val idx = buckets.indexOfBucket(entry.date.time)
-            perBucketTxCount[idx] += 1
-
-            val activeUnitLower = currentCurrencyCode.lowercase()
-
-            val (sats, fiatMinor) = if (activeUnitLower == "sat") {
-                // Sats mode: standard sats-to-fiat calculation
-                val satsVal = entry.amount
-                val fiatVal = satsToFiatMinor(satsVal, currentBtcPrice)
-                Pair(satsVal, fiatVal)
+            val (sats, fiatMinor) = if (satMode) {
+                Pair(entry.amount, satsToFiatMinor(entry.amount, currentBtcPrice))
             } else {
-                // Custom unit mode: use entered custom unit minor units directly
-                val valCents = entry.enteredAmount
-                Pair(valCents, valCents)
+                Pair(entry.enteredAmount, entry.enteredAmount)
             }
 
-            perBucketSats[idx] += sats
-            perBucketFiat[idx] += fiatMinor
-            periodTotalSats += sats
-            periodTotalFiatMinor += fiatMinor
-
             TxRow(
                 id = entry.id,
                 date = entry.date,
                 totalSats = sats,
                 totalFiatMinor = fiatMinor,
-                basket = buildBasketSummary(entry, basketManager, imagesByItemId),
-            )
-        }
-
-        val filledBuckets = buckets.mapIndexed { idx, scaffold ->
-            scaffold.copy(
-                totalSats = perBucketSats[idx],
-                totalFiatMinor = perBucketFiat[idx],
-                transactionCount = perBucketTxCount[idx],
+                basket = buildBasketSummary(entry, basketManager) { imagesByItemId },
             )
         }
 
@@ -95,9 +86,9 @@ object InsightsRepository {
             range = range,
             buckets = filledBuckets,
             transactions = txRows,
-            periodTotalSats = periodTotalSats,
-            periodTotalFiatMinor = periodTotalFiatMinor,
-            periodTxCount = txRows.size,
+            periodTotalSats = filledBuckets.sumOf { it.totalSats },
+            periodTotalFiatMinor = filledBuckets.sumOf { it.totalFiatMinor },
+            periodTxCount = filledBuckets.sumOf { it.transactionCount },
             fiatCurrency = fiatCurrency,
         )
     }
@@ -161,7 +152,7 @@ object InsightsRepository {
     private fun buildBasketSummary(
         entry: PaymentHistoryEntry,
         basketManager: SavedBasketManager,
-        imagesByItemId: Map<String, String>,
+        imagesByItemId: () -> Map<String, String>,
     ): BasketSummary? {
         val saved = entry.basketId?.let { basketManager.getBasket(it) }
         if (saved != null && saved.items.isNotEmpty()) {
@@ -185,13 +176,14 @@ object InsightsRepository {
 
         val checkout = entry.getCheckoutBasket()
         if (checkout != null && checkout.items.isNotEmpty()) {
+            val images = imagesByItemId()
             val items = checkout.items
                 .filter { it.name.isNotBlank() }
                 .groupBy { it.name }
                 .map { (name, instances) ->
                     BasketItemSummary(
                         itemName = name,
-                        itemImagePath = instances.firstNotNullOfOrNull { imagesByItemId[it.itemId] },
+                        itemImagePath = instances.firstNotNullOfOrNull { images[it.itemId] },
                         quantity = instances.sumOf { it.quantity },
                     )
                 }
@@ -206,13 +198,6 @@ object InsightsRepository {
         return null
     }
 
-    private fun List<BucketTotal>.indexOfBucket(timeMillis: Long): Int {
-        for ((idx, bucket) in withIndex()) {
-            if (timeMillis in bucket.startMillis until bucket.endExclusiveMillis) return idx
-        }
-        return size - 1
-    }
-
     private fun satsToFiatMinor(sats: Long, btcPrice: Double?): Long {
         if (sats <= 0 || btcPrice == null || btcPrice <= 0) return 0
         return kotlin.math.round(sats.toDouble() / 100_000_000.0 * btcPrice * 100.0).toLong()
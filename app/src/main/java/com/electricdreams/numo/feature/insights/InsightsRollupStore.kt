@@ -0,0 +1,291 @@
+package com.electricdreams.numo.feature.insights
+
+import android.content.Context
+import android.util.Log
+import com.electricdreams.numo.core.data.model.PaymentHistoryEntry
+import com.electricdreams.numo.feature.history.PaymentHistoryStore
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import java.util.Calendar
+import java.util.Locale
+import java.util.TimeZone
+
+/**
+ * Pre-aggregated day / week / month totals of completed payments, keyed by
+ * entry unit, so the Insights chart is a handful of map lookups instead of a
+ * scan over the full payment history.
+ *
+ * Totals are kept in step with [PaymentHistoryStore] through its
+ * [PaymentHistoryStore.CompletedPaymentListener] hook, installed from
+ * [com.electricdreams.numo.NumoApplication]. On first use the persisted
+ * tables are checked against the history (completed-entry count, time zone
+ * and first day of week) and rebuilt from raw history on any mismatch.
+ * [rebuild] is also available as an explicit repair.
+ *
+ * Changes are written back in batches: the first change after a write drops
+ * the persisted signature, and the tables are saved [PERSIST_DELAY_MS] later
+ * together with everything that changed meanwhile. If the process dies in
+ * between, the missing signature makes the next launch rebuild.
+ *
+ * Lock order is always history store first, then this store, matching the
+ * order in which the listener callback arrives.
+ */
+class InsightsRollupStore private constructor(context: Context) :
+    PaymentHistoryStore.CompletedPaymentListener {
+
+    companion object {
+        private const val TAG = "InsightsRollupStore"
+        private const val PREFS_NAME = "InsightsRollups"
+        private const val KEY_TABLES = "tables"
+        private const val KEY_SIGNATURE = "signature"
+        private const val KEY_COVERED_COUNT = "covered_count"
+
+        /** How long changes are collected before the tables are written back. */
+        const val PERSIST_DELAY_MS = 5_000L
+
+        @Volatile
+        private var instance: InsightsRollupStore? = null
+
+        @JvmStatic
+        @Synchronized
+        fun getInstance(context: Context): InsightsRollupStore {
+            if (instance == null) {
+                instance = InsightsRollupStore(context.applicationContext)
+            }
+            return instance as InsightsRollupStore
+        }
+
+        /**
+         * Start receiving completed-payment changes. Cheap enough for
+         * Application.onCreate: no tables are loaded until the first change or query.
+         */
+        @JvmStatic
+        fun install(context: Context) {
+            PaymentHistoryStore.addCompletedPaymentListener(getInstance(context))
+        }
+
+        /**
+         * Legacy entries recorded satoshi amounts as "btc" or "sats"; they are
+         * folded into "sat" so the sat view keeps counting them.
+         */
+        @JvmStatic
+        fun normalizeUnit(entryUnit: String): String {
+            val lower = entryUnit.lowercase()
+            return if (lower == "btc" || lower == "sats") "sat" else lower
+        }
+    }
+
+    /** Running totals for one (granularity, unit, period) cell. */
+    data class Totals(
+        var sats: Long = 0L,
+        var enteredMinor: Long = 0L,
+        var count: Int = 0,
+    )
+
+    private val appContext = context.applicationContext
+    private val prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val gson = Gson()
+
+    private val tables = HashMap<String, Totals>()
+    private var coveredCount = 0
+    private var loaded = false
+
+    /** Tables hold changes that have not been written back yet. */
+    private var dirty = false
+    private var persistJob: Job? = null
+    private val persistScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    private val history: PaymentHistoryStore
+        get() = PaymentHistoryStore.getInstance(appContext)
+
+    /**
+     * Totals for the period of [range] granularity that starts at
+     * [periodStartMillis] (local midnight of the day, first day of the week,
+     * or first of the month). Returns zeros for empty periods.
+     */
+    fun lookup(range: InsightsRange, unit: String, periodStartMillis: Long): Totals {
+        val store = history
+        synchronized(store) {
+            synchronized(this) {
+                ensureLoaded(store)
+                return tables[key(range, normalizeUnit(unit), periodStartMillis)]?.copy() ?: Totals()
+            }
+        }
+    }
+
+    /** Drop the tables and recompute them from every completed payment. */
+    fun rebuild() {
+        val store = history
+        synchronized(store) {
+            synchronized(this) {
+                rebuildLocked(store)
+            }
+        }
+    }
+
+    override fun onCompletedPaymentChanged(removed: PaymentHistoryEntry?, added: PaymentHistoryEntry?) {
+        synchronized(this) {
+            if (!loaded) {
+                // The history index already reflects this change, so validate
+                // the persisted tables against the count from before it.
+                val delta = (if (added != null) 1 else 0) - (if (removed != null) 1 else 0)
+                val expected = history.countWithStatus(PaymentHistoryEntry.STATUS_COMPLETED) - delta
+                if (!loadTables(expected)) {
+                    rebuildLocked(history)
+                    return
+                }
+            }
+            removed?.let { apply(it, -1) }
+            added?.let { apply(it, 1) }
+            schedulePersist()
+        }
+    }
+
+    /** Write pending changes now instead of waiting for the batch delay. */
+    fun flush() {
+        synchronized(this) {
+            persistJob?.cancel()
+            persistJob = null
+            if (loaded && dirty) persist()
+        }
+    }
+
+    /**
+     * Drop the scheduled write without saving, as if the process had died.
+     * The persisted tables stay untrusted, so the next instance rebuilds.
+     */
+    internal fun cancelPendingWrite() {
+        synchronized(this) {
+            persistJob?.cancel()
+            persistJob = null
+        }
+    }
+
+    override fun onHistoryReset() {
+        synchronized(this) {
+            tables.clear()
+            coveredCount = 0
+            loaded = false
+            dirty = false
+            persistJob?.cancel()
+            persistJob = null
+            prefs.edit().remove(KEY_SIGNATURE).apply()
+        }
+    }
+
+    private fun ensureLoaded(store: PaymentHistoryStore) {
+        if (loaded) return
+        if (!loadTables(store.countWithStatus(PaymentHistoryEntry.STATUS_COMPLETED))) {
+            rebuildLocked(store)
+        }
+    }
+
+    /** Load persisted tables; returns false if they don't describe the current history. */
+    private fun loadTables(expectedCount: Int): Boolean {
+        val signature = prefs.getString(KEY_SIGNATURE, null)
+        val count = prefs.getInt(KEY_COVERED_COUNT, -1)
+        if (signature != currentSignature() || count != expectedCount) return false
+
+        val json = prefs.getString(KEY_TABLES, null) ?: return false
+        val restored: Map<String, Totals> = try {
+            val type = object : TypeToken<HashMap<String, Totals>>() {}.type
+            gson.fromJson(json, type) ?: return false
+        } catch (e: Exception) {
+            Log.e(TAG, "Insights rollups are unreadable, rebuilding", e)
+            return false
+        }
+
+        tables.clear()
+        tables.putAll(restored)
+        coveredCount = count
+        loaded = true
+        return true
+    }
+
+    private fun rebuildLocked(store: PaymentHistoryStore) {
+        val start = System.currentTimeMillis()
+        tables.clear()
+        coveredCount = 0
+        store.forEachInRange(
+            fromMillis = Long.MIN_VALUE,
+            toMillis = Long.MAX_VALUE,
+            statusMatches = { it == PaymentHistoryEntry.STATUS_COMPLETED },
+        ) { apply(it, 1) }
+        loaded = true
+        persistJob?.cancel()
+        persistJob = null
+        persist()
+        Log.d(TAG, "Rebuilt insights rollups from $coveredCount payments in ${System.currentTimeMillis() - start}ms")
+    }
+
+    private fun apply(entry: PaymentHistoryEntry, sign: Int) {
+        val unit = normalizeUnit(entry.getEntryUnit())
+        val time = entry.date.time
+        for (range in InsightsRange.values()) {
+            val k = key(range, unit, periodStart(range, time))
+            val totals = tables.getOrPut(k) { Totals() }
+            totals.sats += sign * entry.amount
+            totals.enteredMinor += sign * entry.enteredAmount
+            totals.count += sign
+            if (totals.count <= 0) tables.remove(k)
+        }
+        coveredCount += sign
+    }
+
+    private fun schedulePersist() {
+        if (!dirty) {
+            dirty = true
+            // Until the batch is written the persisted tables must not be trusted
+            prefs.edit().remove(KEY_SIGNATURE).apply()
+        }
+        if (persistJob?.isActive == true) return
+        persistJob = persistScope.launch {
+            delay(PERSIST_DELAY_MS)
+            flush()
+        }
+    }
+
+    private fun persist() {
+        prefs.edit()
+            .putString(KEY_TABLES, gson.toJson(tables))
+            .putString(KEY_SIGNATURE, currentSignature())
+            .putInt(KEY_COVERED_COUNT, coveredCount)
+            .apply()
+        dirty = false
+    }
+
+    private fun key(range: InsightsRange, unit: String, periodStartMillis: Long): String =
+        "${range.toKey()}|$unit|$periodStartMillis"
+
+    /** Period boundaries depend on the zone and week start, so changing either invalidates the tables. */
+    private fun currentSignature(): String =
+        "${TimeZone.getDefault().id}|${Calendar.getInstance(Locale.getDefault()).firstDayOfWeek}"
+
+    /** Start of the local day / week / month containing [timeMillis], as used for chart buckets. */
+    private fun periodStart(range: InsightsRange, timeMillis: Long): Long {
+        val cal = Calendar.getInstance(Locale.getDefault()).apply {
+            this.timeInMillis = timeMillis
+            set(Calendar.HOUR_OF_DAY, 0)
+            set(Calendar.MINUTE, 0)
+            set(Calendar.SECOND, 0)
+            set(Calendar.MILLISECOND, 0)
+        }
+        when (range) {
+            InsightsRange.DAY -> Unit
+            InsightsRange.WEEK -> {
+                val first = cal.firstDayOfWeek
+                while (cal.get(Calendar.DAY_OF_WEEK) != first) {
+                    cal.add(Calendar.DAY_OF_MONTH, -1)
+                }
+            }
+            InsightsRange.MONTH -> cal.set(Calendar.DAY_OF_MONTH, 1)
+        }
+        return cal.timeInMillis
+    }
+}
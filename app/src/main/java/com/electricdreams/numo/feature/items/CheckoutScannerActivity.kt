@@ -5,8 +5,6 @@ import android.animation.AnimatorSet
 import android.animation.ObjectAnimator
 import android.content.Intent
 import android.content.pm.PackageManager
-import android.graphics.Bitmap
-import android.graphics.BitmapFactory
 import android.os.Bundle
 import android.util.Log
 import android.view.View
@@ -30,13 +28,13 @@ import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.model.Item
 import com.electricdreams.numo.core.util.BasketManager
 import com.electricdreams.numo.core.util.CurrencyManager
+import com.electricdreams.numo.core.util.ImageLoader
 import com.electricdreams.numo.core.util.ItemManager
 import com.google.mlkit.vision.barcode.BarcodeScanner
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions
 import com.google.mlkit.vision.barcode.BarcodeScanning
 import com.google.mlkit.vision.barcode.common.Barcode
 import com.google.mlkit.vision.common.InputImage
-import java.io.File
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 
@@ -378,24 +376,9 @@ class CheckoutScannerActivity : AppCompatActivity() {
         updateQuantityDisplay()
 
         // Load image
-        if (!item.imagePath.isNullOrEmpty()) {
-            val imageFile = File(item.imagePath!!)
-            if (imageFile.exists()) {
-                val bitmap: Bitmap? = BitmapFactory.decodeFile(imageFile.absolutePath)
-                if (bitmap != null) {
-                    itemImage.setImageBitmap(bitmap)
-                    itemImagePlaceholder.visibility = View.GONE
-                } else {
-                    itemImage.setImageBitmap(null)
-                    itemImagePlaceholder.visibility = View.VISIBLE
-                }
-            } else {
-                itemImage.setImageBitmap(null)
-                itemImagePlaceholder.visibility = View.VISIBLE
-            }
-        } else {
-            itemImage.setImageBitmap(null)
-            itemImagePlaceholder.visibility = View.VISIBLE
+        itemImagePlaceholder.visibility = View.VISIBLE
+        ImageLoader.load(itemImage, item.imagePath) { loaded ->
+            itemImagePlaceholder.visibility = if (loaded) View.GONE else View.VISIBLE
         }
 
         // Animate in if not already visible
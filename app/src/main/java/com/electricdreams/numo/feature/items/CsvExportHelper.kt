@@ -6,9 +6,14 @@ import android.util.Log
 import android.widget.Toast
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.util.ItemManager
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /**
  * Helper for exporting items to a CSV file selected via the system picker.
+ * Rows are streamed to the document on a background thread.
  */
 object CsvExportHelper {
 
@@ -18,46 +23,33 @@ object CsvExportHelper {
      * Export items to a CSV [uri].
      *
      * @param context        Activity or application context used for IO and toasts.
+     * @param scope          Scope the export runs in, typically the caller's lifecycle scope.
      * @param itemManager    The [ItemManager] used to fetch existing items.
      * @param uri            The URI returned by the system file picker (CreateDocument).
      */
     fun exportItemsToCsvUri(
         context: Context,
+        scope: CoroutineScope,
         itemManager: ItemManager,
         uri: Uri
     ) {
-        try {
-            val outputStream = context.contentResolver.openOutputStream(uri)
-            if (outputStream == null) {
-                Toast.makeText(
-                    context,
-                    context.getString(R.string.item_list_toast_error_exporting),
-                    Toast.LENGTH_SHORT
-                ).show()
-                return
-            }
-            
-            outputStream.use { stream ->
-                val success = itemManager.exportItemsToCsv(stream)
-                if (success) {
-                    Toast.makeText(
-                        context,
-                        context.getString(R.string.item_list_toast_exported),
-                        Toast.LENGTH_SHORT
-                    ).show()
-                } else {
-                    Toast.makeText(
-                        context,
-                        context.getString(R.string.item_list_toast_error_exporting),
-                        Toast.LENGTH_SHORT
-                    ).show()
+        scope.launch {
+            val success = withContext(Dispatchers.IO) {
+                try {
+                    context.contentResolver.openOutputStream(uri)?.use { stream ->
+                        itemManager.exportItemsToCsv(stream)
+                    } ?: false
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error exporting CSV file: ${e.message}", e)
+                    false
                 }
             }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error exporting CSV file: \${e.message}", e)
+
             Toast.makeText(
                 context,
-                context.getString(R.string.item_list_toast_error_exporting),
+                context.getString(
+                    if (success) R.string.item_list_toast_exported else R.string.item_list_toast_error_exporting
+                ),
                 Toast.LENGTH_SHORT
             ).show()
         }
@@ -2,21 +2,23 @@ package com.electricdreams.numo.feature.items
 
 import android.content.Context
 import android.net.Uri
+import android.provider.OpenableColumns
 import android.util.Log
 import android.widget.Toast
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.util.ItemManager
-import java.io.File
-import java.io.FileOutputStream
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import java.io.IOException
-import java.io.InputStream
-import java.io.OutputStream
 
 /**
  * Helper for importing items from a CSV file selected via the system picker.
  *
- * This centralizes the CSV → temporary file copy, calls into [ItemManager.importItemsFromCsv],
- * and provides consistent user feedback (toasts) for success, empty imports, and errors.
+ * This streams the picked document straight into [ItemManager.importItemsFromCsv]
+ * on a background thread, and provides consistent user feedback (toasts) for
+ * success, empty imports, and errors.
  */
 object CsvImportHelper {
 
@@ -26,6 +28,7 @@ object CsvImportHelper {
      * Import items from a CSV [uri] into the catalog.
      *
      * @param context        Activity or application context used for IO and toasts.
+     * @param scope          Scope the import runs in, typically the caller's lifecycle scope.
      * @param itemManager    The [ItemManager] used to persist imported items.
      * @param uri            The URI returned by the system file picker.
      * @param clearExisting  If true, existing items are cleared before import.
@@ -34,63 +37,70 @@ object CsvImportHelper {
      */
     fun importItemsFromCsvUri(
         context: Context,
+        scope: CoroutineScope,
         itemManager: ItemManager,
         uri: Uri,
         clearExisting: Boolean,
         onItemsImported: (importedCount: Int) -> Unit
     ) {
-        try {
-            val tempFile = File(context.cacheDir, "import_catalog.csv")
-
-            context.contentResolver.openInputStream(uri)?.use { inputStream ->
-                FileOutputStream(tempFile).use { outputStream ->
-                    copyStream(inputStream, outputStream)
+        scope.launch {
+            val result = withContext(Dispatchers.IO) {
+                runCatching {
+                    val totalBytes = querySize(context, uri)
+                    context.contentResolver.openInputStream(uri)?.use { input ->
+                        itemManager.importItemsFromCsv(input, totalBytes, clearExisting) { progress ->
+                            Log.d(
+                                TAG,
+                                "Imported ${progress.rows} rows, ${progress.bytesRead}/${progress.totalBytes} bytes " +
+                                    "(${progress.rowsPerSecond} rows/s)"
+                            )
+                        }
+                    }
                 }
-            } ?: run {
-                Toast.makeText(
-                    context,
-                    context.getString(R.string.item_list_toast_failed_open_csv),
-                    Toast.LENGTH_SHORT
-                ).show()
-                return
             }
 
-            val importedCount = itemManager.importItemsFromCsv(
-                tempFile.absolutePath,
-                clearExisting
-            )
-
-            if (importedCount > 0) {
-                Toast.makeText(
-                    context,
-                    context.getString(R.string.item_list_toast_imported_items, importedCount),
-                    Toast.LENGTH_SHORT
-                ).show()
-                onItemsImported(importedCount)
-            } else {
+            result.onSuccess { importedCount ->
+                when {
+                    importedCount == null -> Toast.makeText(
+                        context,
+                        context.getString(R.string.item_list_toast_failed_open_csv),
+                        Toast.LENGTH_SHORT
+                    ).show()
+                    importedCount > 0 -> {
+                        Toast.makeText(
+                            context,
+                            context.getString(R.string.item_list_toast_imported_items, importedCount),
+                            Toast.LENGTH_SHORT
+                        ).show()
+                        onItemsImported(importedCount)
+                    }
+                    else -> Toast.makeText(
+                        context,
+                        context.getString(R.string.item_list_toast_no_items_imported),
+                        Toast.LENGTH_SHORT
+                    ).show()
+                }
+            }.onFailure { e ->
+                if (e !is IOException && e !is SecurityException) throw e
+                Log.e(TAG, "Error importing CSV file: ${e.message}", e)
                 Toast.makeText(
                     context,
-                    context.getString(R.string.item_list_toast_no_items_imported),
+                    context.getString(R.string.item_list_toast_error_importing_csv, e.message),
                     Toast.LENGTH_SHORT
                 ).show()
             }
-        } catch (e: IOException) {
-            Log.e(TAG, "Error importing CSV file: ${e.message}", e)
-            Toast.makeText(
-                context,
-                context.getString(R.string.item_list_toast_error_importing_csv, e.message),
-                Toast.LENGTH_SHORT
-            ).show()
         }
     }
 
-    private fun copyStream(inputStream: InputStream, outputStream: OutputStream) {
-        val buffer = ByteArray(4096)
-        var bytesRead: Int
-        while (true) {
-            bytesRead = inputStream.read(buffer)
-            if (bytesRead == -1) break
-            outputStream.write(buffer, 0, bytesRead)
+    /** Size of the document behind [uri], or -1 if the provider does not say. */
+    private fun querySize(context: Context, uri: Uri): Long {
+        return try {
+            context.contentResolver.query(uri, arrayOf(OpenableColumns.SIZE), null, null, null)?.use { cursor ->
+                val column = cursor.getColumnIndex(OpenableColumns.SIZE)
+                if (column >= 0 && cursor.moveToFirst() && !cursor.isNull(column)) cursor.getLong(column) else -1L
+            } ?: -1L
+        } catch (e: Exception) {
+            -1L
         }
     }
 }
@@ -20,11 +20,13 @@ import androidx.activity.result.contract.ActivityResultContracts
 import androidx.appcompat.app.AppCompatActivity
 import androidx.core.content.ContextCompat
 import androidx.core.view.WindowCompat
+import androidx.lifecycle.lifecycleScope
 import androidx.recyclerview.widget.ItemTouchHelper
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.model.Item
+import com.electricdreams.numo.core.util.ImageLoader
 import com.electricdreams.numo.core.util.ItemManager
 import com.electricdreams.numo.feature.items.CsvImportHelper
 import com.electricdreams.numo.ui.util.DialogHelper
@@ -69,6 +71,7 @@ class ItemListActivity : AppCompatActivity() {
             if (uri != null) {
                 CsvImportHelper.importItemsFromCsvUri(
                     context = this,
+                    scope = lifecycleScope,
                     itemManager = itemManager,
                     uri = uri,
                     clearExisting = true
@@ -86,6 +89,7 @@ class ItemListActivity : AppCompatActivity() {
             if (uri != null) {
                 CsvExportHelper.exportItemsToCsvUri(
                     context = this,
+                    scope = lifecycleScope,
                     itemManager = itemManager,
                     uri = uri
                 )
@@ -478,6 +482,10 @@ class ItemListActivity : AppCompatActivity() {
             holder.bind(item, position == itemsList.size - 1, inReorderingMode)
         }
 
+        override fun onViewRecycled(holder: ItemViewHolder) {
+            holder.recycle()
+        }
+
         override fun getItemCount(): Int = itemsList.size
 
         inner class ItemViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
@@ -490,6 +498,10 @@ class ItemListActivity : AppCompatActivity() {
             private val divider: View = itemView.findViewById(R.id.divider)
             private val dragHandle: ImageView = itemView.findViewById(R.id.drag_handle)
 
+            fun recycle() {
+                ImageLoader.cancel(itemImageView)
+            }
+
             @SuppressLint("ClickableViewAccessibility")
             fun bind(item: Item, isLast: Boolean, isReordering: Boolean) {
                 // Item name
@@ -516,18 +528,9 @@ class ItemListActivity : AppCompatActivity() {
                 }
 
                 // Image
-                if (!item.imagePath.isNullOrEmpty()) {
-                    val bitmap = itemManager.loadItemImage(item)
-                    if (bitmap != null) {
-                        itemImageView.setImageBitmap(bitmap)
-                        imagePlaceholder.visibility = View.GONE
-                    } else {
-                        itemImageView.setImageBitmap(null)
-                        imagePlaceholder.visibility = View.VISIBLE
-                    }
-                } else {
-                    itemImageView.setImageBitmap(null)
-                    imagePlaceholder.visibility = View.VISIBLE
+                imagePlaceholder.visibility = View.VISIBLE
+                ImageLoader.load(itemImageView, item.imagePath) { loaded ->
+                    imagePlaceholder.visibility = if (loaded) View.GONE else View.VISIBLE
                 }
 
                 // Hide divider on last item
@@ -154,6 +154,7 @@ class ItemSelectionActivity : AppCompatActivity() {
         if (uri != null) {
             CsvImportHelper.importItemsFromCsvUri(
                 context = this,
+                scope = lifecycleScope,
                 itemManager = itemManager,
                 uri = uri,
                 clearExisting = true
@@ -343,7 +344,8 @@ class ItemSelectionActivity : AppCompatActivity() {
             emptyView = emptyView,
             noResultsView = noResultsView,
             onItemsFiltered = { items -> itemsAdapter.updateItems(items) },
-            onFilterStateChanged = { hasActiveFilters -> updateFilterButtonState(hasActiveFilters) }
+            onFilterStateChanged = { hasActiveFilters -> updateFilterButtonState(hasActiveFilters) },
+            scope = lifecycleScope
         )
 
         checkoutHandler = CheckoutHandler(
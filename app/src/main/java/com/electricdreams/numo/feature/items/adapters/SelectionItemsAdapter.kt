@@ -3,7 +3,6 @@ package com.electricdreams.numo.feature.items.adapters
 import android.animation.AnimatorSet
 import android.animation.ObjectAnimator
 import android.content.Context
-import android.graphics.BitmapFactory
 import android.os.Handler
 import android.os.Looper
 import android.view.HapticFeedbackConstants
@@ -25,7 +24,7 @@ import androidx.recyclerview.widget.RecyclerView
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.model.Item
 import com.electricdreams.numo.core.util.BasketManager
-import java.io.File
+import com.electricdreams.numo.core.util.ImageLoader
 import java.util.UUID
 
 /**
@@ -215,6 +214,10 @@ class SelectionItemsAdapter(
         holder.bind(item, quantity, position == items.lastIndex, isExpanded, isCustomVariation, position)
     }
 
+    override fun onViewRecycled(holder: ItemViewHolder) {
+        holder.recycle()
+    }
+
     override fun getItemCount(): Int = items.size
 
     // ----- ViewHolder -----
@@ -435,40 +438,14 @@ class SelectionItemsAdapter(
         }
 
         private fun loadItemImage(item: Item) {
-            val path = item.imagePath
-            android.util.Log.d("ItemImage", "item=${item.name} path=${path?.take(60) ?: "null"}")
-            if (!path.isNullOrEmpty()) {
-                val bitmap = when {
-                    path.startsWith("data:") -> {
-                        try {
-                            val base64 = path.substringAfter(",")
-                            val bytes = android.util.Base64.decode(base64, android.util.Base64.DEFAULT)
-                            BitmapFactory.decodeByteArray(bytes, 0, bytes.size).also {
-                                android.util.Log.d("ItemImage", "  data: bitmap=${it != null}")
-                            }
-                        } catch (e: Exception) {
-                            android.util.Log.w("ItemImage", "  data: decode failed: ${e.message}")
-                            null
-                        }
-                    }
-                    path.startsWith("http://") || path.startsWith("https://") -> {
-                        android.util.Log.w("ItemImage", "  url: not supported inline")
-                        null
-                    }
-                    else -> {
-                        val file = File(path)
-                        android.util.Log.d("ItemImage", "  file: exists=${file.exists()}")
-                        if (file.exists()) BitmapFactory.decodeFile(file.absolutePath) else null
-                    }
-                }
-                if (bitmap != null) {
-                    itemImageView.setImageBitmap(bitmap)
-                    imagePlaceholder?.visibility = View.GONE
-                    return
-                }
-            }
-            itemImageView.setImageBitmap(null)
             imagePlaceholder?.visibility = View.VISIBLE
+            ImageLoader.load(itemImageView, item.imagePath) { loaded ->
+                imagePlaceholder?.visibility = if (loaded) View.GONE else View.VISIBLE
+            }
+        }
+
+        fun recycle() {
+            ImageLoader.cancel(itemImageView)
         }
 
         private fun updateBasketItem(item: Item, newQuantity: Int, isCustomVariation: Boolean) {
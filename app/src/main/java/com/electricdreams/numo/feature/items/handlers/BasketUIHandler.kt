@@ -83,15 +83,7 @@ class BasketUIHandler(
             val currency = Amount.Currency.fromCode(currencyCode)
 
             if (isCustomUnit) {
-                var total = 0.0
-                for (basketItem in basketManager.getBasketItems()) {
-                    if (basketItem.isSatsPrice()) {
-                        total += basketItem.item.getGrossSats().toDouble() * basketItem.quantity
-                    } else {
-                        total += basketItem.getTotalPrice()
-                    }
-                }
-                Amount.fromMajorUnits(total, currency).toString()
+                Amount.fromMajorUnits(basketManager.getCustomUnitTotal(), currency).toString()
             } else {
                 when {
                     fiatTotal > 0 && satsTotal > 0 -> {
@@ -107,15 +107,7 @@ class CheckoutHandler(
         if (isCustomUnit) {
             val currencyCode = preferredUnit.uppercase()
             val currency = Amount.Currency.fromCode(currencyCode)
-            var total = 0.0
-            for (basketItem in basketManager.getBasketItems()) {
-                if (basketItem.isSatsPrice()) {
-                    total += basketItem.item.getGrossSats().toDouble() * basketItem.quantity
-                } else {
-                    total += basketItem.getTotalPrice()
-                }
-            }
-            return Amount.fromMajorUnits(total, currency).toString()
+            return Amount.fromMajorUnits(basketManager.getCustomUnitTotal(), currency).toString()
         }
 
         return when {
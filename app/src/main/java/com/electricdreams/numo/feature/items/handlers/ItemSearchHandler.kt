@@ -8,10 +8,22 @@ import android.widget.LinearLayout
 import androidx.recyclerview.widget.RecyclerView
 import com.electricdreams.numo.core.model.Item
 import com.electricdreams.numo.core.util.ItemManager
+import com.electricdreams.numo.core.util.ItemSearchIndex
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /**
  * Handles item search and filtering logic for ItemSelectionActivity.
  * Supports both text search and category filtering.
+ *
+ * Queries run against a precomputed [ItemSearchIndex] on a background
+ * dispatcher: the catalog's own index for items loaded from [ItemManager],
+ * or one built here for items supplied through [setItems]. Keystrokes are
+ * debounced and a newer query cancels any query still in flight.
  */
 class ItemSearchHandler(
     private val itemManager: ItemManager,
@@ -20,12 +32,24 @@ class ItemSearchHandler(
     private val emptyView: LinearLayout,
     private val noResultsView: LinearLayout,
     private val onItemsFiltered: (List<Item>) -> Unit,
-    private val onFilterStateChanged: ((hasActiveFilters: Boolean) -> Unit)? = null
+    private val onFilterStateChanged: ((hasActiveFilters: Boolean) -> Unit)? = null,
+    private val scope: CoroutineScope
 ) {
 
+    companion object {
+        private const val TYPING_DEBOUNCE_MS = 120L
+    }
+
     private var allItems: List<Item> = emptyList()
     private var filteredItems: List<Item> = emptyList()
     private var selectedCategory: String? = null
+    private var categories: List<String> = emptyList()
+
+    /** Index over items passed to [setItems]; null while searching the catalog itself. */
+    private var externalIndex: ItemSearchIndex? = null
+    private var searchesCatalog = true
+    private var searchJob: Job? = null
+    private var indexJob: Job? = null
 
     init {
         setupSearchListener()
@@ -36,7 +60,7 @@ class ItemSearchHandler(
             override fun beforeTextChanged(s: CharSequence?, start: Int, count: Int, after: Int) {}
             override fun onTextChanged(s: CharSequence?, start: Int, before: Int, count: Int) {}
             override fun afterTextChanged(s: Editable?) {
-                applyFilters()
+                applyFilters(TYPING_DEBOUNCE_MS)
             }
         })
     }
@@ -45,7 +69,11 @@ class ItemSearchHandler(
      * Load all items from the item manager and update the UI.
      */
     fun loadItems() {
+        indexJob?.cancel()
         allItems = itemManager.getAllItems()
+        categories = itemManager.getAllCategories()
+        externalIndex = null
+        searchesCatalog = true
         applyFilters()
     }
 
@@ -54,17 +82,27 @@ class ItemSearchHandler(
      * Search and category filtering still work normally on the provided list.
      */
     fun setItems(items: List<Item>) {
+        indexJob?.cancel()
         allItems = items
+        categories = emptyList()
+        externalIndex = null
+        searchesCatalog = false
         applyFilters()
+
+        indexJob = scope.launch {
+            val index = withContext(Dispatchers.Default) {
+                ItemSearchIndex().apply { rebuild(items) }
+            }
+            externalIndex = index
+            categories = index.categories()
+            applyFilters()
+        }
     }
 
     /**
      * Get all available categories derived from the currently loaded items.
      */
-    fun getCategories(): List<String> = allItems
-        .mapNotNull { it.category?.takeIf { c -> c.isNotBlank() } }
-        .distinct()
-        .sorted()
+    fun getCategories(): List<String> = categories
 
     /**
      * Check if any categories exist.
@@ -104,24 +142,37 @@ class ItemSearchHandler(
     }
 
     /**
-     * Apply both text search and category filters.
+     * Apply both text search and category filters. Without filters the full
+     * list is shown immediately; otherwise the query runs off the main thread
+     * after [debounceMs], replacing any query still pending.
      */
-    private fun applyFilters() {
+    private fun applyFilters(debounceMs: Long = 0L) {
         val query = searchInput.text?.toString() ?: ""
-        
-        filteredItems = allItems.filter { item ->
-            val matchesCategory = selectedCategory == null || 
-                item.category?.equals(selectedCategory, ignoreCase = true) == true
-            
-            val matchesSearch = query.isBlank() || 
-                item.name?.lowercase()?.contains(query.lowercase()) == true ||
-                item.sku?.lowercase()?.contains(query.lowercase()) == true ||
-                item.variationName?.lowercase()?.contains(query.lowercase()) == true ||
-                item.category?.lowercase()?.contains(query.lowercase()) == true
-            
-            matchesCategory && matchesSearch
+        val category = selectedCategory
+        searchJob?.cancel()
+
+        if (query.isBlank() && category == null) {
+            publish(allItems)
+            return
         }
-        
+
+        val index = externalIndex
+        if (!searchesCatalog && index == null) {
+            // setItems() is still indexing; it re-applies the filters when done
+            return
+        }
+
+        searchJob = scope.launch {
+            if (debounceMs > 0) delay(debounceMs)
+            val results = withContext(Dispatchers.Default) {
+                index?.search(query, category) ?: itemManager.searchItems(query, category)
+            }
+            publish(results)
+        }
+    }
+
+    private fun publish(results: List<Item>) {
+        filteredItems = results
         onItemsFiltered(filteredItems)
         updateEmptyState()
         onFilterStateChanged?.invoke(hasActiveFilters())
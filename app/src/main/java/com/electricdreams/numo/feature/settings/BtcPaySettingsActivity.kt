@@ -19,13 +19,12 @@ import com.electricdreams.numo.core.payment.BTCPayConfig
 import com.electricdreams.numo.core.payment.BtcPayAppsService
 import com.electricdreams.numo.core.payment.BtcPayPosApp
 import com.electricdreams.numo.core.prefs.PreferenceStore
+import com.electricdreams.numo.core.util.HttpClients
 import com.electricdreams.numo.feature.enableEdgeToEdgeWithPill
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import okhttp3.OkHttpClient
 import okhttp3.Request
-import java.util.concurrent.TimeUnit
 
 class BtcPaySettingsActivity : AppCompatActivity() {
 
@@ -259,10 +258,7 @@ class BtcPaySettingsActivity : AppCompatActivity() {
         lifecycleScope.launch {
             val result = withContext(Dispatchers.IO) {
                 try {
-                    val client = OkHttpClient.Builder()
-                        .connectTimeout(10, TimeUnit.SECONDS)
-                        .readTimeout(10, TimeUnit.SECONDS)
-                        .build()
+                    val client = HttpClients.base
 
                     val request = Request.Builder()
                         .url("$serverUrl/api/v1/stores/$storeId/invoices")
@@ -15,14 +15,14 @@ import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.util.CurrencyManager
+import com.electricdreams.numo.core.util.HttpClients
 import androidx.core.view.ViewCompat
 import androidx.core.view.WindowInsetsCompat
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import okhttp3.Request
 import org.json.JSONObject
-import java.net.HttpURLConnection
-import java.net.URL
 import java.util.Currency
 
 class CurrencySettingsActivity : AppCompatActivity() {
@@ -104,14 +104,15 @@ class CurrencySettingsActivity : AppCompatActivity() {
         lifecycleScope.launch(Dispatchers.IO) {
             val supported = mutableSetOf<String>()
             try {
-                val url = URL("https://api.coinbase.com/v2/currencies")
-                val connection = url.openConnection() as HttpURLConnection
-                connection.requestMethod = "GET"
-                connection.connectTimeout = 5000
-                connection.readTimeout = 5000
-
-                if (connection.responseCode == HttpURLConnection.HTTP_OK) {
-                    val response = connection.inputStream.bufferedReader().use { it.readText() }
+                val request = Request.Builder()
+                    .url("https://api.coinbase.com/v2/currencies")
+                    .get()
+                    .build()
+                val response = HttpClients.base.newCall(request).execute().use { resp ->
+                    if (resp.isSuccessful) resp.body?.string() else null
+                }
+
+                if (response != null) {
                     val jsonObject = JSONObject(response)
                     val dataArray = jsonObject.getJSONArray("data")
                     for (i in 0 until dataArray.length()) {
@@ -2,14 +2,18 @@ package com.electricdreams.numo.feature.settings
 
 import android.content.Intent
 import android.os.Bundle
+import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import com.electricdreams.numo.R
 import com.electricdreams.numo.databinding.ActivityDeveloperSettingsBinding
 import com.electricdreams.numo.ui.util.DialogHelper
 import com.electricdreams.numo.feature.onboarding.OnboardingActivity
+import com.electricdreams.numo.ndef.NfcTapTiming
 import com.electricdreams.numo.core.prefs.PreferenceStore
+import com.electricdreams.numo.core.util.HttpClients
 import androidx.core.view.ViewCompat
 import androidx.core.view.WindowInsetsCompat
+import kotlin.math.roundToInt
 
 class DeveloperSettingsActivity : AppCompatActivity() {
 
@@ -40,6 +44,10 @@ class DeveloperSettingsActivity : AppCompatActivity() {
             startActivity(Intent(this, WalletLogsActivity::class.java))
         }
 
+        binding.nfcTimingsItem.setOnClickListener {
+            showNfcTimingsDialog()
+        }
+
         binding.btcmapReset.setOnClickListener {
             PreferenceStore.app(this).putBoolean("has_shown_btcmap_popup", false)
             android.widget.Toast.makeText(this, "BTCMap Promo Reset", android.widget.Toast.LENGTH_SHORT).show()
@@ -57,6 +65,47 @@ class DeveloperSettingsActivity : AppCompatActivity() {
         }
     }
 
+    override fun onResume() {
+        super.onResume()
+        updateNfcTimingsSubtitle()
+        updateHttpStatsSubtitle()
+    }
+
+    private fun updateHttpStatsSubtitle() {
+        val stats = HttpClients.stats()
+        binding.httpStatsSubtitle.text = getString(
+            R.string.developer_http_stats_summary,
+            stats.connectionsReused,
+            stats.connectionsAcquired,
+            (stats.reuseRatio * 100).roundToInt(),
+            stats.pooledConnections,
+            stats.idleConnections,
+        )
+    }
+
+    private fun updateNfcTimingsSubtitle() {
+        val latest = NfcTapTiming.recent().firstOrNull()
+        binding.nfcTimingsSubtitle.text = latest?.summary() ?: getString(R.string.developer_nfc_timings_subtitle)
+    }
+
+    private fun showNfcTimingsDialog() {
+        val taps = NfcTapTiming.recent()
+        val message = if (taps.isEmpty()) {
+            getString(R.string.developer_nfc_timings_empty)
+        } else {
+            taps.joinToString("\n\n") { it.summary() }
+        }
+        AlertDialog.Builder(this)
+            .setTitle(R.string.developer_nfc_timings_title)
+            .setMessage(message)
+            .setPositiveButton(R.string.developer_nfc_timings_close, null)
+            .setNeutralButton(R.string.developer_nfc_timings_clear) { _, _ ->
+                NfcTapTiming.clearHistory()
+                updateNfcTimingsSubtitle()
+            }
+            .show()
+    }
+
     private fun showRestartOnboardingDialog() {
         DialogHelper.showConfirmation(
             context = this,
@@ -5,7 +5,6 @@ import android.content.ClipData
 import android.content.ClipboardManager
 import android.content.Context
 import android.content.Intent
-import android.graphics.BitmapFactory
 import android.os.Bundle
 import android.util.Log
 import android.view.View
@@ -23,6 +22,7 @@ import com.electricdreams.numo.R
 import com.electricdreams.numo.core.cashu.CashuWalletManager
 import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.util.BalanceRefreshBroadcast
+import com.electricdreams.numo.core.util.ImageLoader
 import com.electricdreams.numo.core.util.MintIconCache
 import com.electricdreams.numo.core.util.MintManager
 import com.electricdreams.numo.core.util.MintProfileService
@@ -246,21 +246,15 @@ class MintDetailsActivity : AppCompatActivity() {
 
     private fun loadMintIcon() {
         val cachedFile = MintIconCache.getCachedIconFile(mintUrl)
-        if (cachedFile != null) {
-            try {
-                val bitmap = BitmapFactory.decodeFile(cachedFile.absolutePath)
-                if (bitmap != null) {
-                    mintIcon.setImageBitmap(bitmap)
-                    mintIcon.clearColorFilter()
-                    return
-                }
-            } catch (e: Exception) {
-                // Fall through to default
+        mintIcon.setColorFilter(getColor(R.color.color_primary))
+        ImageLoader.load(mintIcon, cachedFile?.absolutePath, R.drawable.ic_bitcoin) { loaded ->
+            if (loaded) {
+                mintIcon.clearColorFilter()
+            } else {
+                // Fall back to default
+                mintIcon.setImageResource(R.drawable.ic_bitcoin)
             }
         }
-        
-        mintIcon.setImageResource(R.drawable.ic_bitcoin)
-        mintIcon.setColorFilter(getColor(R.color.color_primary))
     }
 
     private fun loadBalance() {
@@ -288,18 +282,8 @@ class MintDetailsActivity : AppCompatActivity() {
     private fun loadCachedMintInfo() {
         clearMintInfoSections()
 
-        // Try to load from cached JSON
-        val cachedJson = mintManager.getMintInfo(mintUrl)
-        if (cachedJson != null) {
-            try {
-                val info = CashuWalletManager.mintInfoFromJson(cachedJson)
-                if (info != null) {
-                    displayCachedMintInfo(info)
-                }
-            } catch (e: Exception) {
-                Log.w(TAG, "Failed to parse cached mint info: ${'$'}{e.message}")
-            }
-        }
+        // Parsed info kept in memory by MintManager
+        mintManager.getCachedMintInfo(mintUrl)?.let { displayCachedMintInfo(it) }
     }
 
     private fun clearMintInfoSections() {
@@ -3,6 +3,7 @@ package com.electricdreams.numo.feature.settings
 import android.content.Intent
 import android.os.Bundle
 import android.text.InputType
+import android.text.format.DateUtils
 import android.view.LayoutInflater
 import android.view.View
 import android.widget.ImageButton
@@ -14,8 +15,11 @@ import androidx.activity.result.ActivityResultLauncher
 import androidx.activity.result.contract.ActivityResultContracts
 import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
+import androidx.lifecycle.Lifecycle
 import androidx.lifecycle.lifecycleScope
+import androidx.lifecycle.repeatOnLifecycle
 import com.electricdreams.numo.R
+import com.electricdreams.numo.core.util.HttpClients
 import com.electricdreams.numo.ui.components.EmptyStateHelper
 import com.electricdreams.numo.core.util.WebhookSettingsManager
 import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
@@ -49,9 +53,10 @@ class WebhookSettingsActivity : AppCompatActivity() {
     private var currentInputSheet: com.electricdreams.numo.ui.components.InputBottomSheet? = null
     private var isSyncing: Boolean = false
     private var syncJob: Job? = null
+    private val deliveryStatusViews = HashMap<String, TextView>()
 
     private val pingClient: OkHttpClient by lazy {
-        OkHttpClient.Builder()
+        HttpClients.newBuilder()
             .callTimeout(5, TimeUnit.SECONDS)
             .build()
     }
@@ -87,10 +92,19 @@ class WebhookSettingsActivity : AppCompatActivity() {
         emptyStateText = findViewById(R.id.empty_state_text)
 
         refreshEndpoints()
+
+        lifecycleScope.launch {
+            repeatOnLifecycle(Lifecycle.State.STARTED) {
+                PaymentWebhookDispatcher.getInstance(this@WebhookSettingsActivity)
+                    .deliveryStatus
+                    .collect { bindDeliveryStatus(it) }
+            }
+        }
     }
 
     private fun refreshEndpoints() {
         endpointsList.removeAllViews()
+        deliveryStatusViews.clear()
 
         val endpoints = webhookSettingsManager.getEndpoints()
         val isEmpty = endpoints.isEmpty()
@@ -112,6 +126,7 @@ class WebhookSettingsActivity : AppCompatActivity() {
             val endpointText = item.findViewById<TextView>(R.id.endpoint_url_text)
             val authStatusText = item.findViewById<TextView>(R.id.endpoint_auth_status_text)
             val statusDot = item.findViewById<ImageView>(R.id.endpoint_status_dot)
+            deliveryStatusViews[endpoint.url] = item.findViewById(R.id.endpoint_delivery_status_text)
             val editAuthButton = item.findViewById<ImageButton>(R.id.edit_auth_button)
             val deleteButton = item.findViewById<ImageButton>(R.id.delete_button)
 
@@ -165,8 +180,50 @@ class WebhookSettingsActivity : AppCompatActivity() {
             endpointsList.addView(item)
             addDividerIfNeeded(endpointsList, index < endpoints.lastIndex)
         }
+
+        bindDeliveryStatus(PaymentWebhookDispatcher.getInstance(this).deliveryStatus.value)
+    }
+
+    /** Show each endpoint's outbox backlog, or how quickly its last delivery landed. */
+    private fun bindDeliveryStatus(statuses: Map<String, PaymentWebhookDispatcher.EndpointDeliveryStatus>) {
+        val now = System.currentTimeMillis()
+        deliveryStatusViews.forEach { (url, view) ->
+            val status = statuses[url]
+            val oldestPendingAtMs = status?.oldestPendingAtMs
+            val lastDeliveredAtMs = status?.lastDeliveredAtMs
+            val lastLatencyMs = status?.lastLatencyMs
+            val text = when {
+                status != null && status.pendingCount > 0 && oldestPendingAtMs != null -> {
+                    val backlog = getString(
+                        R.string.webhook_settings_delivery_backlog,
+                        status.pendingCount,
+                        relativeTime(oldestPendingAtMs, now),
+                    )
+                    val nextRetryAtMs = status.nextRetryAtMs
+                    if (nextRetryAtMs != null) {
+                        "$backlog · " + getString(
+                            R.string.webhook_settings_delivery_next_retry,
+                            relativeTime(nextRetryAtMs, now),
+                        )
+                    } else {
+                        backlog
+                    }
+                }
+                lastDeliveredAtMs != null && lastLatencyMs != null -> getString(
+                    R.string.webhook_settings_delivery_last,
+                    relativeTime(lastDeliveredAtMs, now),
+                    DateUtils.formatElapsedTime(lastLatencyMs / 1000),
+                )
+                else -> null
+            }
+            view.text = text
+            view.visibility = if (text != null) View.VISIBLE else View.GONE
+        }
     }
 
+    private fun relativeTime(timeMs: Long, now: Long): CharSequence =
+        DateUtils.getRelativeTimeSpanString(timeMs, now, DateUtils.SECOND_IN_MILLIS)
+
     private fun addDividerIfNeeded(container: LinearLayout, shouldAdd: Boolean) {
         if (!shouldAdd) {
             return
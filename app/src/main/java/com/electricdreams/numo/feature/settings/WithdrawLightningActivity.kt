@@ -304,6 +304,7 @@ class WithdrawLightningActivity : AppCompatActivity() {
                 val token = withContext(Dispatchers.IO) {
                     preparedSend.confirm(null)
                 }
+                CashuWalletManager.invalidateBalances("send")
                 WalletLogger.log("OUT", amountSats, mintUrl, "Token created (melt)")
                 
                 val tokenString = token.encode()
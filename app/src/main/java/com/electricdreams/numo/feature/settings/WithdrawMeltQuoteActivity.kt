@@ -15,9 +15,11 @@ import com.electricdreams.numo.core.cashu.CashuWalletManager
 import com.electricdreams.numo.core.model.Amount
 import com.electricdreams.numo.core.util.MintManager
 import com.electricdreams.numo.feature.autowithdraw.AutoWithdrawManager
+import com.electricdreams.numo.payment.MintSubscriptionHub
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import org.cashudevkit.CurrencyUnit
 import org.cashudevkit.FinalizedMelt
 import org.cashudevkit.MintUrl
@@ -29,6 +31,9 @@ class WithdrawMeltQuoteActivity : AppCompatActivity() {
 
     companion object {
         private const val TAG = "WithdrawMeltQuote"
+
+        /** How long a melt left PENDING by confirm() is watched for its final state. */
+        private const val PENDING_MELT_WAIT_MS = 60_000L
     }
 
     private lateinit var mintUrl: String
@@ -200,7 +205,11 @@ class WithdrawMeltQuoteActivity : AppCompatActivity() {
                 // Prepare and confirm melt
                 val finalized: FinalizedMelt = withContext(Dispatchers.IO) {
                     val prepared = mintWallet.prepareMelt(quoteId)
-                    prepared.confirm()
+                    try {
+                        prepared.confirm()
+                    } finally {
+                        CashuWalletManager.invalidateBalances("melt")
+                    }
                 }
 
                 Log.d(TAG, "Melt completed: state=${finalized.state}, feePaid=${finalized.feePaid.value}, preimage=${finalized.preimage != null}")
@@ -209,12 +218,20 @@ class WithdrawMeltQuoteActivity : AppCompatActivity() {
                     updateProcessingState(ProcessingStep.SETTLING)
                 }
 
+                // A PENDING melt usually settles within seconds; follow it on the
+                // mint's NUT-17 socket rather than reporting it as pending right away
+                val meltState = if (finalized.state == QuoteState.PENDING) {
+                    awaitPendingMelt() ?: QuoteState.PENDING
+                } else {
+                    finalized.state
+                }
+
                 val actualFee = finalized.feePaid.value.toLong()
 
                 withContext(Dispatchers.Main) {
                     setLoading(false)
 
-                    when (finalized.state) {
+                    when (meltState) {
                         QuoteState.PAID -> {
                             withdrawEntryId?.let {
                                 autoWithdrawManager.updateWithdrawalStatus(
@@ -282,6 +299,29 @@ class WithdrawMeltQuoteActivity : AppCompatActivity() {
         }
     }
 
+    /**
+     * Wait up to [PENDING_MELT_WAIT_MS] for the melt quote to reach PAID or
+     * UNPAID. Returns null if it is still pending or the mint cannot push.
+     */
+    private suspend fun awaitPendingMelt(): QuoteState? {
+        val state = try {
+            withTimeoutOrNull(PENDING_MELT_WAIT_MS) {
+                MintSubscriptionHub.getInstance().awaitState(
+                    mintUrl, MintSubscriptionHub.Kind.MELT_QUOTE, quoteId, setOf("PAID", "UNPAID")
+                )
+            }
+        } catch (e: MintSubscriptionHub.PushUnavailableException) {
+            Log.d(TAG, "Cannot follow pending melt: ${e.message}")
+            null
+        }
+        CashuWalletManager.invalidateBalances("melt")
+        return when (state) {
+            "PAID" -> QuoteState.PAID
+            "UNPAID" -> QuoteState.UNPAID
+            else -> null
+        }
+    }
+
     private fun showPaymentSuccess() {
         val intent = Intent(this, WithdrawSuccessActivity::class.java)
         intent.putExtra("amount", amount)
@@ -39,7 +39,6 @@ import com.electricdreams.numo.core.util.MintLimitChecker
 import com.electricdreams.numo.core.util.MintManager
 import com.electricdreams.numo.core.worker.BitcoinPriceWorker
 import android.widget.Toast
-import android.util.Log
 import kotlin.math.roundToLong
 
 /**
@@ -905,18 +904,8 @@ class TipSelectionActivity : AppCompatActivity() {
         val preferredMint = mintManager.getPreferredLightningMint()
         
         if (preferredMint != null) {
-            // Get raw mint info and parse limits directly
-            val mintInfoJson = mintManager.getMintInfo(preferredMint)
-            var limits: CashuWalletManager.MintLimits? = null
-            
-            if (mintInfoJson != null) {
-                // Try parsing from stored JSON
-                try {
-                    limits = CashuWalletManager.extractMintLimitsFromJson(mintInfoJson)
-                } catch (e: Exception) {
-                    Log.w(TAG, "Failed to parse limits from cache: ${e.message}")
-                }
-            }
+            // Limits from the parsed mint info kept in memory
+            var limits: CashuWalletManager.MintLimits? = mintManager.getCachedMintInfo(preferredMint)?.mintLimits
             
             // If still null, try force refresh (not first fetch - preserve cache)
             if (limits == null) {
@@ -453,6 +453,7 @@ object CashuPaymentHelper {
             )
 
             mintWallet.receive(cdkToken, receiveOptions)
+            CashuWalletManager.invalidateBalances("receive")
 
             val tokenAmount = cdkToken.value().value.toLong()
             WalletLogger.log("IN", tokenAmount, mintUrl, "Token redeemed")
@@ -491,6 +492,7 @@ object CashuPaymentHelper {
         )
 
         mintWallet.receiveProofs(proofs, receiveOptions, null, null)
+        CashuWalletManager.invalidateBalances("receive")
         val proofsAmount = proofs.map { it.amount.value.toLong() }.sum()
         WalletLogger.log("IN", proofsAmount, mintUrl, "Proofs redeemed")
     }
@@ -639,6 +641,7 @@ object CashuPaymentHelper {
 
                 try {
                     mintWallet.receive(cdkToken, receiveOptions)
+                    CashuWalletManager.invalidateBalances("receive")
                     
                     val tokenAmount = cdkToken.value().value.toLong()
                     WalletLogger.log("IN", tokenAmount, cdkToken.mintUrl().url, "Token redeemed (swap flow)")
@@ -63,6 +63,10 @@ public class NdefApduHandler {
         if (length == 0) length = 256;
         int offset = ((apdu[2] & 0xFF) << 8) | (apdu[3] & 0xFF);
         
+        if (selectedFile == NdefConstants.CC_FILE) {
+            stateManager.getTapTiming().mark(NfcTapTiming.PHASE_CC_READ);
+        }
+        
         if (offset >= selectedFile.length) {
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
@@ -155,7 +155,6 @@ public class NdefHostCardEmulationService extends HostApduService {
         try {
             // Log all incoming APDUs at INFO level for visibility
             Log.i(TAG, "=== Received APDU command ===");
-            Log.i(TAG, "Hex: " + bytesToHex(commandApdu));
             if (commandApdu.length > 0) {
                 String description = "";
                 if (commandApdu.length >= 2) {
@@ -167,7 +166,11 @@ public class NdefHostCardEmulationService extends HostApduService {
                         default: description = "UNKNOWN";
                     }
                 }
-                Log.i(TAG, "Command: " + description);
+                Log.i(TAG, "Command: " + description + " (" + commandApdu.length + " bytes)");
+                // Token chunks are the bulk of a tap; don't hex-dump each one
+                if (commandApdu.length < 2 || commandApdu[1] != (byte)0xD6) {
+                    Log.i(TAG, "Hex: " + bytesToHex(commandApdu));
+                }
             }
             
             // Start or reset NFC reading indicator for any APDU command when a payment is expected
@@ -302,11 +305,7 @@ public class NdefHostCardEmulationService extends HostApduService {
      * Convert a byte array to a hex string
      */
     private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X", b));
-        }
-        return sb.toString();
+        return NdefUtils.bytesToHex(bytes);
     }
     
     /**
@@ -2,6 +2,7 @@ package com.electricdreams.numo.ndef;
 
 import android.util.Log;
 import org.cashudevkit.Token;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -20,6 +21,18 @@ public class NdefMessageParser {
      * Process a received NDEF message
      */
     public void processReceivedNdefMessage(byte[] ndefData, boolean processIncomingMessages) {
+        processReceivedNdefMessage(ndefData, ndefData.length, null, processIncomingMessages, null);
+    }
+
+    /**
+     * Process a received NDEF message held in the first {@code length} bytes
+     * of {@code ndefData}. {@code header} is the record header scanned while
+     * the message was arriving, or null to scan it here. {@code timing}, if
+     * given, is stamped when the content has been decoded and again once the
+     * callback returns.
+     */
+    public void processReceivedNdefMessage(byte[] ndefData, int length, NdefRecordHeader header,
+                                           boolean processIncomingMessages, NfcTapTiming timing) {
         Log.i(TAG, "Processing received NDEF message, process flag: " + processIncomingMessages);
         
         // Skip processing if we're not supposed to process incoming messages
@@ -28,14 +41,13 @@ public class NdefMessageParser {
             return;
         }
         
-        Log.i(TAG, "Hex dump: " + NdefUtils.bytesToHex(Arrays.copyOfRange(ndefData, 0, Math.min(ndefData.length, 100))));
+        Log.i(TAG, "Hex dump: " + NdefUtils.bytesToHex(Arrays.copyOfRange(ndefData, 0, Math.min(length, 100))));
         
-        int offset = 0;
-        int totalLength = 0;
+        int totalLength;
         
         // Detect framing:
         // Type 4: first two bytes form the NDEF file length
-        if (ndefData.length >= 2) {
+        if (length >= 2) {
             Log.i(TAG, "Type 4 style NDEF");
             totalLength = ((ndefData[0] & 0xFF) << 8) | (ndefData[1] & 0xFF);
             Log.i(TAG, "NDEF message total length from header: " + totalLength);
@@ -47,159 +59,81 @@ public class NdefMessageParser {
             }
             
             // Ensure we have enough data
-            if (totalLength + 2 > ndefData.length) {
+            if (totalLength + 2 > length) {
                 Log.e(TAG, "Incomplete NDEF data - header specifies " + totalLength + 
-                      " bytes but we only have " + (ndefData.length - 2) + " bytes of payload");
+                      " bytes but we only have " + (length - 2) + " bytes of payload");
                 return;
             }
-            
-            offset = 2;
         } else {
             Log.e(TAG, "Invalid NDEF data - length less than 2 bytes");
             return;
         }
         
         try {
-            parseNdefRecord(ndefData, offset);
+            if (header == null) {
+                header = NdefRecordHeader.scan(ndefData, 2, length);
+            }
+            parseNdefRecord(ndefData, length, header, timing);
         } catch (Exception e) {
             Log.e(TAG, "Error extracting data from NDEF message: " + e.getMessage(), e);
         }
     }
     
     /**
-     * Parse an NDEF record starting at the given offset.
-     * Parse an NDEF record starting at the given offset
+     * Parse the NDEF record described by {@code header}
      */
-    private void parseNdefRecord(byte[] ndefData, int offset) {
-        if (offset >= ndefData.length) {
-            Log.e(TAG, "Invalid offset beyond data length");
-            return;
-        }
-        
-        // Read record header starting at offset
-        byte header = ndefData[offset];
-        Log.i(TAG, "NDEF header byte: 0x" + String.format("%02X", header));
-        
-        if (offset + 1 >= ndefData.length) {
-            Log.e(TAG, "Invalid data - can't read type length");
+    private void parseNdefRecord(byte[] ndefData, int length, NdefRecordHeader header, NfcTapTiming timing) {
+        if (header == null) {
+            Log.e(TAG, "Invalid data - record header truncated");
             return;
         }
-        
-        int typeLength = ndefData[offset + 1] & 0xFF;
-        Log.i(TAG, "NDEF type length: " + typeLength);
+        Log.i(TAG, "NDEF record: " + header);
         
         // Additional validation for type length
-        if (typeLength <= 0) {
-            Log.e(TAG, "Invalid type length: " + typeLength);
+        if (header.typeLength <= 0) {
+            Log.e(TAG, "Invalid type length: " + header.typeLength);
             return;
         }
         
-        // Determine payload length field size based on the SR flag (0x10)
-        int payloadLength;
-        int typeFieldStart;
-        
-        // Check SR (Short Record) flag
-        boolean isShortRecord = (header & NdefConstants.SHORT_RECORD_FLAG) != 0;
-        Log.i(TAG, "Is short record: " + isShortRecord);
-        
-        if (isShortRecord) { // Short record: 1 byte payload length
-            if (offset + 2 >= ndefData.length) {
-                Log.e(TAG, "Invalid data - can't read short record payload length");
-                return;
-            }
-            
-            payloadLength = ndefData[offset + 2] & 0xFF;
-            typeFieldStart = offset + 3;
-            Log.i(TAG, "Short record payload length: " + payloadLength);
-        } else { // Normal record: payload length is 4 bytes
-            if (offset + 5 >= ndefData.length) {
-                Log.e(TAG, "Invalid data - can't read normal record payload length");
-                return;
-            }
-            
-            payloadLength = ((ndefData[offset + 2] & 0xFF) << 24) |
-                    ((ndefData[offset + 3] & 0xFF) << 16) |
-                    ((ndefData[offset + 4] & 0xFF) << 8) |
-                    (ndefData[offset + 5] & 0xFF);
-            typeFieldStart = offset + 6;
-            Log.i(TAG, "Normal record payload length: " + payloadLength);
-        }
-        
         // Validate payload length
-        if (payloadLength <= 0) {
-            Log.e(TAG, "Invalid payload length: " + payloadLength);
-            return;
-        }
-        
-        // Safety check for typeFieldStart
-        if (typeFieldStart >= ndefData.length) {
-            Log.e(TAG, "Invalid typeFieldStart beyond data length");
-            return;
-        }
-        
-        // Check TNF (Type Name Format)
-        int tnf = header & NdefConstants.TNF_MASK;
-        Log.i(TAG, "TNF: " + tnf);
-        
-        // Check if we have a valid type field
-        if (typeFieldStart + typeLength > ndefData.length) {
-            Log.e(TAG, "Type field extends beyond data bounds");
+        if (header.payloadLength <= 0) {
+            Log.e(TAG, "Invalid payload length: " + header.payloadLength);
             return;
         }
-        
-        // Get the record type
-        byte[] typeField = Arrays.copyOfRange(ndefData, typeFieldStart, typeFieldStart + typeLength);
-        String typeStr = new String(typeField);
-        Log.i(TAG, "Record type: " + typeStr + " (hex: " + NdefUtils.bytesToHex(typeField) + ")");
-        
-        // For text records, verify the record type is "T" (0x54) and TNF is well-known
-        // For URI records, verify the record type is "U" (0x55) and TNF is well-known
-        boolean isTextRecord =
-                (tnf == NdefConstants.TNF_WELL_KNOWN &&
-                 typeLength == 1 &&
-                 ndefData[typeFieldStart] == NdefConstants.TEXT_RECORD_TYPE);
 
-        boolean isUriRecord =
-                (tnf == NdefConstants.TNF_WELL_KNOWN &&
-                 typeLength == 1 &&
-                 ndefData[typeFieldStart] == NdefConstants.URI_RECORD_TYPE);
-
-        // Binary-encoded Cashu tokens are transported as MIME media records
-        boolean isCashuBinaryMimeRecord =
-                (tnf == NdefConstants.TNF_MIME_MEDIA &&
-                 typeStr.equalsIgnoreCase(NdefConstants.CASHU_BINARY_MIME_TYPE));
-
-        Log.i(TAG, "Is Text Record: " + isTextRecord);
-        Log.i(TAG, "Is URI Record: " + isUriRecord);
-        Log.i(TAG, "Is Cashu Binary MIME Record: " + isCashuBinaryMimeRecord);
-
-        if (!isTextRecord && !isUriRecord && !isCashuBinaryMimeRecord) {
+        if (header.kind == NdefRecordHeader.KIND_UNSUPPORTED) {
             Log.w(TAG, "NDEF message is not Text, URI, or Cashu Binary MIME. Type: " +
-                  NdefUtils.bytesToHex(typeField) + ", returning");
+                  header.type + ", returning");
             return;
         }
         
         // Payload starts immediately after the type field
-        int payloadStart = typeFieldStart + typeLength;
-        Log.i(TAG, "Payload start position: " + payloadStart);
+        int payloadStart = header.payloadStart;
+        int payloadLength = header.payloadLength;
         
-        if (payloadStart >= ndefData.length) {
+        if (payloadStart >= length) {
             Log.e(TAG, "Payload start index out of bounds, returning");
             return;
         }
         
-        if (payloadStart + payloadLength > ndefData.length) {
+        if (payloadStart + payloadLength > length) {
             Log.e(TAG, "Payload exceeds data bounds: " +
-                  payloadStart + " + " + payloadLength + " > " + ndefData.length);
+                  payloadStart + " + " + payloadLength + " > " + length);
             return;
         }
 
-        if (isTextRecord) {
-            parseTextRecord(ndefData, payloadStart, payloadLength);
-        } else if (isUriRecord) {
-            parseUriRecord(ndefData, payloadStart, payloadLength);
-        } else if (isCashuBinaryMimeRecord) {
-            parseCashuBinaryTokenRecord(ndefData, payloadStart, payloadLength);
+        switch (header.kind) {
+            case NdefRecordHeader.KIND_TEXT:
+                parseTextRecord(ndefData, payloadStart, payloadLength, timing);
+                break;
+            case NdefRecordHeader.KIND_URI:
+                parseUriRecord(ndefData, payloadStart, payloadLength, timing);
+                break;
+            case NdefRecordHeader.KIND_CASHU_BINARY:
+                parseCashuBinaryTokenRecord(ndefData, payloadStart, payloadLength, timing);
+                break;
+            default:
+                break;
         }
     }
 
@@ -213,7 +147,7 @@ public class NdefMessageParser {
      * forwarded to the {@link NdefProcessor.NdefMessageCallback} as if it
      * had been received as a textual Cashu token.
      */
-    private void parseCashuBinaryTokenRecord(byte[] ndefData, int payloadStart, int payloadLength) {
+    private void parseCashuBinaryTokenRecord(byte[] ndefData, int payloadStart, int payloadLength, NfcTapTiming timing) {
         try {
             byte[] payloadBytes = Arrays.copyOfRange(
                     ndefData,
@@ -235,7 +169,7 @@ public class NdefMessageParser {
 
             if (callback != null) {
                 Log.i(TAG, "Calling onNdefMessageReceived with Cashu token from binary payload");
-                callback.onNdefMessageReceived(encodedToken);
+                deliver(encodedToken, timing);
             } else {
                 Log.e(TAG, "Callback is null, can't deliver binary Cashu token");
             }
@@ -247,7 +181,7 @@ public class NdefMessageParser {
     /**
      * Parse a text record
      */
-    private void parseTextRecord(byte[] ndefData, int payloadStart, int payloadLength) {
+    private void parseTextRecord(byte[] ndefData, int payloadStart, int payloadLength, NfcTapTiming timing) {
         try {
             // For a Text record, first payload byte is the status byte
             byte status = ndefData[payloadStart];
@@ -259,21 +193,21 @@ public class NdefMessageParser {
             int textLength = payloadLength - 1 - languageCodeLength;
             Log.i(TAG, "Text start position: " + textStart + ", length: " + textLength);
             
-            if (textStart + textLength > ndefData.length) {
+            if (textLength < 0 || textStart + textLength > ndefData.length) {
                 Log.e(TAG, "Text extraction bounds exceed data size: " + 
                       textStart + " + " + textLength + " > " + ndefData.length);
                 return;
             }
             
-            byte[] textBytes = Arrays.copyOfRange(ndefData, textStart, textStart + textLength);
-            String text = new String(textBytes, "UTF-8");
+            // Decode straight out of the receive buffer
+            String text = new String(ndefData, textStart, textLength, StandardCharsets.UTF_8);
             
             Log.i(TAG, "Extracted text: " + text);
             
             // Call the callback if set
             if (callback != null) {
                 Log.i(TAG, "Calling onNdefMessageReceived with text: " + text);
-                callback.onNdefMessageReceived(text);
+                deliver(text, timing);
             } else {
                 Log.e(TAG, "Callback is null, can't deliver message");
             }
@@ -285,7 +219,7 @@ public class NdefMessageParser {
     /**
      * Parse a URI record
      */
-    private void parseUriRecord(byte[] ndefData, int payloadStart, int payloadLength) {
+    private void parseUriRecord(byte[] ndefData, int payloadStart, int payloadLength, NfcTapTiming timing) {
         try {
             // URI Record handling - first byte is the URI identifier code
             byte uriIdentifierCode = ndefData[payloadStart];
@@ -300,8 +234,7 @@ public class NdefMessageParser {
                 return;
             }
             
-            byte[] uriBytes = Arrays.copyOfRange(ndefData, uriStart, uriStart + uriLength);
-            String uri = new String(uriBytes, "UTF-8");
+            String uri = new String(ndefData, uriStart, uriLength, StandardCharsets.UTF_8);
             
             // Prepend the URI prefix according to the identifier code
             String prefix = NdefUriProcessor.getUriPrefix(uriIdentifierCode);
@@ -311,7 +244,7 @@ public class NdefMessageParser {
             // Call the callback if set
             if (callback != null) {
                 Log.i(TAG, "Calling onNdefMessageReceived with URI: " + fullUri);
-                callback.onNdefMessageReceived(fullUri);
+                deliver(fullUri, timing);
             } else {
                 Log.e(TAG, "Callback is null, can't deliver message");
             }
@@ -319,4 +252,17 @@ public class NdefMessageParser {
             Log.e(TAG, "Error parsing URI record: " + e.getMessage(), e);
         }
     }
+    
+    /**
+     * Hand decoded content to the callback, stamping the tap timing around it
+     */
+    private void deliver(String content, NfcTapTiming timing) {
+        if (timing != null) {
+            timing.mark(NfcTapTiming.PHASE_PARSED);
+        }
+        callback.onNdefMessageReceived(content);
+        if (timing != null) {
+            timing.mark(NfcTapTiming.PHASE_CALLBACK);
+        }
+    }
 }
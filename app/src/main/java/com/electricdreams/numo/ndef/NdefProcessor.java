@@ -70,6 +70,7 @@ public class NdefProcessor {
         if (Arrays.equals(commandApdu, NdefConstants.NDEF_SELECT_AID)) {
             Log.d(TAG, "NDEF AID selected (write mode: " + stateManager.isInWriteMode() + 
                   ", has message: " + !stateManager.getMessageToSend().isEmpty() + ")");
+            stateManager.startTapTiming();
             return NdefConstants.NDEF_RESPONSE_OK;
         }
         
@@ -87,7 +88,7 @@ public class NdefProcessor {
         
         // Handle Update Binary
         if (isUpdateBinaryCommand(commandApdu)) {
-            Log.d(TAG, "UPDATE BINARY command received: " + NdefUtils.bytesToHex(commandApdu));
+            Log.d(TAG, "UPDATE BINARY command received (" + commandApdu.length + " bytes)");
             return updateBinaryHandler.handleUpdateBinary(commandApdu);
         }
         
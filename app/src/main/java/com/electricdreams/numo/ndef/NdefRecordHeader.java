@@ -0,0 +1,102 @@
+package com.electricdreams.numo.ndef;
+
+/**
+ * Header of the first NDEF record in a message: flags, type and payload
+ * bounds. Small enough to be scanned as soon as the first UPDATE BINARY
+ * chunks arrive, so the record type is known long before the payload is
+ * complete.
+ */
+public final class NdefRecordHeader {
+
+    public static final int KIND_UNSUPPORTED = 0;
+    public static final int KIND_TEXT = 1;
+    public static final int KIND_URI = 2;
+    public static final int KIND_CASHU_BINARY = 3;
+
+    public final byte flags;
+    public final int tnf;
+    public final boolean shortRecord;
+    public final int typeStart;
+    public final int typeLength;
+    public final int payloadStart;
+    public final int payloadLength;
+    public final String type;
+    public final int kind;
+
+    private NdefRecordHeader(byte flags, int typeStart, int typeLength, int payloadLength, String type) {
+        this.flags = flags;
+        this.tnf = flags & NdefConstants.TNF_MASK;
+        this.shortRecord = (flags & NdefConstants.SHORT_RECORD_FLAG) != 0;
+        this.typeStart = typeStart;
+        this.typeLength = typeLength;
+        this.payloadStart = typeStart + typeLength;
+        this.payloadLength = payloadLength;
+        this.type = type;
+        this.kind = classify(tnf, type);
+    }
+
+    /**
+     * Scan the record header at {@code offset}, looking only at bytes before
+     * {@code limit}. Returns null while the header (up to the end of the type
+     * field) is not fully available yet. Headers with nonsensical lengths are
+     * still returned; {@link #isWellFormed()} tells them apart.
+     */
+    public static NdefRecordHeader scan(byte[] data, int offset, int limit) {
+        if (offset + 2 >= limit) {
+            return null;
+        }
+        byte flags = data[offset];
+        int typeLength = data[offset + 1] & 0xFF;
+
+        int payloadLength;
+        int typeStart;
+        if ((flags & NdefConstants.SHORT_RECORD_FLAG) != 0) {
+            // Short record: 1 byte payload length
+            payloadLength = data[offset + 2] & 0xFF;
+            typeStart = offset + 3;
+        } else {
+            // Normal record: payload length is 4 bytes
+            if (offset + 5 >= limit) {
+                return null;
+            }
+            payloadLength = ((data[offset + 2] & 0xFF) << 24) |
+                    ((data[offset + 3] & 0xFF) << 16) |
+                    ((data[offset + 4] & 0xFF) << 8) |
+                    (data[offset + 5] & 0xFF);
+            typeStart = offset + 6;
+        }
+
+        if (typeStart + typeLength > limit) {
+            return null;
+        }
+        String type = new String(data, typeStart, typeLength);
+        return new NdefRecordHeader(flags, typeStart, typeLength, payloadLength, type);
+    }
+
+    public boolean isWellFormed() {
+        return typeLength > 0 && payloadLength > 0;
+    }
+
+    /** End of the payload, exclusive. */
+    public int payloadEnd() {
+        return payloadStart + payloadLength;
+    }
+
+    private static int classify(int tnf, String type) {
+        if (tnf == NdefConstants.TNF_WELL_KNOWN && type.length() == 1) {
+            if (type.charAt(0) == NdefConstants.TEXT_RECORD_TYPE) return KIND_TEXT;
+            if (type.charAt(0) == NdefConstants.URI_RECORD_TYPE) return KIND_URI;
+        }
+        // Binary-encoded Cashu tokens are transported as MIME media records
+        if (tnf == NdefConstants.TNF_MIME_MEDIA && type.equalsIgnoreCase(NdefConstants.CASHU_BINARY_MIME_TYPE)) {
+            return KIND_CASHU_BINARY;
+        }
+        return KIND_UNSUPPORTED;
+    }
+
+    @Override
+    public String toString() {
+        return "NdefRecordHeader{tnf=" + tnf + ", type=" + type + ", short=" + shortRecord
+                + ", payloadStart=" + payloadStart + ", payloadLength=" + payloadLength + "}";
+    }
+}
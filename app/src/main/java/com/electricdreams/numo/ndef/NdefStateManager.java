@@ -1,6 +1,7 @@
 package com.electricdreams.numo.ndef;
 
 import android.util.Log;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 
 /**
@@ -9,6 +10,9 @@ import java.util.Arrays;
 public class NdefStateManager {
     private static final String TAG = "NdefStateManager";
     
+    private static final int NDEF_BODY_START = 2;
+    private static final int MAX_SPARE_BUFFERS = 1;
+    
     // Message to be sent when in write mode
     private String messageToSend = "";
     
@@ -18,10 +22,24 @@ public class NdefStateManager {
     // Flag to control whether incoming messages should be processed
     private boolean processIncomingMessages = false;
     
-    // NDEF buffer for received data
+    // NDEF buffer for received data. UPDATE BINARY writes land here directly;
+    // a completed message's buffer is handed to the parser and swapped for a
+    // spare, so the next tap never waits on (or allocates for) the previous one.
     private byte[] ndefData = new byte[NdefConstants.MAX_NDEF_DATA_SIZE];
+    private final ArrayDeque<byte[]> spareBuffers = new ArrayDeque<>(MAX_SPARE_BUFFERS);
     private int expectedNdefLength = -1;
     
+    // End of the furthest write, and end of the message body received without
+    // gaps (the body starts after the 2-byte NLEN, which writers set last)
+    private int writtenEnd = 0;
+    private int contiguousEnd = NDEF_BODY_START;
+    
+    // First record header, scanned as soon as enough contiguous bytes arrive
+    private NdefRecordHeader recordHeader = null;
+    
+    // Phase timing for the tap in progress
+    private NfcTapTiming tapTiming = null;
+    
     // Selected file during operation
     private byte[] selectedFile = null;
     
@@ -113,9 +131,113 @@ public class NdefStateManager {
         return callback;
     }
     
+    /**
+     * Record that {@code length} bytes were written at {@code offset}
+     */
+    public void recordWrite(int offset, int length) {
+        int end = offset + length;
+        if (end > writtenEnd) {
+            writtenEnd = end;
+        }
+        if (offset <= contiguousEnd && end > contiguousEnd) {
+            contiguousEnd = end;
+        }
+        // A rewrite of the record header invalidates what was scanned
+        if (recordHeader != null && offset < recordHeader.payloadStart && end > NDEF_BODY_START) {
+            recordHeader = null;
+        }
+    }
+    
+    public int getWrittenEnd() {
+        return writtenEnd;
+    }
+    
+    public int getContiguousEnd() {
+        return contiguousEnd;
+    }
+    
+    /**
+     * Whether any message body bytes (beyond the NLEN header) have been written
+     */
+    public boolean hasBodyData() {
+        return writtenEnd > NDEF_BODY_START;
+    }
+    
+    public NdefRecordHeader getRecordHeader() {
+        return recordHeader;
+    }
+    
+    public void setRecordHeader(NdefRecordHeader header) {
+        this.recordHeader = header;
+    }
+    
+    /**
+     * Start timing a new tap; called on SELECT AID
+     */
+    public NfcTapTiming startTapTiming() {
+        tapTiming = new NfcTapTiming();
+        tapTiming.mark(NfcTapTiming.PHASE_SELECT);
+        return tapTiming;
+    }
+    
+    /**
+     * Timing for the tap in progress, started lazily if SELECT AID was missed
+     */
+    public NfcTapTiming getTapTiming() {
+        if (tapTiming == null) {
+            tapTiming = new NfcTapTiming();
+        }
+        return tapTiming;
+    }
+    
+    /**
+     * Hand over the current tap's timing along with its message
+     */
+    public NfcTapTiming detachTapTiming() {
+        NfcTapTiming timing = getTapTiming();
+        tapTiming = null;
+        return timing;
+    }
+    
+    /**
+     * Take the current receive buffer for processing and start the next
+     * message in a spare one. Hand the buffer back with
+     * {@link #releaseNdefData(byte[], int)} once it has been parsed.
+     */
+    public byte[] detachNdefData() {
+        byte[] detached = ndefData;
+        byte[] next;
+        synchronized (spareBuffers) {
+            next = spareBuffers.pollFirst();
+        }
+        ndefData = next != null ? next : new byte[NdefConstants.MAX_NDEF_DATA_SIZE];
+        resetCounters();
+        return detached;
+    }
+    
+    /**
+     * Return a buffer from {@link #detachNdefData()}; only the first
+     * {@code usedLength} bytes can be dirty. Safe to call from any thread.
+     */
+    public void releaseNdefData(byte[] buffer, int usedLength) {
+        Arrays.fill(buffer, 0, Math.min(usedLength, buffer.length), (byte) 0);
+        synchronized (spareBuffers) {
+            if (spareBuffers.size() < MAX_SPARE_BUFFERS) {
+                spareBuffers.addLast(buffer);
+            }
+        }
+    }
+    
     public void resetForNextMessage() {
+        Arrays.fill(ndefData, 0, writtenEnd, (byte) 0);
+        resetCounters();
+    }
+    
+    private void resetCounters() {
         expectedNdefLength = -1;
-        Arrays.fill(ndefData, (byte) 0);
+        writtenEnd = 0;
+        contiguousEnd = NDEF_BODY_START;
+        recordHeader = null;
         lastMessageActivityTime = 0;
     }
 }
@@ -2,13 +2,28 @@ package com.electricdreams.numo.ndef;
 
 import android.util.Log;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Handles UPDATE BINARY APDU commands for NDEF operations
+ * Handles UPDATE BINARY APDU commands for NDEF operations.
+ *
+ * Chunks are written straight from the APDU into the state manager's receive
+ * buffer, and the record header is scanned as soon as it has arrived. A
+ * completed message's buffer is handed as-is to a single long-lived worker
+ * for parsing, so the reader gets its 0x9000 without waiting on payment logic.
  */
 public class NdefUpdateBinaryHandler {
     private static final String TAG = "NdefUpdateBinaryHandler";
     
+    // One worker for every tap, rather than a new thread per message. Messages
+    // are parsed in arrival order.
+    private static final ExecutorService MESSAGE_WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "NdefMessageProcessor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     private final NdefStateManager stateManager;
     private final NdefMessageParser messageParser;
     
@@ -43,8 +58,6 @@ public class NdefUpdateBinaryHandler {
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
         
-        byte[] data = Arrays.copyOfRange(apdu, 5, 5 + dataLength);
-        
         // Prevent overflow
         byte[] ndefData = stateManager.getNdefData();
         if (offset + dataLength > ndefData.length) {
@@ -52,17 +65,18 @@ public class NdefUpdateBinaryHandler {
             return NdefConstants.NDEF_RESPONSE_ERROR;
         }
         
-        Log.d(TAG, "UPDATE BINARY storing " + dataLength + " bytes at offset " + offset);
-        if (dataLength > 0) {
-            logDataContent(data);
-        }
-        
-        // Store the data
-        System.arraycopy(data, 0, ndefData, offset, dataLength);
+        // Store the data, straight from the APDU
+        System.arraycopy(apdu, 5, ndefData, offset, dataLength);
+        stateManager.recordWrite(offset, dataLength);
+        NfcTapTiming timing = stateManager.getTapTiming();
+        timing.mark(NfcTapTiming.PHASE_FIRST_WRITE);
+        timing.countWrite(dataLength);
         
         // Update the last message activity time whenever we receive data
         stateManager.updateLastMessageActivityTime();
         
+        scanRecordHeader(ndefData);
+        
         // Process length header updates
         if (offset == 0 && dataLength >= 2) {
             return handleLengthHeaderUpdate(ndefData, offset, dataLength);
@@ -73,15 +87,17 @@ public class NdefUpdateBinaryHandler {
     }
     
     /**
-     * Log data content for debugging
+     * Scan the first record header once enough of the body has arrived
      */
-    private void logDataContent(byte[] data) {
-        try {
-            Log.d(TAG, "Data (if text): " + new String(data, "UTF-8"));
-        } catch (Exception e) {
-            // Ignore if not valid UTF-8
+    private void scanRecordHeader(byte[] ndefData) {
+        if (stateManager.getRecordHeader() != null) {
+            return;
+        }
+        NdefRecordHeader header = NdefRecordHeader.scan(ndefData, 2, stateManager.getContiguousEnd());
+        if (header != null) {
+            stateManager.setRecordHeader(header);
+            Log.d(TAG, "Record header received: " + header);
         }
-        Log.d(TAG, "Data (hex): " + NdefUtils.bytesToHex(data));
     }
     
     /**
@@ -95,18 +111,16 @@ public class NdefUpdateBinaryHandler {
             Log.d(TAG, "NDEF message length updated: " + newLength + " bytes");
             stateManager.setExpectedNdefLength(newLength);
             
-            // Check if we have any non-zero data beyond the header
-            boolean hasData = hasNonZeroData(ndefData, newLength);
-            
-            if (hasData) {
+            // Writers usually set NLEN last, once the body is in place
+            if (stateManager.hasBodyData()) {
                 Log.d(TAG, "Length header updated and there appears to be data already in buffer. Processing message.");
-                return processMessageAndReset(ndefData);
+                return processMessageAndReset();
             }
             
             // Original check for cases where data is provided with the header
             else if (stateManager.getExpectedNdefLength() > 0 && offset + dataLength >= stateManager.getExpectedNdefLength() + 2) {
                 Log.d(TAG, "Length header updated and we have enough data to process the message");
-                return processMessageAndReset(ndefData);
+                return processMessageAndReset();
             }
         } else if (newLength == 0) {
             // This is likely an initialization or empty message - log but don't process
@@ -119,18 +133,6 @@ public class NdefUpdateBinaryHandler {
         return NdefConstants.NDEF_RESPONSE_OK;
     }
     
-    /**
-     * Check if there's non-zero data in the buffer
-     */
-    private boolean hasNonZeroData(byte[] ndefData, int expectedLength) {
-        for (int i = 2; i < expectedLength + 2; i++) {
-            if (ndefData[i] != 0) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
     /**
      * Check if we have received the complete message
      */
@@ -142,7 +144,7 @@ public class NdefUpdateBinaryHandler {
             
             if ((offset + dataLength) >= (expectedNdefLength + 2)) {
                 Log.d(TAG, "Complete NDEF message received, processing...");
-                return processMessageAndReset(stateManager.getNdefData());
+                return processMessageAndReset();
             } else {
                 return handlePartialMessage();
             }
@@ -157,12 +159,7 @@ public class NdefUpdateBinaryHandler {
     private byte[] handlePartialMessage() {
         // Check if we have data in the buffer but are just waiting for more
         // This might indicate we received chunks out of order or the final message was incomplete
-        byte[] ndefData = stateManager.getNdefData();
-        int expectedNdefLength = stateManager.getExpectedNdefLength();
-        
-        boolean hasData = hasNonZeroData(ndefData, expectedNdefLength);
-        
-        if (hasData) {
+        if (stateManager.hasBodyData()) {
             // We have some data already - start a timeout handler to process partial data if needed
             Log.d(TAG, "Waiting for more data to complete NDEF message, but data already exists in buffer");
             
@@ -174,7 +171,7 @@ public class NdefUpdateBinaryHandler {
                 long currentTime = System.currentTimeMillis();
                 if (currentTime - stateManager.getLastMessageActivityTime() > NdefConstants.MESSAGE_TIMEOUT_MS) {
                     Log.i(TAG, "Message reception timeout reached. Processing with available data.");
-                    return processMessageAndReset(ndefData);
+                    return processMessageAndReset();
                 }
             }
         } else {
@@ -185,41 +182,41 @@ public class NdefUpdateBinaryHandler {
     }
     
     /**
-     * Process the received message and reset state
+     * Hand the received message to the worker and reset state for the next one
      */
-    private byte[] processMessageAndReset(byte[] ndefData) {
+    private byte[] processMessageAndReset() {
         try {
-            // Make a defensive copy of just the relevant portion of the buffer
             int expectedNdefLength = stateManager.getExpectedNdefLength();
-            int copyLength = ndefData.length;
-            if (expectedNdefLength > 0 && expectedNdefLength + 2 <= ndefData.length) {
+            final NdefRecordHeader header = stateManager.getRecordHeader();
+            final int usedLength = stateManager.getWrittenEnd();
+            final boolean shouldProcess = stateManager.isProcessIncomingMessages();
+            final NfcTapTiming timing = stateManager.detachTapTiming();
+            timing.mark(NfcTapTiming.PHASE_LAST_WRITE);
+            
+            // The buffer itself goes to the worker; the next message gets a spare
+            final byte[] message = stateManager.detachNdefData();
+            int length = message.length;
+            if (expectedNdefLength > 0 && expectedNdefLength + 2 <= message.length) {
                 // 2 extra bytes for the NDEF length header
-                copyLength = expectedNdefLength + 2;
+                length = expectedNdefLength + 2;
             }
+            final int messageLength = length;
 
-            final byte[] ndefCopy = Arrays.copyOf(ndefData, copyLength);
-            final boolean shouldProcess = stateManager.isProcessIncomingMessages();
-
-            Log.d(TAG, "Spawning async task to process received NDEF message (length=" + copyLength + ", process=" + shouldProcess + ")");
+            Log.d(TAG, "Queueing received NDEF message for processing (length=" + messageLength + ", process=" + shouldProcess + ")");
 
-            // Process the message on a background thread so we can return 0x9000
+            // Process the message off the APDU thread so we can return 0x9000
             // to the reader immediately and not block the APDU flow on payment logic.
-            Thread worker = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        messageParser.processReceivedNdefMessage(ndefCopy, shouldProcess);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing received NDEF message asynchronously: " + e.getMessage(), e);
-                    } finally {
-                        // Once processing is done (success or failure), reset for the next message
-                        stateManager.resetForNextMessage();
-                        Log.d(TAG, "Async NDEF processing complete, state reset for next message");
-                    }
+            MESSAGE_WORKER.execute(() -> {
+                try {
+                    messageParser.processReceivedNdefMessage(message, messageLength, header, shouldProcess, timing);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error processing received NDEF message asynchronously: " + e.getMessage(), e);
+                } finally {
+                    stateManager.releaseNdefData(message, usedLength);
+                    NfcTapTiming.record(timing);
+                    Log.i(TAG, "NFC tap timing: " + timing.summary());
                 }
-            }, "NdefMessageProcessor");
-
-            worker.start();
+            });
         } catch (Exception e) {
             Log.e(TAG, "Error scheduling async processing for received NDEF message: " + e.getMessage(), e);
         }
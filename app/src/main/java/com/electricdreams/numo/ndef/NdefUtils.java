@@ -5,14 +5,18 @@ package com.electricdreams.numo.ndef;
  */
 public class NdefUtils {
     
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    
     /**
      * Convert a byte array to a hex string
      */
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X", b));
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xFF;
+            out[i * 2] = HEX_DIGITS[v >>> 4];
+            out[i * 2 + 1] = HEX_DIGITS[v & 0x0F];
         }
-        return sb.toString();
+        return new String(out);
     }
 }
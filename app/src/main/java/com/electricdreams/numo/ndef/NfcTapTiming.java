@@ -0,0 +1,126 @@
+package com.electricdreams.numo.ndef;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Phase timestamps for one NFC tap, from SELECT AID to the payment callback.
+ *
+ * The APDU-side phases are stamped on the HCE thread; parse and callback are
+ * stamped on the message worker after the tap has been handed over. Completed
+ * taps are kept in a small in-memory history for Developer Settings.
+ */
+public final class NfcTapTiming {
+
+    public static final int PHASE_SELECT = 0;
+    public static final int PHASE_CC_READ = 1;
+    public static final int PHASE_FIRST_WRITE = 2;
+    public static final int PHASE_LAST_WRITE = 3;
+    public static final int PHASE_PARSED = 4;
+    public static final int PHASE_CALLBACK = 5;
+
+    private static final String[] PHASE_NAMES = {
+            "select", "cc read", "first write", "last write", "parse", "callback"
+    };
+
+    private static final int HISTORY_SIZE = 20;
+    private static final ArrayDeque<NfcTapTiming> HISTORY = new ArrayDeque<>(HISTORY_SIZE);
+
+    private final long[] stampsNanos = new long[PHASE_NAMES.length];
+    private int messageBytes;
+    private int writeCount;
+
+    /** Stamp {@code phase} now, unless it has already been reached. */
+    public void mark(int phase) {
+        if (stampsNanos[phase] == 0) {
+            stampsNanos[phase] = System.nanoTime();
+        }
+    }
+
+    void countWrite(int bytes) {
+        writeCount++;
+        messageBytes += bytes;
+    }
+
+    public boolean reached(int phase) {
+        return stampsNanos[phase] != 0;
+    }
+
+    /** Time from the first stamped phase to {@code phase}, or -1 if not reached. */
+    public long elapsedMicros(int phase) {
+        if (!reached(phase)) return -1;
+        return (stampsNanos[phase] - startNanos()) / 1_000L;
+    }
+
+    public long totalMicros() {
+        long start = startNanos();
+        long end = start;
+        for (long stamp : stampsNanos) {
+            if (stamp > end) end = stamp;
+        }
+        return (end - start) / 1_000L;
+    }
+
+    public int getMessageBytes() {
+        return messageBytes;
+    }
+
+    public int getWriteCount() {
+        return writeCount;
+    }
+
+    private long startNanos() {
+        for (long stamp : stampsNanos) {
+            if (stamp != 0) return stamp;
+        }
+        return 0;
+    }
+
+    /** One line per tap, e.g. "12.3 ms, 4096 B in 80 writes: cc read +1.1, ..." */
+    public String summary() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.US, "%.1f ms, %d B in %d writes:",
+                totalMicros() / 1000.0, messageBytes, writeCount));
+        String sep = " ";
+        for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+            if (!reached(phase)) continue;
+            sb.append(sep).append(PHASE_NAMES[phase])
+                    .append(String.format(Locale.US, " +%.1f", elapsedMicros(phase) / 1000.0));
+            sep = ", ";
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "NfcTapTiming{" + summary() + "}";
+    }
+
+    // --- Recent taps ---
+
+    static void record(NfcTapTiming timing) {
+        synchronized (HISTORY) {
+            if (HISTORY.size() == HISTORY_SIZE) {
+                HISTORY.removeFirst();
+            }
+            HISTORY.addLast(timing);
+        }
+    }
+
+    /** Completed taps, most recent first. */
+    public static List<NfcTapTiming> recent() {
+        synchronized (HISTORY) {
+            List<NfcTapTiming> out = new ArrayList<>(HISTORY);
+            Collections.reverse(out);
+            return out;
+        }
+    }
+
+    public static void clearHistory() {
+        synchronized (HISTORY) {
+            HISTORY.clear();
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package com.electricdreams.numo.nostr;
 
-import org.bouncycastle.asn1.sec.SECNamedCurves;
-import org.bouncycastle.asn1.x9.X9ECParameters;
 import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.crypto.engines.ChaCha7539Engine;
 import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
@@ -15,6 +13,9 @@ import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * NIP-44 v2 encryption helpers (decrypt + conversation key).
@@ -27,11 +28,68 @@ public final class Nip44 {
 
     public static final String TAG = "Nip44";
 
-    private static final X9ECParameters SECP256K1_PARAMS = SECNamedCurves.getByName("secp256k1");
-    private static final BigInteger CURVE_P = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
-
     private Nip44() {}
 
+    /**
+     * Bounded LRU of conversation keys between one private key and the
+     * remote pubkeys it has talked to, so repeat senders skip the ECDH.
+     *
+     * Holds secret material: call {@link #wipe()} when the owning session
+     * ends. Entries are zeroed on eviction and on wipe, and callers receive
+     * copies. The private key is kept only as bytes, which wipe can zero; the
+     * scalar is rebuilt for each derivation.
+     */
+    public static final class ConversationKeyCache {
+        private byte[] ourPriv32;
+        private final Map<String, byte[]> keys;
+
+        public ConversationKeyCache(byte[] ourPriv32, final int maxEntries) {
+            validatedScalar(ourPriv32);
+            this.ourPriv32 = ourPriv32.clone();
+            this.keys = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                    if (size() <= maxEntries) return false;
+                    Arrays.fill(eldest.getValue(), (byte) 0);
+                    return true;
+                }
+            };
+        }
+
+        /** Conversation key with the x-only pubkey {@code theirPubX32}. */
+        public synchronized byte[] get(byte[] theirPubX32) {
+            if (ourPriv32 == null) {
+                throw new IllegalStateException("conversation key cache has been wiped");
+            }
+            if (theirPubX32 == null || theirPubX32.length != 32) {
+                throw new IllegalArgumentException("priv and pub must be 32 bytes");
+            }
+            String id = bytesToHex(theirPubX32);
+            byte[] key = keys.get(id);
+            if (key == null) {
+                key = deriveConversationKey(validatedScalar(ourPriv32), theirPubX32);
+                keys.put(id, key);
+            }
+            return key.clone();
+        }
+
+        /** Zero every cached key and the private key copy; the cache is unusable afterwards. */
+        public synchronized void wipe() {
+            for (Iterator<byte[]> it = keys.values().iterator(); it.hasNext(); ) {
+                Arrays.fill(it.next(), (byte) 0);
+                it.remove();
+            }
+            if (ourPriv32 != null) {
+                Arrays.fill(ourPriv32, (byte) 0);
+                ourPriv32 = null;
+            }
+        }
+
+        synchronized int size() {
+            return keys.size();
+        }
+    }
+
     /**
      * Derive a 32-byte conversation key between private key A and x-only public key B.
      *
@@ -39,16 +97,25 @@ public final class Nip44 {
      * where shared_x is the 32-byte x-coordinate of (privA * pubB).
      */
     public static byte[] getConversationKey(byte[] priv32, byte[] pubX32) {
-        if (priv32 == null || priv32.length != 32 || pubX32 == null || pubX32.length != 32) {
+        if (pubX32 == null || pubX32.length != 32) {
+            throw new IllegalArgumentException("priv and pub must be 32 bytes");
+        }
+        return deriveConversationKey(validatedScalar(priv32), pubX32);
+    }
+
+    private static BigInteger validatedScalar(byte[] priv32) {
+        if (priv32 == null || priv32.length != 32) {
             throw new IllegalArgumentException("priv and pub must be 32 bytes");
         }
         BigInteger d = new BigInteger(1, priv32);
-        if (d.signum() <= 0 || d.compareTo(SECP256K1_PARAMS.getN()) >= 0) {
+        if (d.signum() <= 0 || d.compareTo(Secp256k1.N) >= 0) {
             throw new IllegalArgumentException("invalid private key scalar");
         }
+        return d;
+    }
 
-        BigInteger x = new BigInteger(1, pubX32);
-        ECPoint P = liftX(x);
+    private static byte[] deriveConversationKey(BigInteger d, byte[] pubX32) {
+        ECPoint P = Secp256k1.liftX(pubX32);
         if (P == null) {
             throw new IllegalArgumentException("invalid x-only public key");
         }
@@ -58,7 +125,9 @@ public final class Nip44 {
 
         // NIP-44 v2: conversation_key = HKDF-EXTRACT(IKM=shared_x, salt="nip44-v2")
         byte[] salt = "nip44-v2".getBytes(StandardCharsets.UTF_8);
-        return hkdfExtract(salt, sharedX);
+        byte[] key = hkdfExtract(salt, sharedX);
+        Arrays.fill(sharedX, (byte) 0);
+        return key;
     }
 
     /**
@@ -313,38 +382,12 @@ public final class Nip44 {
         return chunk * ((unpaddedLen - 1) / chunk + 1);
     }
 
-    // --- Shared x-only lift (duplicate of NostrEvent.liftX to avoid dependency cycle) ---
-
-    /**
-     * Lift x-only pubkey to a curve point with even Y per BIP-340,
-     * using BouncyCastle's decodePoint.
-     */
-    private static ECPoint liftX(BigInteger x) {
-        BigInteger p = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
-        if (x.signum() <= 0 || x.compareTo(p) >= 0) {
-            return null;
-        }
-        byte[] xBytes = to32Bytes(x);
-        byte[] comp = new byte[33];
-        comp[0] = 0x02; // even Y
-        System.arraycopy(xBytes, 0, comp, 1, 32);
-        try {
-            return SECP256K1_PARAMS.getCurve().decodePoint(comp).normalize();
-        } catch (IllegalArgumentException e) {
-            //Log.w(TAG, "liftX: decodePoint failed: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private static byte[] to32Bytes(BigInteger v) {
-        byte[] src = v.toByteArray();
-        if (src.length == 32) return src;
-        byte[] out = new byte[32];
-        if (src.length > 32) {
-            System.arraycopy(src, src.length - 32, out, 0, 32);
-        } else {
-            System.arraycopy(src, 0, out, 32 - src.length, src.length);
+    private static String bytesToHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
         }
-        return out;
+        return sb.toString();
     }
 }
@@ -34,16 +34,47 @@ public final class Nip59 {
      * @return UnwrappedDm with giftwrap, seal (kind 13), and rumor (kind 14)
      */
     public static UnwrappedDm unwrapGiftWrappedDm(NostrEvent giftwrap, byte[] ourPriv32) throws Exception {
+        if (ourPriv32 == null || ourPriv32.length != 32) {
+            throw new IllegalArgumentException("ourPriv32 must be 32 bytes");
+        }
+        Nip44.ConversationKeyCache keys = new Nip44.ConversationKeyCache(ourPriv32, 2);
+        try {
+            return unwrapGiftWrappedDm(giftwrap, keys);
+        } finally {
+            keys.wipe();
+        }
+    }
+
+    /**
+     * Same as {@link #unwrapGiftWrappedDm(NostrEvent, byte[])}, deriving
+     * conversation keys through a caller-owned cache so repeat senders skip
+     * the ECDH. The caller is responsible for wiping the cache.
+     */
+    public static UnwrappedDm unwrapGiftWrappedDm(NostrEvent giftwrap, Nip44.ConversationKeyCache keys) throws Exception {
+        return unwrap(giftwrap, keys, false);
+    }
+
+    /**
+     * Unwrap a giftwrap whose own signature the caller has already checked,
+     * e.g. as part of a {@link NostrEventVerifier} batch. The seal is still
+     * verified here.
+     */
+    static UnwrappedDm unwrapVerifiedGiftWrappedDm(NostrEvent giftwrap, Nip44.ConversationKeyCache keys) throws Exception {
+        return unwrap(giftwrap, keys, true);
+    }
+
+    private static UnwrappedDm unwrap(NostrEvent giftwrap, Nip44.ConversationKeyCache keys,
+                                      boolean giftwrapVerified) throws Exception {
         if (giftwrap == null) {
             throw new IllegalArgumentException("giftwrap event is null");
         }
-        if (ourPriv32 == null || ourPriv32.length != 32) {
-            throw new IllegalArgumentException("ourPriv32 must be 32 bytes");
+        if (keys == null) {
+            throw new IllegalArgumentException("conversation key cache is null");
         }
         if (giftwrap.kind != 1059) {
             throw new IllegalArgumentException("expected kind 1059 giftwrap, got kind=" + giftwrap.kind);
         }
-        if (!giftwrap.verify()) {
+        if (!giftwrapVerified && !giftwrap.verify()) {
             // Strict: a giftwrap with an invalid signature MUST NOT be used.
             android.util.Log.w("Nip59", "Giftwrap Schnorr verification FAILED; aborting unwrap");
             throw new IllegalArgumentException("giftwrap Schnorr verification failed");
@@ -57,7 +88,7 @@ public final class Nip59 {
         if (gwPub == null || gwPub.length != 32) {
             throw new IllegalArgumentException("invalid giftwrap pubkey hex");
         }
-        byte[] conv1 = Nip44.getConversationKey(ourPriv32, gwPub);
+        byte[] conv1 = keys.get(gwPub);
         String sealJson = Nip44.decrypt(giftwrap.content, conv1);
 
         NostrEvent seal = gson.fromJson(sealJson, NostrEvent.class);
@@ -81,7 +112,7 @@ public final class Nip59 {
         if (authorPub == null || authorPub.length != 32) {
             throw new IllegalArgumentException("invalid seal pubkey hex");
         }
-        byte[] conv2 = Nip44.getConversationKey(ourPriv32, authorPub);
+        byte[] conv2 = keys.get(authorPub);
         String rumorJson = Nip44.decrypt(seal.content, conv2);
 
         NostrEvent rumor = gson.fromJson(rumorJson, NostrEvent.class);
@@ -7,9 +7,6 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonPrimitive;
 
-import org.bouncycastle.asn1.sec.SECNamedCurves;
-import org.bouncycastle.asn1.x9.X9ECParameters;
-import org.bouncycastle.crypto.params.ECDomainParameters;
 import org.bouncycastle.math.ec.ECPoint;
 
 import java.math.BigInteger;
@@ -35,12 +32,6 @@ public final class NostrEvent {
     private static final Gson gson = new Gson();
     private static final String TAG = "NostrEventVerify";
 
-    private static final X9ECParameters SECP256K1_PARAMS = SECNamedCurves.getByName("secp256k1");
-    private static final ECDomainParameters SECP256K1 = new ECDomainParameters(
-            SECP256K1_PARAMS.getCurve(), SECP256K1_PARAMS.getG(),
-            SECP256K1_PARAMS.getN(), SECP256K1_PARAMS.getH()
-    );
-
     public NostrEvent() {
     }
 
@@ -134,7 +125,7 @@ public final class NostrEvent {
         System.arraycopy(TAG_BIP340_CHALLENGE_HASH, 0, TAG_BIP340_CHALLENGE_PREFIX, 32, 32);
     }
 
-    private static byte[] taggedHashBip340Challenge(byte[] x) {
+    static byte[] taggedHashBip340Challenge(byte[] x) {
         byte[] buf = new byte[64 + x.length];
         System.arraycopy(TAG_BIP340_CHALLENGE_PREFIX, 0, buf, 0, 64);
         System.arraycopy(x, 0, buf, 64, x.length);
@@ -158,7 +149,7 @@ public final class NostrEvent {
         return sb.toString();
     }
 
-    private static byte[] hexToBytes(String hex) {
+    static byte[] hexToBytes(String hex) {
         if (hex == null) return null;
         String s = hex.trim();
         if ((s.length() & 1) != 0) return null;
@@ -184,14 +175,14 @@ public final class NostrEvent {
 
         // Parse pubkey x coordinate
         BigInteger px = new BigInteger(1, pub);
-        BigInteger p = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
+        BigInteger p = Secp256k1.P;
         if (px.signum() <= 0 || px.compareTo(p) >= 0) {
             Log.w(TAG, "verifySchnorr: pubkey x out of range (strict fail)");
             return false;
         }
 
-        // Lift x to a curve point with even Y (BIP-340) using BouncyCastle's decodePoint
-        ECPoint P = liftX(px);
+        // Lift x to a curve point with even Y (BIP-340); repeat authors hit the cache
+        ECPoint P = Secp256k1.liftX(pub);
         if (P == null) {
             Log.w(TAG, "verifySchnorr: liftX returned null (strict fail)");
             return false;
@@ -203,7 +194,7 @@ public final class NostrEvent {
 
         BigInteger r = new BigInteger(1, rBytes);
         BigInteger s = new BigInteger(1, sBytes);
-        BigInteger n = SECP256K1.getN();
+        BigInteger n = Secp256k1.N;
 
         if (r.signum() <= 0 || r.compareTo(p) >= 0) {
             Log.w(TAG, "verifySchnorr: r out of range (strict fail)");
@@ -227,8 +218,8 @@ public final class NostrEvent {
             return false;
         }
 
-        // R = s*G - e*P
-        ECPoint R = SECP256K1.getG().multiply(s).subtract(P.multiply(e)).normalize();
+        // R = s*G - e*P, computed as s*G + (n-e)*P in one pass
+        ECPoint R = Secp256k1.mulGAdd(s, P, n.subtract(e)).normalize();
         if (R.isInfinity()) {
             Log.w(TAG, "verifySchnorr: R is infinity (strict fail)");
             return false;
@@ -242,37 +233,4 @@ public final class NostrEvent {
         BigInteger xR = R.getAffineXCoord().toBigInteger();
         return xR.equals(r);
     }
-
-    /**
-     * Lift x-only pubkey to a curve point with even Y per BIP-340,
-     * using BouncyCastle's decodePoint.
-     */
-    private static ECPoint liftX(BigInteger x) {
-        BigInteger p = SECP256K1_PARAMS.getCurve().getField().getCharacteristic();
-        if (x.signum() <= 0 || x.compareTo(p) >= 0) {
-            return null;
-        }
-        byte[] xBytes = to32Bytes(x);
-        byte[] comp = new byte[33];
-        comp[0] = 0x02; // even Y
-        System.arraycopy(xBytes, 0, comp, 1, 32);
-        try {
-            return SECP256K1_PARAMS.getCurve().decodePoint(comp).normalize();
-        } catch (IllegalArgumentException e) {
-            Log.w(TAG, "liftX: decodePoint failed: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private static byte[] to32Bytes(BigInteger v) {
-        byte[] src = v.toByteArray();
-        if (src.length == 32) return src;
-        byte[] out = new byte[32];
-        if (src.length > 32) {
-            System.arraycopy(src, src.length - 32, out, 0, 32);
-        } else {
-            System.arraycopy(src, 0, out, 32 - src.length, src.length);
-        }
-        return out;
-    }
 }
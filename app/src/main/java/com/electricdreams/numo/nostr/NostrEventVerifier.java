@@ -0,0 +1,195 @@
+package com.electricdreams.numo.nostr;
+
+import android.util.Log;
+
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Verifies many nostr events at once using BIP-340 batch verification.
+ *
+ * For events i with pubkey P_i, signature (r_i, s_i) and challenge e_i,
+ * a batch is valid iff
+ *
+ *   (sum a_i*s_i)*G == sum a_i*R_i + sum (a_i*e_i)*P_i
+ *
+ * for random 128-bit weights a_i (a_1 = 1), which costs one multi-scalar
+ * multiplication instead of one double multiplication per event. When a
+ * batch fails the events are re-checked one by one so only the bad ones are
+ * rejected. Events whose id does not match their recomputed id, or whose
+ * keys and signatures are malformed, are rejected before batching.
+ *
+ * Stateless and thread-safe.
+ */
+public final class NostrEventVerifier {
+
+    private static final String TAG = "NostrEventVerifier";
+
+    /** Events per multi-scalar multiplication; bounds the cost of a failed batch. */
+    static final int MAX_BATCH = 64;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private NostrEventVerifier() {}
+
+    /** Parsed signature data for one event. */
+    private static final class Item {
+        final int index;
+        final ECPoint pub;
+        final ECPoint r;
+        final BigInteger rx;
+        final BigInteger s;
+        final BigInteger e;
+
+        Item(int index, ECPoint pub, ECPoint r, BigInteger rx, BigInteger s, BigInteger e) {
+            this.index = index;
+            this.pub = pub;
+            this.r = r;
+            this.rx = rx;
+            this.s = s;
+            this.e = e;
+        }
+    }
+
+    /** Valid events from {@code events}, in their original order. */
+    public static List<NostrEvent> filterValid(Collection<NostrEvent> events) {
+        List<NostrEvent> list = new ArrayList<>(events);
+        boolean[] valid = verify(list);
+        List<NostrEvent> out = new ArrayList<>(list.size());
+        for (int i = 0; i < valid.length; i++) {
+            if (valid[i]) out.add(list.get(i));
+        }
+        return out;
+    }
+
+    /** Per-event validity, aligned with {@code events}. */
+    public static boolean[] verify(List<NostrEvent> events) {
+        boolean[] valid = new boolean[events.size()];
+        List<Item> batch = new ArrayList<>(Math.min(events.size(), MAX_BATCH));
+        for (int i = 0; i < events.size(); i++) {
+            Item item = prepare(i, events.get(i));
+            if (item == null) continue;
+            batch.add(item);
+            if (batch.size() == MAX_BATCH) {
+                verifyBatch(batch, valid);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            verifyBatch(batch, valid);
+        }
+        return valid;
+    }
+
+    private static void verifyBatch(List<Item> batch, boolean[] valid) {
+        if (batch.size() > 1 && batchEquationHolds(batch)) {
+            for (Item item : batch) valid[item.index] = true;
+            return;
+        }
+        int rejected = 0;
+        for (Item item : batch) {
+            valid[item.index] = verifySingle(item);
+            if (!valid[item.index]) rejected++;
+        }
+        if (rejected > 0) {
+            Log.w(TAG, "Rejected " + rejected + " of " + batch.size() + " events with invalid signatures");
+        }
+    }
+
+    private static boolean batchEquationHolds(List<Item> batch) {
+        BigInteger n = Secp256k1.N;
+        int u = batch.size();
+        ECPoint[] points = new ECPoint[1 + 2 * u];
+        BigInteger[] scalars = new BigInteger[1 + 2 * u];
+        BigInteger sSum = BigInteger.ZERO;
+
+        for (int i = 0; i < u; i++) {
+            Item item = batch.get(i);
+            BigInteger a = i == 0 ? BigInteger.ONE : randomWeight();
+            sSum = sSum.add(a.multiply(item.s));
+            // Move everything to one side: sum(a*s)*G - sum(a*R) - sum(a*e*P) == O
+            points[1 + i] = item.r;
+            scalars[1 + i] = n.subtract(a);
+            points[1 + u + i] = item.pub;
+            scalars[1 + u + i] = n.subtract(a.multiply(item.e).mod(n));
+        }
+        points[0] = Secp256k1.G;
+        scalars[0] = sSum.mod(n);
+
+        return ECAlgorithms.sumOfMultiplies(points, scalars).isInfinity();
+    }
+
+    private static boolean verifySingle(Item item) {
+        // R' = s*G - e*P must equal R, which was lifted with even Y
+        ECPoint r = Secp256k1.mulGAdd(item.s, item.pub, Secp256k1.N.subtract(item.e)).normalize();
+        return !r.isInfinity()
+                && !r.getAffineYCoord().toBigInteger().testBit(0)
+                && r.getAffineXCoord().toBigInteger().equals(item.rx);
+    }
+
+    private static BigInteger randomWeight() {
+        BigInteger a;
+        do {
+            a = new BigInteger(128, RANDOM);
+        } while (a.signum() == 0);
+        return a;
+    }
+
+    /** Structural checks and challenge computation; null if the event can't be valid. */
+    private static Item prepare(int index, NostrEvent event) {
+        if (event == null || event.id == null || event.pubkey == null || event.sig == null) {
+            return null;
+        }
+        if (!event.id.equals(event.computeId())) {
+            Log.w(TAG, "ID mismatch for kind=" + event.kind + " eventId=" + event.id);
+            return null;
+        }
+        byte[] msg = NostrEvent.hexToBytes(event.id);
+        byte[] pubBytes = NostrEvent.hexToBytes(event.pubkey);
+        byte[] sig = NostrEvent.hexToBytes(event.sig);
+        if (msg == null || pubBytes == null || sig == null
+                || msg.length != 32 || pubBytes.length != 32 || sig.length != 64) {
+            return null;
+        }
+
+        ECPoint pub = Secp256k1.liftX(pubBytes);
+        if (pub == null) return null;
+
+        byte[] rBytes = Arrays.copyOfRange(sig, 0, 32);
+        BigInteger rx = new BigInteger(1, rBytes);
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(sig, 32, 64));
+        if (rx.signum() <= 0 || rx.compareTo(Secp256k1.P) >= 0
+                || s.signum() <= 0 || s.compareTo(Secp256k1.N) >= 0) {
+            return null;
+        }
+        // Nonce points are one-off, so lift without polluting the pubkey cache
+        ECPoint r = liftUncached(rBytes);
+        if (r == null) return null;
+
+        byte[] challenge = new byte[96];
+        System.arraycopy(rBytes, 0, challenge, 0, 32);
+        System.arraycopy(pubBytes, 0, challenge, 32, 32);
+        System.arraycopy(msg, 0, challenge, 64, 32);
+        BigInteger e = new BigInteger(1, NostrEvent.taggedHashBip340Challenge(challenge)).mod(Secp256k1.N);
+
+        return new Item(index, pub, r, rx, s, e);
+    }
+
+    private static ECPoint liftUncached(byte[] x32) {
+        byte[] comp = new byte[33];
+        comp[0] = 0x02; // even Y
+        System.arraycopy(x32, 0, comp, 1, 32);
+        try {
+            return Secp256k1.CURVE.decodePoint(comp);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
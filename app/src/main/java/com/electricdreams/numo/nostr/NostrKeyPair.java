@@ -47,7 +47,7 @@ public final class NostrKeyPair {
             d = new BigInteger(1, sk);
         } while (d.signum() <= 0 || d.compareTo(n) >= 0);
 
-        ECPoint Q = SECP256K1.getG().multiply(d).normalize();
+        ECPoint Q = Secp256k1.mulG(d).normalize();
         byte[] x = Q.getAffineXCoord().getEncoded(); // 32 bytes
 
         return new NostrKeyPair(d, x);
@@ -61,7 +61,7 @@ public final class NostrKeyPair {
             throw new IllegalArgumentException("Secret key must be 32 bytes");
         }
         BigInteger d = new BigInteger(1, secretBytes);
-        ECPoint Q = SECP256K1.getG().multiply(d).normalize();
+        ECPoint Q = Secp256k1.mulG(d).normalize();
         byte[] x = Q.getAffineXCoord().getEncoded();
         return new NostrKeyPair(d, x);
     }
@@ -2,6 +2,7 @@ package com.electricdreams.numo.nostr
 import com.electricdreams.numo.R
 
 import android.util.Log
+import com.electricdreams.numo.core.util.HttpClients
 import com.google.gson.Gson
 import com.google.gson.JsonArray
 import com.google.gson.JsonObject
@@ -10,7 +11,7 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.launch
-import okhttp3.OkHttpClient
+import kotlinx.coroutines.withContext
 import okhttp3.Request
 import okhttp3.Response
 import okhttp3.WebSocket
@@ -41,6 +42,9 @@ import javax.crypto.spec.SecretKeySpec
  *   1. Generate 64-byte seed from mnemonic using BIP39
  *   2. Domain separator: "cashu-mint-backup"
  *   3. private_key = SHA256(seed || domain_separator)
+ *
+ * The derived keys are cached for the current mnemonic, so only the first
+ * backup or fetch in a process pays for the BIP39 seed derivation.
  */
 object NostrMintBackup {
 
@@ -61,8 +65,7 @@ object NostrMintBackup {
 
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
     private val gson = Gson()
-    private val okHttpClient = OkHttpClient.Builder()
-        .connectTimeout(10, TimeUnit.SECONDS)
+    private val okHttpClient = HttpClients.newBuilder()
         .readTimeout(30, TimeUnit.SECONDS)
         .build()
 
@@ -89,9 +92,22 @@ object NostrMintBackup {
         val eventId: String?,
         val successfulRelays: List<String>,
         val failedRelays: List<String>,
-        val error: String?
+        val error: String?,
+        /** Time from starting the publish to each relay's answer. */
+        val relayLatenciesMs: Map<String, Long> = emptyMap()
+    )
+
+    /** Keys derived for one mnemonic, plus the NIP-44 key for encrypting to ourselves. */
+    private class BackupKeys(
+        val mnemonicDigest: ByteArray,
+        val privateKey: ByteArray,
+        val publicKeyHex: String,
+        val conversationKey: ByteArray
     )
 
+    @Volatile
+    private var cachedKeys: BackupKeys? = null
+
     /**
      * Derive backup keypair from wallet mnemonic.
      * 
@@ -99,6 +115,14 @@ object NostrMintBackup {
      * @return Pair of (privateKeyBytes, publicKeyHex)
      */
     fun deriveBackupKeys(mnemonic: String): Pair<ByteArray, String> {
+        val keys = backupKeys(mnemonic)
+        return Pair(keys.privateKey.copyOf(), keys.publicKeyHex)
+    }
+
+    private fun backupKeys(mnemonic: String): BackupKeys {
+        val digest = sha256(mnemonic.toByteArray(StandardCharsets.UTF_8))
+        cachedKeys?.takeIf { it.mnemonicDigest.contentEquals(digest) }?.let { return it }
+
         // Step 1: Generate 64-byte seed from mnemonic using BIP39 (PBKDF2)
         val seed = mnemonicToSeed(mnemonic)
         
@@ -113,12 +137,19 @@ object NostrMintBackup {
         
         // Step 4: Derive public key (x-only, 32 bytes)
         val d = BigInteger(1, privateKey)
-        val Q = SECP256K1.g.multiply(d).normalize()
+        val Q = Secp256k1.mulG(d).normalize()
         val pubX = Q.affineXCoord.encoded // 32 bytes
         
         Log.d(TAG, "Derived backup pubkey: ${bytesToHex(pubX)}")
         
-        return Pair(privateKey, bytesToHex(pubX))
+        val keys = BackupKeys(
+            mnemonicDigest = digest,
+            privateKey = privateKey,
+            publicKeyHex = bytesToHex(pubX),
+            conversationKey = Nip44.getConversationKey(privateKey, pubX)
+        )
+        cachedKeys = keys
+        return keys
     }
 
     /**
@@ -134,98 +165,118 @@ object NostrMintBackup {
         callback: ((BackupResult) -> Unit)? = null
     ) {
         scope.launch {
-            try {
-                Log.d(TAG, "Starting mint backup for ${mints.size} mints")
-                
-                // Derive keys
-                val (privateKey, publicKeyHex) = deriveBackupKeys(mnemonic)
-                val publicKeyBytes = hexToBytes(publicKeyHex)
-                
-                // Create backup data
-                val timestamp = System.currentTimeMillis() / 1000
-                val backupData = MintBackupData(mints = mints, timestamp = timestamp)
-                val backupJson = gson.toJson(backupData)
-                
-                Log.d(TAG, "Backup data: $backupJson")
-                
-                // Encrypt with NIP-44 v2 (self-encryption: same key for both sides)
-                val conversationKey = Nip44.getConversationKey(privateKey, publicKeyBytes)
-                val encryptedContent = Nip44.encrypt(backupJson, conversationKey)
-                
-                Log.d(TAG, "Encrypted content length: ${encryptedContent.length}")
-                
-                // Create Nostr event
-                val event = createEvent(
-                    kind = EVENT_KIND,
-                    content = encryptedContent,
-                    pubkey = publicKeyHex,
-                    tags = listOf(
-                        listOf("d", D_TAG_VALUE),
-                        listOf("client", CLIENT_NAME)
-                    ),
-                    createdAt = timestamp
-                )
-                
-                // Compute event ID
-                val eventId = computeEventId(event)
-                event.id = eventId
-                
-                // Sign event with Schnorr signature
-                val signature = signSchnorr(privateKey, hexToBytes(eventId))
-                event.sig = bytesToHex(signature)
-                
-                Log.d(TAG, "Created event with ID: $eventId")
-                
-                // Publish to all relays
-                val successfulRelays = ConcurrentHashMap.newKeySet<String>()
-                val failedRelays = ConcurrentHashMap.newKeySet<String>()
-                val latch = java.util.concurrent.CountDownLatch(BACKUP_RELAYS.size)
-                
-                for (relayUrl in BACKUP_RELAYS) {
-                    publishToRelay(relayUrl, event, eventId,
-                        onSuccess = {
-                            successfulRelays.add(relayUrl)
-                            Log.d(TAG, "✅ Published backup to $relayUrl (event: $eventId)")
-                            latch.countDown()
-                        },
-                        onFailure = { error ->
-                            failedRelays.add(relayUrl)
-                            Log.e(TAG, "❌ Failed to publish backup to $relayUrl: $error")
-                            latch.countDown()
-                        }
-                    )
-                }
-                
-                // Wait for all relays with timeout
-                latch.await(30, TimeUnit.SECONDS)
-                
-                val result = BackupResult(
-                    success = successfulRelays.isNotEmpty(),
-                    eventId = eventId,
-                    successfulRelays = successfulRelays.toList(),
-                    failedRelays = failedRelays.toList(),
-                    error = if (successfulRelays.isEmpty()) "Failed to publish to any relay" else null
+            val result = publishMintBackupNow(mnemonic, mints)
+            callback?.invoke(result)
+        }
+    }
+
+    /**
+     * Create and publish a mint backup event, suspending until every relay
+     * has answered or timed out.
+     *
+     * @param mnemonic The wallet mnemonic for key derivation
+     * @param mints List of mint URLs to backup
+     */
+    suspend fun publishMintBackupNow(
+        mnemonic: String,
+        mints: List<String>
+    ): BackupResult = withContext(Dispatchers.IO) {
+        try {
+            Log.d(TAG, "Starting mint backup for ${mints.size} mints")
+            
+            // Derive keys (cached after the first call)
+            val keys = backupKeys(mnemonic)
+            val privateKey = keys.privateKey
+            val publicKeyHex = keys.publicKeyHex
+            
+            // Create backup data
+            val timestamp = System.currentTimeMillis() / 1000
+            val backupData = MintBackupData(mints = mints, timestamp = timestamp)
+            val backupJson = gson.toJson(backupData)
+            
+            Log.d(TAG, "Backup data: $backupJson")
+            
+            // Encrypt with NIP-44 v2 (self-encryption: same key for both sides)
+            val encryptedContent = Nip44.encrypt(backupJson, keys.conversationKey)
+            
+            Log.d(TAG, "Encrypted content length: ${encryptedContent.length}")
+            
+            // Create Nostr event
+            val event = createEvent(
+                kind = EVENT_KIND,
+                content = encryptedContent,
+                pubkey = publicKeyHex,
+                tags = listOf(
+                    listOf("d", D_TAG_VALUE),
+                    listOf("client", CLIENT_NAME)
+                ),
+                createdAt = timestamp
+            )
+            
+            // Compute event ID
+            val eventId = computeEventId(event)
+            event.id = eventId
+            
+            // Sign event with Schnorr signature
+            val signature = signSchnorr(privateKey, hexToBytes(eventId))
+            event.sig = bytesToHex(signature)
+            
+            Log.d(TAG, "Created event with ID: $eventId")
+            
+            // Publish to all relays
+            val successfulRelays = ConcurrentHashMap.newKeySet<String>()
+            val failedRelays = ConcurrentHashMap.newKeySet<String>()
+            val relayLatenciesMs = ConcurrentHashMap<String, Long>()
+            val latch = java.util.concurrent.CountDownLatch(BACKUP_RELAYS.size)
+            val publishStartedAt = System.currentTimeMillis()
+            
+            for (relayUrl in BACKUP_RELAYS) {
+                publishToRelay(relayUrl, event, eventId,
+                    onSuccess = {
+                        relayLatenciesMs[relayUrl] = System.currentTimeMillis() - publishStartedAt
+                        successfulRelays.add(relayUrl)
+                        Log.d(TAG, "✅ Published backup to $relayUrl (event: $eventId)")
+                        latch.countDown()
+                    },
+                    onFailure = { error ->
+                        relayLatenciesMs[relayUrl] = System.currentTimeMillis() - publishStartedAt
+                        failedRelays.add(relayUrl)
+                        Log.e(TAG, "❌ Failed to publish backup to $relayUrl: $error")
+                        latch.countDown()
+                    }
                 )
-                
-                Log.d(TAG, "Mint backup complete: ${successfulRelays.size}/${BACKUP_RELAYS.size} relays successful")
-                Log.d(TAG, "Event ID: $eventId")
-                Log.d(TAG, "Successful relays: ${successfulRelays.joinToString(", ")}")
-                if (failedRelays.isNotEmpty()) {
-                    Log.w(TAG, "Failed relays: ${failedRelays.joinToString(", ")}")
-                }
-                
-                callback?.invoke(result)
-                
-            } catch (e: Exception) {
-                Log.e(TAG, "Mint backup failed", e)
-                callback?.invoke(BackupResult(
-                    success = false,
-                    eventId = null,
-                    successfulRelays = emptyList(),
-                    failedRelays = BACKUP_RELAYS,
-                    error = e.message
-                ))
             }
+            
+            // Wait for all relays with timeout
+            latch.await(30, TimeUnit.SECONDS)
+            
+            val result = BackupResult(
+                success = successfulRelays.isNotEmpty(),
+                eventId = eventId,
+                successfulRelays = successfulRelays.toList(),
+                failedRelays = failedRelays.toList(),
+                error = if (successfulRelays.isEmpty()) "Failed to publish to any relay" else null,
+                relayLatenciesMs = relayLatenciesMs.toMap()
+            )
+            
+            Log.d(TAG, "Mint backup complete: ${successfulRelays.size}/${BACKUP_RELAYS.size} relays successful")
+            Log.d(TAG, "Event ID: $eventId")
+            Log.d(TAG, "Successful relays: ${successfulRelays.joinToString(", ")}")
+            if (failedRelays.isNotEmpty()) {
+                Log.w(TAG, "Failed relays: ${failedRelays.joinToString(", ")}")
+            }
+            
+            result
+            
+        } catch (e: Exception) {
+            Log.e(TAG, "Mint backup failed", e)
+            BackupResult(
+                success = false,
+                eventId = null,
+                successfulRelays = emptyList(),
+                failedRelays = BACKUP_RELAYS,
+                error = e.message
+            )
         }
     }
 
@@ -255,9 +306,9 @@ object NostrMintBackup {
             try {
                 Log.d(TAG, "Starting mint backup fetch from Nostr")
                 
-                // Derive keys from mnemonic
-                val (privateKey, publicKeyHex) = deriveBackupKeys(mnemonic)
-                val publicKeyBytes = hexToBytes(publicKeyHex)
+                // Derive keys from mnemonic (cached after the first call)
+                val keys = backupKeys(mnemonic)
+                val publicKeyHex = keys.publicKeyHex
                 
                 Log.d(TAG, "Derived backup pubkey for fetch: $publicKeyHex")
                 
@@ -309,8 +360,11 @@ object NostrMintBackup {
                     return@launch
                 }
                 
-                // Find the most recent event (by created_at)
-                val mostRecent = receivedEvents.values.maxByOrNull { (_, event) -> event.created_at }
+                // Drop forged or corrupted copies, then take the most recent (by created_at)
+                val candidates = receivedEvents.values.filter { (_, event) -> event.pubkey == publicKeyHex }
+                val valid = NostrEventVerifier.verify(candidates.map { it.second })
+                val mostRecent = candidates.filterIndexed { i, _ -> valid[i] }
+                    .maxByOrNull { (_, event) -> event.created_at }
                 if (mostRecent == null) {
                     callback(FetchResult(
                         success = false,
@@ -327,8 +381,7 @@ object NostrMintBackup {
                 
                 // Decrypt the content
                 try {
-                    val conversationKey = Nip44.getConversationKey(privateKey, publicKeyBytes)
-                    val decryptedJson = Nip44.decrypt(event.content, conversationKey)
+                    val decryptedJson = Nip44.decrypt(event.content, keys.conversationKey)
                     
                     Log.d(TAG, "Decrypted backup content: $decryptedJson")
                     
@@ -630,7 +683,7 @@ object NostrMintBackup {
         val n = SECP256K1.n
         
         // Get public key point
-        val P = SECP256K1.g.multiply(d).normalize()
+        val P = Secp256k1.mulG(d).normalize()
         val px = P.affineXCoord.encoded
         
         // If P.y is odd, negate d
@@ -657,7 +710,7 @@ object NostrMintBackup {
         }
         
         // R = k' * G
-        val R = SECP256K1.g.multiply(kPrime).normalize()
+        val R = Secp256k1.mulG(kPrime).normalize()
         
         // If R.y is odd, negate k'
         val k = if (R.affineYCoord.toBigInteger().testBit(0)) n.subtract(kPrime) else kPrime
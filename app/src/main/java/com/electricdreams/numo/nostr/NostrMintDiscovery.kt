@@ -1,10 +1,12 @@
 package com.electricdreams.numo.nostr
 
 import android.util.Log
+import com.electricdreams.numo.core.util.HttpClients
 import com.google.gson.Gson
 import com.google.gson.JsonArray
 import com.google.gson.JsonObject
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.channelFlow
@@ -14,7 +16,6 @@ import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.withTimeoutOrNull
 import okhttp3.Dns
-import okhttp3.OkHttpClient
 import okhttp3.Request
 import okhttp3.Response
 import okhttp3.WebSocket
@@ -71,6 +72,7 @@ object NostrMintDiscovery {
     private const val RECOMMENDATION_KIND = 38000
     private const val DISCOVERY_TIMEOUT_MS = 15_000L
     private const val MAX_EVENTS_PER_FILTER = 5_000
+    private const val VERIFY_BATCH_LIMIT = 256
     private const val MAX_ICON_BYTES = 2 * 1024 * 1024L
     internal const val MAX_DISCOVERY_RESULTS = 50
 
@@ -82,15 +84,11 @@ object NostrMintDiscovery {
     )
 
     private val gson = Gson()
-    private val client = OkHttpClient.Builder()
+    private val client = HttpClients.webSocket.newBuilder()
         .connectTimeout(8, TimeUnit.SECONDS)
-        .readTimeout(0, TimeUnit.MILLISECONDS)
-        .pingInterval(20, TimeUnit.SECONDS)
         .build()
-    private val publicHttpClient = OkHttpClient.Builder()
+    private val publicHttpClient = HttpClients.newBuilder()
         .dns(publicAddressDns())
-        .connectTimeout(10, TimeUnit.SECONDS)
-        .readTimeout(10, TimeUnit.SECONDS)
         .build()
 
     suspend fun discover(
@@ -124,35 +122,44 @@ object NostrMintDiscovery {
     ): Flow<List<MintRecommendation>> = channelFlow {
         val verifiedEvents = linkedMapOf<String, NostrEvent>()
         val resolveHost = memoizingResolver(::resolveHost)
-        val lock = Any()
+        val incoming = Channel<NostrEvent>(Channel.UNLIMITED)
+
+        // Relays deliver their stored events in a burst after the REQ; whatever has queued up
+        // since the last pass is signature-checked as one batch and produces one aggregate.
+        val verifyJob = launch(Dispatchers.Default) {
+            for (first in incoming) {
+                val pending = mutableListOf(first)
+                while (pending.size < VERIFY_BATCH_LIMIT) {
+                    pending += incoming.tryReceive().getOrNull() ?: break
+                }
+                val fresh = NostrEventVerifier.filterValid(pending)
+                    .filter { verifiedEvents.putIfAbsent(it.id, it) == null }
+                if (fresh.isNotEmpty()) {
+                    send(
+                        aggregate(
+                            verifiedEvents.values.toList(),
+                            verifyEvents = false,
+                            resolveHost = resolveHost,
+                        ),
+                    )
+                }
+            }
+        }
 
         val fetchJob = launch(Dispatchers.IO) {
             withTimeoutOrNull(timeoutMs) {
-                fetchEvents(relays.distinct()) event@{ event ->
-                    if (!event.verify()) return@event
-                    val snapshot = synchronized(lock) {
-                        val id = event.id ?: return@synchronized null
-                        if (verifiedEvents.putIfAbsent(id, event) != null) {
-                            null
-                        } else {
-                            verifiedEvents.values.toList()
-                        }
-                    }
-                    if (snapshot != null) {
-                        trySend(
-                            aggregate(
-                                snapshot,
-                                verifyEvents = false,
-                                resolveHost = resolveHost,
-                            ),
-                        )
-                    }
-                }
+                fetchEvents(relays.distinct()) { event -> incoming.trySend(event) }
             }
+            incoming.close()
+            verifyJob.join()
             close()
         }
 
-        awaitClose { fetchJob.cancel() }
+        awaitClose {
+            incoming.close()
+            fetchJob.cancel()
+            verifyJob.cancel()
+        }
     }
 
     internal fun aggregate(
@@ -164,7 +171,8 @@ object NostrMintDiscovery {
 
         events.asSequence()
             .filter { it.kind == MINT_INFO_KIND || it.kind == RECOMMENDATION_KIND }
-            .filter { !verifyEvents || it.verify() }
+            .toList()
+            .let { if (verifyEvents) NostrEventVerifier.filterValid(it) else it }
             .forEach { event ->
                 when (event.kind) {
                     MINT_INFO_KIND -> handleMintInfo(event, mints, resolveHost)
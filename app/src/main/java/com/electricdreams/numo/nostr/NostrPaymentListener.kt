@@ -0,0 +1,308 @@
+package com.electricdreams.numo.nostr
+
+import android.util.Log
+import com.electricdreams.numo.AppGlobals
+import com.electricdreams.numo.ndef.CashuPaymentHelper
+import com.electricdreams.numo.payment.SwapToLightningMintManager
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * High-level Nostr listener for a single payment.
+ *
+ * Responsibilities:
+ *  - Use an ephemeral nostr keypair (secret key) to listen for NIP-17 DMs
+ *    delivered as NIP-59 giftwraps (kind 1059) on configured relays.
+ *  - For each relevant event, unwrap (NIP-59) and decrypt (NIP-44) to a
+ *    kind 14 rumor and treat its content as a PaymentRequestPayload JSON.
+ *  - Attempt redemption via CashuPaymentHelper.redeemFromPRPayloadWithSwap.
+ *  - On first successful redemption, stop listening and invoke success callback.
+ *
+ * Events are processed as a pipeline so the relay socket thread never blocks:
+ *  1. decode: the socket thread only checks kind/id, de-duplicates across
+ *     relays and offers the event to a bounded queue.
+ *  2. verify / unwrap / decrypt: a single worker on [Dispatchers.Default]
+ *     drains whatever has queued up, checks the giftwrap signatures as one
+ *     batch ([NostrEventVerifier]) and runs the NIP-59/NIP-44 unwrap.
+ *  3. redeem: on [Dispatchers.IO], single-flighted so at most one
+ *     redemption for this payment runs at a time.
+ *
+ * [stop] cancels the queue worker and any in-flight redemption.
+ */
+class NostrPaymentListener internal constructor(
+    private val secretKey32: ByteArray,
+    private val pubkeyHex: String,
+    private val expectedAmount: Long,
+    private val allowedMints: List<String>?,
+    private val relays: List<String>,
+    private val successHandler: SuccessHandler?,
+    private val errorHandler: ErrorHandler?,
+    private val unwrap: (NostrEvent, Nip44.ConversationKeyCache) -> String?,
+    private val redeem: suspend (String) -> String?,
+    private val computeDispatcher: CoroutineDispatcher,
+    private val ioDispatcher: CoroutineDispatcher,
+    private val verify: (List<NostrEvent>) -> BooleanArray = NostrEventVerifier::verify,
+) {
+
+    fun interface SuccessHandler {
+        fun onSuccess(encodedToken: String)
+    }
+
+    fun interface ErrorHandler {
+        fun onPaymentFailure(message: String, t: Throwable?)
+    }
+
+    /** How long events waited between arriving on a socket and being unwrapped. */
+    data class PipelineStats(
+        val received: Long,
+        val duplicates: Long,
+        val dropped: Long,
+        val processed: Long,
+        val maxQueueWaitMs: Long,
+        val averageQueueWaitMs: Long,
+    )
+
+    constructor(
+        secretKey32: ByteArray,
+        pubkeyHex: String,
+        expectedAmount: Long,
+        allowedMints: List<String>?,
+        relays: List<String>,
+        successHandler: SuccessHandler?,
+        errorHandler: ErrorHandler?,
+    ) : this(
+        secretKey32,
+        pubkeyHex,
+        expectedAmount,
+        allowedMints,
+        relays,
+        successHandler,
+        errorHandler,
+        // Giftwrap signatures were already batch-checked by the worker
+        unwrap = { event, keys -> Nip59.unwrapVerifiedGiftWrappedDm(event, keys).rumor.content },
+        redeem = { payloadJson ->
+            // For Nostr, we create a minimal PaymentContext that ties this
+            // redemption to the expected amount. There is no explicit
+            // paymentId here; higher-level callers can correlate via Nostr
+            // metadata if needed.
+            val paymentContext = SwapToLightningMintManager.PaymentContext(null, expectedAmount)
+            // Call the high-level, swap-aware redemption helper so that
+            // incoming ecash from unknown mints can be swapped to the
+            // merchant's configured Lightning mint.
+            CashuPaymentHelper.redeemFromPRPayloadWithSwap(
+                AppGlobals.getAppContext(),
+                payloadJson,
+                expectedAmount,
+                allowedMints,
+                paymentContext,
+            )
+        },
+        computeDispatcher = Dispatchers.Default,
+        ioDispatcher = Dispatchers.IO,
+    )
+
+    init {
+        require(secretKey32.size == 32) { "secretKey32 must be 32 bytes" }
+    }
+
+    private class Received(val relayUrl: String, val event: NostrEvent, val receivedAtNanos: Long)
+
+    private var client: NostrWebSocketClient? = null
+    private var scope: CoroutineScope? = null
+
+    @Volatile
+    private var stopped = false
+
+    private val queue = Channel<Received>(QUEUE_CAPACITY)
+
+    // Senders that retry reuse their seal key, so their ECDH is cached; wiped on stop
+    private val conversationKeys = Nip44.ConversationKeyCache(secretKey32, CONVERSATION_KEY_CACHE_SIZE)
+    private val redemptionLock = Mutex()
+
+    // Track processed giftwrap event IDs so we don't handle the same payment
+    // multiple times when it arrives from different relays.
+    private val seenEventIds: MutableSet<String> = ConcurrentHashMap.newKeySet()
+
+    private val received = AtomicLong()
+    private val duplicates = AtomicLong()
+    private val dropped = AtomicLong()
+    private val processed = AtomicLong()
+    private val totalWaitNanos = AtomicLong()
+    private val maxWaitNanos = AtomicLong()
+
+    @Synchronized
+    fun start() {
+        if (client != null || stopped) return
+        Log.d(TAG, "Starting NostrPaymentListener for pubkey=$pubkeyHex amount=$expectedAmount relays=$relays")
+
+        val workerScope = CoroutineScope(SupervisorJob() + computeDispatcher)
+        scope = workerScope
+        workerScope.launch {
+            for (first in queue) {
+                val batch = mutableListOf(first)
+                while (batch.size < QUEUE_CAPACITY) {
+                    batch += queue.tryReceive().getOrNull() ?: break
+                }
+                process(batch)
+            }
+        }
+
+        client = NostrWebSocketClient(relays, pubkeyHex) { relayUrl, event -> onEvent(relayUrl, event) }
+            .also { it.start() }
+    }
+
+    @Synchronized
+    fun stop() {
+        stopped = true
+        client?.let {
+            Log.d(TAG, "Stopping NostrPaymentListener; ${getStats()}")
+            it.stop()
+        }
+        client = null
+        queue.close()
+        scope?.cancel()
+        scope = null
+        conversationKeys.wipe()
+    }
+
+    fun getStats(): PipelineStats {
+        val count = processed.get()
+        return PipelineStats(
+            received = received.get(),
+            duplicates = duplicates.get(),
+            dropped = dropped.get(),
+            processed = count,
+            maxQueueWaitMs = maxWaitNanos.get() / 1_000_000L,
+            averageQueueWaitMs = if (count == 0L) 0L else totalWaitNanos.get() / count / 1_000_000L,
+        )
+    }
+
+    /** Decode stage: runs on the relay socket thread and must stay cheap. */
+    internal fun onEvent(relayUrl: String, event: NostrEvent?) {
+        if (stopped || event == null) return
+        if (event.kind != 1059) {
+            // Should already be filtered by subscription, but double-check.
+            return
+        }
+        val id = event.id
+        if (id.isNullOrEmpty()) {
+            Log.w(TAG, "Received kind 1059 event without id from $relayUrl; skipping")
+            return
+        }
+        received.incrementAndGet()
+        // Deduplicate by event ID across all relays
+        if (!seenEventIds.add(id)) {
+            duplicates.incrementAndGet()
+            Log.d(TAG, "Ignoring duplicate event id=$id from $relayUrl")
+            return
+        }
+        val result = queue.trySend(Received(relayUrl, event, System.nanoTime()))
+        if (result.isFailure && !result.isClosed) {
+            dropped.incrementAndGet()
+            // Forget it so a copy from another relay can still get through
+            seenEventIds.remove(id)
+            Log.w(TAG, "Event queue full; dropped id=$id from $relayUrl")
+        }
+    }
+
+    /** Verify / unwrap / decrypt stage, then hand off to redemption. */
+    private fun process(batch: List<Received>) {
+        val now = System.nanoTime()
+        for (item in batch) {
+            val waitNanos = now - item.receivedAtNanos
+            processed.incrementAndGet()
+            totalWaitNanos.addAndGet(waitNanos)
+            maxWaitNanos.accumulateAndGet(waitNanos) { a, b -> maxOf(a, b) }
+        }
+        if (stopped) return
+
+        val valid = verify(batch.map { it.event })
+        for ((i, item) in batch.withIndex()) {
+            if (stopped) return
+            if (!valid[i]) {
+                // Strict: a giftwrap with an invalid signature MUST NOT be used.
+                fail("Error handling nostr event from ${item.relayUrl}", IllegalArgumentException("giftwrap Schnorr verification failed"))
+                return
+            }
+            unwrapAndRedeem(item)
+        }
+    }
+
+    private fun unwrapAndRedeem(item: Received) {
+        val relayUrl = item.relayUrl
+        val payloadJson = try {
+            Log.d(TAG, "Received kind 1059 event from $relayUrl id=${item.event.id}")
+            unwrap(item.event, conversationKeys)
+        } catch (e: Exception) {
+            fail("Error handling nostr event from $relayUrl", e)
+            return
+        }
+        if (payloadJson.isNullOrEmpty()) {
+            Log.w(TAG, "Rumor content is empty; skipping")
+            return
+        }
+
+        // Redemption must not hold up unwrapping of later events
+        scope?.launch(ioDispatcher) { redeemOnce(relayUrl, payloadJson) }
+    }
+
+    /** Redeem stage: single-flighted, and skipped once the payment has settled. */
+    private suspend fun redeemOnce(relayUrl: String, payloadJson: String) {
+        redemptionLock.withLock {
+            if (stopped) return
+            Log.d(TAG, "Attempting PaymentRequestPayload redemption (with swap) from relay=$relayUrl")
+            val token = try {
+                redeem(payloadJson)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: CashuPaymentHelper.RedemptionException) {
+                fail("Redemption error for event from $relayUrl", e, "Unknown redemption error")
+                return
+            } catch (e: Exception) {
+                fail("Unexpected error during Nostr redemption from $relayUrl", e)
+                return
+            }
+
+            // For swap-to-Lightning-mint flows, a successful redemption may
+            // legitimately return an empty token string (Lightning-style
+            // payment, no Cashu token imported). Treat both non-empty and
+            // empty strings as success and let higher layers decide how to
+            // handle the result.
+            if (token != null) {
+                Log.i(TAG, "Redemption (with possible swap) successful via nostr DM; stopping listener. tokenLength=${token.length}")
+                stop()
+                successHandler?.onSuccess(token)
+            } else {
+                Log.w(TAG, "Redemption returned null token; ignoring")
+            }
+        }
+    }
+
+    private fun fail(context: String, e: Exception, fallback: String = "Unknown error") {
+        val detail = e.message ?: fallback
+        if (stopped) {
+            // Work that was already running when the listener stopped
+            Log.d(TAG, "$context after stop: $detail")
+            return
+        }
+        Log.e(TAG, "$context: $detail", e)
+        stop()
+        errorHandler?.onPaymentFailure(detail, e)
+    }
+
+    companion object {
+        private const val TAG = "NostrPaymentListener"
+        private const val QUEUE_CAPACITY = 32
+        private const val CONVERSATION_KEY_CACHE_SIZE = 16
+    }
+}
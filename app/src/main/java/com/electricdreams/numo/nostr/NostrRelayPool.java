@@ -0,0 +1,352 @@
+package com.electricdreams.numo.nostr;
+
+import android.util.Log;
+
+import com.electricdreams.numo.core.util.HttpClients;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * Process-wide pool of nostr relay connections.
+ *
+ * Keeps at most one WebSocket per relay URL and multiplexes any number of
+ * REQ subscriptions over it, routing EVENT frames to the subscription whose
+ * id they carry. Subscribing to a relay that is already connected costs a
+ * single REQ frame; subscriptions are replayed automatically after a
+ * reconnect.
+ *
+ * Reconnects run on one shared scheduler thread with exponential backoff
+ * and jitter so that relays dropping at the same time do not reconnect in
+ * lockstep. A relay with no subscriptions left is kept open for
+ * {@link #IDLE_CLOSE_MS} so back-to-back payments reuse the connection,
+ * then closed.
+ */
+public final class NostrRelayPool {
+
+    /** Receives events for one subscription. Called on an OkHttp WebSocket thread. */
+    public interface EventHandler {
+        void onEvent(String relayUrl, NostrEvent event);
+    }
+
+    /** Handle returned by {@link #subscribe}; closing it sends CLOSE to every relay. */
+    public final class Subscription {
+        final String id;
+        final JsonObject filter;
+        final Set<String> relayUrls;
+        final EventHandler handler;
+
+        Subscription(String id, JsonObject filter, Set<String> relayUrls, EventHandler handler) {
+            this.id = id;
+            this.filter = filter;
+            this.relayUrls = relayUrls;
+            this.handler = handler;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+
+    private static final String TAG = "NostrRelayPool";
+
+    private static final long INITIAL_BACKOFF_MS = 1_000L;
+    private static final long MAX_BACKOFF_MS = 60_000L;
+    static final long IDLE_CLOSE_MS = 5 * 60_000L;
+
+    private static volatile NostrRelayPool instance;
+
+    public static NostrRelayPool getInstance() {
+        if (instance == null) {
+            synchronized (NostrRelayPool.class) {
+                if (instance == null) {
+                    instance = new NostrRelayPool(HttpClients.getWebSocket());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static final class Relay {
+        final String url;
+        final Set<String> subscriptionIds = new LinkedHashSet<>();
+        WebSocket webSocket;
+        boolean open;
+        long backoffMs = INITIAL_BACKOFF_MS;
+        ScheduledFuture<?> reconnect;
+        ScheduledFuture<?> idleClose;
+
+        Relay(String url) {
+            this.url = url;
+        }
+    }
+
+    private final OkHttpClient okHttpClient;
+    private final Gson gson = new Gson();
+    private final Map<String, Relay> relays = new HashMap<>();
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "nostr-relay-pool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    NostrRelayPool(OkHttpClient okHttpClient) {
+        this.okHttpClient = okHttpClient;
+    }
+
+    /**
+     * Subscribe to events matching {@code filter} on each of {@code relayUrls},
+     * connecting to relays that are not already open.
+     */
+    public synchronized Subscription subscribe(List<String> relayUrls, JsonObject filter, EventHandler handler) {
+        Set<String> urls = new LinkedHashSet<>();
+        if (relayUrls != null) {
+            for (String url : relayUrls) {
+                if (url != null && !url.isEmpty()) urls.add(url);
+            }
+        }
+        Subscription sub = new Subscription(
+                UUID.randomUUID().toString().substring(0, 8), filter, Collections.unmodifiableSet(urls), handler);
+        subscriptions.put(sub.id, sub);
+
+        for (String url : urls) {
+            Relay relay = relays.get(url);
+            if (relay == null) {
+                relay = new Relay(url);
+                relays.put(url, relay);
+            }
+            relay.subscriptionIds.add(sub.id);
+            cancelIdleClose(relay);
+            if (relay.open) {
+                sendReq(relay, sub);
+            } else if (relay.webSocket == null && relay.reconnect == null) {
+                connect(relay);
+            }
+            // Otherwise a connect is in flight and onOpen will send the REQ
+        }
+        Log.d(TAG, "Subscribed " + sub.id + " on " + urls.size() + " relays");
+        return sub;
+    }
+
+    /**
+     * Open sockets to {@code relayUrls} ahead of a subscription so its REQ
+     * goes out without waiting for a handshake. Relays that get no
+     * subscription are closed after {@link #IDLE_CLOSE_MS}.
+     */
+    public synchronized void warmUp(List<String> relayUrls) {
+        if (relayUrls == null) return;
+        for (String url : relayUrls) {
+            if (url == null || url.isEmpty() || relays.containsKey(url)) continue;
+            Relay relay = new Relay(url);
+            relays.put(url, relay);
+            connect(relay);
+        }
+    }
+
+    private synchronized void unsubscribe(Subscription sub) {
+        if (subscriptions.remove(sub.id) == null) return;
+        for (String url : sub.relayUrls) {
+            Relay relay = relays.get(url);
+            if (relay == null) continue;
+            relay.subscriptionIds.remove(sub.id);
+            if (relay.open) {
+                JsonArray close = new JsonArray();
+                close.add("CLOSE");
+                close.add(sub.id);
+                relay.webSocket.send(gson.toJson(close));
+            }
+            if (relay.subscriptionIds.isEmpty()) {
+                scheduleIdleClose(relay);
+            }
+        }
+        Log.d(TAG, "Closed subscription " + sub.id);
+    }
+
+    /** Number of relays with a live or connecting socket. */
+    public synchronized int connectedRelayCount() {
+        int count = 0;
+        for (Relay relay : relays.values()) {
+            if (relay.webSocket != null) count++;
+        }
+        return count;
+    }
+
+    private void connect(final Relay relay) {
+        relay.reconnect = null;
+        Log.d(TAG, "Connecting to nostr relay: " + relay.url);
+        Request request = new Request.Builder().url(relay.url).build();
+        relay.webSocket = okHttpClient.newWebSocket(request, new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                onRelayOpen(relay, webSocket);
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                handleMessage(relay.url, text);
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                handleMessage(relay.url, bytes.utf8());
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                Log.d(TAG, "WebSocket closing: " + relay.url + " code=" + code + " reason=" + reason);
+                webSocket.close(code, reason);
+            }
+
+            @Override
+            public void onClosed(WebSocket webSocket, int code, String reason) {
+                Log.d(TAG, "WebSocket closed: " + relay.url + " code=" + code + " reason=" + reason);
+                onRelayLost(relay, webSocket);
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                Log.e(TAG, "WebSocket failure: " + relay.url + " error=" + t.getMessage(), t);
+                onRelayLost(relay, webSocket);
+            }
+        });
+    }
+
+    private synchronized void onRelayOpen(Relay relay, WebSocket webSocket) {
+        if (relay.webSocket != webSocket) return;
+        Log.d(TAG, "WebSocket open: " + relay.url);
+        relay.open = true;
+        relay.backoffMs = INITIAL_BACKOFF_MS;
+        for (String id : relay.subscriptionIds) {
+            Subscription sub = subscriptions.get(id);
+            if (sub != null) sendReq(relay, sub);
+        }
+        if (relay.subscriptionIds.isEmpty()) {
+            scheduleIdleClose(relay);
+        }
+    }
+
+    private synchronized void onRelayLost(Relay relay, WebSocket webSocket) {
+        if (relay.webSocket != webSocket) return;
+        relay.webSocket = null;
+        relay.open = false;
+        if (relay.subscriptionIds.isEmpty()) {
+            cancelIdleClose(relay);
+            relays.remove(relay.url);
+            return;
+        }
+        long ceiling = relay.backoffMs;
+        relay.backoffMs = Math.min(relay.backoffMs * 2, MAX_BACKOFF_MS);
+        // Full jitter over the upper half of the window
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        Log.d(TAG, "Scheduling reconnect to " + relay.url + " in " + delay + "ms");
+        relay.reconnect = scheduler.schedule(() -> {
+            synchronized (NostrRelayPool.this) {
+                if (relays.get(relay.url) == relay && relay.webSocket == null) {
+                    connect(relay);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleIdleClose(Relay relay) {
+        cancelIdleClose(relay);
+        if (relay.reconnect != null) {
+            relay.reconnect.cancel(false);
+            relay.reconnect = null;
+        }
+        relay.idleClose = scheduler.schedule(() -> {
+            synchronized (NostrRelayPool.this) {
+                relay.idleClose = null;
+                if (!relay.subscriptionIds.isEmpty() || relays.get(relay.url) != relay) return;
+                Log.d(TAG, "Closing idle relay " + relay.url);
+                relays.remove(relay.url);
+                WebSocket ws = relay.webSocket;
+                relay.webSocket = null;
+                relay.open = false;
+                if (ws != null) ws.close(1000, "idle");
+            }
+        }, IDLE_CLOSE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelIdleClose(Relay relay) {
+        if (relay.idleClose != null) {
+            relay.idleClose.cancel(false);
+            relay.idleClose = null;
+        }
+    }
+
+    private void sendReq(Relay relay, Subscription sub) {
+        JsonArray root = new JsonArray();
+        root.add("REQ");
+        root.add(sub.id);
+        root.add(sub.filter);
+        String msg = gson.toJson(root);
+        Log.d(TAG, "Sending REQ to " + relay.url + ": " + msg);
+        relay.webSocket.send(msg);
+    }
+
+    private void handleMessage(String relayUrl, String text) {
+        try {
+            JsonElement je = gson.fromJson(text, JsonElement.class);
+            if (!je.isJsonArray()) return;
+            JsonArray arr = je.getAsJsonArray();
+            if (arr.size() == 0) return;
+            String type = arr.get(0).getAsString();
+            if ("EVENT".equals(type) && arr.size() >= 3) {
+                String subId = arr.get(1).getAsString();
+                Subscription sub;
+                synchronized (this) {
+                    sub = subscriptions.get(subId);
+                }
+                if (sub == null) {
+                    return; // late event for a closed subscription
+                }
+                NostrEvent event = gson.fromJson(arr.get(2), NostrEvent.class);
+                if (event != null && sub.handler != null) {
+                    sub.handler.onEvent(relayUrl, event);
+                }
+            } else if ("NOTICE".equals(type) && arr.size() >= 2) {
+                Log.w(TAG, "NOTICE from " + relayUrl + ": " + arr.get(1).getAsString());
+            } else if ("CLOSED".equals(type) && arr.size() >= 3) {
+                Log.w(TAG, "CLOSED from " + relayUrl + " for sub=" + arr.get(1).getAsString()
+                        + " reason=" + arr.get(2).getAsString());
+            } else if ("EOSE".equals(type)) {
+                Log.d(TAG, "EOSE from " + relayUrl);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing message from " + relayUrl + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Relay URLs the pool currently tracks, for diagnostics. */
+    public synchronized List<String> relayUrls() {
+        return new ArrayList<>(relays.keySet());
+    }
+}
@@ -0,0 +1,111 @@
+package com.electricdreams.numo.nostr;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared secp256k1 arithmetic for the nostr code.
+ *
+ * Uses BouncyCastle's custom secp256k1 curve (fixed-width field arithmetic
+ * and the GLV endomorphism) rather than the generic prime-field curve, and
+ * caches the two things that are recomputed on every event:
+ *  - x-only public keys lifted to curve points (a field square root each),
+ *    kept in a small LRU since the same relay authors and DM senders recur;
+ *  - the comb precomputation for the generator G, built once by
+ *    {@link FixedPointCombMultiplier} and reused by {@link #mulG} for key
+ *    derivation and signing nonces.
+ * Signature verification does not use the comb: it computes s*G - e*P in
+ * a single interleaved pass with {@link #mulGAdd}, which is cheaper than a
+ * comb multiply followed by a separate multiply and add.
+ */
+final class Secp256k1 {
+
+    static final X9ECParameters PARAMS = CustomNamedCurves.getByName("secp256k1");
+    static final ECCurve CURVE = PARAMS.getCurve();
+    static final ECPoint G = PARAMS.getG();
+    static final BigInteger N = PARAMS.getN();
+    static final BigInteger P = CURVE.getField().getCharacteristic();
+
+    private static final int LIFTED_CACHE_SIZE = 256;
+
+    private static final FixedPointCombMultiplier BASE_MULTIPLIER = new FixedPointCombMultiplier();
+
+    // Public points only; nothing secret is cached here
+    private static final Map<ByteBuffer, ECPoint> LIFTED =
+            new LinkedHashMap<ByteBuffer, ECPoint>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, ECPoint> eldest) {
+                    return size() > LIFTED_CACHE_SIZE;
+                }
+            };
+
+    private Secp256k1() {}
+
+    /**
+     * Lift a 32-byte x-only public key to the curve point with even Y
+     * (BIP-340), or null if x is out of range or not on the curve.
+     */
+    static ECPoint liftX(byte[] x32) {
+        if (x32 == null || x32.length != 32) return null;
+        ByteBuffer key = ByteBuffer.wrap(x32.clone());
+        synchronized (LIFTED) {
+            ECPoint cached = LIFTED.get(key);
+            if (cached != null) return cached;
+        }
+        BigInteger x = new BigInteger(1, x32);
+        if (x.signum() <= 0 || x.compareTo(P) >= 0) {
+            return null;
+        }
+        byte[] comp = new byte[33];
+        comp[0] = 0x02; // even Y
+        System.arraycopy(x32, 0, comp, 1, 32);
+        ECPoint point;
+        try {
+            point = CURVE.decodePoint(comp).normalize();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        synchronized (LIFTED) {
+            LIFTED.put(key, point);
+        }
+        return point;
+    }
+
+    /** k*G using the cached comb table for G; used for public keys and nonce points. */
+    static ECPoint mulG(BigInteger k) {
+        return BASE_MULTIPLIER.multiply(G, k);
+    }
+
+    /** a*G + b*Q in one interleaved pass (Shamir's trick). */
+    static ECPoint mulGAdd(BigInteger a, ECPoint q, BigInteger b) {
+        return ECAlgorithms.sumOfTwoMultiplies(G, a, q, b);
+    }
+
+    static byte[] to32Bytes(BigInteger v) {
+        byte[] src = v.toByteArray();
+        if (src.length == 32) return src;
+        byte[] out = new byte[32];
+        if (src.length > 32) {
+            System.arraycopy(src, src.length - 32, out, 0, 32);
+        } else {
+            System.arraycopy(src, 0, out, 32 - src.length, src.length);
+        }
+        return out;
+    }
+
+    /** Number of lifted points currently cached; for tests and diagnostics. */
+    static int liftedCacheSize() {
+        synchronized (LIFTED) {
+            return LIFTED.size();
+        }
+    }
+}
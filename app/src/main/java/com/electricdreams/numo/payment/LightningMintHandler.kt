@@ -4,32 +4,22 @@ import android.content.Context
 import android.util.Log
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.cashu.CashuWalletManager
-import com.google.gson.Gson
-import com.google.gson.JsonObject
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.suspendCancellableCoroutine
-import okhttp3.OkHttpClient
-import okhttp3.Request
-import okhttp3.Response
-import okhttp3.WebSocket
-import okhttp3.WebSocketListener
 import org.cashudevkit.Amount as CdkAmount
 import org.cashudevkit.CurrencyUnit
 import org.cashudevkit.MintQuote
 import org.cashudevkit.MintUrl
 import org.cashudevkit.PaymentMethod
 import org.cashudevkit.QuoteState
-import java.util.UUID
-import java.util.concurrent.TimeUnit
+import org.cashudevkit.WalletRepository
 import java.util.concurrent.atomic.AtomicBoolean
-import kotlin.coroutines.resume
-import kotlin.coroutines.resumeWithException
 
 /**
  * Handles Lightning payment flow via mint quote and WebSocket subscription (NUT-17).
@@ -80,13 +70,6 @@ class LightningMintHandler(
     /** Atomic flag to ensure mint is only called once (WebSocket vs polling race) */
     private val mintCalled = AtomicBoolean(false)
 
-    // Shared OkHttp client for mint WebSocket connections
-    private val wsClient: OkHttpClient by lazy {
-        OkHttpClient.Builder()
-            .readTimeout(0, TimeUnit.MILLISECONDS) // no timeout, rely on WS pings
-            .build()
-    }
-    
     /** The current mint quote, if any */
     val currentQuote: MintQuote? get() = mintQuote
 
@@ -104,8 +87,15 @@ class LightningMintHandler(
      *
      * @param paymentAmount Amount in satoshis to request
      * @param callback Callback for Lightning mint events
+     * @param preparedQuote Optional source of an already created quote for
+     *                      (mint URL, unit); a new quote is requested when it
+     *                      returns null
      */
-    fun start(paymentAmount: Long, callback: Callback) {
+    fun start(
+        paymentAmount: Long,
+        callback: Callback,
+        preparedQuote: (suspend (mintUrl: String, unit: String) -> MintQuote?)? = null
+    ) {
         val wallet = CashuWalletManager.getWallet()
         if (wallet == null) {
             Log.w(TAG, "WalletRepository not ready, skipping Lightning")
@@ -148,25 +138,10 @@ class LightningMintHandler(
         mintJob?.cancel()
         mintJob = uiScope.launch(ioDispatcher) {
             try {
-                // CDK Amount is in minor units of wallet's CurrencyUnit (we constructed wallet in sats)
-                val quoteAmount = CdkAmount(paymentAmount.toULong())
-
-                Log.d(TAG, "Requesting Lightning mint quote from ${mintUrl.url} for $paymentAmount sats")
                 val unitStr = com.electricdreams.numo.core.util.MintManager.getInstance(context).getPreferredUnit()
-        val unit = com.electricdreams.numo.core.cashu.CashuWalletManager.getCurrencyUnit(unitStr)
-        val mintWallet = wallet.getWallet(mintUrl, unit)
-
-                val nut04 = mintWallet.loadMintInfo().nuts.nut04
-                val supportsDescription = nut04?.methods?.any {
-                    it.method == org.cashudevkit.PaymentMethod.Bolt11 && it.description == true
-                } == true
-                val description = if (supportsDescription) {
-                    context.getString(R.string.payment_request_lightning_description, paymentAmount)
-                } else {
-                    null
-                }
-                val quote = mintWallet?.mintQuote(org.cashudevkit.PaymentMethod.Bolt11, quoteAmount, description, null)
-                    ?: throw Exception("Failed to get wallet for mint: ${mintUrl.url}")
+                val quote = preparedQuote?.invoke(mintUrlStr, unitStr)
+                    ?.also { Log.d(TAG, "Using prepared Lightning mint quote id=${it.id}") }
+                    ?: requestMintQuote(context, wallet, mintUrl, unitStr, paymentAmount)
                 mintQuote = quote
 
                 val bolt11 = quote.request
@@ -177,34 +152,7 @@ class LightningMintHandler(
                     callback.onInvoiceReady(bolt11, quote.id, mintUrlStr)
                 }
 
-                // Start both WebSocket subscription and polling in parallel
-                // Whichever detects payment first will call tryMintOnce (atomic, only one wins)
-                val wsJob = launch {
-                    try {
-                        Log.d(TAG, "Starting WebSocket subscription for quote ${quote.id}")
-                        awaitMintQuotePaid(mintUrl, quote.id)
-                        // WebSocket detected quote is paid, attempt to mint (only first caller wins)
-                        tryMintOnce(mintUrl, quote.id, callback, "WebSocket")
-                    } catch (ce: CancellationException) {
-                        Log.d(TAG, "WebSocket subscription cancelled for quote ${quote.id}")
-                    } catch (e: Exception) {
-                        Log.e(TAG, "WebSocket error for quote ${quote.id}: ${e.message}", e)
-                    }
-                }
-
-                val pollJob = launch {
-                    try {
-                        pollForQuotePaid(mintUrl, quote.id, callback)
-                    } catch (ce: CancellationException) {
-                        Log.d(TAG, "Polling cancelled for quote ${quote.id}")
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Polling error for quote ${quote.id}: ${e.message}", e)
-                    }
-                }
-
-                // Wait for both to complete (one will finish first and mint, the other will detect mintCalled)
-                wsJob.join()
-                pollJob.join()
+                monitorQuote(mintUrl, quote.id, callback, "")
 
             } catch (e: Exception) {
                 Log.e(TAG, "Error in Lightning mint flow: ${e.message}", e)
@@ -255,34 +203,7 @@ class LightningMintHandler(
                     callback.onInvoiceReady(invoice, quoteId, mintUrlStr)
                 }
 
-                // Start both WebSocket subscription and polling in parallel
-                // Whichever detects payment first will call tryMintOnce (atomic, only one wins)
-                val wsJob = launch {
-                    try {
-                        Log.d(TAG, "Starting WebSocket subscription for resumed quote $quoteId")
-                        awaitMintQuotePaid(mintUrl, quoteId)
-                        // WebSocket detected quote is paid, attempt to mint (only first caller wins)
-                        tryMintOnce(mintUrl, quoteId, callback, "WebSocket (resume)")
-                    } catch (ce: CancellationException) {
-                        Log.d(TAG, "WebSocket subscription cancelled for resumed quote $quoteId")
-                    } catch (e: Exception) {
-                        Log.e(TAG, "WebSocket error for resumed quote $quoteId: ${e.message}", e)
-                    }
-                }
-
-                val pollJob = launch {
-                    try {
-                        pollForQuotePaid(mintUrl, quoteId, callback)
-                    } catch (ce: CancellationException) {
-                        Log.d(TAG, "Polling cancelled for resumed quote $quoteId")
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Polling error for resumed quote $quoteId: ${e.message}", e)
-                    }
-                }
-
-                // Wait for both to complete (one will finish first and mint, the other will detect mintCalled)
-                wsJob.join()
-                pollJob.join()
+                monitorQuote(mintUrl, quoteId, callback, " (resume)")
 
             } catch (e: Exception) {
                 Log.e(TAG, "Error in resumed Lightning mint flow: ${e.message}", e)
@@ -303,169 +224,46 @@ class LightningMintHandler(
     }
 
     /**
-     * Build the mint's WebSocket URL as `<scheme>/v1/ws` based on the MintUrl.
-     *
-     * If the mint URL is `https://mint.com` this returns `wss://mint.com/v1/ws`.
-     * If it includes a path (e.g. `https://mint.com/Bitcoin`) we append `/v1/ws`
-     * after that path: `wss://mint.com/Bitcoin/v1/ws`.
-     */
-    private fun buildMintWsUrl(mintUrl: MintUrl): String {
-        val base = mintUrl.url.removeSuffix("/")
-        val wsBase = when {
-            base.startsWith("https://", ignoreCase = true) ->
-                "wss://" + base.removePrefix("https://")
-            base.startsWith("http://", ignoreCase = true) ->
-                "ws://" + base.removePrefix("http://")
-            base.startsWith("wss://", ignoreCase = true) ||
-                base.startsWith("ws://", ignoreCase = true) -> base
-            else -> "wss://$base"
-        }
-        return "$wsBase/v1/ws"
-    }
-
-    /**
-     * Suspend until the given Lightning mint quote is reported as paid via the
-     * mint's WebSocket (NUT-17) subscription.
-     *
-     * We subscribe with kind = "bolt11_mint_quote" and a single filter: the quote id.
-     * On `state == "PAID"` (or `"ISSUED"` if we attached late), we resume.
+     * Watch [quoteId] until it is paid, then mint once.
      *
-     * Cancellation of the coroutine will unsubscribe and close the WebSocket,
-     * which is how we shut this down when another payment path wins or the user
-     * cancels the checkout.
+     * The quote is subscribed on the shared per-mint NUT-17 socket in
+     * [MintSubscriptionHub] and polled in parallel. While the socket is live
+     * the poller only runs as a slow safety net; when the mint has no
+     * WebSocket support (or the socket is down) it polls adaptively.
+     * Whichever detects payment first calls tryMintOnce (atomic, only one wins).
      */
-    private suspend fun awaitMintQuotePaid(
-        mintUrl: MintUrl,
-        quoteId: String
-    ) = suspendCancellableCoroutine<Unit> { cont ->
-        val wsUrl = buildMintWsUrl(mintUrl)
-        Log.d(TAG, "Connecting to mint WebSocket at $wsUrl for quoteId=$quoteId")
-
-        val request = Request.Builder().url(wsUrl).build()
-        val gson = Gson()
-        val subId = UUID.randomUUID().toString()
-        var nextRequestId = 0
-        var webSocket: WebSocket? = null
-
-        fun sendUnsubscribe(ws: WebSocket) {
-            val params = mapOf("subId" to subId)
-            val msg = mapOf(
-                "jsonrpc" to "2.0",
-                "id" to ++nextRequestId,
-                "method" to "unsubscribe",
-                "params" to params
-            )
-            val json = gson.toJson(msg)
-            Log.d(TAG, "Sending unsubscribe for subId=$subId: $json")
-            ws.send(json)
-        }
-
-        val listener = object : WebSocketListener() {
-            override fun onOpen(ws: WebSocket, response: Response) {
-                Log.d(TAG, "Mint WebSocket open: $wsUrl")
-                webSocket = ws
-                val params = mapOf(
-                    "kind" to "bolt11_mint_quote",
-                    "subId" to subId,
-                    "filters" to listOf(quoteId),
-                )
-                val msg = mapOf(
-                    "jsonrpc" to "2.0",
-                    "id" to nextRequestId,
-                    "method" to "subscribe",
-                    "params" to params,
-                )
-                val json = gson.toJson(msg)
-                Log.d(TAG, "Sending subscribe for subId=$subId, quoteId=$quoteId: $json")
-                ws.send(json)
-            }
-
-            override fun onMessage(ws: WebSocket, text: String) {
-                Log.v(TAG, "Mint WS message: $text")
+    private suspend fun monitorQuote(mintUrl: MintUrl, quoteId: String, callback: Callback, label: String) =
+        coroutineScope {
+            val pushJob = launch {
                 try {
-                    val root = gson.fromJson(text, JsonObject::class.java) ?: return
-
-                    if (root.has("error")) {
-                        val errorObj = root.getAsJsonObject("error")
-                        val code = errorObj["code"]?.asInt
-                        val message = errorObj["message"]?.asString
-                        val ex = Exception("Mint WS error code=$code message=$message")
-                        if (!cont.isCompleted) {
-                            cont.resumeWithException(ex)
-                        }
-                        ws.close(1000, "error")
-                        return
-                    }
-
-                    if (root.has("result")) {
-                        // subscribe/unsubscribe ACK; nothing to do here for now
-                        return
-                    }
-
-                    val method = root.get("method")?.asString ?: return
-                    if (method != "subscribe") return
-
-                    val params = root.getAsJsonObject("params") ?: return
-                    val payload = params.getAsJsonObject("payload") ?: return
-                    val state = payload.get("state")?.asString ?: return
-
-                    Log.d(TAG, "Mint quote update for quoteId=$quoteId state=$state")
-
-                    if (state.equals("PAID", ignoreCase = true) ||
-                        state.equals("ISSUED", ignoreCase = true)
-                    ) {
-                        if (!cont.isCompleted) {
-                            cont.resume(Unit)
-                        }
-                        try {
-                            sendUnsubscribe(ws)
-                        } catch (_: Throwable) {
-                        }
-                        ws.close(1000, "quote paid")
-                    }
-                } catch (t: Throwable) {
-                    Log.e(TAG, "Error parsing mint WS message: ${t.message}", t)
-                    if (!cont.isCompleted) {
-                        cont.resumeWithException(t)
-                    }
-                    ws.close(1000, "parse error")
-                }
-            }
-
-            override fun onFailure(ws: WebSocket, t: Throwable, response: Response?) {
-                Log.e(TAG, "Mint WS failure: ${t.message}", t)
-                if (!cont.isCompleted) {
-                    cont.resumeWithException(t)
-                }
-            }
-
-            override fun onClosed(ws: WebSocket, code: Int, reason: String) {
-                Log.d(TAG, "Mint WS closed: code=$code reason=$reason")
-                if (!cont.isCompleted && !cont.isCancelled) {
-                    cont.resumeWithException(
-                        CancellationException("Mint WS closed before quote paid: $code $reason")
+                    Log.d(TAG, "Subscribing to quote $quoteId$label")
+                    MintSubscriptionHub.getInstance().awaitState(
+                        mintUrl.url, MintSubscriptionHub.Kind.MINT_QUOTE, quoteId, PAID_STATES
                     )
+                    tryMintOnce(mintUrl, quoteId, callback, "WebSocket$label")
+                } catch (ce: CancellationException) {
+                    Log.d(TAG, "Subscription cancelled for quote $quoteId$label")
+                } catch (e: MintSubscriptionHub.PushUnavailableException) {
+                    Log.d(TAG, "No push for quote $quoteId$label, relying on polling: ${e.message}")
+                } catch (e: Exception) {
+                    Log.e(TAG, "Subscription error for quote $quoteId$label: ${e.message}", e)
                 }
             }
-        }
-
-        val ws = wsClient.newWebSocket(request, listener)
-        webSocket = ws
 
-        cont.invokeOnCancellation {
-            Log.d(TAG, "Coroutine cancelled while waiting for mint quote; closing WS")
-            try {
-                webSocket?.let { socket ->
-                    try {
-                        sendUnsubscribe(socket)
-                    } catch (_: Throwable) {
-                    }
-                    socket.close(1000, "cancelled")
+            val pollJob = launch {
+                try {
+                    pollForQuotePaid(mintUrl, quoteId, callback)
+                } catch (ce: CancellationException) {
+                    Log.d(TAG, "Polling cancelled for quote $quoteId$label")
+                } catch (e: Exception) {
+                    Log.e(TAG, "Polling error for quote $quoteId$label: ${e.message}", e)
                 }
-            } catch (_: Throwable) {
             }
+
+            // The poller exits once either path has minted; stop waiting for a push then
+            pollJob.join()
+            pushJob.cancel()
         }
-    }
 
     /**
      * Attempt to mint proofs for the given quote. Uses atomic flag to ensure
@@ -510,6 +308,7 @@ class LightningMintHandler(
                 }
                 return false
             }
+        com.electricdreams.numo.core.cashu.CashuWalletManager.invalidateBalances("mint")
         Log.d(TAG, "Lightning mint completed with ${proofs.size} proofs ($source)")
 
         uiScope.launch(Dispatchers.Main) {
@@ -532,18 +331,29 @@ class LightningMintHandler(
         callback: Callback
     ) {
         val wallet = CashuWalletManager.getWallet() ?: return
+        val hub = MintSubscriptionHub.getInstance()
         
-        Log.d(TAG, "Starting polling for mint quote $quoteId (interval: ${POLL_INTERVAL_MS}ms)")
+        Log.d(TAG, "Starting polling for mint quote $quoteId")
         
+        var interval = MIN_POLL_INTERVAL_MS
+        var sinceLastPoll = 0L
         while (!mintCalled.get()) {
             try {
-                delay(POLL_INTERVAL_MS)
+                delay(MIN_POLL_INTERVAL_MS)
+                sinceLastPoll += MIN_POLL_INTERVAL_MS
                 
                 // Check if mint was already called by WebSocket while we were waiting
                 if (mintCalled.get()) {
                     Log.d(TAG, "Mint already called during poll delay, stopping poller")
                     break
                 }
+
+                // With a live push socket, only poll as a safety net; otherwise back off
+                // from MIN_POLL_INTERVAL_MS towards POLL_INTERVAL_MS
+                val due = if (hub.isLive(mintUrl.url)) PUSH_SAFETY_POLL_INTERVAL_MS else interval
+                if (sinceLastPoll < due) continue
+                sinceLastPoll = 0L
+                interval = (interval * 3 / 2).coerceAtMost(POLL_INTERVAL_MS)
                 
                 Log.v(TAG, "Polling mint quote state for $quoteId")
                 
@@ -583,7 +393,46 @@ class LightningMintHandler(
     companion object {
         private const val TAG = "LightningMintHandler"
         
-        /** Polling interval for checking mint quote state (in milliseconds) */
+        /** First polling interval when the mint cannot push quote state (in milliseconds) */
+        const val MIN_POLL_INTERVAL_MS = 1000L
+
+        /** Longest polling interval when the mint cannot push quote state (in milliseconds) */
         const val POLL_INTERVAL_MS = 5000L
+
+        /** Safety-net polling interval while the mint's NUT-17 socket is live (in milliseconds) */
+        const val PUSH_SAFETY_POLL_INTERVAL_MS = 30_000L
+
+        private val PAID_STATES = setOf("PAID", "ISSUED")
+
+        /**
+         * Request a BOLT11 mint quote for [paymentAmount] from [mintUrl],
+         * with an invoice description when the mint supports one.
+         */
+        internal suspend fun requestMintQuote(
+            context: Context,
+            wallet: WalletRepository,
+            mintUrl: MintUrl,
+            unitStr: String,
+            paymentAmount: Long
+        ): MintQuote {
+            // CDK Amount is in minor units of wallet's CurrencyUnit (we constructed wallet in sats)
+            val quoteAmount = CdkAmount(paymentAmount.toULong())
+
+            Log.d(TAG, "Requesting Lightning mint quote from ${mintUrl.url} for $paymentAmount sats")
+            val unit = CashuWalletManager.getCurrencyUnit(unitStr)
+            val mintWallet = wallet.getWallet(mintUrl, unit)
+
+            val nut04 = mintWallet.loadMintInfo().nuts.nut04
+            val supportsDescription = nut04?.methods?.any {
+                it.method == PaymentMethod.Bolt11 && it.description == true
+            } == true
+            val description = if (supportsDescription) {
+                context.getString(R.string.payment_request_lightning_description, paymentAmount)
+            } else {
+                null
+            }
+            return mintWallet?.mintQuote(PaymentMethod.Bolt11, quoteAmount, description, null)
+                ?: throw Exception("Failed to get wallet for mint: ${mintUrl.url}")
+        }
     }
 }
@@ -0,0 +1,377 @@
+package com.electricdreams.numo.payment
+
+import android.util.Log
+import com.electricdreams.numo.core.util.HttpClients
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import kotlinx.coroutines.suspendCancellableCoroutine
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import java.util.UUID
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import kotlin.coroutines.Continuation
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Process-wide NUT-17 subscription hub for mint and melt quote state.
+ *
+ * Keeps at most one WebSocket per mint and multiplexes any number of quote
+ * subscriptions over it, routing notifications by `subId`. Subscribing to a
+ * mint that is already connected costs a single `subscribe` frame; live
+ * subscriptions are replayed after a reconnect.
+ *
+ * A mint whose `/v1/ws` endpoint cannot be opened at all is remembered as
+ * lacking WebSocket support for [UNSUPPORTED_RETRY_MS]; waiters for it fail
+ * fast with [PushUnavailableException] so callers fall back to polling.
+ * A mint with no subscriptions left is kept open for [IDLE_CLOSE_MS] so
+ * back-to-back payments reuse the connection.
+ */
+class MintSubscriptionHub internal constructor(private val client: OkHttpClient) {
+
+    /** NUT-17 subscription kinds we use. */
+    enum class Kind(val wireName: String) {
+        MINT_QUOTE("bolt11_mint_quote"),
+        MELT_QUOTE("bolt11_melt_quote")
+    }
+
+    /** The mint cannot push state for this quote; poll instead. */
+    class PushUnavailableException(message: String, cause: Throwable? = null) : Exception(message, cause)
+
+    companion object {
+        private const val TAG = "MintSubscriptionHub"
+
+        private const val INITIAL_BACKOFF_MS = 1_000L
+        private const val MAX_BACKOFF_MS = 30_000L
+        internal const val IDLE_CLOSE_MS = 2 * 60_000L
+        internal const val UNSUPPORTED_RETRY_MS = 10 * 60_000L
+
+        @Volatile
+        private var instance: MintSubscriptionHub? = null
+
+        @JvmStatic
+        fun getInstance(): MintSubscriptionHub {
+            return instance ?: synchronized(this) {
+                instance ?: MintSubscriptionHub(HttpClients.webSocket).also { instance = it }
+            }
+        }
+
+        /**
+         * Build the mint's WebSocket URL as `<scheme>/v1/ws` based on the mint URL.
+         *
+         * If the mint URL is `https://mint.com` this returns `wss://mint.com/v1/ws`.
+         * If it includes a path (e.g. `https://mint.com/Bitcoin`) we append `/v1/ws`
+         * after that path: `wss://mint.com/Bitcoin/v1/ws`.
+         */
+        internal fun buildWsUrl(mintUrl: String): String {
+            val base = mintUrl.removeSuffix("/")
+            val wsBase = when {
+                base.startsWith("https://", ignoreCase = true) ->
+                    "wss://" + base.removePrefix("https://")
+                base.startsWith("http://", ignoreCase = true) ->
+                    "ws://" + base.removePrefix("http://")
+                base.startsWith("wss://", ignoreCase = true) ||
+                    base.startsWith("ws://", ignoreCase = true) -> base
+                else -> "wss://$base"
+            }
+            return "$wsBase/v1/ws"
+        }
+    }
+
+    private class Subscription(
+        val id: String,
+        val mintKey: String,
+        val kind: Kind,
+        val quoteId: String,
+        val states: Set<String>,
+        val cont: Continuation<String>
+    )
+
+    private class Mint(val key: String, val wsUrl: String) {
+        val subscriptionIds = LinkedHashSet<String>()
+        var webSocket: WebSocket? = null
+        var open = false
+        var everOpened = false
+        var backoffMs = INITIAL_BACKOFF_MS
+        var reconnect: ScheduledFuture<*>? = null
+        var idleClose: ScheduledFuture<*>? = null
+    }
+
+    private val gson = Gson()
+    private val lock = Any()
+    private val mints = HashMap<String, Mint>()
+    private val subscriptions = HashMap<String, Subscription>()
+    private val pendingRequests = HashMap<Int, String>()
+    private val unsupportedUntil = HashMap<String, Long>()
+    private var nextRequestId = 0
+    private val scheduler = Executors.newSingleThreadScheduledExecutor { r ->
+        Thread(r, "mint-subscription-hub").apply { isDaemon = true }
+    }
+
+    /**
+     * Suspend until quote [quoteId] on [mintUrl] reports one of [states]
+     * (compared case-insensitively) and return that state.
+     *
+     * @throws PushUnavailableException if the mint cannot push state for it.
+     */
+    suspend fun awaitState(mintUrl: String, kind: Kind, quoteId: String, states: Set<String>): String {
+        val wanted = states.mapTo(HashSet()) { it.uppercase() }
+        val subId = UUID.randomUUID().toString()
+        return suspendCancellableCoroutine { cont ->
+            cont.invokeOnCancellation { unsubscribe(subId) }
+            subscribe(Subscription(subId, mintUrl.removeSuffix("/"), kind, quoteId, wanted, cont))
+        }
+    }
+
+    /**
+     * Open the mint's socket ahead of a quote subscription. Without a
+     * subscription it is closed again after [IDLE_CLOSE_MS].
+     */
+    fun warmUp(mintUrl: String) {
+        val key = mintUrl.removeSuffix("/")
+        if (isPushUnsupported(key)) return
+        synchronized(lock) {
+            if (mints.containsKey(key)) return
+            val mint = Mint(key, buildWsUrl(key))
+            mints[key] = mint
+            try {
+                connect(mint)
+            } catch (e: IllegalArgumentException) {
+                mints.remove(key)
+                Log.w(TAG, "Invalid mint WebSocket URL ${mint.wsUrl}")
+            }
+        }
+    }
+
+    /** True while the mint's socket is open, i.e. its subscriptions receive pushes. */
+    fun isLive(mintUrl: String): Boolean = synchronized(lock) {
+        mints[mintUrl.removeSuffix("/")]?.open == true
+    }
+
+    /** True if the mint recently failed to open a WebSocket at all. */
+    fun isPushUnsupported(mintUrl: String): Boolean = synchronized(lock) {
+        val until = unsupportedUntil[mintUrl.removeSuffix("/")] ?: return false
+        if (System.currentTimeMillis() < until) return true
+        unsupportedUntil.remove(mintUrl.removeSuffix("/"))
+        false
+    }
+
+    /** Number of mints with a live or connecting socket. */
+    fun connectedMintCount(): Int = synchronized(lock) {
+        mints.values.count { it.webSocket != null }
+    }
+
+    private fun subscribe(sub: Subscription) {
+        if (isPushUnsupported(sub.mintKey)) {
+            sub.cont.resumeWithException(PushUnavailableException("Mint ${sub.mintKey} has no WebSocket support"))
+            return
+        }
+        synchronized(lock) {
+            subscriptions[sub.id] = sub
+            val mint = mints.getOrPut(sub.mintKey) { Mint(sub.mintKey, buildWsUrl(sub.mintKey)) }
+            mint.subscriptionIds.add(sub.id)
+            cancelIdleClose(mint)
+            if (mint.open) {
+                sendSubscribe(mint, sub)
+            } else if (mint.webSocket == null && mint.reconnect == null) {
+                try {
+                    connect(mint)
+                } catch (e: IllegalArgumentException) {
+                    mints.remove(mint.key)
+                    subscriptions.remove(sub.id)
+                    throw PushUnavailableException("Invalid mint WebSocket URL ${mint.wsUrl}", e)
+                }
+            }
+            // Otherwise a connect is in flight and onOpen will subscribe
+        }
+        Log.d(TAG, "Subscribed ${sub.kind.wireName} ${sub.quoteId} on ${sub.mintKey}")
+    }
+
+    private fun unsubscribe(subId: String) {
+        synchronized(lock) {
+            val sub = subscriptions.remove(subId) ?: return
+            val mint = mints[sub.mintKey] ?: return
+            mint.subscriptionIds.remove(subId)
+            if (mint.open) {
+                send(mint, "unsubscribe", mapOf("subId" to subId))
+            }
+            if (mint.subscriptionIds.isEmpty()) {
+                scheduleIdleClose(mint)
+            }
+        }
+    }
+
+    private fun connect(mint: Mint) {
+        mint.reconnect = null
+        Log.d(TAG, "Connecting to mint WebSocket ${mint.wsUrl}")
+        val request = Request.Builder().url(mint.wsUrl).build()
+        mint.webSocket = client.newWebSocket(request, object : WebSocketListener() {
+            override fun onOpen(webSocket: WebSocket, response: Response) {
+                onMintOpen(mint, webSocket)
+            }
+
+            override fun onMessage(webSocket: WebSocket, text: String) {
+                handleMessage(mint, text)
+            }
+
+            override fun onClosing(webSocket: WebSocket, code: Int, reason: String) {
+                webSocket.close(code, reason)
+            }
+
+            override fun onClosed(webSocket: WebSocket, code: Int, reason: String) {
+                Log.d(TAG, "Mint WebSocket closed: ${mint.wsUrl} code=$code reason=$reason")
+                onMintLost(mint, webSocket, null, null)
+            }
+
+            override fun onFailure(webSocket: WebSocket, t: Throwable, response: Response?) {
+                Log.w(TAG, "Mint WebSocket failure: ${mint.wsUrl} error=${t.message}")
+                onMintLost(mint, webSocket, t, response)
+            }
+        })
+    }
+
+    private fun onMintOpen(mint: Mint, webSocket: WebSocket) = synchronized(lock) {
+        if (mint.webSocket !== webSocket) return@synchronized
+        Log.d(TAG, "Mint WebSocket open: ${mint.wsUrl}")
+        mint.open = true
+        mint.everOpened = true
+        mint.backoffMs = INITIAL_BACKOFF_MS
+        for (id in mint.subscriptionIds) {
+            subscriptions[id]?.let { sendSubscribe(mint, it) }
+        }
+        if (mint.subscriptionIds.isEmpty()) {
+            scheduleIdleClose(mint)
+        }
+    }
+
+    private fun onMintLost(mint: Mint, webSocket: WebSocket, error: Throwable?, response: Response?) {
+        val failed = ArrayList<Subscription>()
+        synchronized(lock) {
+            if (mint.webSocket !== webSocket) return
+            mint.webSocket = null
+            mint.open = false
+            if (!mint.everOpened && response != null) {
+                // The mint answered but refused the upgrade: no NUT-17 support.
+                // Network errors without a response are retried instead.
+                unsupportedUntil[mint.key] = System.currentTimeMillis() + UNSUPPORTED_RETRY_MS
+                mint.subscriptionIds.mapNotNullTo(failed) { subscriptions.remove(it) }
+                mint.subscriptionIds.clear()
+            }
+            if (mint.subscriptionIds.isEmpty()) {
+                cancelIdleClose(mint)
+                mints.remove(mint.key)
+            } else {
+                val ceiling = mint.backoffMs
+                mint.backoffMs = (mint.backoffMs * 2).coerceAtMost(MAX_BACKOFF_MS)
+                // Full jitter over the upper half of the window
+                val delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1)
+                Log.d(TAG, "Scheduling reconnect to ${mint.wsUrl} in ${delay}ms")
+                mint.reconnect = scheduler.schedule({
+                    synchronized(lock) {
+                        if (mints[mint.key] === mint && mint.webSocket == null) connect(mint)
+                    }
+                }, delay, TimeUnit.MILLISECONDS)
+            }
+        }
+        if (failed.isNotEmpty()) {
+            Log.w(TAG, "Mint ${mint.key} has no usable WebSocket; ${failed.size} waiters fall back to polling")
+            val ex = PushUnavailableException("Mint ${mint.key} WebSocket unavailable", error)
+            failed.forEach { resumeSafely(it) { cont -> cont.resumeWithException(ex) } }
+        }
+    }
+
+    private fun scheduleIdleClose(mint: Mint) {
+        cancelIdleClose(mint)
+        mint.reconnect?.cancel(false)
+        mint.reconnect = null
+        mint.idleClose = scheduler.schedule({
+            synchronized(lock) {
+                mint.idleClose = null
+                if (mint.subscriptionIds.isNotEmpty() || mints[mint.key] !== mint) return@synchronized
+                Log.d(TAG, "Closing idle mint WebSocket ${mint.wsUrl}")
+                mints.remove(mint.key)
+                val ws = mint.webSocket
+                mint.webSocket = null
+                mint.open = false
+                ws?.close(1000, "idle")
+            }
+        }, IDLE_CLOSE_MS, TimeUnit.MILLISECONDS)
+    }
+
+    private fun cancelIdleClose(mint: Mint) {
+        mint.idleClose?.cancel(false)
+        mint.idleClose = null
+    }
+
+    private fun sendSubscribe(mint: Mint, sub: Subscription) {
+        val requestId = send(
+            mint, "subscribe",
+            mapOf("kind" to sub.kind.wireName, "subId" to sub.id, "filters" to listOf(sub.quoteId))
+        )
+        pendingRequests[requestId] = sub.id
+    }
+
+    private fun send(mint: Mint, method: String, params: Map<String, Any>): Int {
+        val requestId = nextRequestId++
+        val json = gson.toJson(mapOf("jsonrpc" to "2.0", "id" to requestId, "method" to method, "params" to params))
+        Log.v(TAG, "Sending to ${mint.wsUrl}: $json")
+        mint.webSocket?.send(json)
+        return requestId
+    }
+
+    private fun handleMessage(mint: Mint, text: String) {
+        try {
+            val root = gson.fromJson(text, JsonObject::class.java) ?: return
+
+            if (root.has("error")) {
+                // A rejected subscribe: the mint does not support this kind
+                val requestId = root.get("id")?.takeIf { !it.isJsonNull }?.asInt
+                val errorObj = root.getAsJsonObject("error")
+                val message = "Mint WS error code=${errorObj?.get("code")} message=${errorObj?.get("message")}"
+                val sub = synchronized(lock) {
+                    val subId = requestId?.let { pendingRequests.remove(it) } ?: return
+                    subscriptions[subId]
+                } ?: return
+                Log.w(TAG, "Subscribe rejected by ${mint.key} for ${sub.quoteId}: $message")
+                unsubscribe(sub.id)
+                resumeSafely(sub) { it.resumeWithException(PushUnavailableException(message)) }
+                return
+            }
+
+            if (root.has("result")) {
+                root.get("id")?.takeIf { !it.isJsonNull }?.asInt?.let { id ->
+                    synchronized(lock) { pendingRequests.remove(id) }
+                }
+                return
+            }
+
+            if (root.get("method")?.asString != "subscribe") return
+            val params = root.getAsJsonObject("params") ?: return
+            val subId = params.get("subId")?.asString ?: return
+            val state = params.getAsJsonObject("payload")?.get("state")?.asString ?: return
+
+            val sub = synchronized(lock) { subscriptions[subId] } ?: return
+            Log.d(TAG, "${sub.kind.wireName} ${sub.quoteId} state=$state")
+            if (state.uppercase() in sub.states) {
+                unsubscribe(subId)
+                resumeSafely(sub) { it.resume(state.uppercase()) }
+            }
+        } catch (t: Throwable) {
+            Log.e(TAG, "Error parsing mint WS message: ${t.message}", t)
+        }
+    }
+
+    private inline fun resumeSafely(sub: Subscription, block: (Continuation<String>) -> Unit) {
+        try {
+            block(sub.cont)
+        } catch (_: IllegalStateException) {
+            // Already resumed or cancelled
+        }
+    }
+}
@@ -65,14 +65,17 @@ class NostrPaymentHandler(
      * @param paymentAmount Amount in satoshis
      * @param pendingPaymentId Optional ID for updating pending payment record
      * @param callback Callback for payment events
+     * @param preparedKeyPair Unused ephemeral keys generated ahead of time,
+     *                        or null to generate them now
      */
     fun start(
         paymentAmount: Long,
         pendingPaymentId: String?,
-        callback: Callback
+        callback: Callback,
+        preparedKeyPair: NostrKeyPair? = null
     ) {
         // Generate new ephemeral keys
-        val eph = NostrKeyPair.generate()
+        val eph = preparedKeyPair ?: NostrKeyPair.generate()
         keyPair = eph
         
         val profile = Nip19.encodeNprofile(eph.publicKeyBytes, NOSTR_RELAYS.toList())
@@ -0,0 +1,243 @@
+package com.electricdreams.numo.payment
+
+import android.content.Context
+import android.util.Log
+import com.electricdreams.numo.core.cashu.CashuWalletManager
+import com.electricdreams.numo.core.payment.PaymentServiceFactory
+import com.electricdreams.numo.core.util.MintLimitChecker
+import com.electricdreams.numo.core.util.MintManager
+import com.electricdreams.numo.feature.settings.DeveloperPrefs
+import com.electricdreams.numo.nostr.NostrKeyPair
+import com.electricdreams.numo.nostr.NostrRelayPool
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import org.cashudevkit.MintQuote
+import org.cashudevkit.MintUrl
+
+/**
+ * Prepares the next payment while its amount is still being typed.
+ *
+ * The first non-zero amount opens the Nostr relay and mint sockets the
+ * payment request will use and generates the ephemeral Nostr keys. Once the
+ * amount has been left alone for [quoteDelayMs], a Lightning mint quote is
+ * requested for it, so the invoice is usually ready by the time the merchant
+ * hits charge. Quotes are kept per (mint, unit, amount) and handed out at
+ * most once through [claimQuote]; a quote that was never claimed simply
+ * expires at the mint.
+ *
+ * [cancel] (or a zero amount) drops in-flight work when the sale is
+ * abandoned. Open sockets without subscriptions close on their own idle
+ * timers.
+ */
+class PaymentPrewarmer internal constructor(
+    private val scope: CoroutineScope,
+    private val source: Source,
+    private val quoteDelayMs: Long = QUOTE_DELAY_MS,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+    /** Where connections, keys and quotes come from. */
+    interface Source {
+        /** Open the sockets the next payment request will use. */
+        fun warmConnections()
+
+        fun generateKeyPair(): NostrKeyPair
+
+        /** The quote a payment of [amountSats] would use, or null if none should be prepared. */
+        fun quoteTarget(amountSats: Long): QuoteKey?
+
+        suspend fun createQuote(key: QuoteKey): PreparedQuote
+    }
+
+    data class QuoteKey(val mintUrl: String, val unit: String, val amountSats: Long)
+
+    class PreparedQuote(val quote: MintQuote, val expiresAtMs: Long)
+
+    private val lock = Any()
+    private var warmed = false
+    private var keyPair: NostrKeyPair? = null
+    private var keyJob: Job? = null
+    private var quoteJob: Job? = null
+    private val quotes = LinkedHashMap<QuoteKey, Deferred<PreparedQuote?>>()
+
+    /** The amount on the keypad changed; [amountSats] is 0 once it is cleared. */
+    fun onAmountChanged(amountSats: Long) {
+        if (amountSats <= 0) {
+            cancel()
+            return
+        }
+        synchronized(lock) {
+            if (!warmed) {
+                warmed = true
+                scope.launch {
+                    try {
+                        source.warmConnections()
+                    } catch (e: Exception) {
+                        Log.w(TAG, "Could not warm payment connections: ${e.message}")
+                    }
+                }
+            }
+            if (keyPair == null && keyJob?.isActive != true) {
+                keyJob = scope.launch {
+                    val generated = source.generateKeyPair()
+                    synchronized(lock) { keyPair = generated }
+                }
+            }
+            quoteJob?.cancel()
+            quoteJob = scope.launch {
+                delay(quoteDelayMs)
+                prepareQuote(amountSats)
+            }
+        }
+    }
+
+    /**
+     * Take the prepared quote for [amountSats] on [mintUrl] in [unit],
+     * waiting for it if it is still being created. Returns null when there
+     * is none or it is too close to expiry; a quote is only handed out once.
+     */
+    suspend fun claimQuote(mintUrl: String, unit: String, amountSats: Long): MintQuote? {
+        val pending = synchronized(lock) { quotes.remove(QuoteKey(mintUrl, unit, amountSats)) } ?: return null
+        val prepared = try {
+            pending.await()
+        } catch (e: CancellationException) {
+            currentCoroutineContext().ensureActive()
+            null
+        } ?: return null
+        if (prepared.expiresAtMs - clock() < MIN_REMAINING_VALIDITY_MS) {
+            Log.d(TAG, "Prepared quote ${prepared.quote.id} is about to expire, not using it")
+            return null
+        }
+        Log.d(TAG, "Using prepared quote ${prepared.quote.id} for $amountSats $unit")
+        return prepared.quote
+    }
+
+    /** Take the keys generated ahead of time, or null if none are ready. */
+    fun takeKeyPair(): NostrKeyPair? = synchronized(lock) {
+        keyPair.also { keyPair = null }
+    }
+
+    /** Drop pending and prepared quotes; the sale was abandoned. */
+    fun cancel() {
+        synchronized(lock) {
+            quoteJob?.cancel()
+            quoteJob = null
+            quotes.values.forEach { it.cancel() }
+            quotes.clear()
+            // Keys are never published before a payment uses them, so they stay
+            warmed = false
+        }
+    }
+
+    private fun prepareQuote(amountSats: Long) {
+        val key = source.quoteTarget(amountSats) ?: return
+        synchronized(lock) {
+            if (quotes.containsKey(key)) return
+            quotes[key] = scope.async {
+                try {
+                    source.createQuote(key)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    Log.w(TAG, "Could not prepare quote for $amountSats ${key.unit} on ${key.mintUrl}: ${e.message}")
+                    synchronized(lock) { quotes.remove(key) }
+                    null
+                }
+            }
+            while (quotes.size > MAX_QUOTES) {
+                val eldest = quotes.keys.first()
+                quotes.remove(eldest)?.cancel()
+            }
+        }
+    }
+
+    /** Prepares payments for the app's current wallet and mint settings. */
+    private class AppSource(private val context: Context) : Source {
+        private val mintManager get() = MintManager.getInstance(context)
+
+        override fun warmConnections() {
+            if (PaymentServiceFactory.usesBtcPay(context)) return
+            NostrRelayPool.getInstance().warmUp(NostrPaymentHandler.NOSTR_RELAYS.toList())
+            lightningMint()?.let { mintUrl ->
+                MintSubscriptionHub.getInstance().warmUp(mintUrl)
+                // Refreshes stale mint info so the payment screen's limit check is current
+                mintManager.getCachedMintLimits(mintUrl)
+            }
+        }
+
+        override fun generateKeyPair(): NostrKeyPair = NostrKeyPair.generate()
+
+        override fun quoteTarget(amountSats: Long): QuoteKey? {
+            if (PaymentServiceFactory.usesBtcPay(context)) return null
+            if (CashuWalletManager.getWallet() == null) return null
+            // The developer setting wants the invoice created only when the tab is opened
+            if (DeveloperPrefs.isLightningInvoiceDelayed(context)) return null
+
+            val mintUrl = lightningMint() ?: return null
+            val unit = mintManager.getPreferredUnit()
+            val limits = mintManager.getCachedMintLimits(mintUrl) ?: return null
+            val check = MintLimitChecker.checkMintLimits(amountSats, limits, unit)
+            if (!check.isBolt11Supported || !check.isValid) return null
+            return QuoteKey(mintUrl, unit, amountSats)
+        }
+
+        override suspend fun createQuote(key: QuoteKey): PreparedQuote {
+            val wallet = CashuWalletManager.getWallet() ?: throw IllegalStateException("Wallet not ready")
+            val quote = LightningMintHandler.requestMintQuote(
+                context, wallet, MintUrl(key.mintUrl), key.unit, key.amountSats
+            )
+            val expiresAtMs = quote.expiry?.let { it.toLong() * 1000 }
+                ?: (System.currentTimeMillis() + UNKNOWN_EXPIRY_TTL_MS)
+            return PreparedQuote(quote, expiresAtMs)
+        }
+
+        /** The mint [LightningMintHandler] would pick for a new payment. */
+        private fun lightningMint(): String? {
+            val unit = mintManager.getPreferredUnit()
+            val allowedMints = mintManager.getAllowedMints().filter { mintManager.mintSupportsUnit(it, unit) }
+            val preferred = mintManager.getPreferredLightningMint()
+            return if (preferred != null && (allowedMints.isEmpty() || preferred in allowedMints)) {
+                preferred
+            } else {
+                allowedMints.firstOrNull()
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "PaymentPrewarmer"
+
+        /** How long the amount must stay unchanged before a quote is requested. */
+        const val QUOTE_DELAY_MS = 800L
+
+        /** A prepared quote needs at least this much validity left to be used. */
+        const val MIN_REMAINING_VALIDITY_MS = 60_000L
+
+        /** Assumed lifetime of a quote the mint gave no expiry for. */
+        private const val UNKNOWN_EXPIRY_TTL_MS = 10 * 60_000L
+
+        /** Prepared quotes kept at once; the oldest is dropped first. */
+        private const val MAX_QUOTES = 4
+
+        @Volatile
+        private var instance: PaymentPrewarmer? = null
+
+        fun getInstance(context: Context): PaymentPrewarmer {
+            return instance ?: synchronized(this) {
+                instance ?: PaymentPrewarmer(
+                    CoroutineScope(SupervisorJob() + Dispatchers.IO),
+                    AppSource(context.applicationContext)
+                ).also { instance = it }
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.electricdreams.numo.payment
+
+import android.util.Log
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Races the channels of one payment request (Nostr, Lightning, NFC, BTCPay)
+ * against each other.
+ *
+ * Every channel runs concurrently as a child of the session. The first
+ * channel to confirm a payment wins atomically: its result becomes the
+ * session's [Outcome], [onOutcome] is called once, and every other channel
+ * is cancelled. A channel that throws simply drops out of the race, unless
+ * it throws [FatalException] (for example a token that arrived but could
+ * not be redeemed), which ends the session as [Outcome.Failed]. Channels
+ * finishing after the outcome is decided are logged and ignored.
+ *
+ * For each channel the session records when it started, when its request
+ * became ready to show and when it ended, so time-to-first-QR and
+ * time-to-confirm can be read from [report].
+ *
+ * @param parentScope Scope the channels run in; cancelling it cancels them.
+ * @param onOutcome   Called once with the outcome, from the deciding coroutine.
+ * @param clock       Monotonic time in milliseconds.
+ */
+class PaymentSession<R>(
+    parentScope: CoroutineScope,
+    private val onOutcome: (Outcome<R>) -> Unit = {},
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 }
+) {
+
+    /** One way of getting paid. */
+    interface Channel<R> {
+        val name: String
+
+        /**
+         * Run until a payment is confirmed on this channel and return it.
+         * Call [ready] once the channel's request can be shown or tapped.
+         * Cancelled when another channel wins or the session ends.
+         */
+        suspend fun run(ready: () -> Unit): R
+    }
+
+    sealed class Outcome<out R> {
+        data class Confirmed<R>(val channel: String, val result: R) : Outcome<R>()
+        data class Failed(val channel: String, val error: Throwable) : Outcome<Nothing>()
+        data class Cancelled(val reason: String) : Outcome<Nothing>()
+    }
+
+    /** Ends the whole session, not just the channel that throws it. */
+    class FatalException(message: String, cause: Throwable? = null) : Exception(message, cause)
+
+    enum class ChannelState { RUNNING, CONFIRMED, LATE, DROPPED, FAILED, CANCELLED }
+
+    /** Times are milliseconds since the session was created. */
+    data class ChannelTiming(
+        val channel: String,
+        val startedAtMs: Long,
+        val readyAtMs: Long?,
+        val endedAtMs: Long?,
+        val state: ChannelState
+    )
+
+    data class Report(
+        val outcome: Outcome<*>?,
+        /** Until the first channel's request was ready, i.e. time-to-first-QR. */
+        val firstReadyMs: Long?,
+        /** Until the outcome was decided, i.e. time-to-confirm for a payment. */
+        val outcomeMs: Long?,
+        val channels: List<ChannelTiming>
+    )
+
+    private val job = SupervisorJob(parentScope.coroutineContext[Job])
+    private val scope = CoroutineScope(parentScope.coroutineContext + job)
+    private val createdAt = clock()
+    private val lock = Any()
+    private val timings = ArrayList<ChannelTiming>()
+    private val decided = AtomicReference<Outcome<R>?>(null)
+    private val result = CompletableDeferred<Outcome<R>>()
+    private var outcomeMs: Long? = null
+
+    /** True once a channel confirmed, a fatal error occurred or [cancel] was called. */
+    val isFinished: Boolean get() = decided.get() != null
+
+    /**
+     * Add [channel] to the race. Channels can join at any time until the
+     * outcome is decided; returns false afterwards.
+     */
+    fun start(channel: Channel<R>): Boolean {
+        if (isFinished) return false
+        val index = synchronized(lock) {
+            timings += ChannelTiming(channel.name, elapsed(), null, null, ChannelState.RUNNING)
+            timings.lastIndex
+        }
+        scope.launch {
+            val value = try {
+                channel.run { update(index) { if (it.readyAtMs == null) it.copy(readyAtMs = elapsed()) else it } }
+            } catch (e: CancellationException) {
+                end(index, ChannelState.CANCELLED)
+                throw e
+            } catch (e: FatalException) {
+                Log.w(TAG, "Channel ${channel.name} failed the payment: ${e.message}")
+                end(index, ChannelState.FAILED)
+                decide(Outcome.Failed(channel.name, e))
+                return@launch
+            } catch (e: Exception) {
+                Log.w(TAG, "Channel ${channel.name} dropped out: ${e.message}")
+                end(index, ChannelState.DROPPED)
+                return@launch
+            }
+            val confirmed = Outcome.Confirmed(channel.name, value)
+            if (decided.compareAndSet(null, confirmed)) {
+                end(index, ChannelState.CONFIRMED)
+                finish(confirmed)
+            } else {
+                Log.w(TAG, "Channel ${channel.name} confirmed after the outcome was decided; ignoring")
+                end(index, ChannelState.LATE)
+            }
+        }
+        return true
+    }
+
+    /** End the session without a payment; returns false if it had already ended. */
+    fun cancel(reason: String): Boolean = decide(Outcome.Cancelled(reason))
+
+    /** Suspend until the outcome is decided. */
+    suspend fun await(): Outcome<R> = result.await()
+
+    fun report(): Report = synchronized(lock) {
+        Report(
+            outcome = decided.get(),
+            firstReadyMs = timings.mapNotNull { it.readyAtMs }.minOrNull(),
+            outcomeMs = outcomeMs,
+            channels = timings.toList()
+        )
+    }
+
+    private fun decide(outcome: Outcome<R>): Boolean {
+        if (!decided.compareAndSet(null, outcome)) return false
+        finish(outcome)
+        return true
+    }
+
+    private fun finish(outcome: Outcome<R>) {
+        synchronized(lock) { outcomeMs = elapsed() }
+        job.cancelChildren()
+        val report = report()
+        Log.i(TAG, "Payment session ${describe(outcome)} after ${report.outcomeMs}ms, first request ready after " +
+            "${report.firstReadyMs}ms: " + report.channels.joinToString(", ") {
+                "${it.channel}=${it.state} ready=${it.readyAtMs} ended=${it.endedAtMs}"
+            })
+        result.complete(outcome)
+        onOutcome(outcome)
+    }
+
+    private fun end(index: Int, state: ChannelState) =
+        update(index) { it.copy(endedAtMs = elapsed(), state = state) }
+
+    private inline fun update(index: Int, change: (ChannelTiming) -> ChannelTiming) {
+        synchronized(lock) { timings[index] = change(timings[index]) }
+    }
+
+    private fun elapsed() = clock() - createdAt
+
+    private fun describe(outcome: Outcome<R>) = when (outcome) {
+        is Outcome.Confirmed -> "confirmed via ${outcome.channel}"
+        is Outcome.Failed -> "failed on ${outcome.channel}"
+        is Outcome.Cancelled -> "cancelled (${outcome.reason})"
+    }
+
+    companion object {
+        private const val TAG = "PaymentSession"
+
+        /** A channel named [name] that runs [block]. */
+        fun <R> channel(name: String, block: suspend (ready: () -> Unit) -> R): Channel<R> =
+            BlockChannel(name, block)
+    }
+
+    private class BlockChannel<R>(
+        override val name: String,
+        private val block: suspend (ready: () -> Unit) -> R
+    ) : Channel<R> {
+        override suspend fun run(ready: () -> Unit): R = block(ready)
+    }
+}
@@ -6,28 +6,50 @@ import com.electricdreams.numo.BuildConfig
 import com.electricdreams.numo.core.data.model.PaymentHistoryEntry
 import com.electricdreams.numo.core.model.CheckoutBasket
 import com.electricdreams.numo.core.model.CheckoutBasketItem
+import com.electricdreams.numo.core.util.HttpClients
 import com.electricdreams.numo.core.util.WebhookSettingsManager
 import com.google.gson.Gson
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.OkHttpClient
 import okhttp3.Request
 import okhttp3.RequestBody.Companion.toRequestBody
+import java.io.File
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.Locale
 import java.util.TimeZone
 import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ThreadLocalRandom
 import java.util.concurrent.TimeUnit
+import kotlin.coroutines.coroutineContext
 
 /**
- * Sends best-effort payment webhooks to configured endpoints.
+ * Sends payment webhooks to configured endpoints.
+ *
+ * Payment events go through a persisted [WebhookOutbox] first, so an app
+ * kill or an endpoint outage delays delivery instead of losing it. Each
+ * endpoint drains its own queue in order, independently of the others; after
+ * the quick in-process retries ([retryDelaysMs]) fail, the endpoint backs off
+ * exponentially up to [maxBackoffMs] and events older than [maxEventAgeMs]
+ * are given up. An endpoint that has fallen behind receives its backlog in
+ * the same array format as [dispatchBulkPaymentsNow].
  */
 class PaymentWebhookDispatcher(
     context: Context,
@@ -37,6 +59,10 @@ class PaymentWebhookDispatcher(
     private val httpClient: OkHttpClient = defaultHttpClient,
     private val ioDispatcher: CoroutineDispatcher = Dispatchers.IO,
     private val retryDelaysMs: List<Long> = listOf(0L, 1_000L, 2_500L),
+    private val outboxDirectory: File = File(context.applicationContext.filesDir, OUTBOX_DIR_NAME),
+    private val initialBackoffMs: Long = 30_000L,
+    private val maxBackoffMs: Long = 60 * 60_000L,
+    private val maxEventAgeMs: Long = 72 * 60 * 60_000L,
 ) {
     data class PaymentSummary(
         val paymentId: String?,
@@ -135,6 +161,28 @@ class PaymentWebhookDispatcher(
         val failureCount: Int,
     )
 
+    /** Outbox state for one endpoint, as shown in webhook settings. */
+    data class EndpointDeliveryStatus(
+        val pendingCount: Int,
+        val oldestPendingAtMs: Long?,
+        val lastDeliveredAtMs: Long?,
+        /** Time from payment to delivery for the oldest event in the last successful POST. */
+        val lastLatencyMs: Long?,
+        val nextRetryAtMs: Long?,
+        val consecutiveFailures: Int,
+    )
+
+    /** Per-endpoint delivery state; [mutex] keeps each endpoint's events in order. */
+    private class EndpointLane {
+        val mutex = Mutex()
+        var consecutiveFailures = 0
+        var backoffMs = 0L
+        var retryJob: Job? = null
+        var nextRetryAtMs: Long? = null
+        var lastDeliveredAtMs: Long? = null
+        var lastLatencyMs: Long? = null
+    }
+
     data class WebhookPayload(
         val event: String,
         val payloadVersion: Int,
@@ -157,6 +205,24 @@ class PaymentWebhookDispatcher(
     private val appContext = context.applicationContext
     private val scope = CoroutineScope(SupervisorJob() + ioDispatcher)
     private val gson = Gson()
+    private val lanes = ConcurrentHashMap<String, EndpointLane>()
+
+    // Opened on first use so the journal is never replayed on the main thread
+    private val outbox: WebhookOutbox by lazy { WebhookOutbox(outboxDirectory) }
+
+    private val _deliveryStatus = MutableStateFlow<Map<String, EndpointDeliveryStatus>>(emptyMap())
+
+    /** Delivery state per endpoint url, updated whenever an outbox changes. */
+    val deliveryStatus: StateFlow<Map<String, EndpointDeliveryStatus>> = _deliveryStatus.asStateFlow()
+
+    /** Retry everything left in the outbox, e.g. by a previous process. */
+    fun resumePending() {
+        scope.launch {
+            outbox.pendingEndpoints().forEach { url ->
+                launch { drain(url) }
+            }
+        }
+    }
 
     fun dispatchPaymentReceived(entry: PaymentHistoryEntry) {
         dispatchPaymentReceived(toPaymentReceivedEvent(entry))
@@ -198,18 +264,24 @@ class PaymentWebhookDispatcher(
             )
 
             val payloadJson = gson.toJson(payload)
-            var successCount = 0
-
-            endpoints.forEach { endpoint ->
-                if (postWithRetry(endpoint, payloadJson, eventId)) {
-                    successCount += 1
-                }
+            val endpointUrls = endpoints.map { it.url }.distinct()
+            outbox.enqueue(eventId, now, payloadJson, endpointUrls)
+
+            // Endpoints drain concurrently; each one delivers its backlog before this event
+            val delivered = coroutineScope {
+                endpointUrls.map { url ->
+                    async {
+                        drain(url)
+                        !outbox.isPending(url, eventId)
+                    }
+                }.awaitAll()
             }
+            val successCount = delivered.count { it }
 
             DispatchResult(
-                totalEndpoints = endpoints.size,
+                totalEndpoints = endpointUrls.size,
                 successCount = successCount,
-                failureCount = endpoints.size - successCount,
+                failureCount = endpointUrls.size - successCount,
             )
         }
 
@@ -260,6 +332,96 @@ class PaymentWebhookDispatcher(
             )
         }
 
+    /**
+     * Deliver everything [endpointUrl] is owed, oldest first, coalescing a
+     * backlog into bulk posts. On failure a retry is scheduled with backoff.
+     */
+    private suspend fun drain(endpointUrl: String) {
+        val lane = lanes.getOrPut(endpointUrl) { EndpointLane() }
+        lane.mutex.withLock {
+            // Whoever gets here first does the work; a pending retry is redundant
+            lane.retryJob?.takeIf { it !== coroutineContext[Job] }?.cancel()
+            lane.retryJob = null
+            lane.nextRetryAtMs = null
+
+            while (true) {
+                val endpoint = endpointProvider.invoke().firstOrNull { it.url == endpointUrl }
+                if (endpoint == null) {
+                    val dropped = outbox.drop(endpointUrl)
+                    if (dropped > 0) Log.w(TAG, "Dropped $dropped webhook events for removed endpoint $endpointUrl")
+                    lanes.remove(endpointUrl)
+                    break
+                }
+
+                val expired = outbox.expire(endpointUrl, System.currentTimeMillis() - maxEventAgeMs)
+                if (expired > 0) Log.w(TAG, "Gave up on $expired webhook events for $endpointUrl")
+
+                val batch = outbox.peek(endpointUrl, MAX_BATCH_SIZE)
+                if (batch.isEmpty()) {
+                    lane.consecutiveFailures = 0
+                    lane.backoffMs = 0L
+                    break
+                }
+
+                val (body, eventId) = if (batch.size == 1) {
+                    batch[0].payloadJson to batch[0].eventId
+                } else {
+                    // Same shape as dispatchBulkPaymentsNow; the id is stable across retries
+                    batch.joinToString(",", "[", "]") { it.payloadJson } to
+                        UUID.nameUUIDFromBytes(batch.joinToString(",") { it.eventId }.toByteArray()).toString()
+                }
+
+                if (postWithRetry(endpoint, body, eventId)) {
+                    val now = System.currentTimeMillis()
+                    outbox.acknowledge(endpointUrl, batch.map { it.eventId })
+                    lane.consecutiveFailures = 0
+                    lane.backoffMs = 0L
+                    lane.lastDeliveredAtMs = now
+                    lane.lastLatencyMs = now - batch[0].createdAtMs
+                    publishStatus(endpointUrl)
+                    continue
+                }
+
+                scheduleRetry(endpointUrl, lane)
+                break
+            }
+        }
+        publishStatus(endpointUrl)
+    }
+
+    private fun scheduleRetry(endpointUrl: String, lane: EndpointLane) {
+        lane.consecutiveFailures += 1
+        val ceiling = if (lane.backoffMs == 0L) initialBackoffMs else lane.backoffMs
+        lane.backoffMs = (ceiling * 2).coerceAtMost(maxBackoffMs)
+        // Full jitter over the upper half of the window
+        val delayMs = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1)
+        lane.nextRetryAtMs = System.currentTimeMillis() + delayMs
+        Log.w(TAG, "Webhook delivery to $endpointUrl failed, retrying in ${delayMs / 1000}s")
+        lane.retryJob = scope.launch {
+            delay(delayMs)
+            drain(endpointUrl)
+        }
+    }
+
+    private fun publishStatus(endpointUrl: String) {
+        val lane = lanes[endpointUrl]
+        val status = EndpointDeliveryStatus(
+            pendingCount = outbox.pendingCount(endpointUrl),
+            oldestPendingAtMs = outbox.oldestPendingAtMs(endpointUrl),
+            lastDeliveredAtMs = lane?.lastDeliveredAtMs,
+            lastLatencyMs = lane?.lastLatencyMs,
+            nextRetryAtMs = lane?.nextRetryAtMs,
+            consecutiveFailures = lane?.consecutiveFailures ?: 0,
+        )
+        synchronized(_deliveryStatus) {
+            _deliveryStatus.value = if (lane == null && status.pendingCount == 0) {
+                _deliveryStatus.value - endpointUrl
+            } else {
+                _deliveryStatus.value + (endpointUrl to status)
+            }
+        }
+    }
+
     private suspend fun postWithRetry(
         endpoint: WebhookSettingsManager.WebhookEndpointConfig,
         jsonBody: String,
@@ -451,13 +613,15 @@ class PaymentWebhookDispatcher(
         private const val TAG = "PaymentWebhookDispatch"
         private const val EVENT_PAYMENT_RECEIVED = "payment.received"
         private const val PAYLOAD_VERSION = 2
+        private const val OUTBOX_DIR_NAME = "webhook_outbox"
+
+        /** Most events coalesced into one POST when an endpoint is behind. */
+        private const val MAX_BATCH_SIZE = 50
         private val JSON_MEDIA_TYPE = "application/json; charset=utf-8".toMediaType()
 
         private val defaultHttpClient: OkHttpClient by lazy {
-            OkHttpClient.Builder()
+            HttpClients.newBuilder()
                 .connectTimeout(8, TimeUnit.SECONDS)
-                .readTimeout(10, TimeUnit.SECONDS)
-                .writeTimeout(10, TimeUnit.SECONDS)
                 .build()
         }
 
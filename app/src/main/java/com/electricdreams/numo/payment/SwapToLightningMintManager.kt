@@ -8,6 +8,7 @@ import com.electricdreams.numo.core.util.MintManager
 import com.electricdreams.numo.nostr.Bech32
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import org.cashudevkit.Amount as CdkAmount
 import org.cashudevkit.CurrencyUnit
 import org.cashudevkit.FinalizedMelt
@@ -44,6 +45,12 @@ object SwapToLightningMintManager {
     private const val MAX_FEE_RESERVE_RATIO = 0.05
     private const val MIN_FEE_OVERHEAD = 0.005
 
+    /**
+     * How long to wait for the Lightning mint to report our invoice paid
+     * after the unknown mint's melt succeeded, before re-checking once.
+     */
+    private const val LIGHTNING_SETTLE_TIMEOUT_MS = 15_000L
+
     /**
      * Result of attempting to swap a payment from an unknown mint.
      */
@@ -353,7 +360,27 @@ object SwapToLightningMintManager {
             Log.d(TAG, "Checking Lightning mint quote state for quoteId=${finalMintQuote.id}")
             // Use checkMintQuote to verify quote is paid before minting
             val checkedQuote = try {
-                lightningWallet.checkMintQuote(finalMintQuote.id)
+                val quote = lightningWallet.checkMintQuote(finalMintQuote.id)
+                if (quote.state == QuoteState.UNPAID || quote.state == QuoteState.PENDING) {
+                    // The melt settled on the payer's side; wait for our mint to
+                    // see it over its NUT-17 socket instead of failing right away.
+                    Log.d(TAG, "Lightning quote still ${quote.state}; waiting for mint to report it paid")
+                    try {
+                        withTimeoutOrNull(LIGHTNING_SETTLE_TIMEOUT_MS) {
+                            MintSubscriptionHub.getInstance().awaitState(
+                                lightningMintUrl,
+                                MintSubscriptionHub.Kind.MINT_QUOTE,
+                                finalMintQuote.id,
+                                setOf("PAID", "ISSUED")
+                            )
+                        }
+                    } catch (e: MintSubscriptionHub.PushUnavailableException) {
+                        Log.d(TAG, "No push from Lightning mint: ${e.message}")
+                    }
+                    lightningWallet.checkMintQuote(finalMintQuote.id)
+                } else {
+                    quote
+                }
             } catch (checkError: Throwable) {
                 val msg = "Failed to check Lightning mint quote state for quoteId=${finalMintQuote.id}: ${checkError.message}"
                 Log.e(TAG, msg, checkError)
@@ -376,6 +403,7 @@ object SwapToLightningMintManager {
                     if (mintedProofs.isNotEmpty()) {
                         val mintAmount = mintedProofs.map { it.amount.value.toLong() }.sum()
                         WalletLogger.log("IN", mintAmount, lightningMintUrl, "Mint successful during swap")
+                        CashuWalletManager.invalidateBalances("swap")
                     }
 
                     if (mintedProofs.isEmpty()) {
@@ -472,6 +500,7 @@ object SwapToLightningMintManager {
                     
                     if (proofs.isNotEmpty()) {
                         Log.d(TAG, "tryFinalizePendingSwap: Mint successful. Updating history.")
+                        CashuWalletManager.invalidateBalances("swap")
                         
                         withContext(Dispatchers.Main) {
                             PaymentsHistoryActivity.completePendingPayment(
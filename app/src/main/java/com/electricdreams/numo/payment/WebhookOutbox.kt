@@ -0,0 +1,220 @@
+package com.electricdreams.numo.payment
+
+import android.util.Log
+import com.electricdreams.numo.core.util.AppendOnlyJournal
+import java.io.File
+import java.io.IOException
+
+/**
+ * Durable queue of webhook payloads that still have to reach one or more
+ * endpoints, keyed by event id.
+ *
+ * Pending deliveries survive process death: every change is appended to a
+ * journal and replayed when the outbox is opened. Each endpoint sees its
+ * events in the order they were enqueued.
+ *
+ * Journal format, one record per line:
+ * ```
+ * E<TAB>eventId<TAB>createdAtMs<TAB>{payload json}
+ * T<TAB>eventId<TAB>endpointUrl
+ * A<TAB>eventId<TAB>endpointUrl
+ * ```
+ * `T` adds an endpoint that still has to receive the event and `A` removes
+ * it again (delivered or given up). An event is forgotten once no endpoint
+ * is left, and its records go at the next [compact].
+ */
+class WebhookOutbox(directory: File) {
+
+    data class PendingEvent(
+        val eventId: String,
+        val createdAtMs: Long,
+        val payloadJson: String,
+    )
+
+    private class Event(
+        val createdAtMs: Long,
+        val payloadJson: String,
+        val targets: MutableSet<String> = LinkedHashSet(),
+    )
+
+    private val journal = AppendOnlyJournal(
+        File(directory.apply { mkdirs() }, JOURNAL_NAME),
+        "webhook outbox",
+        COMPACTION_MIN_GARBAGE,
+    )
+
+    /** eventId -> event; iteration order is enqueue order. */
+    private val events = LinkedHashMap<String, Event>()
+
+    /** endpointUrl -> event ids still owed to it, oldest first. */
+    private val queues = LinkedHashMap<String, LinkedHashSet<String>>()
+
+    /** Event and target records a compacted journal would hold. */
+    private var liveRecords = 0
+
+    init {
+        replayJournal()
+    }
+
+    /** Store [payloadJson] for delivery to every url in [endpointUrls]. */
+    @Synchronized
+    fun enqueue(eventId: String, createdAtMs: Long, payloadJson: String, endpointUrls: Collection<String>) {
+        if (endpointUrls.isEmpty() || events.containsKey(eventId)) return
+        val record = StringBuilder()
+        record.append(OP_EVENT).append(SEPARATOR).append(eventId).append(SEPARATOR)
+            .append(createdAtMs).append(SEPARATOR).append(payloadJson).append('\n')
+        endpointUrls.forEach { url ->
+            record.append(OP_TARGET).append(SEPARATOR).append(eventId).append(SEPARATOR).append(url).append('\n')
+        }
+        append(record.toString(), 1 + endpointUrls.size)
+
+        val event = Event(createdAtMs, payloadJson)
+        events[eventId] = event
+        liveRecords++
+        endpointUrls.forEach { addTarget(eventId, event, it) }
+    }
+
+    /** Up to [limit] events owed to [endpointUrl], oldest first. */
+    @Synchronized
+    fun peek(endpointUrl: String, limit: Int): List<PendingEvent> {
+        val queue = queues[endpointUrl] ?: return emptyList()
+        return queue.asSequence()
+            .take(limit)
+            .mapNotNull { id -> events[id]?.let { PendingEvent(id, it.createdAtMs, it.payloadJson) } }
+            .toList()
+    }
+
+    /** Mark [eventIds] as no longer owed to [endpointUrl]. */
+    @Synchronized
+    fun acknowledge(endpointUrl: String, eventIds: Collection<String>) {
+        val queue = queues[endpointUrl] ?: return
+        val acknowledged = eventIds.filter { queue.contains(it) }
+        if (acknowledged.isEmpty()) return
+
+        append(acknowledged.joinToString("") { "$OP_ACK$SEPARATOR$it$SEPARATOR$endpointUrl\n" }, acknowledged.size)
+        acknowledged.forEach { removeTarget(it, endpointUrl) }
+        compactIfNeeded()
+    }
+
+    /** Drop events owed to [endpointUrl] that were created before [cutoffMs]. Returns how many. */
+    @Synchronized
+    fun expire(endpointUrl: String, cutoffMs: Long): Int {
+        val expired = queues[endpointUrl]
+            ?.filter { id -> (events[id]?.createdAtMs ?: Long.MIN_VALUE) < cutoffMs }
+            .orEmpty()
+        acknowledge(endpointUrl, expired)
+        return expired.size
+    }
+
+    /** Drop everything owed to [endpointUrl], e.g. after it was removed. Returns how many. */
+    @Synchronized
+    fun drop(endpointUrl: String): Int {
+        val pending = queues[endpointUrl]?.toList().orEmpty()
+        acknowledge(endpointUrl, pending)
+        return pending.size
+    }
+
+    @Synchronized
+    fun isPending(endpointUrl: String, eventId: String): Boolean =
+        queues[endpointUrl]?.contains(eventId) == true
+
+    @Synchronized
+    fun pendingCount(endpointUrl: String): Int = queues[endpointUrl]?.size ?: 0
+
+    /** Creation time of the oldest event owed to [endpointUrl], or null when it is caught up. */
+    @Synchronized
+    fun oldestPendingAtMs(endpointUrl: String): Long? =
+        queues[endpointUrl]?.firstOrNull()?.let { events[it]?.createdAtMs }
+
+    /** Endpoints that are owed at least one event. */
+    @Synchronized
+    fun pendingEndpoints(): Set<String> = queues.keys.toSet()
+
+    /** Rewrite the journal so it only contains live records. */
+    @Synchronized
+    fun compact() {
+        journal.rewrite(liveRecords) { out ->
+            val writer = out.bufferedWriter(Charsets.UTF_8)
+            events.forEach { (id, event) ->
+                writer.write("$OP_EVENT$SEPARATOR$id$SEPARATOR${event.createdAtMs}$SEPARATOR${event.payloadJson}\n")
+                event.targets.forEach { writer.write("$OP_TARGET$SEPARATOR$id$SEPARATOR$it\n") }
+            }
+            writer.flush()
+        }
+    }
+
+    private fun compactIfNeeded() {
+        if (journal.needsCompaction(liveRecords)) compact()
+    }
+
+    private fun addTarget(eventId: String, event: Event, endpointUrl: String) {
+        if (event.targets.add(endpointUrl)) {
+            queues.getOrPut(endpointUrl) { LinkedHashSet() }.add(eventId)
+            liveRecords++
+        }
+    }
+
+    private fun removeTarget(eventId: String, endpointUrl: String) {
+        val event = events[eventId] ?: return
+        if (!event.targets.remove(endpointUrl)) return
+        liveRecords--
+        queues[endpointUrl]?.let { queue ->
+            queue.remove(eventId)
+            if (queue.isEmpty()) queues.remove(endpointUrl)
+        }
+        if (event.targets.isEmpty()) {
+            events.remove(eventId)
+            liveRecords--
+        }
+    }
+
+    private fun append(records: String, count: Int) {
+        try {
+            journal.append(records, count)
+        } catch (e: IOException) {
+            // Delivery still proceeds from memory; only restart durability is lost
+            Log.e(TAG, "Failed to append to webhook outbox journal", e)
+        }
+    }
+
+    /** Rebuild the in-memory queues from the journal. */
+    private fun replayJournal() {
+        journal.replay { record, _ -> applyReplayedRecord(String(record, Charsets.UTF_8)) }
+        // An event whose target records were torn off has nowhere to go
+        val orphaned = events.filterValues { it.targets.isEmpty() }.keys
+        orphaned.forEach { events.remove(it) }
+        liveRecords -= orphaned.size
+        Log.d(TAG, "Loaded ${events.size} pending webhook events for ${queues.size} endpoints")
+    }
+
+    private fun applyReplayedRecord(line: String) {
+        if (line.isEmpty()) return
+        val parts = line.split(SEPARATOR, limit = 4)
+        when {
+            parts.size == 4 && parts[0] == OP_EVENT.toString() -> {
+                val createdAtMs = parts[2].toLongOrNull() ?: return
+                if (events.containsKey(parts[1])) return
+                events[parts[1]] = Event(createdAtMs, parts[3])
+                liveRecords++
+            }
+            parts.size == 3 && parts[0] == OP_TARGET.toString() -> {
+                val event = events[parts[1]] ?: return
+                addTarget(parts[1], event, parts[2])
+            }
+            parts.size == 3 && parts[0] == OP_ACK.toString() -> removeTarget(parts[1], parts[2])
+            else -> Log.w(TAG, "Skipping malformed webhook outbox record")
+        }
+    }
+
+    companion object {
+        private const val TAG = "WebhookOutbox"
+        private const val JOURNAL_NAME = "outbox.log"
+
+        private const val OP_EVENT = 'E'
+        private const val OP_TARGET = 'T'
+        private const val OP_ACK = 'A'
+        private const val SEPARATOR = '\t'
+
+        private const val COMPACTION_MIN_GARBAGE = 128
+    }
+}
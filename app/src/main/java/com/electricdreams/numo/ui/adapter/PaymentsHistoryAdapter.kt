@@ -13,7 +13,6 @@ import com.electricdreams.numo.R
 import com.electricdreams.numo.core.data.model.HistoryEntry
 import com.electricdreams.numo.core.model.Amount
 import java.text.SimpleDateFormat
-import java.util.Calendar
 import java.util.Locale
 
 class PaymentsHistoryAdapter : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
@@ -47,6 +46,10 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
     
     private var openItemPosition: Int = RecyclerView.NO_POSITION
 
+    /** Month of the last row and number of transactions, so pages can be appended without regrouping. */
+    private var lastMonthKey = ""
+    private var transactionCount = 0
+
     fun setOnItemClickListener(listener: OnItemClickListener) {
         onItemClickListener = listener
     }
@@ -62,12 +65,32 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
         val oldItems = ArrayList(items)
         openItemPosition = RecyclerView.NO_POSITION
 
+        lastMonthKey = ""
+        transactionCount = 0
+        val newItems = buildItems(newEntries)
+
+        val diffResult = DiffUtil.calculateDiff(ListItemDiffCallback(oldItems, newItems))
+        items.clear()
+        items.addAll(newItems)
+        diffResult.dispatchUpdatesTo(this)
+    }
+
+    /**
+     * Appends the next page of entries (already sorted newest-first) below the
+     * current rows. Only the new range is inserted; existing rows are not diffed.
+     */
+    fun appendEntries(moreEntries: List<HistoryEntry>) {
+        if (moreEntries.isEmpty()) return
+        val start = items.size
+        val newItems = buildItems(moreEntries)
+        items.addAll(newItems)
+        notifyItemRangeInserted(start, newItems.size)
+    }
+
+    private fun buildItems(entries: List<HistoryEntry>): List<ListItem> {
         val newItems = mutableListOf<ListItem>()
-        val calendar = Calendar.getInstance()
-        var lastMonthKey = ""
 
-        newEntries.forEachIndexed { index, entry ->
-            calendar.time = entry.date
+        entries.forEach { entry ->
             val monthKey = monthYearKeyFormat.format(entry.date)
 
             if (monthKey != lastMonthKey) {
@@ -76,13 +99,9 @@ class PaymentsHistoryAdapter : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
                 lastMonthKey = monthKey
             }
 
-            newItems.add(ListItem.Transaction(entry, index))
+            newItems.add(ListItem.Transaction(entry, transactionCount++))
         }
-
-        val diffResult = DiffUtil.calculateDiff(ListItemDiffCallback(oldItems, newItems))
-        items.clear()
-        items.addAll(newItems)
-        diffResult.dispatchUpdatesTo(this)
+        return newItems
     }
 
     private class ListItemDiffCallback(
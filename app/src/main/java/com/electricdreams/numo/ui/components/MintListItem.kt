@@ -1,7 +1,6 @@
 package com.electricdreams.numo.ui.components
 
 import android.content.Context
-import android.graphics.BitmapFactory
 import android.util.AttributeSet
 import android.view.LayoutInflater
 import android.view.View
@@ -14,6 +13,7 @@ import android.widget.TextView
 import com.google.android.material.imageview.ShapeableImageView
 import com.electricdreams.numo.R
 import com.electricdreams.numo.core.model.Amount
+import com.electricdreams.numo.core.util.ImageLoader
 import com.electricdreams.numo.core.util.MintIconCache
 import com.electricdreams.numo.core.util.MintManager
 
@@ -135,22 +135,16 @@ class MintListItem @JvmOverloads constructor(
 
     private fun loadIcon(url: String) {
         val cachedFile = MintIconCache.getCachedIconFile(url)
-        if (cachedFile != null) {
-            try {
-                val bitmap = BitmapFactory.decodeFile(cachedFile.absolutePath)
-                if (bitmap != null) {
-                    mintIcon.setImageBitmap(bitmap)
-                    mintIcon.clipToOutline = true
-                    mintIcon.clearColorFilter()
-                    return
-                }
-            } catch (e: Exception) {
-                // Fall through to default
+        mintIcon.setColorFilter(context.getColor(R.color.color_primary))
+        ImageLoader.load(mintIcon, cachedFile?.absolutePath, R.drawable.ic_bitcoin) { loaded ->
+            if (loaded) {
+                mintIcon.clipToOutline = true
+                mintIcon.clearColorFilter()
+            } else {
+                // Fall back to default
+                mintIcon.setImageResource(R.drawable.ic_bitcoin)
             }
         }
-        
-        mintIcon.setImageResource(R.drawable.ic_bitcoin)
-        mintIcon.setColorFilter(context.getColor(R.color.color_primary))
     }
 
     private fun animateTap() {
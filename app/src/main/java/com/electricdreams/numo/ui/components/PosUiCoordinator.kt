@@ -27,6 +27,7 @@ import com.electricdreams.numo.feature.history.PaymentsHistoryActivity
 import com.electricdreams.numo.feature.items.ItemSelectionActivity
 import com.electricdreams.numo.feature.settings.SettingsActivity
 import com.electricdreams.numo.payment.PaymentMethodHandler
+import com.electricdreams.numo.payment.PaymentPrewarmer
 import com.electricdreams.numo.payment.PaymentResultHandler
 import com.electricdreams.numo.payment.NfcPaymentProcessor
 import com.electricdreams.numo.ui.theme.ThemeManager
@@ -61,6 +62,7 @@ class PosUiCoordinator(
     private lateinit var themeManager: ThemeManager
     private lateinit var nfcPaymentProcessor: NfcPaymentProcessor
     private lateinit var mintManager: MintManager
+    private lateinit var paymentPrewarmer: PaymentPrewarmer
 
     /** Initialize all UI components and managers */
     fun initialize() {
@@ -74,6 +76,7 @@ class PosUiCoordinator(
         
         // Load mint limits from preferred Lightning mint
         loadMintLimits()
+        observeMintInfoChanges()
 
         if (true) {
             activity.lifecycleScope.launch {
@@ -127,12 +130,34 @@ class PosUiCoordinator(
         }
     }
     
+    /** Pick up limits that a background refresh stored for the preferred mint */
+    private fun observeMintInfoChanges() {
+        activity.lifecycleScope.launch {
+            mintManager.mintInfoChanges.collect { mintUrl ->
+                if (mintUrl != mintManager.getPreferredLightningMint()) return@collect
+                val limits = mintManager.getCachedMintLimits(mintUrl, refreshIfStale = false) ?: return@collect
+                Log.d(TAG, "Mint info changed for $mintUrl, applying limits: $limits")
+                amountDisplayManager.setMintLimits(limits)
+                amountDisplayManager.updateDisplay(satoshiInput, fiatInput, AmountDisplayManager.AnimationType.NONE)
+            }
+        }
+    }
+
     /** Reload mint limits - called when returning to POS (e.g., after changing lightning mint) */
     fun reloadMintLimits() {
         Log.d(TAG, "reloadMintLimits() called")
         val lightningMint = mintManager.getPreferredLightningMint()
         Log.d(TAG, "Preferred mint: $lightningMint")
         if (lightningMint != null) {
+            // Serve known limits right away; stale ones are refreshed in the
+            // background and arrive through observeMintInfoChanges()
+            val cachedLimits = mintManager.getCachedMintLimits(lightningMint)
+            if (cachedLimits != null) {
+                amountDisplayManager.setMintLimits(cachedLimits)
+                amountDisplayManager.updateDisplay(satoshiInput, fiatInput, AmountDisplayManager.AnimationType.NONE)
+                return
+            }
+
             // Disable button while refreshing, but let AmountDisplayManager handle the text based on wallet state
             submitButton.isEnabled = false
             
@@ -162,6 +187,7 @@ class PosUiCoordinator(
             satoshiInput.append(paymentAmount.toString())
             fiatInput.clear()
             amountDisplayManager.updateDisplay(satoshiInput, fiatInput, AmountDisplayManager.AnimationType.NONE)
+            paymentPrewarmer.onAmountChanged(amountDisplayManager.requestedAmount)
 
             Handler(Looper.getMainLooper()).postDelayed({
                 if (submitButton.isEnabled) {
@@ -184,6 +210,7 @@ class PosUiCoordinator(
         fiatInput.clear()
         amountDisplayManager.resetRequestedAmount()
         amountDisplayManager.updateDisplay(satoshiInput, fiatInput, AmountDisplayManager.AnimationType.NONE)
+        paymentPrewarmer.onAmountChanged(0)
         hideChargeButtonSpinner()
     }
 
@@ -254,6 +281,7 @@ class PosUiCoordinator(
     /** Stop services */
     fun stopServices() {
         nfcPaymentProcessor.stopHceService()
+        paymentPrewarmer.cancel()
     }
 
     /** Get requested amount */
@@ -286,6 +314,9 @@ class PosUiCoordinator(
         // Initialize mint manager for enabling/disabling charge button based on mint availability
         mintManager = MintManager.getInstance(activity)
 
+        // Prepares connections, keys and a quote while the amount is typed
+        paymentPrewarmer = PaymentPrewarmer.getInstance(activity)
+
         // Initialize amount display manager
         amountDisplayManager = AmountDisplayManager(
             activity, amountDisplay, secondaryAmountDisplay, switchCurrencyButton, submitButton, bitcoinPriceWorker
@@ -297,6 +328,7 @@ class PosUiCoordinator(
         keypadManager = KeypadManager(activity, keypad) { label ->
             keypadManager.handleKeypadInput(label, satoshiInput, fiatInput, amountDisplayManager.isUsdInputMode)
             amountDisplayManager.updateDisplay(satoshiInput, fiatInput, AmountDisplayManager.AnimationType.DIGIT_ENTRY)
+            paymentPrewarmer.onAmountChanged(amountDisplayManager.requestedAmount)
         }
 
         // Initialize payment handlers
@@ -3,22 +3,58 @@ package com.electricdreams.numo.ui.util
 import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.graphics.Paint
+import android.util.Log
+import android.util.LruCache
+import android.widget.ImageView
+import com.electricdreams.numo.R
 import com.google.zxing.BarcodeFormat
 import com.google.zxing.EncodeHintType
 import com.google.zxing.common.BitMatrix
 import com.google.zxing.qrcode.QRCodeWriter
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /**
  * Utility class for generating QR code bitmaps.
- * 
+ *
  * Generates visually appealing QR codes with rounded dots instead of squares.
+ *
+ * Encoded matrices are cached by content and error correction level, and
+ * finished bitmaps by content, size and colors, so showing the same request
+ * again (tab switch, theme change) costs nothing. Dots are stamped from one
+ * pre-rendered sprite into a pixel buffer instead of drawn one by one.
+ * Use [load] to render off the main thread.
  */
 object QrCodeGenerator {
+    private const val TAG = "QrCodeGenerator"
+
+    private const val MATRIX_CACHE_ENTRIES = 32
+    private const val SPRITE_CACHE_ENTRIES = 8
+    private const val BITMAP_CACHE_BYTES = 8 * 1024 * 1024
+
+    private data class MatrixKey(val text: String, val errorCorrection: ErrorCorrectionLevel)
+    private data class SpriteKey(val scale: Int, val foregroundColor: Int, val backgroundColor: Int)
+    private data class BitmapKey(val text: String, val size: Int, val foregroundColor: Int, val backgroundColor: Int)
+
+    private val matrixCache = LruCache<MatrixKey, BitMatrix>(MATRIX_CACHE_ENTRIES)
+    private val spriteCache = LruCache<SpriteKey, IntArray>(SPRITE_CACHE_ENTRIES)
+    private val bitmapCache = object : LruCache<BitmapKey, Bitmap>(BITMAP_CACHE_BYTES) {
+        override fun sizeOf(key: BitmapKey, value: Bitmap): Int = value.allocationByteCount
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
 
     /**
      * Generate a QR code bitmap for the given text.
      *
+     * The returned bitmap is shared with the cache and must not be modified or recycled.
+     *
      * @param text The content to encode in the QR code
      * @param size The desired size of the output bitmap in pixels
      * @param foregroundColor The color of the QR dots
@@ -28,27 +64,114 @@ object QrCodeGenerator {
      */
     @Throws(Exception::class)
     fun generate(
-        text: String, 
-        size: Int, 
-        foregroundColor: Int = 0xFF000000.toInt(), 
+        text: String,
+        size: Int,
+        foregroundColor: Int = 0xFF000000.toInt(),
         backgroundColor: Int = 0xFFFFFFFF.toInt()
     ): Bitmap {
+        val key = BitmapKey(text, size, foregroundColor, backgroundColor)
+        bitmapCache.get(key)?.let { return it }
+
+        val bitmap = render(encode(text), size, foregroundColor, backgroundColor)
+        bitmapCache.put(key, bitmap)
+        return bitmap
+    }
+
+    /**
+     * Show a QR code for [text] in [view], rendering in the background unless
+     * it is already cached. [onResult] is called on the main thread with
+     * whether a bitmap was set, unless a newer request for the view supersedes
+     * this one first.
+     */
+    fun load(
+        view: ImageView,
+        text: String,
+        size: Int,
+        foregroundColor: Int = 0xFF000000.toInt(),
+        backgroundColor: Int = 0xFFFFFFFF.toInt(),
+        onResult: ((Boolean) -> Unit)? = null
+    ) {
+        cancel(view)
+        bitmapCache.get(BitmapKey(text, size, foregroundColor, backgroundColor))?.let {
+            view.setImageBitmap(it)
+            onResult?.invoke(true)
+            return
+        }
+
+        val job = scope.launch {
+            val bitmap = try {
+                generate(text, size, foregroundColor, backgroundColor)
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to generate QR code: ${e.message}", e)
+                null
+            }
+            withContext(Dispatchers.Main) {
+                ensureActive()
+                view.setTag(R.id.qr_code_request, null)
+                if (bitmap != null) view.setImageBitmap(bitmap)
+                onResult?.invoke(bitmap != null)
+            }
+        }
+        view.setTag(R.id.qr_code_request, job)
+    }
+
+    /** Cancel any render pending for [view]. */
+    fun cancel(view: ImageView) {
+        (view.getTag(R.id.qr_code_request) as? Job)?.cancel()
+        view.setTag(R.id.qr_code_request, null)
+    }
+
+    /** Encode [text] into a module matrix, reusing earlier results for the same content. */
+    fun encode(text: String, errorCorrection: ErrorCorrectionLevel = ErrorCorrectionLevel.L): BitMatrix {
+        val key = MatrixKey(text, errorCorrection)
+        matrixCache.get(key)?.let { return it }
+
         val hints: MutableMap<EncodeHintType, Any> = mutableMapOf()
-        hints[EncodeHintType.ERROR_CORRECTION] = ErrorCorrectionLevel.L
+        hints[EncodeHintType.ERROR_CORRECTION] = errorCorrection
         hints[EncodeHintType.MARGIN] = 1 // Small margin so dots aren't cut off
 
-        val qrWriter = QRCodeWriter()
-        val rawMatrix: BitMatrix = qrWriter.encode(text, BarcodeFormat.QR_CODE, 0, 0, hints)
+        val matrix = QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, hints)
+        matrixCache.put(key, matrix)
+        return matrix
+    }
 
-        val matrixWidth = rawMatrix.width
-        val matrixHeight = rawMatrix.height
+    private fun render(matrix: BitMatrix, size: Int, foregroundColor: Int, backgroundColor: Int): Bitmap {
+        val matrixWidth = matrix.width
+        val matrixHeight = matrix.height
 
         val scale = size / matrixWidth
+        require(scale > 0) { "QR code needs ${matrixWidth}px but only ${size}px were requested" }
         val outputWidth = matrixWidth * scale
         val outputHeight = matrixHeight * scale
 
-        val outputBitmap = Bitmap.createBitmap(outputWidth, outputHeight, Bitmap.Config.ARGB_8888)
-        val canvas = Canvas(outputBitmap)
+        val dot = dotSprite(scale, foregroundColor, backgroundColor)
+        val pixels = IntArray(outputWidth * outputHeight)
+        if (backgroundColor != 0) pixels.fill(backgroundColor)
+
+        for (y in 0 until matrixHeight) {
+            val rowStart = y * scale * outputWidth
+            for (x in 0 until matrixWidth) {
+                if (!matrix[x, y]) continue
+                var source = 0
+                var target = rowStart + x * scale
+                repeat(scale) {
+                    System.arraycopy(dot, source, pixels, target, scale)
+                    source += scale
+                    target += outputWidth
+                }
+            }
+        }
+
+        return Bitmap.createBitmap(pixels, outputWidth, outputHeight, Bitmap.Config.ARGB_8888)
+    }
+
+    /** One anti-aliased dot over the background, as [scale]×[scale] ARGB pixels. */
+    private fun dotSprite(scale: Int, foregroundColor: Int, backgroundColor: Int): IntArray {
+        val key = SpriteKey(scale, foregroundColor, backgroundColor)
+        spriteCache.get(key)?.let { return it }
+
+        val sprite = Bitmap.createBitmap(scale, scale, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(sprite)
         canvas.drawColor(backgroundColor)
 
         val paint = Paint().apply {
@@ -57,18 +180,12 @@ object QrCodeGenerator {
         }
 
         val radius = scale.toFloat() / 2f
+        canvas.drawCircle(radius, radius, radius, paint)
 
-        for (x in 0 until matrixWidth) {
-            for (y in 0 until matrixHeight) {
-                if (rawMatrix[x, y]) {
-                    val cx = x * scale + radius
-                    val cy = y * scale + radius
-                    canvas.drawCircle(cx, cy, radius, paint)
-                }
-            }
-        }
-
-        return outputBitmap
+        val pixels = IntArray(scale * scale)
+        sprite.getPixels(pixels, 0, scale, 0, 0, scale, scale)
+        sprite.recycle()
+        spriteCache.put(key, pixels)
+        return pixels
     }
 }
-
@@ -0,0 +1,97 @@
+package com.electricdreams.numo.core.backup
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.advanceUntilIdle
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class BackupSchedulerTest {
+
+    private class FakeBackend(
+        override val name: String,
+        private val block: suspend () -> BackupScheduler.Outcome = { BackupScheduler.Outcome.WRITTEN }
+    ) : BackupScheduler.Backend {
+        var runs = 0
+
+        override suspend fun run(): BackupScheduler.Outcome {
+            runs++
+            return block()
+        }
+    }
+
+    @Test
+    fun `burst of requests results in one run after the quiet period`() = runTest {
+        val backend = FakeBackend("fake")
+        val scheduler = BackupScheduler(backgroundScope, listOf(backend), debounceMs = 1_000)
+
+        repeat(5) {
+            scheduler.request("mints")
+            advanceTimeBy(500)
+        }
+        assertEquals(0, backend.runs)
+        assertNull(scheduler.lastRun.value)
+
+        advanceTimeBy(1_001)
+        runCurrent()
+
+        assertEquals(1, backend.runs)
+        val report = scheduler.lastRun.value!!
+        assertEquals(5, report.requests)
+        assertEquals(setOf("mints"), report.reasons)
+    }
+
+    @Test
+    fun `request during a run schedules exactly one more run`() = runTest {
+        val release = CompletableDeferred<Unit>()
+        var runs = 0
+        val backend = FakeBackend("slow") {
+            runs++
+            if (runs == 1) release.await()
+            BackupScheduler.Outcome.WRITTEN
+        }
+        val scheduler = BackupScheduler(backgroundScope, listOf(backend), debounceMs = 1_000)
+
+        scheduler.request("first")
+        advanceTimeBy(1_001)
+        runCurrent()
+        assertEquals(1, backend.runs)
+
+        scheduler.request("second")
+        scheduler.request("third")
+        release.complete(Unit)
+        advanceUntilIdle()
+
+        assertEquals(2, backend.runs)
+        assertEquals(setOf("second", "third"), scheduler.lastRun.value!!.reasons)
+    }
+
+    @Test
+    fun `failing backend is reported without stopping the others`() = runTest {
+        val broken = FakeBackend("broken") { throw IllegalStateException("boom") }
+        val healthy = FakeBackend("healthy") { BackupScheduler.Outcome.UNCHANGED }
+        val scheduler = BackupScheduler(backgroundScope, listOf(broken, healthy), debounceMs = 1_000)
+
+        scheduler.request("mints")
+        advanceUntilIdle()
+
+        val outcomes = scheduler.lastRun.value!!.timings.associate { it.backend to it.outcome }
+        assertEquals(
+            mapOf("broken" to BackupScheduler.Outcome.FAILED, "healthy" to BackupScheduler.Outcome.UNCHANGED),
+            outcomes
+        )
+
+        // The scheduler keeps serving requests after a failure
+        scheduler.request("mints")
+        advanceUntilIdle()
+        assertEquals(2, healthy.runs)
+    }
+}
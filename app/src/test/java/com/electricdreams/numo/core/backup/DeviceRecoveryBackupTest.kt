@@ -158,6 +158,26 @@ class DeviceRecoveryBackupTest {
 
         assertTrue(data.mints.contains(newMint))
     }
+
+    @Test
+    fun `test updateIfEnabled skips unchanged payload`() {
+        val password = "super_secure_recovery_password_123".toCharArray()
+        DeviceRecoveryBackup.enable(context, password)
+        val backupFile = java.io.File(context.filesDir, "numo_recovery_backup.json")
+        val original = backupFile.readText()
+
+        assertEquals(DeviceRecoveryBackup.UpdateResult.UNCHANGED, DeviceRecoveryBackup.updateIfEnabled(context))
+        assertEquals(original, backupFile.readText())
+
+        mintManager.addMint("https://another.mint.url")
+        assertEquals(DeviceRecoveryBackup.UpdateResult.WRITTEN, DeviceRecoveryBackup.updateIfEnabled(context))
+        assertEquals(DeviceRecoveryBackup.UpdateResult.UNCHANGED, DeviceRecoveryBackup.updateIfEnabled(context))
+    }
+
+    @Test
+    fun `test updateIfEnabled reports disabled`() {
+        assertEquals(DeviceRecoveryBackup.UpdateResult.DISABLED, DeviceRecoveryBackup.updateIfEnabled(context))
+    }
 }
 
 class TestAndroidKeyStoreProvider : java.security.Provider("AndroidKeyStore", 1.0, "Test provider") {
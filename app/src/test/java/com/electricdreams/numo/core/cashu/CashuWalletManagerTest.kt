@@ -2,14 +2,32 @@ package com.electricdreams.numo.core.cashu
 
 import android.content.Context
 import androidx.test.core.app.ApplicationProvider
+import com.electricdreams.numo.core.util.MintManager
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import org.cashudevkit.CurrencyUnit
+import org.cashudevkit.MintUrl
+import org.cashudevkit.WalletRepository
+import org.cashudevkit.WalletStore
+import org.junit.After
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertNotNull
 import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.onBlocking
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verifyBlocking
 import org.robolectric.RobolectricTestRunner
 
 @RunWith(RobolectricTestRunner::class)
@@ -17,11 +35,23 @@ class CashuWalletManagerTest {
 
     private lateinit var context: Context
 
+    private val defaultRepositoryFactory = CashuWalletManager.repositoryFactory
+
     @Before
     fun setUp() {
         context = ApplicationProvider.getApplicationContext()
         setPrivateField("wallet", null)
         setPrivateField("database", null)
+        registeredMints().clear()
+        setPrivateField("registeredUnit", null)
+    }
+
+    @After
+    fun tearDown() {
+        CashuWalletManager.repositoryFactory = defaultRepositoryFactory
+        setPrivateField("wallet", null)
+        registeredMints().clear()
+        setPrivateField("registeredUnit", null)
     }
 
     private fun setPrivateField(fieldName: String, value: Any?) {
@@ -35,6 +65,112 @@ class CashuWalletManagerTest {
         }
     }
 
+    private fun getPrivateField(fieldName: String): Any? {
+        val field = CashuWalletManager::class.java.getDeclaredField(fieldName)
+        field.isAccessible = true
+        return field.get(CashuWalletManager)
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun registeredMints() = getPrivateField("registeredMints") as LinkedHashSet<String>
+
+    /** Start from a fresh MintManager that allows exactly [mints], in sats. */
+    private fun allowMints(vararg mints: String) {
+        context.getSharedPreferences("MintPreferences", Context.MODE_PRIVATE).edit()
+            .clear()
+            .putStringSet("allowedMints", mints.toSet())
+            .commit()
+        val field = MintManager::class.java.getDeclaredField("instance")
+        field.isAccessible = true
+        field.set(null, null)
+        setPrivateField("appContext", context)
+    }
+
+    /** A live repository with [mints] registered in sats. */
+    private fun useRegisteredWallet(repository: WalletRepository, vararg mints: String) {
+        setPrivateField("wallet", repository)
+        registeredMints().addAll(mints)
+        setPrivateField("registeredUnit", "sat")
+    }
+
+    @Test
+    fun `mint changes register only added mints and record only successes`() = runBlocking {
+        allowMints(A, B, C)
+        val repository = mock<WalletRepository> {
+            onBlocking { createWallet(MintUrl(C), CurrencyUnit.Sat, 10u) } doThrow RuntimeException("offline")
+        }
+        useRegisteredWallet(repository, A)
+
+        CashuWalletManager.applyMintChanges(listOf("$A/", B, C))
+
+        verifyBlocking(repository, never()) { createWallet(MintUrl("$A/"), CurrencyUnit.Sat, 10u) }
+        verifyBlocking(repository) { createWallet(MintUrl(B), CurrencyUnit.Sat, 10u) }
+        verifyBlocking(repository) { createWallet(MintUrl(C), CurrencyUnit.Sat, 10u) }
+        assertSame(repository, CashuWalletManager.getWallet())
+        assertEquals(setOf(A, B), registeredMints())
+
+        // The mint that failed is retried on the next change
+        CashuWalletManager.applyMintChanges(listOf(A, B, C))
+        verifyBlocking(repository, times(2)) { createWallet(MintUrl(C), CurrencyUnit.Sat, 10u) }
+    }
+
+    @Test
+    fun `mint changes unregister removed mints without rebuilding`() = runBlocking {
+        allowMints(A)
+        val repository = mock<WalletRepository>()
+        useRegisteredWallet(repository, A, B)
+
+        CashuWalletManager.applyMintChanges(listOf(A))
+
+        verifyBlocking(repository) { removeWallet(MintUrl(B), CurrencyUnit.Sat) }
+        verifyBlocking(repository, never()) { removeWallet(MintUrl(A), CurrencyUnit.Sat) }
+        assertSame(repository, CashuWalletManager.getWallet())
+        assertEquals(setOf(A), registeredMints())
+    }
+
+    @Test
+    fun `restore records only the mints that registered`() = runBlocking {
+        allowMints(A, B)
+        val restored = mock<WalletRepository> {
+            onBlocking { createWallet(MintUrl(B), CurrencyUnit.Sat, 10u) } doThrow RuntimeException("offline")
+        }
+        var restoredMnemonic: String? = null
+        CashuWalletManager.repositoryFactory = { mnemonic, _: WalletStore ->
+            restoredMnemonic = mnemonic
+            restored
+        }
+
+        val changes = CashuWalletManager.restoreFromMnemonic("restored words") { _, _, _, _ -> }
+
+        assertEquals("restored words", restoredMnemonic)
+        assertEquals("restored words", CashuWalletManager.getMnemonic())
+        assertSame(restored, CashuWalletManager.getWallet())
+        assertEquals(setOf(A), registeredMints())
+        assertEquals(Pair(0L, 0L), changes[B])
+        assertEquals(WalletState.READY, CashuWalletManager.walletState.value)
+    }
+
+    @Test
+    fun `restore waits for the wallet lock`() = runBlocking {
+        allowMints(A)
+        val restored = mock<WalletRepository>()
+        CashuWalletManager.repositoryFactory = { _, _ -> restored }
+        val lock = getPrivateField("walletLock") as Mutex
+
+        lock.lock()
+        val restore = async(Dispatchers.IO) {
+            CashuWalletManager.restoreFromMnemonic("restored words") { _, _, _, _ -> }
+        }
+        delay(200)
+        assertFalse(restore.isCompleted)
+        assertNull(CashuWalletManager.getWallet())
+
+        lock.unlock()
+        restore.await()
+        assertSame(restored, CashuWalletManager.getWallet())
+        assertEquals(setOf(A), registeredMints())
+    }
+
     @Test
     fun testMintInfoSerialization() {
         val jsonString = """
@@ -347,4 +483,10 @@ class CashuWalletManagerTest {
         assertEquals("email", c.method)
         assertEquals("a@b.com", c.info)
     }
+
+    private companion object {
+        const val A = "https://a.example.com"
+        const val B = "https://b.example.com"
+        const val C = "https://c.example.com"
+    }
 }
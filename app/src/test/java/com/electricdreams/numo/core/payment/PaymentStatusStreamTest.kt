@@ -0,0 +1,149 @@
+package com.electricdreams.numo.core.payment
+
+import com.electricdreams.numo.core.wallet.WalletError
+import com.electricdreams.numo.core.wallet.WalletResult
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.currentTime
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PaymentStatusStreamTest {
+
+    private class FakePush : PaymentStatusStream.PushChannel {
+        val signals = Channel<Boolean>(Channel.UNLIMITED)
+        var opened = false
+        var closed = false
+
+        override fun open() {
+            opened = true
+        }
+
+        override suspend fun awaitChange(): Boolean = signals.receive()
+
+        override fun close() {
+            closed = true
+        }
+    }
+
+    @Test
+    fun `polling emits only state changes and stops at terminal state`() = runTest {
+        val states = ArrayDeque(
+            listOf(PaymentState.PENDING, PaymentState.PENDING, PaymentState.PENDING, PaymentState.PAID)
+        )
+        var checks = 0
+
+        val emitted = PaymentStatusStream.create({
+            checks++
+            WalletResult.Success(states.removeFirst())
+        }).toList()
+
+        assertEquals(
+            listOf(WalletResult.Success(PaymentState.PENDING), WalletResult.Success(PaymentState.PAID)),
+            emitted
+        )
+        assertEquals(4, checks)
+        assertEquals(3 * PaymentStatusStream.POLL_INTERVAL_MS, currentTime)
+    }
+
+    @Test
+    fun `push signal triggers a check without waiting for the poll interval`() = runTest {
+        val push = FakePush()
+        var state = PaymentState.PENDING
+        var checks = 0
+
+        val results = mutableListOf<WalletResult<PaymentState>>()
+        val job = launch {
+            PaymentStatusStream.create({
+                checks++
+                WalletResult.Success(state)
+            }, push).collect { results += it }
+        }
+
+        advanceTimeBy(10_000)
+        assertEquals(1, checks)
+
+        state = PaymentState.PAID
+        push.signals.send(true)
+        job.join()
+
+        assertEquals(2, checks)
+        assertEquals(WalletResult.Success(PaymentState.PAID), results.last())
+        assertTrue(push.opened)
+        assertTrue(push.closed)
+    }
+
+    @Test
+    fun `live push still checks on the safety interval`() = runTest {
+        val push = FakePush()
+        var checks = 0
+
+        val job = launch {
+            PaymentStatusStream.create({
+                checks++
+                WalletResult.Success(if (checks < 3) PaymentState.PENDING else PaymentState.EXPIRED)
+            }, push).collect { }
+        }
+        job.join()
+
+        assertEquals(3, checks)
+        assertEquals(2 * PaymentStatusStream.PUSH_SAFETY_INTERVAL_MS, currentTime)
+    }
+
+    @Test
+    fun `lost push channel falls back to polling`() = runTest {
+        val push = FakePush()
+        var checks = 0
+        push.signals.send(false)
+
+        PaymentStatusStream.create({
+            checks++
+            WalletResult.Success(if (checks < 3) PaymentState.PENDING else PaymentState.FAILED)
+        }, push).toList()
+
+        assertEquals(3, checks)
+        assertEquals(2 * PaymentStatusStream.POLL_INTERVAL_MS, currentTime)
+    }
+
+    @Test
+    fun `failures are emitted and retried with backoff`() = runTest {
+        var checks = 0
+        val emitted = PaymentStatusStream.create({
+            checks++
+            if (checks < 3) {
+                WalletResult.Failure(WalletError.NetworkError("down"))
+            } else {
+                WalletResult.Success(PaymentState.PAID)
+            }
+        }).toList()
+
+        assertEquals(3, emitted.size)
+        assertTrue(emitted[0] is WalletResult.Failure)
+        assertTrue(emitted[1] is WalletResult.Failure)
+        assertEquals(WalletResult.Success(PaymentState.PAID), emitted[2])
+        // 2s then 4s
+        assertEquals(3 * PaymentStatusStream.POLL_INTERVAL_MS, currentTime)
+    }
+
+    @Test
+    fun `same state after a failure is emitted again`() = runTest {
+        val results = ArrayDeque(listOf<WalletResult<PaymentState>>(
+            WalletResult.Success(PaymentState.PENDING),
+            WalletResult.Failure(WalletError.NetworkError("down")),
+            WalletResult.Success(PaymentState.PENDING),
+            WalletResult.Success(PaymentState.PAID),
+        ))
+
+        val emitted = PaymentStatusStream.create({ results.removeFirst() }).toList()
+
+        assertEquals(4, emitted.size)
+        assertEquals(WalletResult.Success(PaymentState.PENDING), emitted[0])
+        assertTrue(emitted[1] is WalletResult.Failure)
+        assertEquals(WalletResult.Success(PaymentState.PENDING), emitted[2])
+        assertEquals(WalletResult.Success(PaymentState.PAID), emitted[3])
+    }
+}
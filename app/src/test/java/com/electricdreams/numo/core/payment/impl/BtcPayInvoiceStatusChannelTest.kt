@@ -0,0 +1,94 @@
+package com.electricdreams.numo.core.payment.impl
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import okhttp3.OkHttpClient
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class BtcPayInvoiceStatusChannelTest {
+
+    private lateinit var server: MockWebServer
+    private val client = OkHttpClient()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun channel() = BtcPayInvoiceStatusChannel(client, server.url("/i/inv1/status/ws").toString())
+
+    @Test
+    fun `frames signal a change until the socket closes`() = runBlocking {
+        val serverSocket = CompletableDeferred<WebSocket>()
+        server.enqueue(MockResponse().withWebSocketUpgrade(object : WebSocketListener() {
+            override fun onOpen(webSocket: WebSocket, response: Response) {
+                serverSocket.complete(webSocket)
+                webSocket.send("{}")
+            }
+        }))
+
+        val channel = channel()
+        channel.open()
+        try {
+            withTimeout(10_000) {
+                assertTrue(channel.awaitChange())
+                assertEquals("/i/inv1/status/ws", server.takeRequest().path)
+
+                serverSocket.await().close(1000, "invoice done")
+                assertFalse(channel.awaitChange())
+            }
+            // Once lost the channel stays unavailable without suspending
+            assertFalse(channel.awaitChange())
+        } finally {
+            channel.close()
+        }
+    }
+
+    @Test
+    fun `failed upgrade reports the channel unavailable`() = runBlocking {
+        server.enqueue(MockResponse().setResponseCode(404))
+
+        val channel = channel()
+        channel.open()
+        try {
+            withTimeout(10_000) {
+                assertFalse(channel.awaitChange())
+            }
+        } finally {
+            channel.close()
+        }
+    }
+
+    @Test
+    fun `invalid url reports the channel unavailable`() = runBlocking {
+        val channel = BtcPayInvoiceStatusChannel(client, "not a url")
+        channel.open()
+        try {
+            assertFalse(channel.awaitChange())
+        } finally {
+            channel.close()
+        }
+    }
+}
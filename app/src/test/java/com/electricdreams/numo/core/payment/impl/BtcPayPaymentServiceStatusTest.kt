@@ -0,0 +1,152 @@
+package com.electricdreams.numo.core.payment.impl
+
+import com.electricdreams.numo.core.payment.BTCPayConfig
+import com.electricdreams.numo.core.payment.PaymentState
+import com.electricdreams.numo.core.payment.PaymentStatusStream
+import com.electricdreams.numo.core.wallet.WalletResult
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.withTimeout
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * [BTCPayPaymentService.observePaymentStatus] against a fake BTCPay server
+ * that serves the Greenfield invoice endpoint and the invoice status socket.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class BtcPayPaymentServiceStatusTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var service: BTCPayPaymentService
+    private val checks = AtomicInteger()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+        service = BTCPayPaymentService(
+            BTCPayConfig(serverUrl = server.url("/").toString(), apiKey = "key", storeId = "store1")
+        )
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    /**
+     * Answer status checks with [statuses] in turn, repeating the last, and
+     * the socket with [socket]. A status of [ERROR] answers with a 500.
+     */
+    private fun fakeBtcPay(statuses: List<String>, socket: MockResponse) {
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse = when (request.path) {
+                "/i/inv1/status/ws" -> socket
+                "/api/v1/stores/store1/invoices/inv1" -> {
+                    val status = statuses[minOf(checks.getAndIncrement(), statuses.lastIndex)]
+                    if (status == ERROR) {
+                        MockResponse().setResponseCode(500).setBody("busy")
+                    } else {
+                        MockResponse().setBody("""{"id":"inv1","status":"$status"}""")
+                    }
+                }
+                else -> MockResponse().setResponseCode(404)
+            }
+        }
+    }
+
+    /** A socket that sends one invoice event as soon as it opens. */
+    private fun pushingSocket() = MockResponse().withWebSocketUpgrade(object : WebSocketListener() {
+        override fun onOpen(webSocket: WebSocket, response: Response) {
+            webSocket.send("{}")
+        }
+    })
+
+    /** Collect every state with the time it arrived, in ms since collection began. */
+    private fun observe(): List<Pair<PaymentState, Long>> = runBlocking {
+        withTimeout(20_000) {
+            val startedAt = System.currentTimeMillis()
+            service.observePaymentStatus("inv1")
+                .map { (it as WalletResult.Success).value to System.currentTimeMillis() - startedAt }
+                .toList()
+        }
+    }
+
+    @Test
+    fun `push event reports settlement without waiting for a poll`() {
+        fakeBtcPay(listOf("New", "Settled"), pushingSocket())
+
+        val states = observe()
+
+        assertEquals(listOf(PaymentState.PENDING, PaymentState.PAID), states.map { it.first })
+        assertEquals(2, checks.get())
+        val wait = states[1].second - states[0].second
+        assertTrue("settled after ${wait}ms", wait < PaymentStatusStream.POLL_INTERVAL_MS)
+    }
+
+    @Test
+    fun `push event reports expiry`() {
+        fakeBtcPay(listOf("New", "Expired"), pushingSocket())
+
+        val states = observe()
+
+        assertEquals(listOf(PaymentState.PENDING, PaymentState.EXPIRED), states.map { it.first })
+    }
+
+    @Test
+    fun `socket failure falls back to polling`() {
+        fakeBtcPay(listOf("New", "Processing", "Settled"), MockResponse().setResponseCode(500))
+
+        val states = observe()
+
+        assertEquals(listOf(PaymentState.PENDING, PaymentState.PAID), states.map { it.first })
+        assertEquals(3, checks.get())
+        val wait = states[1].second - states[0].second
+        assertTrue("settled after ${wait}ms", wait >= 2 * PaymentStatusStream.POLL_INTERVAL_MS)
+    }
+
+    @Test
+    fun `success after an error is reported again so error runs reset`() = runTest {
+        fakeBtcPay(
+            listOf(ERROR, "New", ERROR, ERROR, ERROR, ERROR, "Settled"),
+            MockResponse().setResponseCode(500)
+        )
+
+        val emitted = service.observePaymentStatus("inv1").toList()
+
+        assertEquals(
+            listOf("error", "PENDING", "error", "error", "error", "error", "PAID"),
+            emitted.map { (it as? WalletResult.Success)?.value?.name ?: "error" }
+        )
+        // The longest run of errors a caller sees is four, not five
+        var run = 0
+        var longestRun = 0
+        for (result in emitted) {
+            run = if (result is WalletResult.Failure) run + 1 else 0
+            longestRun = maxOf(longestRun, run)
+        }
+        assertEquals(4, longestRun)
+    }
+
+    private companion object {
+        const val ERROR = "error"
+    }
+}
@@ -0,0 +1,98 @@
+package com.electricdreams.numo.core.util
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+import java.io.IOException
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class AppendOnlyJournalTest {
+
+    private lateinit var file: File
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val dir = File(context.filesDir, "journal_test").apply { deleteRecursively(); mkdirs() }
+        file = File(dir, "test.log")
+    }
+
+    private fun journal(minGarbage: Int = 4) = AppendOnlyJournal(file, "test", minGarbage)
+
+    private fun replayed(journal: AppendOnlyJournal): List<Pair<String, Long>> {
+        val records = ArrayList<Pair<String, Long>>()
+        journal.replay { record, offset -> records.add(String(record, Charsets.UTF_8) to offset) }
+        return records
+    }
+
+    @Test
+    fun `appends replay with their offsets`() {
+        val journal = journal()
+        assertEquals(0L, journal.append("a\n", 1))
+        assertEquals(2L, journal.append("bcd\ne\n", 2))
+        assertEquals(3, journal.records)
+        assertEquals(8L, journal.length)
+
+        val reopened = journal()
+        assertEquals(listOf("a" to 0L, "bcd" to 2L, "e" to 6L), replayed(reopened))
+        assertEquals(3, reopened.records)
+        assertEquals(8L, reopened.length)
+    }
+
+    @Test
+    fun `torn trailing record is truncated away`() {
+        file.writeText("one\ntwo\nthr")
+
+        val journal = journal()
+        assertEquals(listOf("one" to 0L, "two" to 4L), replayed(journal))
+        assertEquals(8L, file.length())
+        assertEquals(8L, journal.append("three\n", 1))
+        assertEquals(listOf("one", "two", "three"), replayed(journal()).map { it.first })
+    }
+
+    @Test
+    fun `records longer than the read buffer replay whole`() {
+        val long = "x".repeat(200 * 1024)
+        val journal = journal()
+        journal.append("$long\nshort\n", 2)
+
+        val records = replayed(journal())
+        assertEquals(listOf(long, "short"), records.map { it.first })
+        assertEquals(long.length + 1L, records[1].second)
+    }
+
+    @Test
+    fun `compaction waits for enough garbage and rewrites in place`() {
+        val journal = journal(minGarbage = 4)
+        repeat(5) { journal.append("r$it\n", 1) }
+        assertFalse(journal.needsCompaction(liveRecords = 2))
+        repeat(2) { journal.append("r\n", 1) }
+        assertTrue(journal.needsCompaction(liveRecords = 2))
+
+        assertTrue(journal.rewrite(2) { it.write("live1\nlive2\n".toByteArray()) })
+        assertEquals(2, journal.records)
+        assertEquals(12L, journal.length)
+        assertEquals(listOf("live1", "live2"), replayed(journal()).map { it.first })
+        assertFalse(File(file.parentFile, "test.log.tmp").exists())
+    }
+
+    @Test
+    fun `failed rewrite keeps the existing journal`() {
+        val journal = journal()
+        journal.append("keep\n", 1)
+
+        assertFalse(journal.rewrite(0) { throw IOException("disk full") })
+        assertEquals(1, journal.records)
+        assertEquals(listOf("keep"), replayed(journal()).map { it.first })
+        assertFalse(File(file.parentFile, "test.log.tmp").exists())
+    }
+}
@@ -158,4 +158,128 @@ class BasketManagerTest {
         assertEquals(0L, basketManager.getTotalSatsDirectPrice())
         assertFalse(basketManager.hasMixedPriceTypes())
     }
+
+    @Test
+    fun `undo and redo step through adds, quantity changes and removals`() {
+        val item1 = createFiatItem("1", 2.0)
+        val item2 = createSatsItem("2", 1_000)
+        val item3 = createFiatItem("3", 5.0)
+        basketManager.addItem(item1, quantity = 1)
+        basketManager.addItem(item2, quantity = 1)
+        basketManager.addItem(item3, quantity = 1)
+        basketManager.updateItemQuantity(item1.id!!, 3)
+        basketManager.removeItem(item2.id!!)
+
+        assertEquals(listOf("1", "3"), basketManager.getBasketItems().map { it.item.id })
+        assertFalse(basketManager.hasMixedPriceTypes())
+
+        // Removed line comes back in its original position
+        assertTrue(basketManager.undo())
+        assertEquals(listOf("1", "2", "3"), basketManager.getBasketItems().map { it.item.id })
+        assertEquals(11.0, basketManager.getTotalPrice(), 0.0001)
+        assertEquals(1_000L, basketManager.getTotalSatsDirectPrice())
+        assertTrue(basketManager.hasMixedPriceTypes())
+
+        assertTrue(basketManager.undo())
+        assertEquals(3, basketManager.getTotalItemCount())
+        assertEquals(7.0, basketManager.getTotalPrice(), 0.0001)
+
+        assertTrue(basketManager.redo())
+        assertTrue(basketManager.redo())
+        assertFalse(basketManager.redo())
+        assertEquals(listOf("1", "3"), basketManager.getBasketItems().map { it.item.id })
+        assertEquals(4, basketManager.getTotalItemCount())
+        assertEquals(11.0, basketManager.getTotalPrice(), 0.0001)
+        assertEquals(0L, basketManager.getTotalSatsDirectPrice())
+    }
+
+    @Test
+    fun `undoing clearBasket restores items and totals`() {
+        basketManager.addItem(createFiatItem("1", 1.5), quantity = 2)
+        basketManager.addItem(createSatsItem("2", 500), quantity = 4)
+
+        basketManager.clearBasket()
+        assertTrue(basketManager.undo())
+
+        assertEquals(6, basketManager.getTotalItemCount())
+        assertEquals(3.0, basketManager.getTotalPrice(), 0.0001)
+        assertEquals(2_000L, basketManager.getTotalSatsDirectPrice())
+
+        assertTrue(basketManager.redo())
+        assertTrue(basketManager.getBasketItems().isEmpty())
+        assertEquals(0, basketManager.getTotalItemCount())
+    }
+
+    @Test
+    fun `new change clears redo and undoing everything returns to empty totals`() {
+        basketManager.addItem(createFiatItem("1", 0.1), quantity = 1)
+        basketManager.addItem(createFiatItem("2", 0.2), quantity = 1)
+        basketManager.undo()
+
+        basketManager.addItem(createFiatItem("3", 0.3), quantity = 1)
+        assertFalse(basketManager.canRedo())
+
+        while (basketManager.undo()) Unit
+        assertEquals(0.0, basketManager.getTotalPrice(), 0.0)
+        assertEquals(0, basketManager.getTotalItemCount())
+    }
+
+    @Test
+    fun `editing a catalog item does not change lines already in the basket`() {
+        val item = createFiatItem("1", 4.0)
+        basketManager.addItem(item, quantity = 2)
+
+        item.price = 10.0
+
+        assertEquals(8.0, basketManager.getTotalPrice(), 0.0001)
+        assertEquals(8.0, basketManager.getBasketItems().single().getTotalPrice(), 0.0001)
+    }
+
+    @Test
+    fun `removing every fiat line leaves no fiat residue`() {
+        basketManager.addItem(createFiatItem("1", 0.10), quantity = 1)
+        basketManager.addItem(createFiatItem("2", 0.20), quantity = 1)
+        basketManager.addItem(createSatsItem("3", 500L), quantity = 1)
+
+        basketManager.removeItem("1")
+        basketManager.removeItem("2")
+
+        assertEquals(0.0, basketManager.getTotalPrice(), 0.0)
+        assertFalse(basketManager.getTotalPrice() > 0)
+        assertEquals(500.0, basketManager.getCustomUnitTotal(), 0.0)
+        assertEquals(500L, basketManager.getTotalSatoshis(btcPrice = 50_000.0))
+
+        // Undo brings the fiat lines back with their amounts
+        basketManager.undo()
+        basketManager.undo()
+        assertEquals(0.30, basketManager.getTotalPrice(), 0.0001)
+    }
+
+    @Test
+    fun `custom unit total reads sats and fiat lines in the same unit`() {
+        basketManager.addItem(createFiatItem("1", 2.50), quantity = 2)
+        basketManager.addItem(createSatsItem("2", 3L), quantity = 1)
+
+        assertEquals(8.0, basketManager.getCustomUnitTotal(), 0.0001)
+    }
+
+    @Test
+    fun `fiat total does not depend on the order of taps`() {
+        basketManager.addItem(createFiatItem("1", 0.70), quantity = 1)
+        basketManager.addItem(createFiatItem("2", 0.10), quantity = 1)
+        basketManager.removeItem("1")
+        val tappedTotal = basketManager.getTotalPrice()
+        val tappedSats = basketManager.getTotalSatoshis(btcPrice = 100_000.0)
+        val tappedSatsLowerPrice = basketManager.getTotalSatoshis(btcPrice = 50_000.0)
+
+        basketManager.clearBasket()
+        basketManager.addItem(createFiatItem("2", 0.10), quantity = 1)
+
+        assertEquals(0.1, tappedTotal, 0.0)
+        assertEquals(basketManager.getTotalPrice(), tappedTotal, 0.0)
+        assertEquals(100L, tappedSats)
+        assertEquals(basketManager.getTotalSatoshis(btcPrice = 100_000.0), tappedSats)
+        assertEquals(200L, tappedSatsLowerPrice)
+        assertEquals(basketManager.getTotalSatoshis(btcPrice = 50_000.0), tappedSatsLowerPrice)
+    }
 }
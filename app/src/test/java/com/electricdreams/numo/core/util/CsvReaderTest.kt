@@ -0,0 +1,52 @@
+package com.electricdreams.numo.core.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.io.StringReader
+
+class CsvReaderTest {
+
+    private fun records(csv: String): List<List<String>> {
+        val reader = CsvReader(StringReader(csv))
+        return generateSequence { reader.readRecord() }.toList()
+    }
+
+    @Test
+    fun `plain records with LF and CRLF endings`() {
+        assertEquals(
+            listOf(listOf("a", "b", ""), listOf("", "c", "d"), listOf("e")),
+            records("a,b,\r\n,c,d\ne\n")
+        )
+    }
+
+    @Test
+    fun `quoted fields keep commas, quotes and line breaks`() {
+        val csv = "name,description\n" +
+            "\"Latte, large\",\"Says \"\"hi\"\"\nand\r\nmore\"\n" +
+            "\"\",x\n"
+        assertEquals(
+            listOf(
+                listOf("name", "description"),
+                listOf("Latte, large", "Says \"hi\"\nand\r\nmore"),
+                listOf("", "x"),
+            ),
+            records(csv)
+        )
+    }
+
+    @Test
+    fun `byte order mark and missing final newline`() {
+        assertEquals(listOf(listOf("Token", "Item Name"), listOf("", "Tea")), records("\uFEFFToken,Item Name\n,Tea"))
+    }
+
+    @Test
+    fun `records spanning buffer refills`() {
+        val long = "x".repeat(200_000)
+        val reader = CsvReader(StringReader("\"$long\n$long\",end\nnext\n"))
+        assertEquals(listOf("$long\n$long", "end"), reader.readRecord())
+        assertEquals(listOf("next"), reader.readRecord())
+        assertNull(reader.readRecord())
+        assertEquals(2L, reader.recordCount)
+    }
+}
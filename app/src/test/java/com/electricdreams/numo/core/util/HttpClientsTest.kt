@@ -0,0 +1,64 @@
+package com.electricdreams.numo.core.util
+
+import okhttp3.Request
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class HttpClientsTest {
+
+    private lateinit var server: MockWebServer
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun `derived clients share pool and dispatcher`() {
+        val derived = HttpClients.newBuilder().readTimeout(30, TimeUnit.SECONDS).build()
+
+        assertSame(HttpClients.base.connectionPool, derived.connectionPool)
+        assertSame(HttpClients.base.dispatcher, derived.dispatcher)
+        assertSame(HttpClients.base.connectionPool, HttpClients.webSocket.connectionPool)
+        assertEquals(0, HttpClients.webSocket.readTimeoutMillis)
+    }
+
+    @Test
+    fun `open websockets do not hold rest dispatcher slots`() {
+        assertNotSame(HttpClients.base.dispatcher, HttpClients.webSocket.dispatcher)
+        assertTrue(HttpClients.webSocket.dispatcher.maxRequestsPerHost > HttpClients.base.dispatcher.maxRequestsPerHost)
+    }
+
+    @Test
+    fun `calls to the same host across clients reuse one connection`() {
+        repeat(3) { server.enqueue(MockResponse().setBody("ok")) }
+        val before = HttpClients.stats()
+
+        val other = HttpClients.newBuilder().callTimeout(5, TimeUnit.SECONDS).build()
+        listOf(HttpClients.base, other, HttpClients.base).forEach { client ->
+            val request = Request.Builder().url(server.url("/v1/info")).build()
+            client.newCall(request).execute().use { assertEquals("ok", it.body?.string()) }
+        }
+
+        val after = HttpClients.stats()
+        assertEquals(3L, after.connectionsAcquired - before.connectionsAcquired)
+        assertEquals(1L, after.connectionsOpened - before.connectionsOpened)
+        assertTrue(after.connectionsReused - before.connectionsReused >= 2L)
+        // Sequence numbers count requests per connection on the server side
+        assertEquals(listOf(0, 1, 2), List(3) { server.takeRequest().sequenceNumber })
+    }
+}
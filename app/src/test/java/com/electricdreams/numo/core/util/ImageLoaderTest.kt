@@ -0,0 +1,42 @@
+package com.electricdreams.numo.core.util
+
+import android.content.Context
+import android.graphics.Bitmap
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ImageLoaderTest {
+
+    @Test
+    fun `sample size keeps the shorter edge at or above the target`() {
+        assertEquals(1, ImageLoader.sampleSize(200, 200, 256))
+        assertEquals(2, ImageLoader.sampleSize(1024, 1024, 512))
+        assertEquals(4, ImageLoader.sampleSize(4032, 3024, 600))
+        assertEquals(8, ImageLoader.sampleSize(4032, 3024, 320))
+        assertEquals(2, ImageLoader.sampleSize(1024, 4096, 512))
+    }
+
+    @Test
+    fun `thumbnails live beside the image and are removed with it`() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        val imageFile = File(File(context.filesDir, "item_images"), "item_42.jpg")
+        val bitmap = Bitmap.createBitmap(1024, 768, Bitmap.Config.ARGB_8888)
+
+        ImageLoader.writeThumbnail(imageFile, bitmap)
+        val thumb = ImageLoader.thumbnailFile(imageFile)
+        assertEquals(File(imageFile.parentFile, "thumbs"), thumb.parentFile)
+        assertTrue(thumb.exists())
+
+        ImageLoader.deleteThumbnail(imageFile)
+        assertFalse(thumb.exists())
+    }
+}
@@ -0,0 +1,220 @@
+package com.electricdreams.numo.core.util
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.electricdreams.numo.core.model.Item
+import org.json.JSONArray
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ItemCatalogStoreTest {
+
+    private lateinit var context: Context
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        dir = File(context.filesDir, "catalog_test").apply { deleteRecursively() }
+    }
+
+    private fun item(id: String, gtin: String? = null, sku: String? = null, category: String? = null) =
+        Item(id = id, name = "Item $id", gtin = gtin, sku = sku, category = category)
+
+    @Test
+    fun `in-place edits move index entries`() {
+        val store = ItemCatalogStore(dir)
+        val coffee = item("1", gtin = "4006381333931", sku = "COF-1", category = "Drinks")
+        store.put(coffee)
+
+        coffee.gtin = "5901234123457"
+        coffee.sku = "cof-2"
+        coffee.category = "Hot Drinks"
+        store.put(coffee)
+
+        assertNull(store.byGtin("4006381333931"))
+        assertSame(coffee, store.byGtin("5901234123457"))
+        assertSame(coffee, store.bySku("COF-2"))
+        assertNull(store.bySku("COF-1"))
+        assertEquals(listOf("Hot Drinks"), store.categories())
+        assertFalse(store.hasSku("cof-2", excludeItemId = "1"))
+        assertTrue(store.hasSku("cof-2", excludeItemId = "2"))
+    }
+
+    @Test
+    fun `categories follow membership`() {
+        val store = ItemCatalogStore(dir)
+        store.putAll(listOf(
+            item("1", category = "Food"),
+            item("2", category = " Food "),
+            item("3", category = "Drinks"),
+            item("4", category = ""),
+        ))
+        assertEquals(listOf("Drinks", "Food"), store.categories())
+        assertEquals(listOf("1", "2"), store.inCategory("Food").map { it.id })
+
+        store.remove(store.byId("3")!!.uuid)
+        assertEquals(listOf("Food"), store.categories())
+
+        store.remove(store.byId("1")!!.uuid)
+        store.remove(store.byId("2")!!.uuid)
+        assertTrue(store.categories().isEmpty())
+    }
+
+    @Test
+    fun `journal replay restores order and indices`() {
+        val store = ItemCatalogStore(dir)
+        val items = (1..5).map { item("$it", gtin = "gtin$it") }
+        store.putAll(items)
+        store.move(4, 0)
+        store.remove(items[1].uuid)
+        items[2].name = "Renamed"
+        store.put(items[2])
+        val replacement = item("1", gtin = "gtin1b")
+        store.replace(items[0], replacement)
+
+        val reloaded = ItemCatalogStore(dir)
+        assertEquals(listOf("5", "1", "3", "4"), reloaded.all().map { it.id })
+        assertEquals("Renamed", reloaded.byId("3")!!.name)
+        assertEquals(replacement.uuid, reloaded.byGtin("GTIN1B")!!.uuid)
+        assertNull(reloaded.byGtin("gtin1"))
+        assertNull(reloaded.byGtin("gtin2"))
+    }
+
+    @Test
+    fun `torn trailing record is dropped`() {
+        val store = ItemCatalogStore(dir)
+        store.put(item("1"))
+        File(dir, "catalog.log").appendText("P\tdead\t{\"id\":\"2\"")
+
+        val reloaded = ItemCatalogStore(dir)
+        assertEquals(listOf("1"), reloaded.all().map { it.id })
+        reloaded.put(item("3"))
+        assertEquals(listOf("1", "3"), ItemCatalogStore(dir).all().map { it.id })
+    }
+
+    @Test
+    fun `compaction keeps the live catalog`() {
+        val store = ItemCatalogStore(dir)
+        val kept = item("1", sku = "A")
+        store.put(kept)
+        repeat(300) { kept.quantity = it; store.put(kept) }
+        assertTrue(File(dir, "catalog.log").readLines().size < 300)
+
+        val reloaded = ItemCatalogStore(dir)
+        assertEquals(1, reloaded.size)
+        assertEquals(299, reloaded.bySku("a")!!.quantity)
+    }
+
+    @Test
+    fun `bulk load only lands on commit`() {
+        val store = ItemCatalogStore(dir)
+        store.put(item("old", sku = "OLD"))
+
+        store.beginBulkLoad(replaceAll = true).use { bulk ->
+            bulk.add(listOf(item("a"), item("b")))
+            // closed without commit
+        }
+        assertEquals(listOf("old"), store.all().map { it.id })
+        assertEquals(listOf("old"), ItemCatalogStore(dir).all().map { it.id })
+
+        store.beginBulkLoad(replaceAll = false).use { bulk ->
+            bulk.add(listOf(item("a", sku = "A")))
+            bulk.add(listOf(item("b", category = "New")))
+            bulk.commit()
+        }
+        assertEquals(listOf("old", "a", "b"), store.all().map { it.id })
+        assertEquals("a", store.bySku("a")!!.id)
+        assertEquals(listOf("New"), store.categories())
+
+        store.beginBulkLoad(replaceAll = true).use { bulk ->
+            bulk.add(listOf(item("c")))
+            bulk.commit()
+        }
+        assertEquals(listOf("c"), store.all().map { it.id })
+        assertNull(store.bySku("old"))
+        assertEquals(listOf("c"), ItemCatalogStore(dir).all().map { it.id })
+    }
+
+    @Test
+    fun `bulk load updates matching items instead of adding them`() {
+        val store = ItemCatalogStore(dir)
+        val byName = Item(id = "kept", name = "Latte", variationName = "Large", category = "Drinks", imagePath = "/img/latte.png")
+        store.putAll(listOf(item("1", sku = "OLD"), byName))
+
+        store.beginBulkLoad(replaceAll = false).use { bulk ->
+            bulk.add(listOf(item("1", sku = "NEW")))
+            bulk.add(listOf(Item(id = "fresh", name = " latte ", variationName = "large", category = "DRINKS", price = 4.5)))
+            bulk.add(listOf(item("2"), item("2", sku = "LAST")))
+            bulk.commit()
+        }
+
+        assertEquals(listOf("1", "kept", "2"), store.all().map { it.id })
+        assertNull(store.bySku("OLD"))
+        assertEquals("1", store.bySku("NEW")!!.id)
+        val latte = store.byId("kept")!!
+        assertEquals(4.5, latte.price, 0.001)
+        assertEquals("/img/latte.png", latte.imagePath)
+        assertEquals(byName.uuid, latte.uuid)
+        assertEquals("2", store.bySku("LAST")!!.id)
+        assertEquals(listOf("1", "kept", "2"), ItemCatalogStore(dir).all().map { it.id })
+    }
+
+    @Test
+    fun `replacing onto a uuid used by an earlier item keeps the right slot`() {
+        val store = ItemCatalogStore(dir)
+        val duplicate = item("dup")
+        val middle = item("middle")
+        val old = item("old")
+        store.putAll(listOf(duplicate, middle, old))
+
+        val replacement = item("old", sku = "NEW").apply { uuid = duplicate.uuid }
+        store.replace(old, replacement)
+
+        assertEquals(listOf("middle", "old"), store.all().map { it.id })
+        assertSame(middle, store.byId("middle"))
+        assertSame(replacement, store.byId("old"))
+        assertNull(store.byId("dup"))
+        assertEquals(2, store.size)
+        assertEquals(listOf("middle", "old"), ItemCatalogStore(dir).all().map { it.id })
+    }
+
+    @Test
+    fun `legacy preference list is migrated once`() {
+        val legacy = JSONArray()
+            .put(ItemCatalogStore.itemToJson(item("1", gtin = "111", category = "Food")))
+            .put(ItemCatalogStore.itemToJson(item("2", sku = "S2")))
+        val prefs = context.getSharedPreferences("ItemManagerPrefs", Context.MODE_PRIVATE)
+        prefs.edit().putString("items_list", legacy.toString()).commit()
+        File(context.filesDir, "item_catalog").deleteRecursively()
+        resetItemManager()
+
+        val manager = ItemManager.getInstance(context)
+        assertEquals(listOf("1", "2"), manager.getAllItems().map { it.id })
+        assertEquals("1", manager.findItemByGtin("111")!!.id)
+        assertEquals("2", manager.findItemBySku("s2")!!.id)
+        assertFalse(prefs.contains("items_list"))
+
+        manager.removeItem("1")
+        resetItemManager()
+        assertEquals(listOf("2"), ItemManager.getInstance(context).getAllItems().map { it.id })
+        resetItemManager()
+    }
+
+    private fun resetItemManager() {
+        val field = ItemManager::class.java.getDeclaredField("instance")
+        field.isAccessible = true
+        field.set(null, null)
+    }
+}
@@ -46,6 +46,20 @@ class ItemManagerTest {
         }
     }
 
+    @Test
+    fun testMalformedLegacyListIsKept() {
+        val prefs = context.getSharedPreferences("ItemManagerPrefs", Context.MODE_PRIVATE)
+        val malformed = """[{"id":"1","uuid":"u1","name":"Coffee","price":3.5}, {"id":"2","""
+        prefs.edit().putString("items_list", malformed).commit()
+
+        resetSingleton()
+        val manager = ItemManager.getInstance(context)
+
+        // Nothing half-imported, and the original list is still there to retry
+        assertTrue(manager.getAllItems().isEmpty())
+        assertEquals(malformed, prefs.getString("items_list", null))
+    }
+
     @Test
     fun testAddItem() {
         val item = Item(name = "Test Item", price = 10.0)
@@ -180,6 +194,31 @@ class ItemManagerTest {
         assertEquals(5, items[0].alertThreshold)
     }
 
+    @Test
+    fun testCsvReimportUpdatesItems() {
+        val header = "Token,Item Name,Variation Name,SKU,Description,Category,Option Name 1,GTIN,Option Value 1,Option Name 2,Option Value 2,Option Name 3,Price,Quantity,New Quantity,Stock Enabled,Stock Alert Enabled,Stock Alert Count,Tax Enabled,Tax Name,Quantity,Stock Enabled,Alert Enabled,Alert Threshold"
+        val padding = ",,,,,,,,,,,,,,,,,,,,,,,\n".repeat(4)
+        val file = File(context.cacheDir, "test_reimport.csv")
+
+        file.writeText("$header\n$padding" +
+            "TOK-1,Tokened Item,,SKU-1,,Cat,,,,,,,1.00,,,,,,,,1,Y,N,0\n" +
+            ",Untokened Item,,SKU-2,,Cat,,,,,,,2.00,,,,,,,,2,Y,N,0\n")
+        assertEquals(2, itemManager.importItemsFromCsv(file.absolutePath, false))
+
+        file.writeText("$header\n$padding" +
+            "TOK-1,Renamed Item,,SKU-1,,Cat,,,,,,,1.50,,,,,,,,1,Y,N,0\n" +
+            ",Untokened Item,,SKU-2,,Cat,,,,,,,2.50,,,,,,,,2,Y,N,0\n")
+        assertEquals(2, itemManager.importItemsFromCsv(file.absolutePath, false))
+
+        val items = itemManager.getAllItems()
+        assertEquals(2, items.size)
+        assertEquals("TOK-1", items[0].id)
+        assertEquals("Renamed Item", items[0].name)
+        assertEquals(1.50, items[0].price, 0.001)
+        assertEquals("Untokened Item", items[1].name)
+        assertEquals(2.50, items[1].price, 0.001)
+    }
+
     @Test
     fun testCsvExport() {
         // Add a test item
@@ -0,0 +1,128 @@
+package com.electricdreams.numo.core.util
+
+import com.electricdreams.numo.core.model.Item
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Matching semantics and incremental maintenance of [ItemSearchIndex]. The
+ * 10k-item query timing only runs with -Dnumo.benchmark=true.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ItemSearchIndexTest {
+
+    private fun item(
+        name: String,
+        sku: String? = null,
+        variation: String? = null,
+        category: String? = null,
+    ) = Item(name = name, sku = sku, variationName = variation, category = category)
+
+    private fun ItemSearchIndex.names(query: String, category: String? = null) =
+        search(query, category).map { it.name }
+
+    @Test
+    fun `matches any field ignoring case and accents`() {
+        val index = ItemSearchIndex()
+        index.rebuild(listOf(
+            item("Café Latte", category = "Drinks"),
+            item("Espresso", sku = "ESP-001"),
+            item("Tea", variation = "Large"),
+            item("Croissant", category = "Bakery"),
+        ))
+
+        assertEquals(listOf("Café Latte"), index.names("cafe"))
+        assertEquals(listOf("Café Latte"), index.names("LATTÉ"))
+        assertEquals(listOf("Espresso"), index.names("esp-0"))
+        assertEquals(listOf("Tea"), index.names("arg"))
+        assertEquals(listOf("Croissant"), index.names(" bakery "))
+        assertEquals(listOf("Café Latte", "Espresso", "Croissant"), index.names("s"))
+        assertEquals(4, index.names("").size)
+        assertTrue(index.names("steak").isEmpty())
+    }
+
+    @Test
+    fun `query does not match across fields`() {
+        val index = ItemSearchIndex()
+        index.put(item("Bagel", sku = "ABC"))
+        assertTrue(index.names("elab").isEmpty())
+        assertTrue(index.names("el ab").isEmpty())
+    }
+
+    @Test
+    fun `category filter combines with text`() {
+        val index = ItemSearchIndex()
+        index.rebuild(listOf(
+            item("Apple Juice", category = "Drinks"),
+            item("Apple Pie", category = "Bakery"),
+            item("Orange Juice", category = "drinks"),
+        ))
+
+        assertEquals(listOf("Apple Juice", "Orange Juice"), index.names("", "DRINKS"))
+        assertEquals(listOf("Apple Juice"), index.names("apple", "Drinks"))
+        assertTrue(index.names("", "Meat").isEmpty())
+        assertEquals(listOf("Bakery", "Drinks", "drinks"), index.categories())
+    }
+
+    @Test
+    fun `updates keep postings, categories and order current`() {
+        val index = ItemSearchIndex()
+        val apple = item("Apple", category = "Fruit")
+        val bread = item("Bread", category = "Bakery")
+        val cheese = item("Cheese", category = "Dairy")
+        index.rebuild(listOf(apple, bread, cheese))
+
+        apple.name = "Pear"
+        index.put(apple)
+        assertTrue(index.names("apple").isEmpty())
+        assertEquals(listOf("Pear"), index.names("pea"))
+
+        index.remove(bread.uuid)
+        assertEquals(listOf("Dairy", "Fruit"), index.categories())
+        assertTrue(index.names("bread").isEmpty())
+
+        val brie = item("Brie", category = "Dairy")
+        index.put(brie)
+        index.move(2, 0)
+        assertEquals(listOf("Brie", "Pear", "Cheese"), index.names(""))
+        assertEquals(listOf("Brie", "Cheese"), index.names("", "dairy"))
+
+        val replacement = item("Gouda", category = "Dairy")
+        index.replace(cheese.uuid, replacement)
+        assertEquals(listOf("Brie", "Pear", "Gouda"), index.names(""))
+        assertTrue(index.names("cheese").isEmpty())
+        assertEquals(3, index.size)
+    }
+
+    @Test
+    fun `query latency on a large catalog`() {
+        assumeTrue(System.getProperty("numo.benchmark") == "true")
+        val words = listOf("organic", "coffee", "bread", "cheese", "apple", "juice", "large", "small", "roast")
+        val items = List(10_000) { i ->
+            item(
+                name = "${words[i % words.size]} ${words[(i / 7) % words.size]} $i",
+                sku = "SKU-$i",
+                category = words[i % 5],
+            )
+        }
+        val index = ItemSearchIndex()
+        val buildStart = System.nanoTime()
+        index.rebuild(items)
+        val buildMillis = (System.nanoTime() - buildStart) / 1_000_000
+
+        val queries = listOf("c", "co", "cof", "coff", "coffee r", "sku-99", "zzz", "apple juice")
+        queries.forEach { index.search(it) } // warm up
+        for (query in queries) {
+            val start = System.nanoTime()
+            val hits = index.search(query).size
+            println("'$query': $hits hits in ${(System.nanoTime() - start) / 1_000} us")
+        }
+        println("Indexed ${items.size} items in $buildMillis ms")
+    }
+}
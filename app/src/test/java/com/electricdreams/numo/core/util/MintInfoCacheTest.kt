@@ -0,0 +1,100 @@
+package com.electricdreams.numo.core.util
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class MintInfoCacheTest {
+
+    private val mint = "https://mint.test"
+
+    private fun infoJson(name: String, maxAmount: Long = 100_000) = """
+        {"name":"$name","iconUrl":"https://mint.test/icon.png","nuts":{"4":{"disabled":false,
+        "methods":[{"method":"bolt11","unit":"sat","min_amount":1,"max_amount":$maxAmount}]}}}
+    """.trimIndent()
+
+    @Test
+    fun `stored json is parsed once`() = runTest {
+        var loads = 0
+        val cache = MintInfoCache(backgroundScope, loadJson = { loads++; infoJson("Test Mint") }, refreshedAtMs = { 0L }, refresher = {})
+
+        assertEquals("Test Mint", cache.get(mint)?.name)
+        assertEquals(100_000L, cache.get(mint)?.mintLimits?.mintMethods?.single()?.maxAmount)
+        assertEquals(1, loads)
+    }
+
+    @Test
+    fun `missing info is remembered until put`() = runTest {
+        var loads = 0
+        val cache = MintInfoCache(backgroundScope, loadJson = { loads++; null }, refreshedAtMs = { 0L }, refresher = {})
+
+        assertNull(cache.get(mint))
+        assertNull(cache.get(mint))
+        assertEquals(1, loads)
+
+        cache.put(mint, infoJson("Fresh Mint"))
+        assertEquals("Fresh Mint", cache.get(mint)?.name)
+        assertEquals(1, loads)
+    }
+
+    @Test
+    fun `put announces only real changes`() = runTest(UnconfinedTestDispatcher()) {
+        val cache = MintInfoCache(backgroundScope, loadJson = { null }, refreshedAtMs = { 0L }, refresher = {})
+        val changes = mutableListOf<String>()
+        backgroundScope.launch { cache.changes.toList(changes) }
+
+        cache.put(mint, infoJson("Mint"))
+        cache.put(mint, infoJson("Mint"))
+        cache.put(mint, infoJson("Mint", maxAmount = 50_000))
+
+        assertEquals(listOf(mint, mint), changes)
+    }
+
+    @Test
+    fun `stale entry is refreshed once in the background`() = runTest {
+        var now = 1_000_000L
+        var refreshedAt = now
+        val release = CompletableDeferred<Unit>()
+        var refreshes = 0
+        val cache = MintInfoCache(
+            backgroundScope,
+            loadJson = { infoJson("Old") },
+            refreshedAtMs = { refreshedAt },
+            refresher = { _ ->
+                refreshes++
+                release.await()
+                refreshedAt = now
+            },
+            ttlMs = 60_000L,
+            clock = { now }
+        )
+
+        assertFalse(cache.refreshIfStale(mint))
+
+        now += 60_001L
+        assertTrue(cache.refreshIfStale(mint))
+        assertFalse(cache.refreshIfStale(mint))
+        // Readers keep getting the current entry meanwhile
+        assertEquals("Old", cache.get(mint)?.name)
+
+        runCurrent()
+        release.complete(Unit)
+        runCurrent()
+
+        assertEquals(1, refreshes)
+        assertFalse(cache.isStale(mint))
+    }
+}
@@ -118,4 +118,21 @@ class MintManagerTest {
         mintManager.addMint(raw)
         assertTrue(mintManager.isMintAllowed("https://mint.test.com"))
     }
+
+    @Test
+    fun testStoredMintInfoIsServedFromMemory() {
+        val mint = "https://mint.info.test"
+        assertEquals("mint.info.test", mintManager.getMintDisplayName(mint))
+        assertEquals(null, mintManager.getCachedMintLimits(mint, refreshIfStale = false))
+
+        mintManager.setMintInfo(
+            "$mint/",
+            """{"name":"Info Mint","nuts":{"4":{"methods":[{"method":"bolt11","unit":"sat","max_amount":5000}]}}}"""
+        )
+
+        assertEquals("Info Mint", mintManager.getMintDisplayName(mint))
+        assertEquals(5000L, mintManager.getCachedMintLimits(mint, refreshIfStale = false)?.mintMethods?.single()?.maxAmount)
+        assertTrue(mintManager.mintSupportsUnit(mint, "sat"))
+        assertFalse(mintManager.mintSupportsUnit(mint, "usd"))
+    }
 }
@@ -0,0 +1,81 @@
+package com.electricdreams.numo.core.wallet
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class BalanceCacheTest {
+
+    private var database: Map<String, Long>? = mapOf("https://mint.a" to 100L)
+    private var loads = 0
+
+    private fun cache(scope: TestScope, intervalMs: Long = 60_000L) =
+        BalanceCache(scope.backgroundScope, { loads++; database }, intervalMs)
+
+    @Test
+    fun `clean reads do not touch the database`() = runTest {
+        val cache = cache(this)
+        assertEquals(100L, cache.get("https://mint.a/"))
+        assertEquals(mapOf("https://mint.a" to 100L), cache.get())
+        assertEquals(1, loads)
+        assertFalse(cache.isDirty)
+    }
+
+    @Test
+    fun `invalidation reloads once and publishes the new balances`() = runTest {
+        val cache = cache(this)
+        cache.start()
+        cache.get()
+
+        database = mapOf("https://mint.a" to 150L, "https://mint.b" to 5L)
+        cache.invalidate("receive")
+        cache.invalidate("mint")
+        cache.invalidate("melt")
+        runCurrent()
+
+        assertEquals(2, loads)
+        assertEquals(mapOf("https://mint.a" to 150L, "https://mint.b" to 5L), cache.balances.value)
+        assertEquals(5L, cache.get("https://mint.b"))
+        assertEquals(2, loads)
+        cache.stop()
+    }
+
+    @Test
+    fun `wallet not ready keeps the cache dirty`() = runTest {
+        database = null
+        val cache = cache(this)
+        assertTrue(cache.get().isEmpty())
+        assertTrue(cache.isDirty)
+
+        database = mapOf("https://mint.a" to 7L)
+        assertEquals(7L, cache.get("https://mint.a"))
+        assertFalse(cache.isDirty)
+    }
+
+    @Test
+    fun `reconciliation rereads the database periodically`() = runTest {
+        val cache = cache(this, intervalMs = 1_000L)
+        cache.start()
+        cache.get()
+
+        // A write that bypassed invalidation
+        database = mapOf("https://mint.a" to 42L)
+        advanceTimeBy(1_001L)
+        runCurrent()
+
+        assertEquals(mapOf("https://mint.a" to 42L), cache.balances.value)
+        cache.stop()
+    }
+}
@@ -28,12 +28,24 @@ class ActivityCsvExportHelperTest {
         // Clear history before each test
         val prefs = context.getSharedPreferences("PaymentHistory", Context.MODE_PRIVATE)
         prefs.edit().clear().apply()
+        resetPaymentHistoryStore()
         // Reset MintPreferences to default state (including preferredUnit = "sat")
         val mintPrefs = context.getSharedPreferences("MintPreferences", Context.MODE_PRIVATE)
         mintPrefs.edit().clear().apply()
         com.electricdreams.numo.core.util.MintManager.getInstance(context).setPreferredUnit("sat")
     }
 
+    private fun resetPaymentHistoryStore() {
+        try {
+            val field = PaymentHistoryStore::class.java.getDeclaredField("instance")
+            field.isAccessible = true
+            field.set(null, null)
+        } catch (e: Exception) {
+            // Ignore
+        }
+        PaymentHistoryStore.getInstance(context).clear()
+    }
+
     @Test
     fun `export to CSV includes Items column with item names and quantities`() {
         // Create checkout items
@@ -0,0 +1,227 @@
+package com.electricdreams.numo.feature.history
+
+import android.content.Context
+import com.electricdreams.numo.core.data.model.PaymentHistoryEntry
+import com.google.gson.Gson
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.io.File
+import java.util.Date
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class PaymentHistoryStoreTest {
+
+    private lateinit var context: Context
+    private lateinit var store: PaymentHistoryStore
+
+    @Before
+    fun setUp() {
+        context = RuntimeEnvironment.getApplication()
+        context.getSharedPreferences("PaymentHistory", Context.MODE_PRIVATE).edit().clear().commit()
+        store = reopen()
+        store.clear()
+    }
+
+    /** Drop the singleton so the next instance rebuilds its index from disk. */
+    private fun reopen(): PaymentHistoryStore {
+        val field = PaymentHistoryStore::class.java.getDeclaredField("instance")
+        field.isAccessible = true
+        field.set(null, null)
+        return PaymentHistoryStore.getInstance(context)
+    }
+
+    private fun entry(amount: Long, status: String = PaymentHistoryEntry.STATUS_PENDING) =
+        PaymentHistoryEntry(
+            token = "",
+            amount = amount,
+            date = Date(),
+            enteredAmount = amount,
+            rawStatus = status,
+        )
+
+    private fun journal(): File = File(File(context.filesDir, "payment_history"), "journal.log")
+
+    @Test
+    fun `put and get round trip`() {
+        val e = entry(100L)
+        store.put(e)
+
+        val loaded = store.get(e.id)
+        assertNotNull(loaded)
+        assertEquals(100L, loaded!!.amount)
+        assertTrue(loaded.isPending())
+    }
+
+    @Test
+    fun `update keeps insertion order and survives reopen`() {
+        val first = entry(1L)
+        val second = entry(2L)
+        store.put(first)
+        store.put(second)
+
+        store.update(first.id) { it.copy(token = "cashuA", rawStatus = PaymentHistoryEntry.STATUS_COMPLETED) }
+
+        val reopened = reopen()
+        val all = reopened.getAll()
+        assertEquals(listOf(first.id, second.id), all.map { it.id })
+        assertEquals("cashuA", all[0].token)
+        assertTrue(all[0].isCompleted())
+    }
+
+    @Test
+    fun `update returning null writes nothing`() {
+        val e = entry(5L)
+        store.put(e)
+        val lengthBefore = journal().length()
+
+        assertNull(store.update(e.id) { null })
+        assertEquals(lengthBefore, journal().length())
+    }
+
+    @Test
+    fun `remove and removeIf`() {
+        val pending = entry(1L)
+        val completed = entry(2L, PaymentHistoryEntry.STATUS_COMPLETED)
+        store.put(pending)
+        store.put(completed)
+
+        assertFalse(store.removeIf(completed.id) { it.isPending() })
+        assertTrue(store.removeIf(pending.id) { it.isPending() })
+
+        val reopened = reopen()
+        assertEquals(listOf(completed.id), reopened.getAll().map { it.id })
+    }
+
+    @Test
+    fun `getPending only returns pending entries`() {
+        val pending = entry(1L)
+        store.put(pending)
+        store.put(entry(2L, PaymentHistoryEntry.STATUS_COMPLETED))
+
+        assertEquals(listOf(pending.id), store.getPending().map { it.id })
+    }
+
+    @Test
+    fun `legacy blob is migrated and removed from prefs`() {
+        val legacy = listOf(entry(10L), entry(20L, PaymentHistoryEntry.STATUS_COMPLETED))
+        val prefs = context.getSharedPreferences("PaymentHistory", Context.MODE_PRIVATE)
+        prefs.edit().putString("history", Gson().toJson(legacy)).commit()
+
+        val all = store.getAll()
+        assertEquals(legacy.map { it.id }, all.map { it.id })
+        assertFalse(prefs.contains("history"))
+
+        assertEquals(2, reopen().size())
+    }
+
+    @Test
+    fun `unreadable legacy blob is kept instead of deleted`() {
+        val prefs = context.getSharedPreferences("PaymentHistory", Context.MODE_PRIVATE)
+        prefs.edit().putString("history", "{not a list").commit()
+
+        assertEquals(0, store.size())
+        assertEquals("{not a list", prefs.getString("history", null))
+
+        // Retried on the next launch; still intact
+        assertEquals(0, reopen().size())
+        assertTrue(prefs.contains("history"))
+    }
+
+    @Test
+    fun `torn trailing record is discarded on reopen`() {
+        val e = entry(1L)
+        store.put(e)
+        journal().appendText("P\tbroken\t0\tpending\t{\"id\":")
+
+        val reopened = reopen()
+        assertEquals(listOf(e.id), reopened.getAll().map { it.id })
+
+        // Appends after recovery must still be readable
+        val next = entry(2L)
+        reopened.put(next)
+        assertEquals(2L, reopen().get(next.id)!!.amount)
+    }
+
+    @Test
+    fun `repeated updates trigger compaction`() {
+        val e = entry(0L)
+        store.put(e)
+        repeat(600) { i ->
+            store.update(e.id) { it.copy(amount = i.toLong()) }
+        }
+
+        val lines = journal().readLines().filter { it.isNotEmpty() }
+        assertTrue("journal should have been compacted, had ${lines.size} lines", lines.size < 600)
+        assertEquals(599L, reopen().get(e.id)!!.amount)
+    }
+
+    @Test
+    fun `query pages newest first within date range`() {
+        val base = 1_700_000_000_000L
+        val ids = (0 until 120).map { i ->
+            val e = entry(i.toLong()).copy(date = Date(base + i * 1_000L))
+            store.put(e)
+            e.id
+        }
+
+        val seen = mutableListOf<String>()
+        var after: HistoryCursor? = null
+        do {
+            val page = store.query(base, base + 1_000_000L, { true }, 50, after)
+            seen += page.map { it.id }
+            after = page.lastOrNull()?.let { HistoryCursor.of(it) }
+        } while (page.size == 50)
+
+        assertEquals(ids.reversed(), seen)
+
+        val ranged = store.query(base + 10_000L, base + 19_000L, { true }, 50)
+        assertEquals(ids.subList(10, 20).reversed(), ranged.map { it.id })
+    }
+
+    @Test
+    fun `query filters by status and tracks updated dates`() {
+        val pending = entry(1L)
+        val completed = entry(2L, PaymentHistoryEntry.STATUS_COMPLETED)
+        store.put(pending)
+        store.put(completed)
+
+        val onlyPending = store.query(Long.MIN_VALUE, Long.MAX_VALUE, HistoryStatusFilter.PENDING::matchesStatus, 10)
+        assertEquals(listOf(pending.id), onlyPending.map { it.id })
+
+        store.update(pending.id) { it.copy(date = Date(0L)) }
+        assertEquals(0L, store.oldestDateMillis())
+        assertEquals(1, store.query(0L, 0L, { true }, 10).size)
+    }
+
+    @Test
+    fun `query limit larger than the history does not preallocate it`() {
+        val e = entry(1L)
+        store.put(e)
+
+        assertEquals(listOf(e.id), store.query(Long.MIN_VALUE, Long.MAX_VALUE, { true }, Int.MAX_VALUE).map { it.id })
+    }
+
+    @Test
+    fun `forEachInRange visits every matching entry newest first`() {
+        val base = 1_700_000_000_000L
+        val entries = (0 until 5).map { i ->
+            val status = if (i % 2 == 0) PaymentHistoryEntry.STATUS_COMPLETED else PaymentHistoryEntry.STATUS_PENDING
+            entry(i.toLong(), status).copy(date = Date(base + i * 1_000L)).also { store.put(it) }
+        }
+
+        val seen = mutableListOf<String>()
+        store.forEachInRange(base, base + 3_000L, { it == PaymentHistoryEntry.STATUS_COMPLETED }) { seen += it.id }
+
+        assertEquals(listOf(entries[2].id, entries[0].id), seen)
+    }
+}
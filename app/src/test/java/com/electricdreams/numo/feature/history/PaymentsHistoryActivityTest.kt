@@ -27,10 +27,22 @@ class PaymentsHistoryActivityTest {
         // Clear history before each test
         val prefs = context.getSharedPreferences("PaymentHistory", Context.MODE_PRIVATE)
         prefs.edit().clear().apply()
+        resetPaymentHistoryStore()
         // Force synchronous coroutines for testing
         PaymentsHistoryActivity.ioDispatcher = kotlinx.coroutines.Dispatchers.Unconfined
     }
 
+    private fun resetPaymentHistoryStore() {
+        try {
+            val field = PaymentHistoryStore::class.java.getDeclaredField("instance")
+            field.isAccessible = true
+            field.set(null, null)
+        } catch (e: Exception) {
+            // Ignore
+        }
+        PaymentHistoryStore.getInstance(context).clear()
+    }
+
     @Test
     fun `addPendingPayment creates pending entry`() {
         val paymentId = PaymentsHistoryActivity.addPendingPayment(
@@ -127,6 +139,27 @@ class PaymentsHistoryActivityTest {
         assertFalse(remaining.isPending())
     }
 
+    @Test
+    fun `getLatestPayment returns the newest entry at the last position`() {
+        assertNull(PaymentsHistoryActivity.getLatestPayment(context))
+
+        val olderId = PaymentsHistoryActivity.addPendingPayment(
+            context = context, amount = 100L, entryUnit = "sat", enteredAmount = 100L,
+            bitcoinPrice = null, paymentRequest = null, formattedAmount = null
+        )
+        val store = PaymentHistoryStore.getInstance(context)
+        store.update(olderId) { it.copy(date = java.util.Date(it.date.time - 60_000L)) }
+        val newestId = PaymentsHistoryActivity.addPendingPayment(
+            context = context, amount = 200L, entryUnit = "sat", enteredAmount = 200L,
+            bitcoinPrice = null, paymentRequest = null, formattedAmount = null
+        )
+
+        val latest = PaymentsHistoryActivity.getLatestPayment(context)!!
+        assertEquals(newestId, latest.value.id)
+        assertEquals(1, latest.index)
+        assertEquals(newestId, PaymentsHistoryActivity.getPaymentHistory(context)[latest.index].id)
+    }
+
     @Test
     fun `updatePendingWithTipInfo updates amount and tip fields`() {
         val id = PaymentsHistoryActivity.addPendingPayment(
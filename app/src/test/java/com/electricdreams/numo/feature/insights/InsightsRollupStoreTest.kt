@@ -0,0 +1,164 @@
+package com.electricdreams.numo.feature.insights
+
+import android.content.Context
+import com.electricdreams.numo.core.data.model.PaymentHistoryEntry
+import com.electricdreams.numo.feature.history.PaymentHistoryStore
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.util.Calendar
+import java.util.Date
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class InsightsRollupStoreTest {
+
+    private lateinit var context: Context
+    private lateinit var history: PaymentHistoryStore
+    private lateinit var rollups: InsightsRollupStore
+
+    private val noon: Long = Calendar.getInstance().apply {
+        set(2025, Calendar.MARCH, 12, 12, 0, 0)
+        set(Calendar.MILLISECOND, 0)
+    }.timeInMillis
+
+    private val midnight: Long = Calendar.getInstance().apply {
+        timeInMillis = noon
+        set(Calendar.HOUR_OF_DAY, 0)
+    }.timeInMillis
+
+    @Before
+    fun setUp() {
+        context = RuntimeEnvironment.getApplication()
+        context.getSharedPreferences("PaymentHistory", Context.MODE_PRIVATE).edit().clear().commit()
+        context.getSharedPreferences("InsightsRollups", Context.MODE_PRIVATE).edit().clear().commit()
+        history = reset(PaymentHistoryStore::class.java) { PaymentHistoryStore.getInstance(context) }
+        history.clear()
+        rollups = reopenRollups()
+    }
+
+    @After
+    fun tearDown() {
+        PaymentHistoryStore.removeCompletedPaymentListener(rollups)
+        rollups.cancelPendingWrite()
+    }
+
+    private fun <T> reset(type: Class<T>, create: () -> T): T {
+        val field = type.getDeclaredField("instance")
+        field.isAccessible = true
+        field.set(null, null)
+        return create()
+    }
+
+    /** Drop the rollup singleton so the next instance reloads (or rebuilds) from disk. */
+    private fun reopenRollups(): InsightsRollupStore {
+        if (::rollups.isInitialized) {
+            PaymentHistoryStore.removeCompletedPaymentListener(rollups)
+            rollups.cancelPendingWrite()
+        }
+        val store = reset(InsightsRollupStore::class.java) { InsightsRollupStore.getInstance(context) }
+        InsightsRollupStore.install(context)
+        return store
+    }
+
+    private fun completed(sats: Long, at: Long = noon, unit: String = "sat") = PaymentHistoryEntry(
+        token = "cashuA",
+        amount = sats,
+        date = Date(at),
+        rawUnit = "sat",
+        rawEntryUnit = unit,
+        enteredAmount = sats,
+        rawStatus = PaymentHistoryEntry.STATUS_COMPLETED,
+    )
+
+    @Test
+    fun `completed payments are added incrementally`() {
+        assertEquals(0, rollups.lookup(InsightsRange.DAY, "sat", midnight).count)
+
+        history.put(completed(100L))
+        history.put(completed(250L))
+        history.put(PaymentHistoryEntry(token = "", amount = 999L, date = Date(noon), enteredAmount = 999L, rawStatus = PaymentHistoryEntry.STATUS_PENDING))
+
+        val day = rollups.lookup(InsightsRange.DAY, "sat", midnight)
+        assertEquals(350L, day.sats)
+        assertEquals(2, day.count)
+    }
+
+    @Test
+    fun `completing and deleting a payment moves the totals`() {
+        val pending = PaymentHistoryEntry(token = "", amount = 40L, date = Date(noon), enteredAmount = 40L, rawStatus = PaymentHistoryEntry.STATUS_PENDING)
+        history.put(pending)
+        rollups.lookup(InsightsRange.DAY, "sat", midnight)
+
+        history.update(pending.id) { it.copy(rawStatus = PaymentHistoryEntry.STATUS_COMPLETED) }
+        assertEquals(40L, rollups.lookup(InsightsRange.DAY, "sat", midnight).sats)
+
+        history.remove(pending.id)
+        assertEquals(0, rollups.lookup(InsightsRange.DAY, "sat", midnight).count)
+    }
+
+    @Test
+    fun `legacy sat units are folded into sat`() {
+        history.put(completed(10L, unit = "btc"))
+        history.put(completed(20L, unit = "sats"))
+        history.put(completed(500L, unit = "USD"))
+
+        assertEquals(30L, rollups.lookup(InsightsRange.DAY, "sat", midnight).sats)
+        assertEquals(1, rollups.lookup(InsightsRange.DAY, "usd", midnight).count)
+    }
+
+    @Test
+    fun `tables out of step with history are rebuilt`() {
+        history.put(completed(100L))
+        rollups.lookup(InsightsRange.DAY, "sat", midnight)
+
+        // Changes made while no listener is installed leave the persisted count stale
+        PaymentHistoryStore.removeCompletedPaymentListener(rollups)
+        history.put(completed(5L))
+
+        rollups = reopenRollups()
+        val day = rollups.lookup(InsightsRange.DAY, "sat", midnight)
+        assertEquals(105L, day.sats)
+        assertEquals(2, day.count)
+    }
+
+    @Test
+    fun `changes are written back in batches`() {
+        val prefs = context.getSharedPreferences("InsightsRollups", Context.MODE_PRIVATE)
+        history.put(completed(100L))
+        rollups.flush()
+        assertTrue(prefs.contains("signature"))
+
+        history.put(completed(50L))
+        // Not written yet, and the stale tables are no longer trusted
+        assertFalse(prefs.contains("signature"))
+
+        rollups.flush()
+        assertTrue(prefs.contains("signature"))
+        rollups = reopenRollups()
+        assertEquals(150L, rollups.lookup(InsightsRange.DAY, "sat", midnight).sats)
+    }
+
+    @Test
+    fun `unwritten batch is rebuilt even when the count still matches`() {
+        val first = completed(100L)
+        history.put(first)
+        rollups.flush()
+
+        // Same number of completed payments as the persisted tables, different totals
+        history.put(completed(50L))
+        history.remove(first.id)
+
+        rollups = reopenRollups()
+        val day = rollups.lookup(InsightsRange.DAY, "sat", midnight)
+        assertEquals(50L, day.sats)
+        assertEquals(1, day.count)
+    }
+}
@@ -0,0 +1,76 @@
+package com.electricdreams.numo.ndef
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class NdefUpdateBinaryHandlerTest {
+
+    private val received = LinkedBlockingQueue<String>()
+
+    private val state = NdefStateManager(null).apply {
+        setMessageToSend("creqAtest")
+        setWriteMode(true)
+        selectedFile = NdefMessageBuilder.createNdefMessage("creqAtest")
+    }
+    private val handler = NdefUpdateBinaryHandler(state, NdefMessageParser(object : NdefProcessor.NdefMessageCallback {
+        override fun onNdefMessageReceived(message: String) {
+            received += message
+        }
+
+        override fun onMessageSent() {}
+    }))
+
+    private fun updateBinary(offset: Int, data: ByteArray, from: Int = 0, to: Int = data.size): ByteArray {
+        val apdu = byteArrayOf(0x00, 0xD6.toByte(), (offset shr 8).toByte(), offset.toByte(), (to - from).toByte()) +
+            data.copyOfRange(from, to)
+        return handler.handleUpdateBinary(apdu)
+    }
+
+    /** Writes the body in reader-sized chunks, then NLEN, the way phones do it. */
+    private fun write(message: ByteArray, chunk: Int = 0x34) {
+        assertArrayEquals(NdefConstants.NDEF_RESPONSE_OK, updateBinary(0, byteArrayOf(0, 0)))
+        var offset = 2
+        while (offset < message.size) {
+            val end = minOf(offset + chunk, message.size)
+            assertArrayEquals(NdefConstants.NDEF_RESPONSE_OK, updateBinary(offset, message, offset, end))
+            offset = end
+        }
+        assertArrayEquals(NdefConstants.NDEF_RESPONSE_OK, updateBinary(0, message, 0, 2))
+    }
+
+    @Test
+    fun `record header is known before the payload completes`() {
+        val message = NdefMessageBuilder.createNdefMessage("cashuB" + "x".repeat(600))
+        updateBinary(0, byteArrayOf(0, 0))
+        updateBinary(2, message, 2, 0x34)
+
+        val header = state.recordHeader
+        assertNotNull(header)
+        assertEquals(NdefRecordHeader.KIND_TEXT, header!!.kind)
+        assertTrue(header.payloadEnd() > state.contiguousEnd)
+    }
+
+    @Test
+    fun `chunked messages are delivered and the buffer is reused`() {
+        val first = "cashuB" + "a".repeat(2_000)
+        val second = "cashuB" + "b".repeat(300)
+
+        write(NdefMessageBuilder.createNdefMessage(first))
+        assertEquals(first, received.poll(5, TimeUnit.SECONDS))
+
+        // Second tap starts on a clean buffer right away
+        assertEquals(0, state.writtenEnd)
+        write(NdefMessageBuilder.createNdefMessage(second))
+        assertEquals(second, received.poll(5, TimeUnit.SECONDS))
+    }
+}
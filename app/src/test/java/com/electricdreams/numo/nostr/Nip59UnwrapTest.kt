@@ -0,0 +1,96 @@
+package com.electricdreams.numo.nostr
+
+import org.bouncycastle.asn1.sec.SECNamedCurves
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.math.BigInteger
+
+/**
+ * Round trip and cache behaviour for NIP-59 unwrapping, plus the curve
+ * helpers underneath it. The throughput comparison only runs with
+ * -Dnumo.benchmark=true.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class Nip59UnwrapTest {
+
+    private val recipient = NostrKeyPair.generate()
+    private val sender = NostrKeyPair.generate()
+
+    @Test
+    fun `cached unwrap matches uncached unwrap`() {
+        val wrap = giftwrap("""{"id":"pr1","mint":"https://mint.example"}""")
+        val keys = Nip44.ConversationKeyCache(recipient.secretKeyBytes, 16)
+
+        val plain = Nip59.unwrapGiftWrappedDm(wrap, recipient.secretKeyBytes)
+        val cached = Nip59.unwrapGiftWrappedDm(wrap, keys)
+
+        assertEquals(plain.rumor.content, cached.rumor.content)
+        assertEquals(sender.hexPub, cached.seal.pubkey)
+        assertEquals(2, keys.size())
+    }
+
+    @Test
+    fun `wiped cache refuses further use`() {
+        val keys = Nip44.ConversationKeyCache(recipient.secretKeyBytes, 1)
+        val first = keys.get(sender.publicKeyBytes)
+        keys.get(NostrKeyPair.generate().publicKeyBytes) // evicts the sender's entry
+        assertEquals(1, keys.size())
+        assertTrue(first.contentEquals(keys.get(sender.publicKeyBytes)))
+
+        keys.wipe()
+        assertEquals(0, keys.size())
+        val rejected = runCatching { keys.get(sender.publicKeyBytes) }.exceptionOrNull()
+        assertTrue(rejected is IllegalStateException)
+    }
+
+    @Test
+    fun `comb multiplier derives the BIP-340 test vector key`() {
+        val pair = NostrKeyPair.fromSecretHex("0000000000000000000000000000000000000000000000000000000000000003")
+
+        assertEquals("f9308a019258c31049344f85f89d5229b531c845836f99b08601f113bce036f9", pair.hexPub.lowercase())
+        assertEquals(pair.hexPub, NostrKeyPair.fromSecretBytes(pair.secretKeyBytes).hexPub)
+    }
+
+    @Test
+    fun `unwrap throughput`() {
+        assumeTrue(System.getProperty("numo.benchmark") == "true")
+        val wraps = List(200) { giftwrap("""{"id":"pr$it","amount":21}""") }
+
+        // Previous implementation: generic prime-field curve, ECDH on every call
+        val generic = SECNamedCurves.getByName("secp256k1")
+        val legacyEcdhNanos = time(wraps.size) {
+            val pub = generic.curve.decodePoint(byteArrayOf(2) + sender.publicKeyBytes)
+            pub.multiply(BigInteger(1, recipient.secretKeyBytes)).normalize()
+        }
+        val ecdhNanos = time(wraps.size) {
+            Nip44.getConversationKey(recipient.secretKeyBytes, sender.publicKeyBytes)
+        }
+
+        val uncachedNanos = time(wraps.size) { i -> Nip59.unwrapGiftWrappedDm(wraps[i], recipient.secretKeyBytes) }
+        val keys = Nip44.ConversationKeyCache(recipient.secretKeyBytes, 64)
+        val cachedNanos = time(wraps.size) { i -> Nip59.unwrapGiftWrappedDm(wraps[i], keys) }
+        keys.wipe()
+
+        println("ECDH generic curve: ${perSecond(wraps.size, legacyEcdhNanos)} ops/s")
+        println("ECDH custom curve:  ${perSecond(wraps.size, ecdhNanos)} ops/s")
+        println("unwrap uncached:    ${perSecond(wraps.size, uncachedNanos)} wraps/s")
+        println("unwrap cached:      ${perSecond(wraps.size, cachedNanos)} wraps/s")
+    }
+
+    private fun time(count: Int, block: (Int) -> Unit): Long {
+        repeat(count) { block(it) } // warm up
+        val start = System.nanoTime()
+        repeat(count) { block(it) }
+        return System.nanoTime() - start
+    }
+
+    private fun perSecond(count: Int, nanos: Long) = count * 1_000_000_000L / nanos.coerceAtLeast(1L)
+
+    private fun giftwrap(payload: String) = NostrTestEvents.giftwrap(payload, sender, recipient)
+}
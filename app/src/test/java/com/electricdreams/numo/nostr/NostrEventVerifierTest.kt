@@ -0,0 +1,49 @@
+package com.electricdreams.numo.nostr
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class NostrEventVerifierTest {
+
+    private val authors = List(4) { NostrKeyPair.generate() }
+
+    private fun signedEvents(count: Int) = List(count) { i ->
+        NostrTestEvents.event(authors[i % authors.size], kind = 38000, content = "review $i")
+    }
+
+    @Test
+    fun `valid batch passes`() {
+        val events = signedEvents(NostrEventVerifier.MAX_BATCH + 5)
+
+        assertTrue(NostrEventVerifier.verify(events).all { it })
+        assertTrue(events.all { it.verify() })
+    }
+
+    @Test
+    fun `bad signature is isolated within its batch`() {
+        val events = signedEvents(10)
+        // Signature by the wrong key over the right id
+        val forged = events[3]
+        val other = NostrTestEvents.event(authors[(3 + 1) % authors.size], forged.kind, forged.content)
+        forged.sig = other.sig
+
+        val expected = BooleanArray(10) { it != 3 }
+        assertArrayEquals(expected, NostrEventVerifier.verify(events))
+    }
+
+    @Test
+    fun `tampered content is rejected by id check`() {
+        val events = signedEvents(3)
+        events[1].content = "edited"
+
+        val valid = NostrEventVerifier.filterValid(events)
+        assertEquals(listOf(events[0], events[2]), valid)
+    }
+}
@@ -0,0 +1,93 @@
+package com.electricdreams.numo.nostr
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.awaitCancellation
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class NostrPaymentListenerTest {
+
+    private fun giftwrap(id: String) = NostrEvent().apply {
+        this.id = id
+        kind = 1059
+    }
+
+    @Test
+    fun `duplicate giftwraps are redeemed once`() {
+        val redemptions = AtomicInteger()
+        val tokens = CopyOnWriteArrayList<String>()
+        val listener = NostrPaymentListener(
+            secretKey32 = ByteArray(32) { 1 },
+            pubkeyHex = "a".repeat(64),
+            expectedAmount = 21L,
+            allowedMints = null,
+            relays = emptyList(),
+            successHandler = { tokens += it },
+            errorHandler = null,
+            unwrap = { _, _ -> "{}" },
+            redeem = {
+                redemptions.incrementAndGet()
+                "cashuA"
+            },
+            computeDispatcher = Dispatchers.Unconfined,
+            ioDispatcher = Dispatchers.Unconfined,
+            verify = { BooleanArray(it.size) { true } },
+        )
+        listener.start()
+
+        listener.onEvent("wss://one", giftwrap("e1"))
+        listener.onEvent("wss://two", giftwrap("e1"))
+        listener.onEvent("wss://two", giftwrap("e2"))
+
+        assertEquals(1, redemptions.get())
+        assertEquals(listOf("cashuA"), tokens)
+        assertEquals(1L, listener.getStats().processed)
+    }
+
+    @Test
+    fun `stop cancels an in-flight redemption without reporting failure`() {
+        val started = CountDownLatch(1)
+        val cancelled = CountDownLatch(1)
+        var failure: String? = null
+        val listener = NostrPaymentListener(
+            secretKey32 = ByteArray(32) { 1 },
+            pubkeyHex = "a".repeat(64),
+            expectedAmount = 21L,
+            allowedMints = null,
+            relays = emptyList(),
+            successHandler = null,
+            errorHandler = { message, _ -> failure = message },
+            unwrap = { _, _ -> "{}" },
+            redeem = {
+                started.countDown()
+                try {
+                    awaitCancellation()
+                } finally {
+                    cancelled.countDown()
+                }
+            },
+            computeDispatcher = Dispatchers.Default,
+            ioDispatcher = Dispatchers.IO,
+            verify = { BooleanArray(it.size) { true } },
+        )
+        listener.start()
+        listener.onEvent("wss://one", giftwrap("e1"))
+
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+        listener.stop()
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS))
+        assertNull(failure)
+    }
+}
@@ -0,0 +1,108 @@
+package com.electricdreams.numo.nostr
+
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import okhttp3.OkHttpClient
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class NostrRelayPoolTest {
+
+    private lateinit var server: MockWebServer
+    private val frames = LinkedBlockingQueue<String>()
+    private val serverSockets = CopyOnWriteArrayList<WebSocket>()
+    private lateinit var pool: NostrRelayPool
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.enqueue(MockResponse().withWebSocketUpgrade(object : WebSocketListener() {
+            override fun onOpen(webSocket: WebSocket, response: Response) {
+                serverSockets += webSocket
+            }
+
+            override fun onMessage(webSocket: WebSocket, text: String) {
+                frames += text
+            }
+        }))
+        server.start()
+        pool = NostrRelayPool(OkHttpClient())
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun relayUrl() = server.url("/").toString().replace("http://", "ws://")
+
+    private fun filter(pubkey: String) = JsonObject().apply {
+        add("#p", JsonParser.parseString("[\"$pubkey\"]"))
+    }
+
+    private fun nextFrame() = JsonParser.parseString(frames.poll(5, TimeUnit.SECONDS)).asJsonArray
+
+    @Test
+    fun `subscriptions share one socket and events are routed by id`() {
+        val firstEvents = CopyOnWriteArrayList<String>()
+        val secondLatch = CountDownLatch(1)
+        val secondEvents = CopyOnWriteArrayList<String>()
+
+        val first = pool.subscribe(listOf(relayUrl()), filter("aa")) { _, e -> firstEvents += e.id }
+        assertEquals(first.getId(), nextFrame()[1].asString)
+
+        val second = pool.subscribe(listOf(relayUrl()), filter("bb")) { _, e ->
+            secondEvents += e.id
+            secondLatch.countDown()
+        }
+        val req = nextFrame()
+        assertEquals("REQ", req[0].asString)
+        assertEquals(second.getId(), req[1].asString)
+
+        assertEquals(1, server.requestCount)
+        assertEquals(1, pool.connectedRelayCount())
+
+        serverSockets.single().send("""["EVENT","${second.getId()}",{"id":"e1","kind":1059,"tags":[],"content":""}]""")
+        assertTrue(secondLatch.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf("e1"), secondEvents)
+        assertTrue(firstEvents.isEmpty())
+
+        first.close()
+        val close = nextFrame()
+        assertEquals("CLOSE", close[0].asString)
+        assertEquals(first.getId(), close[1].asString)
+        // The relay stays open for the remaining subscription
+        assertEquals(1, pool.connectedRelayCount())
+        second.close()
+    }
+
+    @Test
+    fun `warmed relay serves a later subscription on the same socket`() {
+        pool.warmUp(listOf(relayUrl()))
+        assertEquals(1, pool.connectedRelayCount())
+
+        val sub = pool.subscribe(listOf(relayUrl()), filter("cc")) { _, _ -> }
+        val req = nextFrame()
+        assertEquals("REQ", req[0].asString)
+        assertEquals(sub.getId(), req[1].asString)
+        assertEquals(1, server.requestCount)
+        sub.close()
+    }
+}
@@ -0,0 +1,83 @@
+package com.electricdreams.numo.nostr
+
+import com.google.gson.Gson
+import java.math.BigInteger
+import java.security.MessageDigest
+import java.security.SecureRandom
+
+/** Builds signed nostr events for tests: a BIP-340 signer and a NIP-59 giftwrap builder. */
+object NostrTestEvents {
+
+    private val gson = Gson()
+    private val random = SecureRandom()
+
+    fun event(keys: NostrKeyPair, kind: Int, content: String, createdAt: Long = 1_700_000_000L) =
+        NostrEvent().apply {
+            pubkey = keys.hexPub
+            created_at = createdAt
+            this.kind = kind
+            this.content = content
+        }.also { sign(it, keys) }
+
+    fun giftwrap(payload: String, sender: NostrKeyPair, recipient: NostrKeyPair): NostrEvent {
+        val rumor = NostrEvent().apply {
+            pubkey = sender.hexPub
+            created_at = 1_700_000_000L
+            kind = 14
+            content = payload
+        }
+        rumor.id = rumor.computeId()
+
+        val seal = NostrEvent().apply {
+            pubkey = sender.hexPub
+            created_at = 1_700_000_000L
+            kind = 13
+            content = Nip44.encrypt(
+                gson.toJson(rumor),
+                Nip44.getConversationKey(sender.secretKeyBytes, recipient.publicKeyBytes),
+            )
+        }
+        sign(seal, sender)
+
+        val ephemeral = NostrKeyPair.generate()
+        val wrap = NostrEvent().apply {
+            pubkey = ephemeral.hexPub
+            created_at = 1_700_000_000L
+            kind = 1059
+            tags = mutableListOf(mutableListOf("p", recipient.hexPub))
+            content = Nip44.encrypt(
+                gson.toJson(seal),
+                Nip44.getConversationKey(ephemeral.secretKeyBytes, recipient.publicKeyBytes),
+            )
+        }
+        sign(wrap, ephemeral)
+        return wrap
+    }
+
+    fun sign(event: NostrEvent, keys: NostrKeyPair) {
+        event.id = event.computeId()
+        val n = Secp256k1.N
+        val dPrime = BigInteger(1, keys.secretKeyBytes)
+        val pub = Secp256k1.mulG(dPrime).normalize()
+        val d = if (pub.affineYCoord.toBigInteger().testBit(0)) n - dPrime else dPrime
+
+        var kPrime: BigInteger
+        do {
+            kPrime = BigInteger(1, ByteArray(32).also { random.nextBytes(it) })
+        } while (kPrime.signum() == 0 || kPrime >= n)
+        val r = Secp256k1.mulG(kPrime).normalize()
+        val k = if (r.affineYCoord.toBigInteger().testBit(0)) n - kPrime else kPrime
+
+        val rx = r.affineXCoord.encoded
+        val msg = event.id.chunked(2).map { it.toInt(16).toByte() }.toByteArray()
+        val e = BigInteger(1, challengeHash(rx + pub.affineXCoord.encoded + msg)).mod(n)
+        val s = (k + e * d).mod(n)
+        event.sig = (rx + Secp256k1.to32Bytes(s)).joinToString("") { "%02x".format(it) }
+    }
+
+    private fun challengeHash(data: ByteArray): ByteArray {
+        val sha = MessageDigest.getInstance("SHA-256")
+        val tag = sha.digest("BIP0340/challenge".toByteArray())
+        return sha.digest(tag + tag + data)
+    }
+}
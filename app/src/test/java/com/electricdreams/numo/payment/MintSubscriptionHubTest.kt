@@ -0,0 +1,120 @@
+package com.electricdreams.numo.payment
+
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import kotlinx.coroutines.async
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import okhttp3.OkHttpClient
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.ConcurrentHashMap
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class MintSubscriptionHubTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var hub: MintSubscriptionHub
+    private val gson = Gson()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+        hub = MintSubscriptionHub(OkHttpClient())
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private val mintUrl: String
+        get() = server.url("/").toString().removeSuffix("/")
+
+    /** Fake NUT-17 endpoint: acks subscribes and pushes [pushState] once both quotes are subscribed. */
+    private fun fakeMint(pushQuote: String, pushState: String) = object : WebSocketListener() {
+        val subIds = ConcurrentHashMap<String, String>()
+
+        override fun onMessage(webSocket: WebSocket, text: String) {
+            val msg = gson.fromJson(text, JsonObject::class.java)
+            val id = msg.get("id").asInt
+            webSocket.send("""{"jsonrpc":"2.0","result":{"status":"OK"},"id":$id}""")
+            if (msg.get("method").asString != "subscribe") return
+            val params = msg.getAsJsonObject("params")
+            subIds[params.getAsJsonArray("filters")[0].asString] = params.get("subId").asString
+            if (subIds.size == 2) {
+                webSocket.send(
+                    """{"jsonrpc":"2.0","method":"subscribe","params":{"subId":"${subIds[pushQuote]}",""" +
+                        """"payload":{"quote":"$pushQuote","state":"$pushState"}}}"""
+                )
+            }
+        }
+
+        override fun onOpen(webSocket: WebSocket, response: Response) = Unit
+    }
+
+    @Test
+    fun `quotes on one mint share a socket and get their own updates`() = runBlocking {
+        server.enqueue(MockResponse().withWebSocketUpgrade(fakeMint(pushQuote = "b", pushState = "PAID")))
+
+        withTimeout(10_000) {
+            val first = async {
+                hub.awaitState(mintUrl, MintSubscriptionHub.Kind.MINT_QUOTE, "a", setOf("PAID"))
+            }
+            val second = async {
+                hub.awaitState(mintUrl, MintSubscriptionHub.Kind.MINT_QUOTE, "b", setOf("paid", "issued"))
+            }
+
+            assertEquals("PAID", second.await())
+            assertFalse(first.isCompleted)
+            assertTrue(hub.isLive(mintUrl))
+            first.cancel()
+        }
+
+        assertEquals(1, server.requestCount)
+        assertEquals("/v1/ws", server.takeRequest().path)
+        assertEquals(1, hub.connectedMintCount())
+    }
+
+    @Test
+    fun `mint without websocket support fails fast for later waiters`() = runBlocking {
+        server.enqueue(MockResponse().setResponseCode(404))
+
+        withTimeout(10_000) {
+            try {
+                hub.awaitState(mintUrl, MintSubscriptionHub.Kind.MELT_QUOTE, "q1", setOf("PAID"))
+                fail("expected PushUnavailableException")
+            } catch (expected: MintSubscriptionHub.PushUnavailableException) {
+            }
+        }
+        assertTrue(hub.isPushUnsupported("$mintUrl/"))
+
+        try {
+            hub.awaitState(mintUrl, MintSubscriptionHub.Kind.MELT_QUOTE, "q2", setOf("PAID"))
+            fail("expected PushUnavailableException")
+        } catch (expected: MintSubscriptionHub.PushUnavailableException) {
+        }
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun `ws url keeps the mint path`() {
+        assertEquals("wss://mint.example/Bitcoin/v1/ws", MintSubscriptionHub.buildWsUrl("https://mint.example/Bitcoin/"))
+        assertEquals("ws://localhost:3338/v1/ws", MintSubscriptionHub.buildWsUrl("http://localhost:3338"))
+    }
+}
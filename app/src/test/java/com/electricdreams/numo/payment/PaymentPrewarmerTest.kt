@@ -0,0 +1,126 @@
+package com.electricdreams.numo.payment
+
+import com.electricdreams.numo.nostr.NostrKeyPair
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.cashudevkit.MintQuote
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.kotlin.mock
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class PaymentPrewarmerTest {
+
+    private val mint = "https://mint.test"
+
+    private class FakeSource(
+        private val mintUrl: String,
+        var now: Long = 1_000_000L,
+        private val create: suspend (PaymentPrewarmer.QuoteKey) -> MintQuote = { mock() }
+    ) : PaymentPrewarmer.Source {
+        var warmUps = 0
+        val requested = mutableListOf<Long>()
+
+        override fun warmConnections() {
+            warmUps++
+        }
+
+        override fun generateKeyPair(): NostrKeyPair = NostrKeyPair.generate()
+
+        override fun quoteTarget(amountSats: Long) = PaymentPrewarmer.QuoteKey(mintUrl, "sat", amountSats)
+
+        override suspend fun createQuote(key: PaymentPrewarmer.QuoteKey): PaymentPrewarmer.PreparedQuote {
+            requested += key.amountSats
+            return PaymentPrewarmer.PreparedQuote(create(key), now + 10 * 60_000L)
+        }
+    }
+
+    @Test
+    fun `quote is requested once the amount settles and handed out once`() = runTest {
+        val source = FakeSource(mint)
+        val prewarmer = PaymentPrewarmer(backgroundScope, source, quoteDelayMs = 800)
+
+        prewarmer.onAmountChanged(1)
+        advanceTimeBy(300)
+        prewarmer.onAmountChanged(12)
+        advanceTimeBy(300)
+        prewarmer.onAmountChanged(120)
+        advanceTimeBy(801)
+        runCurrent()
+
+        assertEquals(listOf(120L), source.requested)
+        assertEquals(1, source.warmUps)
+        assertNull(prewarmer.claimQuote(mint, "sat", 12))
+        assertNotNull(prewarmer.claimQuote(mint, "sat", 120))
+        assertNull(prewarmer.claimQuote(mint, "sat", 120))
+    }
+
+    @Test
+    fun `claim waits for a quote that is still being created`() = runTest {
+        val gate = CompletableDeferred<Unit>()
+        val quote = mock<MintQuote>()
+        val source = FakeSource(mint) { gate.await(); quote }
+        val prewarmer = PaymentPrewarmer(backgroundScope, source, quoteDelayMs = 800)
+
+        prewarmer.onAmountChanged(500)
+        advanceTimeBy(801)
+        runCurrent()
+
+        val claimed = async { prewarmer.claimQuote(mint, "sat", 500) }
+        runCurrent()
+        gate.complete(Unit)
+
+        assertSame(quote, claimed.await())
+    }
+
+    @Test
+    fun `cleared amount drops prepared quotes and warms again next sale`() = runTest {
+        val source = FakeSource(mint)
+        val prewarmer = PaymentPrewarmer(backgroundScope, source, quoteDelayMs = 800)
+
+        prewarmer.onAmountChanged(250)
+        advanceTimeBy(801)
+        runCurrent()
+        prewarmer.onAmountChanged(0)
+
+        assertNull(prewarmer.claimQuote(mint, "sat", 250))
+
+        prewarmer.onAmountChanged(300)
+        runCurrent()
+        assertEquals(2, source.warmUps)
+    }
+
+    @Test
+    fun `quote close to expiry is not used`() = runTest {
+        val source = FakeSource(mint)
+        val prewarmer = PaymentPrewarmer(backgroundScope, source, quoteDelayMs = 800, clock = { source.now })
+
+        prewarmer.onAmountChanged(1_000)
+        advanceTimeBy(801)
+        runCurrent()
+        source.now += 10 * 60_000L - PaymentPrewarmer.MIN_REMAINING_VALIDITY_MS + 1
+
+        assertNull(prewarmer.claimQuote(mint, "sat", 1_000))
+    }
+
+    @Test
+    fun `key pair is generated ahead and taken once`() = runTest {
+        val prewarmer = PaymentPrewarmer(backgroundScope, FakeSource(mint), quoteDelayMs = 800)
+
+        prewarmer.onAmountChanged(21)
+        runCurrent()
+
+        assertNotNull(prewarmer.takeKeyPair())
+        assertNull(prewarmer.takeKeyPair())
+    }
+}
@@ -0,0 +1,133 @@
+package com.electricdreams.numo.payment
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.advanceUntilIdle
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class PaymentSessionTest {
+
+    private fun TestScope.session(outcomes: MutableList<PaymentSession.Outcome<String>> = mutableListOf()) =
+        PaymentSession<String>(backgroundScope, { outcomes += it }, clock = { testScheduler.currentTime })
+
+    /** Ready after [readyMs], confirms with its own name after [confirmMs] (never if null). */
+    private fun fake(name: String, readyMs: Long, confirmMs: Long?) =
+        PaymentSession.channel(name) { ready ->
+            delay(readyMs)
+            ready()
+            if (confirmMs == null) awaitCancellation()
+            delay(confirmMs - readyMs)
+            name
+        }
+
+    @Test
+    fun `channels start together and the first confirmation wins`() = runTest {
+        val outcomes = mutableListOf<PaymentSession.Outcome<String>>()
+        val session = session(outcomes)
+
+        session.start(fake("nostr", readyMs = 300, confirmMs = null))
+        session.start(fake("lightning", readyMs = 900, confirmMs = 4_000))
+        session.start(fake("nfc", readyMs = 100, confirmMs = 6_000))
+        advanceUntilIdle()
+
+        assertEquals(listOf(PaymentSession.Outcome.Confirmed("lightning", "lightning")), outcomes)
+        val report = session.report()
+        assertEquals(100L, report.firstReadyMs)
+        assertEquals(4_000L, report.outcomeMs)
+        assertEquals(
+            mapOf(
+                "nostr" to PaymentSession.ChannelState.CANCELLED,
+                "lightning" to PaymentSession.ChannelState.CONFIRMED,
+                "nfc" to PaymentSession.ChannelState.CANCELLED
+            ),
+            report.channels.associate { it.channel to it.state }
+        )
+        // Every channel started at once instead of waiting on the others
+        assertTrue(report.channels.all { it.startedAtMs == 0L })
+    }
+
+    @Test
+    fun `failing channel drops out while the others keep running`() = runTest {
+        val session = session()
+
+        session.start(PaymentSession.channel("lightning") { throw IllegalStateException("mint offline") })
+        session.start(fake("nostr", readyMs = 200, confirmMs = 1_000))
+        advanceUntilIdle()
+
+        assertEquals(PaymentSession.Outcome.Confirmed("nostr", "nostr"), session.await())
+        val states = session.report().channels.associate { it.channel to it.state }
+        assertEquals(PaymentSession.ChannelState.DROPPED, states["lightning"])
+    }
+
+    @Test
+    fun `fatal error ends the session and cancels the others`() = runTest {
+        val session = session()
+        val nostrCancelled = CompletableDeferred<Unit>()
+
+        session.start(PaymentSession.channel("nostr") {
+            try {
+                awaitCancellation()
+            } finally {
+                nostrCancelled.complete(Unit)
+            }
+        })
+        session.start(PaymentSession.channel<String>("nfc") {
+            delay(500)
+            throw PaymentSession.FatalException("NDEF Payment failed: token spent")
+        })
+        advanceUntilIdle()
+
+        val outcome = session.await() as PaymentSession.Outcome.Failed
+        assertEquals("nfc", outcome.channel)
+        assertEquals("NDEF Payment failed: token spent", outcome.error.message)
+        assertTrue(nostrCancelled.isCompleted)
+    }
+
+    @Test
+    fun `only one of two simultaneous confirmations wins`() = runTest {
+        val outcomes = mutableListOf<PaymentSession.Outcome<String>>()
+        val session = session(outcomes)
+
+        session.start(fake("nostr", readyMs = 0, confirmMs = 1_000))
+        session.start(fake("nfc", readyMs = 0, confirmMs = 1_000))
+        advanceUntilIdle()
+
+        assertEquals(1, outcomes.size)
+        assertEquals(
+            setOf(PaymentSession.ChannelState.CONFIRMED, PaymentSession.ChannelState.CANCELLED),
+            session.report().channels.map { it.state }.toSet()
+        )
+    }
+
+    @Test
+    fun `cancelled session stops channels and accepts no new ones`() = runTest {
+        val outcomes = mutableListOf<PaymentSession.Outcome<String>>()
+        val session = session(outcomes)
+
+        session.start(fake("nostr", readyMs = 100, confirmMs = 5_000))
+        advanceTimeBy(1_000)
+        runCurrent()
+
+        assertTrue(session.cancel("user"))
+        assertFalse(session.cancel("again"))
+        assertFalse(session.start(fake("lightning", readyMs = 0, confirmMs = 10)))
+        advanceUntilIdle()
+
+        assertEquals(listOf(PaymentSession.Outcome.Cancelled("user")), outcomes)
+        assertEquals(PaymentSession.ChannelState.CANCELLED, session.report().channels.single().state)
+        assertEquals(1_000L, session.report().channels.single().endedAtMs)
+    }
+}
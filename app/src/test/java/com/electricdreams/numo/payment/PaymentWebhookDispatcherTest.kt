@@ -7,6 +7,7 @@ import com.electricdreams.numo.core.model.CheckoutBasket
 import com.electricdreams.numo.core.model.CheckoutBasketItem
 import com.electricdreams.numo.core.util.WebhookSettingsManager
 import com.google.gson.Gson
+import com.google.gson.JsonParser
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.runBlocking
 import okhttp3.mockwebserver.MockResponse
@@ -19,6 +20,7 @@ import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
 import org.robolectric.annotation.Config
+import java.io.File
 import java.util.Date
 
 @RunWith(RobolectricTestRunner::class)
@@ -142,6 +144,77 @@ class PaymentWebhookDispatcherTest {
         assertTrue(!body.contains("\"checkout\":{"))
     }
 
+    @Test
+    fun `undelivered event is kept and sent with the next one as a bulk payload`() = runBlocking {
+        val outboxDir = File(context.filesDir, "outbox_bulk").apply { deleteRecursively() }
+        server.enqueue(MockResponse().setResponseCode(503))
+        server.enqueue(MockResponse().setResponseCode(200))
+        val endpoint = server.url("/bulk").toString()
+
+        val offline = PaymentWebhookDispatcher(
+            context = context,
+            endpointProvider = { listOf(endpointConfig(endpoint)) },
+            retryDelaysMs = listOf(0L),
+            outboxDirectory = outboxDir,
+            initialBackoffMs = 60 * 60_000L,
+        )
+        val first = offline.dispatchPaymentReceivedNow(sampleEntry())
+        assertEquals(1, first.failureCount)
+        assertEquals(1, offline.deliveryStatus.value[endpoint]?.pendingCount)
+
+        // A fresh dispatcher stands in for the next process picking up the outbox
+        val restarted = PaymentWebhookDispatcher(
+            context = context,
+            endpointProvider = { listOf(endpointConfig(endpoint)) },
+            retryDelaysMs = listOf(0L),
+            outboxDirectory = outboxDir,
+        )
+        val second = restarted.dispatchPaymentReceivedNow(sampleEntry(checkoutBasketJson = null))
+
+        assertEquals(1, second.successCount)
+        assertEquals(2, server.requestCount)
+        server.takeRequest()
+        val bulk = JsonParser.parseString(server.takeRequest().body.readUtf8()).asJsonArray
+        assertEquals(2, bulk.size())
+        assertTrue(bulk[0].asJsonObject.has("checkout"))
+        assertTrue(!bulk[1].asJsonObject.has("checkout"))
+        assertEquals(0, restarted.deliveryStatus.value[endpoint]?.pendingCount)
+    }
+
+    @Test
+    fun `failing endpoint does not hold back the others`() = runBlocking {
+        val other = MockWebServer()
+        other.start()
+        try {
+            server.enqueue(MockResponse().setResponseCode(500))
+            other.enqueue(MockResponse().setResponseCode(200))
+            val down = server.url("/down").toString()
+            val up = other.url("/up").toString()
+
+            val dispatcher = PaymentWebhookDispatcher(
+                context = context,
+                endpointProvider = { listOf(endpointConfig(down), endpointConfig(up)) },
+                retryDelaysMs = listOf(0L),
+                outboxDirectory = File(context.filesDir, "outbox_fanout").apply { deleteRecursively() },
+                initialBackoffMs = 60 * 60_000L,
+            )
+
+            val result = dispatcher.dispatchPaymentReceivedNow(sampleEntry())
+
+            assertEquals(2, result.totalEndpoints)
+            assertEquals(1, result.successCount)
+            assertEquals(1, other.requestCount)
+            val status = dispatcher.deliveryStatus.value
+            assertEquals(1, status[down]?.pendingCount)
+            assertEquals(1, status[down]?.consecutiveFailures)
+            assertTrue(status[down]?.nextRetryAtMs != null)
+            assertEquals(0, status[up]?.pendingCount)
+            assertTrue(status[up]?.lastLatencyMs != null)
+        } finally {
+            other.shutdown()
+        }
+    }
+
     private fun endpointConfig(
         url: String,
         authKey: String? = null,
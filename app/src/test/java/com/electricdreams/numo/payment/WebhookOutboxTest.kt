@@ -0,0 +1,95 @@
+package com.electricdreams.numo.payment
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class WebhookOutboxTest {
+
+    private lateinit var dir: File
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        dir = File(context.filesDir, "outbox_test").apply { deleteRecursively() }
+    }
+
+    @Test
+    fun `pending events survive reopening in order`() {
+        val outbox = WebhookOutbox(dir)
+        outbox.enqueue("e1", 1_000L, """{"n":1}""", listOf("https://a", "https://b"))
+        outbox.enqueue("e2", 2_000L, """{"n":2}""", listOf("https://a"))
+        outbox.acknowledge("https://b", listOf("e1"))
+
+        val reopened = WebhookOutbox(dir)
+
+        assertEquals(listOf("e1", "e2"), reopened.peek("https://a", 10).map { it.eventId })
+        assertEquals("""{"n":2}""", reopened.peek("https://a", 10)[1].payloadJson)
+        assertEquals(setOf("https://a"), reopened.pendingEndpoints())
+        assertEquals(1_000L, reopened.oldestPendingAtMs("https://a"))
+        assertNull(reopened.oldestPendingAtMs("https://b"))
+    }
+
+    @Test
+    fun `acknowledged events are forgotten once every endpoint has them`() {
+        val outbox = WebhookOutbox(dir)
+        outbox.enqueue("e1", 1_000L, "{}", listOf("https://a", "https://b"))
+
+        outbox.acknowledge("https://a", listOf("e1"))
+        assertTrue(outbox.isPending("https://b", "e1"))
+
+        outbox.acknowledge("https://b", listOf("e1"))
+        assertFalse(outbox.isPending("https://b", "e1"))
+        assertTrue(WebhookOutbox(dir).pendingEndpoints().isEmpty())
+    }
+
+    @Test
+    fun `expire and drop give up on events`() {
+        val outbox = WebhookOutbox(dir)
+        outbox.enqueue("old", 1_000L, "{}", listOf("https://a", "https://b"))
+        outbox.enqueue("new", 5_000L, "{}", listOf("https://a", "https://b"))
+
+        assertEquals(1, outbox.expire("https://a", 2_000L))
+        assertEquals(listOf("new"), outbox.peek("https://a", 10).map { it.eventId })
+
+        assertEquals(2, outbox.drop("https://b"))
+        assertEquals(0, outbox.pendingCount("https://b"))
+        assertEquals(1, WebhookOutbox(dir).pendingCount("https://a"))
+    }
+
+    @Test
+    fun `torn trailing record is discarded on replay`() {
+        WebhookOutbox(dir).enqueue("e1", 1_000L, "{}", listOf("https://a"))
+        val journal = File(dir, "outbox.log")
+        journal.appendText("E\te2\t2000\t{\"partial\"")
+
+        val reopened = WebhookOutbox(dir)
+
+        assertEquals(listOf("e1"), reopened.peek("https://a", 10).map { it.eventId })
+        assertTrue(journal.readText().endsWith("\n"))
+    }
+
+    @Test
+    fun `compaction keeps live records`() {
+        val outbox = WebhookOutbox(dir)
+        repeat(300) { i ->
+            outbox.enqueue("e$i", i.toLong(), "{}", listOf("https://a"))
+        }
+        outbox.acknowledge("https://a", (0 until 299).map { "e$it" })
+
+        val lines = File(dir, "outbox.log").readLines()
+        assertEquals(2, lines.size)
+        assertEquals(listOf("e299"), WebhookOutbox(dir).peek("https://a", 10).map { it.eventId })
+    }
+}
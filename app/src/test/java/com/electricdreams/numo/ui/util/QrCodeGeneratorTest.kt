@@ -0,0 +1,52 @@
+package com.electricdreams.numo.ui.util
+
+import android.graphics.Color
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class QrCodeGeneratorTest {
+
+    @Test
+    fun `same content reuses the encoded matrix`() {
+        val first = QrCodeGenerator.encode("lnbc1matrix")
+        assertSame(first, QrCodeGenerator.encode("lnbc1matrix"))
+        assertNotSame(first, QrCodeGenerator.encode("lnbc1other"))
+    }
+
+    @Test
+    fun `same request reuses the rendered bitmap`() {
+        val light = QrCodeGenerator.generate("creqAcache", 512, Color.BLACK, Color.WHITE)
+        assertSame(light, QrCodeGenerator.generate("creqAcache", 512, Color.BLACK, Color.WHITE))
+
+        val dark = QrCodeGenerator.generate("creqAcache", 512, Color.WHITE, Color.TRANSPARENT)
+        assertNotSame(light, dark)
+    }
+
+    @Test
+    fun `bitmap is a whole number of pixels per module with background in light modules`() {
+        val matrix = QrCodeGenerator.encode("cashuBsize")
+        val bitmap = QrCodeGenerator.generate("cashuBsize", 500, Color.BLACK, Color.WHITE)
+
+        val scale = 500 / matrix.width
+        assertEquals(matrix.width * scale, bitmap.width)
+        assertEquals(matrix.height * scale, bitmap.height)
+
+        // The one-module margin is always light
+        assertEquals(Color.WHITE, bitmap.getPixel(scale / 2, scale / 2))
+        assertEquals(Color.WHITE, bitmap.getPixel(bitmap.width - 1, bitmap.height - 1))
+    }
+
+    @Test
+    fun `content larger than the target size is rejected`() {
+        val failed = runCatching { QrCodeGenerator.generate("x".repeat(1_000), 16) }
+        assertTrue(failed.exceptionOrNull() is IllegalArgumentException)
+    }
+}